@@ -0,0 +1,73 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.code.or.benchmark.jmh;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+
+import com.google.code.or.binlog.impl.event.BinlogEventV4HeaderImpl;
+import com.google.code.or.io.XInputStream;
+import com.google.code.or.io.impl.XInputStreamImpl;
+
+/**
+ * A pregenerated event body which is parsed again and again from the same stream, so that a
+ * benchmark only allocates what the parser does.
+ * 
+ * @author Jingqi Xu
+ */
+public final class EventBody
+{
+	//
+	private final byte[] data;
+	private final BinlogEventV4HeaderImpl header;
+	private final ByteArrayInputStream bais;
+	private final XInputStreamImpl is;
+
+	/**
+	 * 
+	 */
+	public EventBody(int eventType, byte[] data)
+	{
+		this.data = data;
+		this.header = new BinlogEventV4HeaderImpl();
+		this.header.setEventType(eventType);
+		this.header.setEventLength(19 + data.length);
+		this.bais = new ByteArrayInputStream(data);
+		this.is = new XInputStreamImpl(this.bais, data.length);
+	}
+
+	/**
+	 * 
+	 */
+	public byte[] getData()
+	{
+		return data;
+	}
+
+	public BinlogEventV4HeaderImpl getHeader()
+	{
+		return header;
+	}
+
+	/**
+	 * Returns the stream positioned at the start of the body, limited to it
+	 */
+	public XInputStream rewind() throws IOException
+	{
+		this.bais.reset();
+		this.is.setReadLimit(this.data.length);
+		return this.is;
+	}
+}
@@ -0,0 +1,95 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.code.or.benchmark.jmh;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.google.code.or.binlog.impl.event.TableMapEvent;
+import com.google.code.or.binlog.impl.parser.WriteRowsEventV2Parser;
+import com.google.code.or.common.glossary.Row;
+import com.google.code.or.common.glossary.column.BitColumn;
+import com.google.code.or.io.XInputStream;
+
+/**
+ * Decodes a single row with AbstractRowEventParser.parseRow, i.e. the column decoding without the
+ * event framing.
+ * 
+ * @author Jingqi Xu
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ParseRowBenchmark
+{
+	//
+	@Param({ "NARROW_INT", "WIDE_VARCHAR", "DECIMAL_LEDGER", "TEMPORAL_FSP", "BLOB" })
+	public RowSchema schema;
+
+	//
+	private final RowParser parser = new RowParser();
+	private TableMapEvent tableMapEvent;
+	private BitColumn usedColumns;
+	private EventBody row;
+
+	/**
+	 * 
+	 */
+	@Setup
+	public void setup() throws IOException
+	{
+		final int columns = this.schema.getColumnTypes().length;
+		final byte[] used = new byte[(columns + 7) >> 3];
+		for (int i = 0; i < columns; i++)
+			used[i >> 3] |= 1 << (i & 7);
+		this.tableMapEvent = RowEvents.parseTableMap(this.schema);
+		this.usedColumns = BitColumn.valueOf(columns, used);
+		this.row = RowEvents.row(this.schema);
+	}
+
+	@Benchmark
+	public Row parseRow() throws IOException
+	{
+		return this.parser.parseRow(this.row.rewind(), this.tableMapEvent, this.usedColumns);
+	}
+
+	/**
+	 * 
+	 */
+	private static final class RowParser extends WriteRowsEventV2Parser
+	{
+
+		@Override
+		public Row parseRow(XInputStream is, TableMapEvent tme, BitColumn usedColumns) throws IOException
+		{
+			return super.parseRow(is, tme, usedColumns);
+		}
+	}
+}
@@ -0,0 +1,181 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.code.or.benchmark.jmh;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Map;
+
+import com.google.code.or.binlog.BinlogEventListener;
+import com.google.code.or.binlog.BinlogEventV4;
+import com.google.code.or.binlog.BinlogParserContext;
+import com.google.code.or.binlog.impl.event.TableMapEvent;
+import com.google.code.or.binlog.impl.parser.TableMapEventParser;
+import com.google.code.or.common.glossary.UnsignedLong;
+import com.google.code.or.common.glossary.column.StringColumn;
+import com.google.code.or.common.util.MySQLConstants;
+import com.google.code.or.io.util.XSerializer;
+
+/**
+ * Encodes the TableMapEvent and the v2 row events of a {@link RowSchema}, as written by MySQL 5.6+
+ * with binlog_row_image=FULL.
+ * 
+ * @author Jingqi Xu
+ */
+public final class RowEvents
+{
+	//
+	public static final long TABLE_ID = 108;
+
+	/**
+	 * 
+	 */
+	private RowEvents()
+	{
+	}
+
+	/**
+	 * 
+	 */
+	public static EventBody tableMap(RowSchema schema)
+	{
+		final int columns = schema.getColumnTypes().length;
+		final byte[] metadata = schema.getMetadataBytes();
+		final XSerializer s = new XSerializer(256);
+		s.writeLong(TABLE_ID, 6);
+		s.writeInt(1, 2);
+		s.writeInt(5, 1);
+		s.writeNullTerminatedString(StringColumn.valueOf("bench".getBytes()));
+		s.writeInt(schema.name().length(), 1);
+		s.writeNullTerminatedString(StringColumn.valueOf(schema.name().toLowerCase().getBytes()));
+		s.writeUnsignedLong(UnsignedLong.valueOf(columns));
+		s.writeBytes(schema.getColumnTypes());
+		s.writeUnsignedLong(UnsignedLong.valueOf(metadata.length));
+		s.writeBytes(metadata);
+		s.writeBytes(allColumns(columns));
+		return new EventBody(MySQLConstants.TABLE_MAP_EVENT, s.toByteArray());
+	}
+
+	/**
+	 * Returns the body of a WRITE/UPDATE/DELETE_ROWS_EVENT_V2 of the rows, the before and after
+	 * images of an update are different rows
+	 */
+	public static EventBody rows(int eventType, RowSchema schema, int rows)
+	{
+		//
+		final int columns = schema.getColumnTypes().length;
+		final XSerializer s = new XSerializer(1024);
+		s.writeLong(TABLE_ID, 6);
+		s.writeInt(1, 2); // STMT_END_F
+		s.writeInt(2, 2); // No extra info
+		s.writeUnsignedLong(UnsignedLong.valueOf(columns));
+		s.writeBytes(allColumns(columns));
+		if (eventType == MySQLConstants.UPDATE_ROWS_EVENT_V2)
+			s.writeBytes(allColumns(columns));
+
+		//
+		for (int i = 0; i < rows; i++)
+		{
+			schema.writeRow(s, i);
+			if (eventType == MySQLConstants.UPDATE_ROWS_EVENT_V2)
+				schema.writeRow(s, i + rows);
+		}
+		return new EventBody(eventType, s.toByteArray());
+	}
+
+	/**
+	 * Returns the body of a row as parsed by AbstractRowEventParser.parseRow
+	 */
+	public static EventBody row(RowSchema schema)
+	{
+		final XSerializer s = new XSerializer(1024);
+		schema.writeRow(s, 1);
+		return new EventBody(MySQLConstants.WRITE_ROWS_EVENT_V2, s.toByteArray());
+	}
+
+	/**
+	 * Parses the TableMapEvent of the schema with the parser of open replicator
+	 */
+	public static TableMapEvent parseTableMap(RowSchema schema) throws IOException
+	{
+		final Context context = new Context(null);
+		final EventBody body = tableMap(schema);
+		new TableMapEventParser().parse(body.rewind(), body.getHeader(), context);
+		return (TableMapEvent) context.getLastEvent();
+	}
+
+	private static byte[] allColumns(int columns)
+	{
+		final byte[] r = new byte[(columns + 7) >> 3];
+		for (int i = 0; i < columns; i++)
+			r[i >> 3] |= 1 << (i & 7);
+		return r;
+	}
+
+	/**
+	 * Maps TABLE_ID to the TableMapEvent and keeps the last event passed to the listener
+	 */
+	public static final class Context implements BinlogParserContext, BinlogEventListener
+	{
+		//
+		private final TableMapEvent tableMapEvent;
+		private BinlogEventV4 lastEvent;
+
+		public Context(TableMapEvent tableMapEvent)
+		{
+			this.tableMapEvent = tableMapEvent;
+		}
+
+		public BinlogEventV4 getLastEvent()
+		{
+			return lastEvent;
+		}
+
+		public void onEvents(BinlogEventV4 event)
+		{
+			this.lastEvent = event;
+		}
+
+		public String getBinlogFileName()
+		{
+			return "mysql-bin.000001";
+		}
+
+		public BinlogEventListener getEventListener()
+		{
+			return this;
+		}
+
+		public Long getCurrentPosition()
+		{
+			return null;
+		}
+
+		public Long getRestartPosition()
+		{
+			return null;
+		}
+
+		public Map<Long, TableMapEvent> getTableMapEvents()
+		{
+			return Collections.singletonMap(TABLE_ID, this.tableMapEvent);
+		}
+
+		public TableMapEvent getTableMapEvent(long tableId)
+		{
+			return tableId == TABLE_ID ? this.tableMapEvent : null;
+		}
+	}
+}
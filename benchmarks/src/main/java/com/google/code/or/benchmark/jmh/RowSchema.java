@@ -0,0 +1,274 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.code.or.benchmark.jmh;
+
+import static com.google.code.or.common.util.MySQLConstants.TYPE_BLOB;
+import static com.google.code.or.common.util.MySQLConstants.TYPE_DATETIME2;
+import static com.google.code.or.common.util.MySQLConstants.TYPE_LONG;
+import static com.google.code.or.common.util.MySQLConstants.TYPE_LONGLONG;
+import static com.google.code.or.common.util.MySQLConstants.TYPE_NEWDECIMAL;
+import static com.google.code.or.common.util.MySQLConstants.TYPE_SHORT;
+import static com.google.code.or.common.util.MySQLConstants.TYPE_TIMESTAMP2;
+import static com.google.code.or.common.util.MySQLConstants.TYPE_TINY;
+import static com.google.code.or.common.util.MySQLConstants.TYPE_VARCHAR;
+
+import java.util.Arrays;
+
+import com.google.code.or.binlog.impl.writer.ColumnEncoder;
+import com.google.code.or.io.util.XSerializer;
+
+/**
+ * The table schemas of the row decoding benchmarks, with deterministic row values of each. The
+ * values and the metadata are encoded by the ColumnEncoder of the open-replicator test jar, the one
+ * the binlog generator uses: the metadata of a column is the max length of a VARCHAR in bytes,
+ * precision | scale << 8 of a DECIMAL, the fsp of a DATETIME2/TIMESTAMP2 and the length of the
+ * length of a BLOB.
+ * 
+ * @author Jingqi Xu
+ */
+public enum RowSchema
+{
+	/**
+	 * id BIGINT, 3 INT, SMALLINT, TINYINT
+	 */
+	NARROW_INT(new int[] { TYPE_LONGLONG, TYPE_LONG, TYPE_LONG, TYPE_LONG, TYPE_SHORT, TYPE_TINY }, new int[6])
+	{
+		@Override
+		protected void writeValue(XSerializer s, int column, int seed)
+		{
+			switch (column)
+			{
+			case 0:
+				s.writeLong(seed, 8);
+				break;
+			case 4:
+				s.writeInt(seed & 0x7FFF, 2);
+				break;
+			case 5:
+				s.writeInt(seed & 0x7F, 1);
+				break;
+			default:
+				s.writeInt(seed * 31 + column, 4);
+			}
+		}
+	},
+
+	/**
+	 * id BIGINT, 24 VARCHAR(255) utf8mb4 of 8 to 64 characters, the last 4 are NULL in every other row
+	 */
+	WIDE_VARCHAR(repeat(TYPE_LONGLONG, 1, TYPE_VARCHAR, 24), repeat(0, 1, 1020, 24))
+	{
+		@Override
+		protected boolean isNull(int column, int seed)
+		{
+			return column > 20 && (seed & 1) == 1;
+		}
+
+		@Override
+		protected void writeValue(XSerializer s, int column, int seed)
+		{
+			if (column == 0)
+			{
+				s.writeLong(seed, 8);
+				return;
+			}
+			ColumnEncoder.writeString(s, ascii(8 + (seed + column * 7) % 57, seed + column), 2);
+		}
+	},
+
+	/**
+	 * id BIGINT, account BIGINT, amount/balance DECIMAL(19,4), fee DECIMAL(10,2), fx_rate
+	 * DECIMAL(18,10), tax DECIMAL(12,4), currency VARCHAR(3)
+	 */
+	DECIMAL_LEDGER(new int[] { TYPE_LONGLONG, TYPE_LONGLONG, TYPE_NEWDECIMAL, TYPE_NEWDECIMAL, TYPE_NEWDECIMAL,
+	        TYPE_NEWDECIMAL, TYPE_NEWDECIMAL, TYPE_VARCHAR }, new int[] { 0, 0, decimal(19, 4), decimal(19, 4),
+	        decimal(10, 2), decimal(18, 10), decimal(12, 4), 3 })
+	{
+		@Override
+		protected void writeValue(XSerializer s, int column, int seed)
+		{
+			switch (column)
+			{
+			case 0:
+				s.writeLong(seed, 8);
+				break;
+			case 1:
+				s.writeLong(100000 + seed % 5000, 8);
+				break;
+			case 2:
+				writeDecimal(s, 1234567L * (seed + 1) % 100000000000L, 19, 4);
+				break;
+			case 3:
+				writeDecimal(s, 98765432109876L + seed, 19, 4);
+				break;
+			case 4:
+				writeDecimal(s, 250 + seed % 1000, 10, 2);
+				break;
+			case 5:
+				writeDecimal(s, 11234567890L + seed, 18, 10);
+				break;
+			case 6:
+				writeDecimal(s, 1975 * (seed % 100 + 1), 12, 4);
+				break;
+			default:
+				s.writeInt(3, 1);
+				s.writeBytes("USD".getBytes());
+			}
+		}
+	},
+
+	/**
+	 * id BIGINT, DATETIME2(6), DATETIME2(3), DATETIME2(0), TIMESTAMP2(6), TIMESTAMP2(3), TIMESTAMP2(0)
+	 */
+	TEMPORAL_FSP(new int[] { TYPE_LONGLONG, TYPE_DATETIME2, TYPE_DATETIME2, TYPE_DATETIME2, TYPE_TIMESTAMP2,
+	        TYPE_TIMESTAMP2, TYPE_TIMESTAMP2 }, new int[] { 0, 6, 3, 0, 6, 3, 0 })
+	{
+		@Override
+		protected void writeValue(XSerializer s, int column, int seed)
+		{
+			if (column == 0)
+			{
+				s.writeLong(seed, 8);
+				return;
+			}
+			final int fsp = getMetadata()[column];
+			final int fraction = fsp == 6 ? (seed * 7919) % 1000000 : (fsp == 3 ? (seed * 7) % 1000 : 0);
+			if (getColumnTypes()[column] == (byte) TYPE_DATETIME2)
+				ColumnEncoder.writeDatetime2(s, 2024, 1 + seed % 12, 1 + seed % 28, seed % 24, seed % 60,
+				        (seed / 60) % 60, fraction, fsp);
+			else
+				ColumnEncoder.writeTimestamp2(s, 1700000000L + seed, fraction, fsp);
+		}
+	},
+
+	/**
+	 * id BIGINT, summary TEXT of 256 bytes, payload MEDIUMBLOB of 4KB, thumbnail BLOB of 1KB
+	 */
+	BLOB(new int[] { TYPE_LONGLONG, TYPE_BLOB, TYPE_BLOB, TYPE_BLOB }, new int[] { 0, 2, 3, 2 })
+	{
+		@Override
+		protected void writeValue(XSerializer s, int column, int seed)
+		{
+			if (column == 0)
+			{
+				s.writeLong(seed, 8);
+				return;
+			}
+			final byte[] value = ascii(column == 1 ? 256 : (column == 2 ? 4096 : 1024), seed + column);
+			ColumnEncoder.writeString(s, value, getMetadata()[column]);
+		}
+	};
+
+	//
+	private final byte[] columnTypes;
+	private final int[] metadata;
+
+	/**
+	 * 
+	 */
+	private RowSchema(int[] types, int[] metadata)
+	{
+		this.columnTypes = new byte[types.length];
+		for (int i = 0; i < types.length; i++)
+			this.columnTypes[i] = (byte) types[i];
+		this.metadata = metadata;
+	}
+
+	/**
+	 * 
+	 */
+	protected abstract void writeValue(XSerializer s, int column, int seed);
+
+	protected boolean isNull(int column, int seed)
+	{
+		return false;
+	}
+
+	/**
+	 * 
+	 */
+	public byte[] getColumnTypes()
+	{
+		return columnTypes;
+	}
+
+	public int[] getMetadata()
+	{
+		return metadata;
+	}
+
+	/**
+	 * Returns the metadata block of the TableMapEvent
+	 */
+	public byte[] getMetadataBytes()
+	{
+		final XSerializer s = new XSerializer(64);
+		for (int i = 0; i < this.columnTypes.length; i++)
+		{
+			ColumnEncoder.writeMetadata(s, this.columnTypes[i] & 0xFF, this.metadata[i]);
+		}
+		return s.toByteArray();
+	}
+
+	/**
+	 * Returns the null bitmap and the values of a row with all columns present
+	 */
+	public void writeRow(XSerializer s, int seed)
+	{
+		final boolean[] isNull = new boolean[this.columnTypes.length];
+		for (int i = 0; i < this.columnTypes.length; i++)
+		{
+			isNull[i] = isNull(i, seed);
+		}
+		ColumnEncoder.writeNulls(s, isNull);
+		for (int i = 0; i < this.columnTypes.length; i++)
+		{
+			if (!isNull[i])
+				writeValue(s, i, seed);
+		}
+	}
+
+	/**
+	 * 
+	 */
+	private static int[] repeat(int first, int firstCount, int next, int nextCount)
+	{
+		final int[] r = new int[firstCount + nextCount];
+		Arrays.fill(r, 0, firstCount, first);
+		Arrays.fill(r, firstCount, r.length, next);
+		return r;
+	}
+
+	private static int decimal(int precision, int scale)
+	{
+		return precision | (scale << 8);
+	}
+
+	private static byte[] ascii(int length, int seed)
+	{
+		final byte[] r = new byte[length];
+		for (int i = 0; i < length; i++)
+			r[i] = (byte) ('a' + (seed + i) % 26);
+		return r;
+	}
+
+	/**
+	 * Writes a non negative DECIMAL of the unscaled value
+	 */
+	private static void writeDecimal(XSerializer s, long unscaled, int precision, int scale)
+	{
+		ColumnEncoder.writeDecimal(s, String.format("%0" + precision + "d", unscaled).toCharArray(), scale, false);
+	}
+}
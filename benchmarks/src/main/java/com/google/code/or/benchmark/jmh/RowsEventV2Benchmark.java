@@ -0,0 +1,107 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.code.or.benchmark.jmh;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.google.code.or.binlog.BinlogEventParser;
+import com.google.code.or.binlog.BinlogEventV4;
+import com.google.code.or.binlog.impl.parser.DeleteRowsEventV2Parser;
+import com.google.code.or.binlog.impl.parser.UpdateRowsEventV2Parser;
+import com.google.code.or.binlog.impl.parser.WriteRowsEventV2Parser;
+import com.google.code.or.common.util.MySQLConstants;
+
+/**
+ * Parses whole WRITE/UPDATE/DELETE_ROWS_EVENT_V2 bodies, from the table id to the list of rows passed
+ * to the listener. An update event carries twice the rows, its before and after images.
+ * 
+ * @author Jingqi Xu
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RowsEventV2Benchmark
+{
+	//
+	@Param({ "NARROW_INT", "WIDE_VARCHAR", "DECIMAL_LEDGER", "TEMPORAL_FSP", "BLOB" })
+	public RowSchema schema;
+
+	@Param({ "1", "20" })
+	public int rowsPerEvent;
+
+	//
+	private final WriteRowsEventV2Parser writeParser = new WriteRowsEventV2Parser();
+	private final UpdateRowsEventV2Parser updateParser = new UpdateRowsEventV2Parser();
+	private final DeleteRowsEventV2Parser deleteParser = new DeleteRowsEventV2Parser();
+	private RowEvents.Context context;
+	private EventBody writeRows;
+	private EventBody updateRows;
+	private EventBody deleteRows;
+
+	/**
+	 * 
+	 */
+	@Setup
+	public void setup() throws IOException
+	{
+		this.context = new RowEvents.Context(RowEvents.parseTableMap(this.schema));
+		this.writeRows = RowEvents.rows(MySQLConstants.WRITE_ROWS_EVENT_V2, this.schema, this.rowsPerEvent);
+		this.updateRows = RowEvents.rows(MySQLConstants.UPDATE_ROWS_EVENT_V2, this.schema, this.rowsPerEvent);
+		this.deleteRows = RowEvents.rows(MySQLConstants.DELETE_ROWS_EVENT_V2, this.schema, this.rowsPerEvent);
+	}
+
+	@Benchmark
+	public BinlogEventV4 writeRowsEventV2() throws IOException
+	{
+		return parse(this.writeParser, this.writeRows);
+	}
+
+	@Benchmark
+	public BinlogEventV4 updateRowsEventV2() throws IOException
+	{
+		return parse(this.updateParser, this.updateRows);
+	}
+
+	@Benchmark
+	public BinlogEventV4 deleteRowsEventV2() throws IOException
+	{
+		return parse(this.deleteParser, this.deleteRows);
+	}
+
+	/**
+	 * 
+	 */
+	private BinlogEventV4 parse(BinlogEventParser parser, EventBody body) throws IOException
+	{
+		parser.parse(body.rewind(), body.getHeader(), this.context);
+		return this.context.getLastEvent();
+	}
+}
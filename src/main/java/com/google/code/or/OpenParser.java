@@ -14,17 +14,29 @@
  */
 package com.google.code.or;
 
+import java.io.File;
+import java.io.IOException;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 
+import org.apache.commons.lang.exception.NestableRuntimeException;
+
 import com.google.code.or.binlog.BinlogEventListener;
+import com.google.code.or.binlog.BinlogEventPublisher;
 import com.google.code.or.binlog.BinlogParser;
+import com.google.code.or.binlog.BinlogParserListener;
+import com.google.code.or.binlog.impl.AbstractBinlogParser;
+import com.google.code.or.binlog.impl.BinlogEventPublisherImpl;
 import com.google.code.or.binlog.impl.FileBasedBinlogParser;
+import com.google.code.or.binlog.impl.index.BinlogIndex;
+import com.google.code.or.binlog.impl.index.BinlogIndexer;
 import com.google.code.or.binlog.impl.parser.DeleteRowsEventParser;
 import com.google.code.or.binlog.impl.parser.DeleteRowsEventV2Parser;
 import com.google.code.or.binlog.impl.parser.FormatDescriptionEventParser;
+import com.google.code.or.binlog.impl.parser.GtidEventParser;
 import com.google.code.or.binlog.impl.parser.IncidentEventParser;
 import com.google.code.or.binlog.impl.parser.IntvarEventParser;
+import com.google.code.or.binlog.impl.parser.PreviousGtidsEventParser;
 import com.google.code.or.binlog.impl.parser.QueryEventParser;
 import com.google.code.or.binlog.impl.parser.RandEventParser;
 import com.google.code.or.binlog.impl.parser.RotateEventParser;
@@ -36,6 +48,10 @@ import com.google.code.or.binlog.impl.parser.UserVarEventParser;
 import com.google.code.or.binlog.impl.parser.WriteRowsEventParser;
 import com.google.code.or.binlog.impl.parser.WriteRowsEventV2Parser;
 import com.google.code.or.binlog.impl.parser.XidEventParser;
+import com.google.code.or.binlog.impl.snapshot.TableMapSnapshotStore;
+import com.google.code.or.common.util.MySQLConstants;
+import com.google.code.or.common.util.XThreadFactory;
+import com.google.code.or.metrics.MetricsRegistry;
 
 /**
  * @author Jingqi Xu
@@ -47,10 +63,17 @@ public class OpenParser
 	protected long startPosition;
 	protected String binlogFileName;
 	protected String binlogFilePath;
+	protected boolean virtualThreads = false;
+	protected String indexPath;
+	protected int indexInterval = 64 * 1024;
+	protected String snapshotPath;
+	protected int snapshotInterval = 16 * 1024 * 1024;
+	protected MetricsRegistry metricsRegistry;
 
 	//
 	protected BinlogParser binlogParser;
 	protected BinlogEventListener binlogEventListener;
+	protected BinlogEventPublisherImpl binlogEventPublisher;
 	protected final AtomicBoolean running = new AtomicBoolean(false);
 
 	/**
@@ -73,6 +96,13 @@ public class OpenParser
 		if (this.binlogParser == null)
 			this.binlogParser = getDefaultBinlogParser();
 		this.binlogParser.setEventListener(this.binlogEventListener);
+		if (this.binlogEventPublisher != null)
+		{
+			// The subscriber is completed once the parser stops at the end of the binlog file
+			this.binlogParser.addParserListener(new PublisherBinlogParserListener());
+			if (this.binlogParser instanceof AbstractBinlogParser)
+				((AbstractBinlogParser) this.binlogParser).setStopOnEndOfStream(true);
+		}
 		this.binlogParser.start();
 	}
 
@@ -85,9 +115,23 @@ public class OpenParser
 		}
 
 		//
+		if (this.binlogEventPublisher != null)
+			this.binlogEventPublisher.complete(); // Wakes up the parser thread waiting for demand
 		this.binlogParser.stop(timeout, unit);
 	}
 
+	public void stopQuietly(long timeout, TimeUnit unit)
+	{
+		try
+		{
+			stop(timeout, unit);
+		}
+		catch (Exception e)
+		{
+			// NOP
+		}
+	}
+
 	/**
 	 * 
 	 */
@@ -131,6 +175,95 @@ public class OpenParser
 		this.binlogFilePath = path;
 	}
 
+	/**
+	 * The directory of the timestamp indexes, which are built as the files are parsed if it is set
+	 */
+	public String getIndexPath()
+	{
+		return indexPath;
+	}
+
+	public void setIndexPath(String indexPath)
+	{
+		this.indexPath = indexPath;
+	}
+
+	public int getIndexInterval()
+	{
+		return indexInterval;
+	}
+
+	public void setIndexInterval(int indexInterval)
+	{
+		this.indexInterval = indexInterval;
+	}
+
+	/**
+	 * The directory of the table map snapshots, which are saved as the files are parsed and restored on
+	 * start if it is set
+	 */
+	public String getSnapshotPath()
+	{
+		return snapshotPath;
+	}
+
+	public void setSnapshotPath(String snapshotPath)
+	{
+		this.snapshotPath = snapshotPath;
+	}
+
+	public int getSnapshotInterval()
+	{
+		return snapshotInterval;
+	}
+
+	public void setSnapshotInterval(int snapshotInterval)
+	{
+		this.snapshotInterval = snapshotInterval;
+	}
+
+	/**
+	 * Sets the start position to the indexed position from which no event older than the timestamp
+	 * (in milliseconds) is skipped, and returns it.
+	 */
+	public long seek(long timestamp) throws IOException
+	{
+		//
+		if (this.indexPath == null)
+		{
+			throw new NestableRuntimeException("index path is not set");
+		}
+
+		//
+		final File file = BinlogIndexer.getIndexFile(new File(this.indexPath), this.binlogFileName);
+		final long position = BinlogIndex.load(file).seek(timestamp);
+		this.startPosition = position < 0 ? MySQLConstants.BINLOG_MAGIC.length : position;
+		return this.startPosition;
+	}
+
+	/**
+	 * Parser metrics, disabled if null
+	 */
+	public MetricsRegistry getMetricsRegistry()
+	{
+		return metricsRegistry;
+	}
+
+	public void setMetricsRegistry(MetricsRegistry metricsRegistry)
+	{
+		this.metricsRegistry = metricsRegistry;
+	}
+
+	public boolean isVirtualThreads()
+	{
+		return virtualThreads;
+	}
+
+	public void setVirtualThreads(boolean virtualThreads)
+	{
+		this.virtualThreads = virtualThreads;
+	}
+
 	/**
 	 * 
 	 */
@@ -154,6 +287,28 @@ public class OpenParser
 		this.binlogEventListener = listener;
 	}
 
+	/**
+	 * Returns a demand driven publisher which replaces the binlog event listener, must be called
+	 * before {@link #start()}. The subscriber is completed at the end of the binlog file. See
+	 * {@link com.google.code.or.binlog.impl.BinlogEventFlowPublisher} for a Flow.Publisher on java 9+.
+	 */
+	public BinlogEventPublisher getBinlogEventPublisher()
+	{
+		if (this.binlogEventPublisher == null)
+		{
+			this.binlogEventPublisher = new BinlogEventPublisherImpl()
+			{
+				@Override
+				protected void doCancel()
+				{
+					stopQuietly(0, TimeUnit.MILLISECONDS);
+				}
+			};
+			this.binlogEventListener = this.binlogEventPublisher;
+		}
+		return this.binlogEventPublisher;
+	}
+
 	/**
 	 * 
 	 */
@@ -163,6 +318,22 @@ public class OpenParser
 		final FileBasedBinlogParser r =
 		        new FileBasedBinlogParser(this.binlogFilePath, this.binlogFileName, this.startPosition);
 		r.setStopPosition(this.stopPosition);
+		final XThreadFactory tf = new XThreadFactory("binlog-parser", false);
+		tf.setVirtual(this.virtualThreads);
+		r.setThreadFactory(tf);
+		r.setMetricsRegistry(this.metricsRegistry);
+		if (this.indexPath != null)
+		{
+			final BinlogIndexer indexer = new BinlogIndexer(new File(this.indexPath));
+			indexer.setInterval(this.indexInterval);
+			r.setIndexer(indexer);
+		}
+		if (this.snapshotPath != null)
+		{
+			final TableMapSnapshotStore snapshotStore = new TableMapSnapshotStore(new File(this.snapshotPath));
+			snapshotStore.setInterval(this.snapshotInterval);
+			r.setSnapshotStore(snapshotStore);
+		}
 		//
 		r.registgerEventParser(new StopEventParser());
 		r.registgerEventParser(new RotateEventParser());
@@ -180,7 +351,28 @@ public class OpenParser
 		r.registgerEventParser(new UpdateRowsEventV2Parser());
 		r.registgerEventParser(new DeleteRowsEventV2Parser());
 		r.registgerEventParser(new FormatDescriptionEventParser());
+		r.registgerEventParser(new GtidEventParser());
+		r.registgerEventParser(new PreviousGtidsEventParser());
 		//
 		return r;
 	}
+
+	/**
+	 * 
+	 */
+	private class PublisherBinlogParserListener extends BinlogParserListener.Adapter
+	{
+
+		@Override
+		public void onStop(BinlogParser parser)
+		{
+			binlogEventPublisher.complete();
+		}
+
+		@Override
+		public void onException(BinlogParser parser, Exception exception)
+		{
+			binlogEventPublisher.error(exception);
+		}
+	}
 }
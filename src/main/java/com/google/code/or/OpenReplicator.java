@@ -14,25 +14,52 @@
  */
 package com.google.code.or;
 
+import java.io.File;
 import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
 import java.util.List;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantLock;
 
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.apache.commons.lang.exception.NestableRuntimeException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.google.code.or.binlog.BinlogEventListener;
+import com.google.code.or.binlog.BinlogEventPublisher;
+import com.google.code.or.binlog.BinlogEventV4;
+import com.google.code.or.binlog.BinlogEventV4Header;
 import com.google.code.or.binlog.BinlogParser;
 import com.google.code.or.binlog.BinlogParserContext;
 import com.google.code.or.binlog.BinlogParserListener;
+import com.google.code.or.binlog.BinlogRowEventFilter;
+import com.google.code.or.binlog.SlowListenerCallback;
+import com.google.code.or.binlog.impl.AbstractBinlogParser;
+import com.google.code.or.binlog.impl.BinlogEventPublisherImpl;
 import com.google.code.or.binlog.impl.ChecksumType;
+import com.google.code.or.binlog.impl.ListenerWatchdog;
+import com.google.code.or.binlog.impl.RelayLogParser;
 import com.google.code.or.binlog.impl.ReplicationBasedBinlogParser;
+import com.google.code.or.binlog.impl.SlowListenerAction;
+import com.google.code.or.binlog.impl.event.GtidEvent;
+import com.google.code.or.binlog.impl.event.QueryEvent;
+import com.google.code.or.binlog.impl.event.RotateEvent;
+import com.google.code.or.binlog.impl.event.XidEvent;
+import com.google.code.or.binlog.impl.index.BinlogIndex;
+import com.google.code.or.binlog.impl.index.BinlogIndexer;
+import com.google.code.or.binlog.impl.parser.AbstractRowEventParser;
 import com.google.code.or.binlog.impl.parser.DeleteRowsEventParser;
 import com.google.code.or.binlog.impl.parser.DeleteRowsEventV2Parser;
 import com.google.code.or.binlog.impl.parser.FormatDescriptionEventParser;
+import com.google.code.or.binlog.impl.parser.GtidEventParser;
 import com.google.code.or.binlog.impl.parser.IncidentEventParser;
 import com.google.code.or.binlog.impl.parser.IntvarEventParser;
+import com.google.code.or.binlog.impl.parser.PreviousGtidsEventParser;
 import com.google.code.or.binlog.impl.parser.QueryEventParser;
 import com.google.code.or.binlog.impl.parser.RandEventParser;
 import com.google.code.or.binlog.impl.parser.RotateEventParser;
@@ -44,19 +71,35 @@ import com.google.code.or.binlog.impl.parser.UserVarEventParser;
 import com.google.code.or.binlog.impl.parser.WriteRowsEventParser;
 import com.google.code.or.binlog.impl.parser.WriteRowsEventV2Parser;
 import com.google.code.or.binlog.impl.parser.XidEventParser;
+import com.google.code.or.binlog.impl.snapshot.TableMapSnapshotStore;
+import com.google.code.or.checkpoint.Checkpoint;
+import com.google.code.or.checkpoint.CheckpointStore;
+import com.google.code.or.common.glossary.GtidSet;
 import com.google.code.or.common.glossary.column.StringColumn;
 import com.google.code.or.common.util.BackoffTimer;
 import com.google.code.or.common.util.BackoffTimer.BackoffTimerConfig;
+import com.google.code.or.common.util.MySQLConstants;
 import com.google.code.or.common.util.QueryUtil;
+import com.google.code.or.common.util.XThreadFactory;
+import com.google.code.or.io.XInputStream;
 import com.google.code.or.io.impl.SocketFactoryImpl;
+import com.google.code.or.jfr.FlightRecorderSupport;
+import com.google.code.or.jfr.ReconnectEvent;
+import com.google.code.or.management.impl.BinlogParserMXBeanImpl;
+import com.google.code.or.management.impl.OpenReplicatorMXBeanImpl;
+import com.google.code.or.management.impl.TransportMXBeanImpl;
+import com.google.code.or.metrics.MetricsRegistry;
 import com.google.code.or.net.Packet;
 import com.google.code.or.net.Transport;
 import com.google.code.or.net.TransportException;
 import com.google.code.or.net.impl.AuthenticatorImpl;
 import com.google.code.or.net.impl.TransportImpl;
+import com.google.code.or.net.impl.packet.EOFPacket;
 import com.google.code.or.net.impl.packet.ErrorPacket;
-import com.google.code.or.net.impl.packet.ResultSetRowPacket;
+import com.google.code.or.net.impl.packet.command.ComBinlogDumpGtidPacket;
 import com.google.code.or.net.impl.packet.command.ComBinlogDumpPacket;
+import com.google.code.or.relay.RelayLog;
+import com.google.code.or.relay.RelayLogWriter;
 
 /**
  * @author Jingqi Xu
@@ -70,19 +113,46 @@ public class OpenReplicator
 	protected String user;
 	protected String password;
 	protected int serverId = 6789;
+	protected int locatorServerId = 0;
 	protected String binlogFileName;
 	protected long binlogPosition = 4;
 	protected String encoding = "utf-8";
 	protected int level1BufferSize = 1024 * 1024;
 	protected int level2BufferSize = 8 * 1024 * 1024;
 	protected int socketReceiveBufferSize = 512 * 1024;
+	protected boolean virtualThreads = false;
+	protected String indexPath;
+	protected int indexInterval = 64 * 1024;
+	protected String snapshotPath;
+	protected int snapshotInterval = 16 * 1024 * 1024;
+	protected long startTimestamp;
+	protected String relayPath;
+	protected long relaySegmentSize = 64L * 1024 * 1024;
+	protected long relayRetentionSize = 1024L * 1024 * 1024;
+	protected long relayRetentionMillis = 0;
+	protected MetricsRegistry metricsRegistry;
+	protected long heartbeatPeriod = 0;
+	protected String jmxName;
+	protected volatile boolean paused;
+	protected long slowListenerThreshold = 0;
+	protected SlowListenerAction slowListenerAction = SlowListenerAction.LOG;
+	protected SlowListenerCallback slowListenerCallback;
 
 	//
 	protected Transport transport;
 	protected BinlogParser binlogParser;
 	protected BinlogEventListener binlogEventListener;
+	protected BinlogRowEventFilter rowEventFilter;
+	protected BinlogEventPublisherImpl binlogEventPublisher;
+	protected CheckpointStore checkpointStore;
+	protected GtidSet gtidSet;
+	protected final ReentrantLock gtidSetLock = new ReentrantLock(false);
+	protected RelayLog relayLog;
+	protected RelayLogWriter relayLogWriter;
+	protected ListenerWatchdog listenerWatchdog;
 	protected final AtomicBoolean running = new AtomicBoolean(false);
 	protected BackoffTimer retryCounter = new BackoffTimer(new BackoffTimerConfig(1, 60000, 2, 5, 20), "parserRetry");
+	private GtidListener gtidListener;
 
 	private class ORBinlogParserListener implements BinlogParserListener
 	{
@@ -100,14 +170,131 @@ public class OpenReplicator
 
 		public void onException(BinlogParser parser, Exception exception)
 		{
+			if (!isRunning())
+			{
+				return;
+			}
 			LOGGER.error("Exception occured in binlogParser", exception);
 			LOGGER.info("Retrying the prassing from : " + parser.getContext().getBinlogFileName() + ":"
-			        + parser.getContext().getCurrentPosition());
+			        + parser.getContext().getRestartPosition());
 			retry(parser.getContext());
 		}
 
 	}
 
+	private class CheckpointListener implements BinlogEventListener
+	{
+		//
+		private final BinlogEventListener listener;
+
+		public CheckpointListener(BinlogEventListener listener)
+		{
+			this.listener = listener;
+		}
+
+		/**
+		 * The event is only checkpointed once the listener has returned normally. The parser fails on
+		 * the listener's exception and is retried from the restart position, so that the event is
+		 * delivered again.
+		 */
+		public void onEvents(BinlogEventV4 event)
+		{
+			this.listener.onEvents(event);
+			checkpoint(event);
+		}
+
+		private void checkpoint(BinlogEventV4 event)
+		{
+			//
+			final BinlogEventV4Header header = event.getHeader();
+			final BinlogParserContext context = binlogParser.getContext();
+			final long position;
+			if (event instanceof RotateEvent)
+				position = ((RotateEvent) event).getBinlogPosition();
+			else if (header.getNextPosition() > 0)
+				position = header.getNextPosition();
+			else
+				return;
+
+			//
+			try
+			{
+				checkpointStore.save(context.getBinlogFileName(), position, context.getRestartPosition(),
+				        header.getTimestamp());
+			}
+			catch (Exception e)
+			{
+				LOGGER.error("failed to save checkpoint, binlog: " + context.getBinlogFileName() + ":" + position, e);
+			}
+		}
+	}
+
+	/**
+	 * Shared by the retried parsers: the gtid event of a transaction interrupted by a reconnect is
+	 * sent again, but is not delivered again as it is before the context's delivered position.
+	 */
+	private class GtidListener implements BinlogEventListener
+	{
+		//
+		private final BinlogEventListener listener;
+		private GtidEvent pending;
+		private boolean inTransaction;
+
+		public GtidListener(BinlogEventListener listener)
+		{
+			this.listener = listener;
+		}
+
+		public void onEvents(BinlogEventV4 event)
+		{
+			//
+			this.listener.onEvents(event);
+
+			//
+			if (event instanceof GtidEvent)
+			{
+				this.pending = (GtidEvent) event;
+				this.inTransaction = false;
+			}
+			else if (this.pending == null)
+			{
+				return;
+			}
+			else if (event instanceof XidEvent)
+			{
+				executed();
+			}
+			else if (event instanceof QueryEvent)
+			{
+				// A ddl is a transaction of a single query event
+				if ("BEGIN".equalsIgnoreCase(((QueryEvent) event).getSql().toString()))
+					this.inTransaction = true;
+				else if (!this.inTransaction || isEndOfTransaction(((QueryEvent) event).getSql().toString()))
+					executed();
+			}
+		}
+
+		private void executed()
+		{
+			gtidSetLock.lock();
+			try
+			{
+				gtidSet.add(this.pending.getSourceId(), this.pending.getGno());
+			}
+			finally
+			{
+				gtidSetLock.unlock();
+			}
+			this.pending = null;
+			this.inTransaction = false;
+		}
+
+		private boolean isEndOfTransaction(String sql)
+		{
+			return "COMMIT".equalsIgnoreCase(sql) || "ROLLBACK".equalsIgnoreCase(sql);
+		}
+	}
+
 	/**
 	 * 
 	 */
@@ -123,6 +310,41 @@ public class OpenReplicator
 		{
 			return;
 		}
+		registerMXBeans();
+
+		//
+		Checkpoint checkpoint = null;
+		if (this.checkpointStore != null)
+		{
+			checkpoint = this.checkpointStore.load();
+			if (checkpoint != null && checkpoint.getBinlogFileName() != null)
+			{
+				LOGGER.info("resuming from checkpoint: {}", checkpoint);
+				this.binlogFileName = checkpoint.getBinlogFileName();
+				this.binlogPosition = checkpoint.getRestartPosition();
+			}
+			else
+			{
+				checkpoint = null;
+			}
+		}
+		this.gtidListener = null;
+		if (checkpoint == null && this.gtidSet == null && this.startTimestamp > 0)
+		{
+			if (!locate(this.startTimestamp))
+			{
+				throw new NestableRuntimeException("failed to locate the start timestamp: " + this.startTimestamp);
+			}
+			LOGGER.info("located the start timestamp: {}, binlog: {}:{}", new Object[] { this.startTimestamp,
+			        this.binlogFileName, this.binlogPosition });
+		}
+
+		//
+		if (this.relayPath != null)
+		{
+			startRelay(checkpoint);
+			return;
+		}
 
 		//
 		if (this.transport == null)
@@ -131,12 +353,146 @@ public class OpenReplicator
 
 		if (this.binlogParser == null)
 			this.binlogParser = getDefaultBinlogParser();
-		this.binlogParser.setEventListener(this.binlogEventListener);
+		this.binlogParser.setEventListener(getParserEventListener());
 		this.binlogParser.setChecksumLength(fetchBinlogChecksum(this.transport).getLength());
 		this.binlogParser.addParserListener(new ORBinlogParserListener());
+		if (checkpoint != null && this.binlogParser instanceof AbstractBinlogParser)
+			((AbstractBinlogParser) this.binlogParser).setDeliveredPosition(checkpoint.getBinlogPosition());
 
-		dumpBinLog(this.binlogFileName, this.binlogPosition);
-		this.binlogParser.start();
+		if (this.gtidSet != null)
+			dumpBinLogGtid();
+		else
+			dumpBinLog(this.binlogFileName, this.binlogPosition);
+		startBinlogParser();
+	}
+
+	/**
+	 * Spools the binlog dump into the relay log on a writer thread, while the parser reads the relay
+	 * log from the segment of binlogFileName/binlogPosition at its own pace. The dump resumes from the
+	 * end of the relay log if it is not empty. Without an event listener the relay log is only spooled,
+	 * e.g. to be served by a {@link com.google.code.or.relay.RelayServer}.
+	 */
+	protected void startRelay(Checkpoint checkpoint) throws Exception
+	{
+		//
+		if (this.transport == null)
+			this.transport = getDefaultTransport();
+		this.transport.connect(this.host, this.port);
+		this.relayLog = getDefaultRelayLog();
+		this.relayLog.setChecksumLength(fetchBinlogChecksum(this.transport).getLength());
+		this.relayLog.open();
+		if (this.relayLog.getMasterFileName() == null && this.binlogFileName != null)
+			this.relayLog.setMasterPosition(this.binlogFileName, this.binlogPosition);
+		startRelayLogWriter();
+		if (this.binlogEventListener == null)
+		{
+			return;
+		}
+
+		//
+		this.binlogParser = getDefaultRelayLogParser(this.relayLog.findSegment(this.binlogFileName, this.binlogPosition));
+		this.binlogParser.setEventListener(getParserEventListener());
+		this.binlogParser.addParserListener(new ORBinlogParserListener());
+		if (checkpoint != null)
+			((AbstractBinlogParser) this.binlogParser).setDeliveredPosition(checkpoint.getBinlogPosition());
+		startBinlogParser();
+	}
+
+	protected void startRelayLogWriter() throws Exception
+	{
+		//
+		if (this.relayLog.getMasterFileName() != null)
+			dumpBinLog(this.relayLog.getMasterFileName(), this.relayLog.getMasterPosition());
+		else if (this.gtidSet != null)
+			dumpBinLogGtid();
+		else
+			throw new NestableRuntimeException("neither the binlog file name nor the gtid set is specified");
+
+		//
+		this.relayLogWriter = new RelayLogWriter(this.transport, this.relayLog)
+		{
+			@Override
+			protected void onException(Exception exception)
+			{
+				LOGGER.error("Exception occured in relay log writer", exception);
+				retryRelayLogWriter();
+			}
+		};
+		newThreadFactory("relay-log-writer", false).newThread(this.relayLogWriter).start();
+	}
+
+	/**
+	 * Reconnects the relay log writer from the end of the relay log, on the writer's thread. The relay
+	 * log's master position is the one of the last appended event, so the dump resumes right after it.
+	 */
+	protected void retryRelayLogWriter()
+	{
+		final ReconnectEvent jfr = FlightRecorderSupport.isAvailable()
+		        ? ReconnectEvent.begin(this.relayLog.getMasterFileName(), this.relayLog.getMasterPosition()) : null;
+		try
+		{
+			try
+			{
+				this.transport.disconnect();
+			}
+			catch (Exception e)
+			{
+				// NOP
+			}
+			if (retryCounter.backoff() < 0)
+				throw new Exception("No success with retry");
+			retryCounter.sleep();
+			if (!isRunning())
+				return;
+
+			//
+			this.transport = getDefaultTransport();
+			this.transport.connect(this.host, this.port);
+			this.relayLog.setChecksumLength(fetchBinlogChecksum(this.transport).getLength());
+			startRelayLogWriter();
+			if (jfr != null)
+				jfr.end(retryCounter.getRetryCount(), retryCounter.getCurrentSleep(), null);
+		}
+		catch (Exception ex)
+		{
+			if (jfr != null)
+				jfr.end(retryCounter.getRetryCount(), retryCounter.getCurrentSleep(), ex);
+			LOGGER.error("Failed to retry", ex);
+			if (this.binlogEventPublisher != null)
+				this.binlogEventPublisher.error(ex);
+			stopQuietly(0, TimeUnit.MILLISECONDS);
+		}
+	}
+
+	/**
+	 * Restarts the parser from the relay log segment of the context's restart position.
+	 */
+	protected void retryRelayLogParser(BinlogParserContext context)
+	{
+		try
+		{
+			this.binlogParser.setParserListeners(null);
+			this.binlogParser.stop(0, TimeUnit.MILLISECONDS);
+			flushCheckpointQuietly();
+			if (retryCounter.backoff() < 0)
+				throw new Exception("No success with retry");
+			retryCounter.sleep();
+
+			//
+			final Long segment = this.relayLog.findSegment(context.getBinlogFileName(), context.getRestartPosition());
+			this.binlogParser = getDefaultRelayLogParser(segment);
+			this.binlogParser.setContext(context);
+			this.binlogParser.setEventListener(getParserEventListener());
+			this.binlogParser.addParserListener(new ORBinlogParserListener());
+			startBinlogParser();
+		}
+		catch (Exception ex)
+		{
+			LOGGER.error("Failed to retry", ex);
+			if (this.binlogEventPublisher != null)
+				this.binlogEventPublisher.error(ex);
+			stopQuietly(0, TimeUnit.MILLISECONDS);
+		}
 	}
 
 	protected void dumpBinLog(String binlogFileName, long binlogPosition) throws Exception
@@ -160,20 +516,28 @@ public class OpenReplicator
 
 	}
 
-	public ChecksumType fetchBinlogChecksum(Transport transport) throws IOException
+	/**
+	 * The artificial rotate event sent first is left to the parser, so that it learns the binlog file
+	 * the master has chosen.
+	 */
+	protected void dumpBinLogGtid() throws Exception
 	{
-		// #https://dev.mysql.com/worklog/task/?id=2540
-		List<ResultSetRowPacket> resultSet = QueryUtil.query("show global variables like 'binlog_checksum'", transport);
-		ChecksumType checksumType =
-		        resultSet.size() > 0 ? ChecksumType.valueOf(resultSet.get(0).getColumns().get(1).toString()
-		                .toUpperCase()) : ChecksumType.NONE;
+		final ComBinlogDumpGtidPacket command = new ComBinlogDumpGtidPacket();
+		command.setServerId(this.serverId);
+		command.setGtidSet(getGtidSet());
+		this.transport.getOutputStream().writePacket(command);
+		this.transport.getOutputStream().flush();
+	}
 
-		// checksum handshake
-		if (checksumType != ChecksumType.NONE)
+	public ChecksumType fetchBinlogChecksum(Transport transport) throws IOException
+	{
+		// Like the checksum, the heartbeat period is a session variable of the dump
+		if (this.heartbeatPeriod > 0)
 		{
-			QueryUtil.query("set @master_binlog_checksum= @@global.binlog_checksum", transport);
+			QueryUtil.query("set @master_heartbeat_period= " + TimeUnit.MILLISECONDS.toNanos(this.heartbeatPeriod),
+			        transport);
 		}
-		return checksumType;
+		return QueryUtil.fetchBinlogChecksum(transport);
 	}
 
 	public void stop(long timeout, TimeUnit unit) throws Exception
@@ -185,8 +549,22 @@ public class OpenReplicator
 		}
 
 		//
+		if (this.relayLogWriter != null)
+			this.relayLogWriter.stop();
+		if (this.listenerWatchdog != null)
+		{
+			this.listenerWatchdog.stop();
+			this.listenerWatchdog = null;
+		}
+		if (this.binlogEventPublisher != null)
+			this.binlogEventPublisher.complete(); // Wakes up the parser thread waiting for demand
 		this.transport.disconnect();
-		this.binlogParser.stop(timeout, unit);
+		if (this.binlogParser != null)
+			this.binlogParser.stop(timeout, unit);
+		if (this.relayLog != null)
+			this.relayLog.close();
+		flushCheckpointQuietly();
+		unregisterMXBeans();
 	}
 
 	public void stopQuietly(long timeout, TimeUnit unit)
@@ -203,9 +581,20 @@ public class OpenReplicator
 
 	public void retry(BinlogParserContext context)
 	{
+		//
+		if (this.relayLog != null)
+		{
+			retryRelayLogParser(context);
+			return;
+		}
+
+		//
+		final ReconnectEvent jfr = FlightRecorderSupport.isAvailable()
+		        ? ReconnectEvent.begin(context.getBinlogFileName(), context.getRestartPosition()) : null;
 		try
 		{
-			stopQuietly(0, TimeUnit.MILLISECONDS);
+			disconnectQuietly();
+			flushCheckpointQuietly();
 			if (retryCounter.backoff() < 0)
 				throw new Exception("No success with retry");
 			retryCounter.sleep();
@@ -215,20 +604,177 @@ public class OpenReplicator
 			this.binlogParser = getDefaultBinlogParser();
 			/** setting the current context */
 			this.binlogParser.setContext(context);
-			this.binlogParser.setEventListener(this.binlogEventListener);
+			this.binlogParser.setEventListener(getParserEventListener());
 			this.binlogParser.setChecksumLength(fetchBinlogChecksum(this.transport).getLength());
 			this.binlogParser.addParserListener(new ORBinlogParserListener());
 
-			dumpBinLog(context.getBinlogFileName(), context.getCurrentPosition());
-			this.binlogParser.start();
+			if (this.gtidSet != null)
+				dumpBinLogGtid();
+			else
+				dumpBinLog(context.getBinlogFileName(), context.getRestartPosition());
+			startBinlogParser();
+			if (jfr != null)
+				jfr.end(retryCounter.getRetryCount(), retryCounter.getCurrentSleep(), null);
 		}
 		catch (Exception ex)
 		{
+			if (jfr != null)
+				jfr.end(retryCounter.getRetryCount(), retryCounter.getCurrentSleep(), ex);
 			LOGGER.error("Failed to retry", ex);
+			if (this.binlogEventPublisher != null)
+				this.binlogEventPublisher.error(ex);
+			stopQuietly(0, TimeUnit.MILLISECONDS);
 		}
 
 	}
 
+	protected BinlogEventListener getParserEventListener()
+	{
+		BinlogEventListener r = this.binlogEventListener;
+		if (this.gtidSet != null)
+		{
+			if (this.gtidListener == null)
+				this.gtidListener = new GtidListener(this.binlogEventListener);
+			r = this.gtidListener;
+		}
+		if (this.checkpointStore != null)
+			r = new CheckpointListener(r);
+		return r;
+	}
+
+	protected void flushCheckpointQuietly()
+	{
+		try
+		{
+			if (this.checkpointStore != null)
+				this.checkpointStore.flush();
+		}
+		catch (Exception e)
+		{
+			LOGGER.error("failed to flush checkpoint", e);
+		}
+	}
+
+	/**
+	 * Starts the parser, watched by the listener watchdog if slowListenerThreshold is set.
+	 */
+	protected void startBinlogParser() throws Exception
+	{
+		//
+		if (this.slowListenerThreshold > 0 && this.binlogParser instanceof AbstractBinlogParser)
+		{
+			if (this.listenerWatchdog == null)
+			{
+				this.listenerWatchdog = new ListenerWatchdog();
+				this.listenerWatchdog.setThreshold(this.slowListenerThreshold);
+				this.listenerWatchdog.setInterval(Math.max(10, Math.min(1000, this.slowListenerThreshold / 10)));
+				this.listenerWatchdog.setCallback(new SlowListenerCallback()
+				{
+					public void onSlowListener(BinlogParser parser, long elapsed, StackTraceElement[] stackTrace)
+					{
+						OpenReplicator.this.onSlowListener(parser, elapsed, stackTrace);
+					}
+				});
+				this.listenerWatchdog.start();
+			}
+			this.listenerWatchdog.setParser((AbstractBinlogParser) this.binlogParser);
+		}
+
+		//
+		this.binlogParser.start();
+	}
+
+	protected void onSlowListener(BinlogParser parser, long elapsed, StackTraceElement[] stackTrace)
+	{
+		//
+		if (this.slowListenerCallback != null)
+		{
+			this.slowListenerCallback.onSlowListener(parser, elapsed, stackTrace);
+		}
+
+		//
+		if (this.slowListenerAction == SlowListenerAction.PAUSE)
+		{
+			LOGGER.warn("pausing the binlog parser because of the slow listener");
+			pause();
+		}
+	}
+
+	/**
+	 * Registers the OpenReplicator, BinlogParser and Transport MXBeans under com.google.code.or with
+	 * the jmxName, they follow the current parser and transport across reconnections.
+	 */
+	protected void registerMXBeans()
+	{
+		if (this.jmxName == null)
+		{
+			return;
+		}
+		try
+		{
+			final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			server.registerMBean(new OpenReplicatorMXBeanImpl(this), getObjectName("OpenReplicator"));
+			server.registerMBean(new BinlogParserMXBeanImpl(this), getObjectName("BinlogParser"));
+			server.registerMBean(new TransportMXBeanImpl(this), getObjectName("Transport"));
+		}
+		catch (Exception e)
+		{
+			LOGGER.warn("failed to register MXBeans: " + this.jmxName, e);
+		}
+	}
+
+	protected void unregisterMXBeans()
+	{
+		if (this.jmxName == null)
+		{
+			return;
+		}
+		final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		for (String type : new String[] { "OpenReplicator", "BinlogParser", "Transport" })
+		{
+			try
+			{
+				final ObjectName name = getObjectName(type);
+				if (server.isRegistered(name))
+					server.unregisterMBean(name);
+			}
+			catch (Exception e)
+			{
+				LOGGER.warn("failed to unregister MXBean: " + type, e);
+			}
+		}
+	}
+
+	protected ObjectName getObjectName(String type) throws Exception
+	{
+		return new ObjectName("com.google.code.or:type=" + type + ",name=" + ObjectName.quote(this.jmxName));
+	}
+
+	/**
+	 * Tears down the broken connection and parser while keeping the replicator running.
+	 */
+	protected void disconnectQuietly()
+	{
+		// The discarded parser must not stop the replicator through ORBinlogParserListener
+		this.binlogParser.setParserListeners(null);
+		try
+		{
+			this.transport.disconnect();
+		}
+		catch (Exception e)
+		{
+			// NOP
+		}
+		try
+		{
+			this.binlogParser.stop(0, TimeUnit.MILLISECONDS);
+		}
+		catch (Exception e)
+		{
+			// NOP
+		}
+	}
+
 	/**
 	 * 
 	 */
@@ -292,6 +838,22 @@ public class OpenReplicator
 		this.serverId = serverId;
 	}
 
+	/**
+	 * The server id of the short-lived dump connections of {@link #locate(long)}, it must differ
+	 * from the server id: the master kills the dump thread of a replica which connects again with
+	 * the same server id, i.e. the running replicator's. 0 by default, as mysqlbinlog does for its
+	 * non blocking dumps.
+	 */
+	public int getLocatorServerId()
+	{
+		return locatorServerId;
+	}
+
+	public void setLocatorServerId(int locatorServerId)
+	{
+		this.locatorServerId = locatorServerId;
+	}
+
 	public long getBinlogPosition()
 	{
 		return binlogPosition;
@@ -342,6 +904,486 @@ public class OpenReplicator
 		this.socketReceiveBufferSize = socketReceiveBufferSize;
 	}
 
+	/**
+	 * Runs the parser and the transport's pump thread on virtual threads (java 21+), which makes
+	 * hosting hundreds of replicators in one jvm cheap. Falls back to platform threads otherwise. The
+	 * locks taken on these threads are ReentrantLocks, a monitor would pin the carrier thread.
+	 */
+	public boolean isVirtualThreads()
+	{
+		return virtualThreads;
+	}
+
+	public void setVirtualThreads(boolean virtualThreads)
+	{
+		this.virtualThreads = virtualThreads;
+	}
+
+	/**
+	 * The directory of the timestamp indexes of the master's binlog files, which are built as the
+	 * events are received if it is set
+	 */
+	public String getIndexPath()
+	{
+		return indexPath;
+	}
+
+	public void setIndexPath(String indexPath)
+	{
+		this.indexPath = indexPath;
+	}
+
+	public int getIndexInterval()
+	{
+		return indexInterval;
+	}
+
+	public void setIndexInterval(int indexInterval)
+	{
+		this.indexInterval = indexInterval;
+	}
+
+	/**
+	 * The directory of the table map snapshots, which are saved as the events are received and restored on
+	 * start if it is set
+	 */
+	public String getSnapshotPath()
+	{
+		return snapshotPath;
+	}
+
+	public void setSnapshotPath(String snapshotPath)
+	{
+		this.snapshotPath = snapshotPath;
+	}
+
+	public int getSnapshotInterval()
+	{
+		return snapshotInterval;
+	}
+
+	public void setSnapshotInterval(int snapshotInterval)
+	{
+		this.snapshotInterval = snapshotInterval;
+	}
+
+	/**
+	 * If it is set (in milliseconds) and there is no checkpoint, {@link #start()} locates the binlog
+	 * position of the timestamp on the master, see {@link #locate(long)}
+	 */
+	public long getStartTimestamp()
+	{
+		return startTimestamp;
+	}
+
+	public void setStartTimestamp(long startTimestamp)
+	{
+		this.startTimestamp = startTimestamp;
+	}
+
+	/**
+	 * The directory of the relay log, the events are spooled into it as fast as the master sends them
+	 * and parsed from it independently if it is set, see {@link RelayLog}
+	 */
+	public String getRelayPath()
+	{
+		return relayPath;
+	}
+
+	public void setRelayPath(String relayPath)
+	{
+		this.relayPath = relayPath;
+	}
+
+	public long getRelaySegmentSize()
+	{
+		return relaySegmentSize;
+	}
+
+	public void setRelaySegmentSize(long relaySegmentSize)
+	{
+		this.relaySegmentSize = relaySegmentSize;
+	}
+
+	public long getRelayRetentionSize()
+	{
+		return relayRetentionSize;
+	}
+
+	public void setRelayRetentionSize(long relayRetentionSize)
+	{
+		this.relayRetentionSize = relayRetentionSize;
+	}
+
+	public long getRelayRetentionMillis()
+	{
+		return relayRetentionMillis;
+	}
+
+	public void setRelayRetentionMillis(long relayRetentionMillis)
+	{
+		this.relayRetentionMillis = relayRetentionMillis;
+	}
+
+	/**
+	 * Parser and transport metrics, disabled if null. See {@link AbstractBinlogParser#setMetricsRegistry}
+	 */
+	public MetricsRegistry getMetricsRegistry()
+	{
+		return metricsRegistry;
+	}
+
+	public void setMetricsRegistry(MetricsRegistry metricsRegistry)
+	{
+		this.metricsRegistry = metricsRegistry;
+	}
+
+	/**
+	 * The master sends a heartbeat after this many milliseconds without events, which corrects the
+	 * replication lag of the metrics while the master is idle. 0 to not ask for heartbeats.
+	 */
+	public long getHeartbeatPeriod()
+	{
+		return heartbeatPeriod;
+	}
+
+	public void setHeartbeatPeriod(long heartbeatPeriod)
+	{
+		this.heartbeatPeriod = heartbeatPeriod;
+	}
+
+	/**
+	 * Registers the MXBeans of this replicator on start if not null, see {@link #registerMXBeans()}
+	 */
+	public String getJmxName()
+	{
+		return jmxName;
+	}
+
+	public void setJmxName(String jmxName)
+	{
+		this.jmxName = jmxName;
+	}
+
+	/**
+	 * Pauses the parser before the next event, also the parsers created on reconnection
+	 */
+	public boolean isPaused()
+	{
+		return this.paused;
+	}
+
+	public void pause()
+	{
+		this.paused = true;
+		if (this.binlogParser instanceof AbstractBinlogParser)
+			((AbstractBinlogParser) this.binlogParser).pause();
+	}
+
+	public void resume()
+	{
+		this.paused = false;
+		if (this.binlogParser instanceof AbstractBinlogParser)
+			((AbstractBinlogParser) this.binlogParser).resume();
+	}
+
+	/**
+	 * The milliseconds a call of the event listener may take before the slowListenerAction is taken,
+	 * 0 to not watch the listener. See {@link ListenerWatchdog}
+	 */
+	public long getSlowListenerThreshold()
+	{
+		return slowListenerThreshold;
+	}
+
+	public void setSlowListenerThreshold(long slowListenerThreshold)
+	{
+		this.slowListenerThreshold = slowListenerThreshold;
+	}
+
+	public SlowListenerAction getSlowListenerAction()
+	{
+		return slowListenerAction;
+	}
+
+	public void setSlowListenerAction(SlowListenerAction slowListenerAction)
+	{
+		this.slowListenerAction = slowListenerAction;
+	}
+
+	public SlowListenerCallback getSlowListenerCallback()
+	{
+		return slowListenerCallback;
+	}
+
+	public void setSlowListenerCallback(SlowListenerCallback slowListenerCallback)
+	{
+		this.slowListenerCallback = slowListenerCallback;
+	}
+
+	public BackoffTimer getRetryCounter()
+	{
+		return retryCounter;
+	}
+
+	public RelayLog getRelayLog()
+	{
+		return relayLog;
+	}
+
+	/**
+	 * Sets binlogFileName/binlogPosition to the latest indexed position from which no event older
+	 * than the timestamp (in milliseconds) is skipped. The binlog file is the last one whose first
+	 * indexed event is at or before the timestamp. Returns false if there is no such file.
+	 */
+	public boolean seek(long timestamp) throws IOException
+	{
+		//
+		if (this.indexPath == null)
+		{
+			throw new NestableRuntimeException("index path is not set");
+		}
+
+		//
+		final String[] names = new File(this.indexPath).list();
+		if (names == null)
+		{
+			return false;
+		}
+		Arrays.sort(names);
+		for (int i = names.length - 1; i >= 0; i--)
+		{
+			if (!names[i].endsWith(BinlogIndexer.SUFFIX))
+			{
+				continue;
+			}
+			final BinlogIndex index = BinlogIndex.load(new File(this.indexPath, names[i]));
+			if (index.size() > 0 && index.getTimestamp(0) <= timestamp)
+			{
+				final long position = index.seek(timestamp);
+				this.binlogFileName = names[i].substring(0, names[i].length() - BinlogIndexer.SUFFIX.length());
+				this.binlogPosition = position < 0 ? index.getPosition(0) : position;
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Sets binlogFileName/binlogPosition to the latest transaction boundary of the master's binlog
+	 * from which no event older than the timestamp (in milliseconds) is skipped. The binlog file is
+	 * found by a binary search over the first event of the master's binlog files, then the file is
+	 * streamed from its indexed position (see {@link #seek(long)}) or its start, decoding event
+	 * headers only. Each step uses a short-lived dump connection with the locator server id (see
+	 * {@link #getLocatorServerId()}), so the dump connection of a running replicator is not killed.
+	 */
+	public boolean locate(long timestamp) throws Exception
+	{
+		//
+		final List<String> binlogFileNames;
+		final Transport transport = getLocatorTransport();
+		try
+		{
+			binlogFileNames = QueryUtil.fetchBinaryLogs(transport);
+		}
+		finally
+		{
+			transport.disconnect();
+		}
+		if (binlogFileNames.isEmpty())
+		{
+			return false;
+		}
+
+		// The last binlog file which starts before the timestamp
+		final long seconds = (timestamp + 999L) / 1000L;
+		int low = 0, high = binlogFileNames.size() - 1;
+		while (low < high)
+		{
+			final int middle = (low + high + 1) >>> 1;
+			if (fetchFirstTimestamp(binlogFileNames.get(middle)) < seconds)
+				low = middle;
+			else
+				high = middle - 1;
+		}
+
+		//
+		final String binlogFileName = binlogFileNames.get(low);
+		long start = MySQLConstants.BINLOG_MAGIC.length;
+		if (this.indexPath != null)
+		{
+			final File f = BinlogIndexer.getIndexFile(new File(this.indexPath), binlogFileName);
+			if (f.exists())
+				start = Math.max(start, BinlogIndex.load(f).seek(timestamp));
+		}
+		final long position = scanBinlog(binlogFileName, start, seconds);
+		if (position >= 0)
+		{
+			this.binlogFileName = binlogFileName;
+			this.binlogPosition = position;
+		}
+		else
+		{
+			// Events older than the timestamp only, the master has rotated to the next binlog file
+			this.binlogFileName = binlogFileNames.get(Math.min(low + 1, binlogFileNames.size() - 1));
+			this.binlogPosition = MySQLConstants.BINLOG_MAGIC.length;
+		}
+		return true;
+	}
+
+	/**
+	 * Returns the timestamp (in seconds) of the first event of the binlog file
+	 */
+	protected long fetchFirstTimestamp(String binlogFileName) throws Exception
+	{
+		final Transport transport = getLocatorTransport();
+		try
+		{
+			dumpBinLogNonBlock(transport, binlogFileName, MySQLConstants.BINLOG_MAGIC.length);
+			final XInputStream is = transport.getInputStream();
+			while (true)
+			{
+				final long[] header = readEventHeader(is);
+				if (header == null)
+					return Long.MAX_VALUE; // Empty binlog file
+				else if (header[3] > 0)
+					return header[0];
+			}
+		}
+		finally
+		{
+			transport.disconnect();
+		}
+	}
+
+	/**
+	 * Streams the binlog file from the position, which must be a transaction boundary, and returns
+	 * the latest transaction boundary before the first event at or after the timestamp (in seconds),
+	 * or the end of the binlog, or -1 if the master rotates to the next binlog file before.
+	 */
+	protected long scanBinlog(String binlogFileName, long position, long timestamp) throws Exception
+	{
+		//
+		final Transport transport = getLocatorTransport();
+		try
+		{
+			dumpBinLogNonBlock(transport, binlogFileName, position);
+			final XInputStream is = transport.getInputStream();
+			long r = position;
+			int previousEventType = -1;
+			long[] header;
+			while ((header = readEventHeader(is)) != null)
+			{
+				//
+				final long nextPosition = header[3];
+				final int eventType = (int) header[1];
+				if (nextPosition <= 0)
+				{
+					continue; // Artificial event
+				}
+				if (eventType == MySQLConstants.ROTATE_EVENT && header[0] < timestamp)
+				{
+					return -1;
+				}
+
+				//
+				final long eventPosition = nextPosition - header[2];
+				if (BinlogIndexer.isSafePosition(previousEventType, eventType))
+				{
+					r = eventPosition;
+				}
+				if (header[0] >= timestamp)
+				{
+					return r;
+				}
+				previousEventType = eventType;
+				if (eventType == MySQLConstants.XID_EVENT || eventType == BinlogIndexer.COMMIT_EVENT)
+				{
+					r = nextPosition;
+				}
+			}
+			return r;
+		}
+		finally
+		{
+			transport.disconnect();
+		}
+	}
+
+	/**
+	 * Returns the timestamp (in seconds), boundary type (see
+	 * {@link BinlogIndexer#getBoundaryType(byte[], int, int, int)}), length and next position of the
+	 * next event, skipping its body except for a query event, or null at the end of the binlog
+	 */
+	protected long[] readEventHeader(XInputStream is) throws IOException
+	{
+		//
+		int packetLength = is.readInt(3);
+		final int packetSequence = is.readInt(1);
+		final int packetMarker = is.readInt(1);
+		if ((byte) packetMarker == ErrorPacket.PACKET_MARKER)
+		{
+			throw new TransportException(ErrorPacket.valueOf(packetLength, packetSequence, packetMarker, is));
+		}
+		else if ((byte) packetMarker == EOFPacket.PACKET_MARKER)
+		{
+			EOFPacket.valueOf(packetLength, packetSequence, packetMarker, is);
+			return null;
+		}
+
+		//
+		final long[] r = new long[4];
+		r[0] = is.readLong(4);
+		r[1] = is.readInt(1);
+		is.skip(4); // Server id
+		r[2] = is.readLong(4);
+		r[3] = is.readLong(4);
+		if (r[1] == MySQLConstants.QUERY_EVENT && packetLength < 0xFFFFFF)
+		{
+			final byte[] event = new byte[packetLength - 1];
+			event[4] = (byte) r[1];
+			System.arraycopy(is.readBytes(packetLength - 18), 0, event, 17, packetLength - 18); // Flags and body
+			r[1] = BinlogIndexer.getBoundaryType(event, 0, event.length, -1);
+		}
+		else
+		{
+			is.skip(packetLength - 18); // Flags and body
+		}
+		while (packetLength == 0xFFFFFF)
+		{
+			packetLength = is.readInt(3);
+			is.skip(1 + packetLength); // Sequence and body
+		}
+		return r;
+	}
+
+	protected void dumpBinLogNonBlock(Transport transport, String binlogFileName, long binlogPosition)
+	        throws Exception
+	{
+		//
+		if (this.locatorServerId == this.serverId)
+		{
+			throw new NestableRuntimeException("locator server id must differ from the server id: " + this.serverId);
+		}
+
+		//
+		fetchBinlogChecksum(transport);
+		final ComBinlogDumpPacket command = new ComBinlogDumpPacket();
+		command.setBinlogFlag(ComBinlogDumpPacket.BINLOG_DUMP_NON_BLOCK);
+		command.setServerId(this.locatorServerId);
+		command.setBinlogPosition(binlogPosition);
+		command.setBinlogFileName(StringColumn.valueOf(binlogFileName.getBytes(this.encoding)));
+		transport.getOutputStream().writePacket(command);
+		transport.getOutputStream().flush();
+	}
+
+	protected Transport getLocatorTransport() throws Exception
+	{
+		final Transport r = getDefaultTransport();
+		r.connect(this.host, this.port);
+		return r;
+	}
+
 	/**
 	 * 
 	 */
@@ -375,12 +1417,92 @@ public class OpenReplicator
 		this.binlogEventListener = listener;
 	}
 
+	public BinlogRowEventFilter getRowEventFilter()
+	{
+		return rowEventFilter;
+	}
+
+	/**
+	 * Applies the filter, e.g. a {@link com.google.code.or.binlog.impl.filter.TableFilter}, to all
+	 * the row event parsers of the default binlog parser.
+	 */
+	public void setRowEventFilter(BinlogRowEventFilter rowEventFilter)
+	{
+		this.rowEventFilter = rowEventFilter;
+	}
+
+	/**
+	 * Switches to gtid mode: the binlog is requested from the first transaction which is not in the
+	 * set (instead of binlogFileName/binlogPosition), and the set is extended by each delivered
+	 * transaction, so a replicator of another master can resume from {@link #getGtidSet()}.
+	 */
+	public GtidSet getGtidSet()
+	{
+		if (this.gtidSet == null)
+			return null;
+		this.gtidSetLock.lock();
+		try
+		{
+			return new GtidSet(this.gtidSet);
+		}
+		finally
+		{
+			this.gtidSetLock.unlock();
+		}
+	}
+
+	public void setGtidSet(GtidSet gtidSet)
+	{
+		this.gtidSet = gtidSet == null ? null : new GtidSet(gtidSet);
+	}
+
+	/**
+	 * Records the progress after each delivered event. If the store has a checkpoint, {@link #start()}
+	 * resumes from its restart position instead of binlogFileName/binlogPosition, without delivering
+	 * the events before its binlog position again. An exception of the listener is retried like a
+	 * connection failure, from the restart position, instead of being logged and skipped.
+	 */
+	public CheckpointStore getCheckpointStore()
+	{
+		return checkpointStore;
+	}
+
+	public void setCheckpointStore(CheckpointStore checkpointStore)
+	{
+		this.checkpointStore = checkpointStore;
+	}
+
+	/**
+	 * Returns a demand driven publisher which replaces the binlog event listener, must be called
+	 * before {@link #start()}. The parser thread pauses while the subscriber has no outstanding
+	 * demand, and cancelling the subscription stops the replicator. See
+	 * {@link com.google.code.or.binlog.impl.BinlogEventFlowPublisher} for a Flow.Publisher on java 9+.
+	 */
+	public BinlogEventPublisher getBinlogEventPublisher()
+	{
+		if (this.binlogEventPublisher == null)
+		{
+			this.binlogEventPublisher = new BinlogEventPublisherImpl()
+			{
+				@Override
+				protected void doCancel()
+				{
+					stopQuietly(0, TimeUnit.MILLISECONDS);
+				}
+			};
+			this.binlogEventListener = this.binlogEventPublisher;
+		}
+		return this.binlogEventPublisher;
+	}
+
 	protected Transport getDefaultTransport() throws Exception
 	{
 		//
 		final TransportImpl r = new TransportImpl();
 		r.setLevel1BufferSize(this.level1BufferSize);
 		r.setLevel2BufferSize(this.level2BufferSize);
+		r.setThreadFactory(newThreadFactory("active-bis", true));
+		r.setMetricsRegistry(this.metricsRegistry);
 
 		//
 		final AuthenticatorImpl authenticator = new AuthenticatorImpl();
@@ -400,9 +1522,32 @@ public class OpenReplicator
 
 	protected ReplicationBasedBinlogParser getDefaultBinlogParser() throws Exception
 	{
-		//
 		final ReplicationBasedBinlogParser r =
 		        new ReplicationBasedBinlogParser(this.binlogFileName, this.binlogPosition);
+		r.setTransport(this.transport);
+		configureBinlogParser(r);
+		return r;
+	}
+
+	protected RelayLogParser getDefaultRelayLogParser(long segment) throws Exception
+	{
+		final RelayLogParser r = new RelayLogParser(this.relayLog, segment, this.binlogFileName, this.binlogPosition);
+		configureBinlogParser(r);
+		return r;
+	}
+
+	protected RelayLog getDefaultRelayLog()
+	{
+		final RelayLog r = new RelayLog(new File(this.relayPath));
+		r.setSegmentSize(this.relaySegmentSize);
+		r.setRetentionSize(this.relayRetentionSize);
+		r.setRetentionMillis(this.relayRetentionMillis);
+		return r;
+	}
+
+	protected void configureBinlogParser(AbstractBinlogParser r)
+	{
+		//
 		r.registgerEventParser(new StopEventParser());
 		r.registgerEventParser(new RotateEventParser());
 		r.registgerEventParser(new IntvarEventParser());
@@ -419,9 +1564,42 @@ public class OpenReplicator
 		r.registgerEventParser(new UpdateRowsEventV2Parser());
 		r.registgerEventParser(new DeleteRowsEventV2Parser());
 		r.registgerEventParser(new FormatDescriptionEventParser());
+		r.registgerEventParser(new GtidEventParser());
+		r.registgerEventParser(new PreviousGtidsEventParser());
+		if (this.rowEventFilter != null)
+		{
+			for (int type = 0; type < 128; type++)
+			{
+				if (r.getEventParser(type) instanceof AbstractRowEventParser)
+					((AbstractRowEventParser) r.getEventParser(type)).setRowEventFilter(this.rowEventFilter);
+			}
+		}
 
 		//
-		r.setTransport(this.transport);
+		r.setThreadFactory(newThreadFactory("binlog-parser", false));
+		r.setMetricsRegistry(this.metricsRegistry);
+		r.setHeartbeatPeriod(this.heartbeatPeriod);
+		r.setFailOnListenerException(this.checkpointStore != null); // Retried from before the failed event
+		if (this.paused)
+			r.pause();
+		if (this.indexPath != null)
+		{
+			final BinlogIndexer indexer = new BinlogIndexer(new File(this.indexPath));
+			indexer.setInterval(this.indexInterval);
+			r.setIndexer(indexer);
+		}
+		if (this.snapshotPath != null)
+		{
+			final TableMapSnapshotStore snapshotStore = new TableMapSnapshotStore(new File(this.snapshotPath));
+			snapshotStore.setInterval(this.snapshotInterval);
+			r.setSnapshotStore(snapshotStore);
+		}
+	}
+
+	protected XThreadFactory newThreadFactory(String name, boolean daemon)
+	{
+		final XThreadFactory r = new XThreadFactory(name, daemon);
+		r.setVirtual(this.virtualThreads);
 		return r;
 	}
 }
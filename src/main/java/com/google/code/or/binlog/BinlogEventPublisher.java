@@ -0,0 +1,55 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.code.or.binlog;
+
+/**
+ * Demand driven counterpart of {@link BinlogEventListener}. The contract mirrors
+ * java.util.concurrent.Flow (and reactive streams) so that the library still runs on java 8, on
+ * java 9+ {@link com.google.code.or.binlog.impl.BinlogEventFlowPublisher} exposes it as a
+ * Flow.Publisher.
+ * 
+ * @author Jingqi Xu
+ */
+public interface BinlogEventPublisher
+{
+
+	void subscribe(Subscriber subscriber);
+
+	/**
+	 * 
+	 */
+	interface Subscriber
+	{
+
+		void onSubscribe(Subscription subscription);
+
+		void onNext(BinlogEventV4 event);
+
+		void onError(Throwable throwable);
+
+		void onComplete();
+	}
+
+	/**
+	 * 
+	 */
+	interface Subscription
+	{
+
+		void request(long n);
+
+		void cancel();
+	}
+}
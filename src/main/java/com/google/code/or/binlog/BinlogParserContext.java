@@ -30,6 +30,16 @@ public interface BinlogParserContext
 
 	Long getCurrentPosition();
 
+	/**
+	 * The position from which a restart parses every following event correctly: the start of the
+	 * current transaction or of its last table map group, or the end of the last complete event. The
+	 * current position unless implemented, so that the existing contexts restart as before.
+	 */
+	default Long getRestartPosition()
+	{
+		return getCurrentPosition();
+	}
+
 	Map<Long, TableMapEvent> getTableMapEvents();
 
 	TableMapEvent getTableMapEvent(long tableId);
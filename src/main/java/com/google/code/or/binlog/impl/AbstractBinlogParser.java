@@ -14,34 +14,20 @@
  */
 package com.google.code.or.binlog.impl;
 
-import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.List;
-import java.util.Map;
-import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
-import java.util.concurrent.atomic.AtomicBoolean;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import com.google.code.or.binlog.BinlogEventFilter;
-import com.google.code.or.binlog.BinlogEventListener;
-import com.google.code.or.binlog.BinlogEventParser;
-import com.google.code.or.binlog.BinlogEventV4;
-import com.google.code.or.binlog.BinlogParser;
-import com.google.code.or.binlog.BinlogParserContext;
-import com.google.code.or.binlog.BinlogParserListener;
-import com.google.code.or.binlog.impl.event.RotateEvent;
-import com.google.code.or.binlog.impl.event.TableMapEvent;
-import com.google.code.or.binlog.impl.parser.NopEventParser;
 import com.google.code.or.common.util.XThreadFactory;
 
 /**
+ * A binlog parser which pulls the events from its source on a worker thread, see {@link #doParse()}.
+ * 
  * @author Jingqi Xu
  */
-public abstract class AbstractBinlogParser implements BinlogParser
+public abstract class AbstractBinlogParser extends BinlogParserSupport
 {
 	//
 	private static final Logger LOGGER = LoggerFactory.getLogger(AbstractBinlogParser.class);
@@ -49,41 +35,23 @@ public abstract class AbstractBinlogParser implements BinlogParser
 	//
 	protected Thread worker;
 	protected ThreadFactory threadFactory;
-	protected BinlogEventFilter eventFilter;
-	protected BinlogEventListener eventListener;
-	protected boolean clearTableMapEventsOnRotate = true;
-	protected int checksumLength = 0;
-	protected final List<BinlogParserListener> parserListeners;
-	protected final AtomicBoolean verbose = new AtomicBoolean(false);
-	protected final AtomicBoolean running = new AtomicBoolean(false);
-	protected final BinlogEventParser defaultParser = new NopEventParser();
-	protected final BinlogEventParser[] parsers = new BinlogEventParser[128];
-	protected BinlogParserContext context;
+	protected boolean stopOnEndOfStream = false;
 
 	//
 	protected abstract void doParse() throws Exception;
 
-	protected abstract void doStart() throws Exception;
-
-	protected abstract void doStop(long timeout, TimeUnit unit) throws Exception;
-
 	/**
 	 * 
 	 */
 	public AbstractBinlogParser()
 	{
 		this.threadFactory = new XThreadFactory("binlog-parser", false);
-		this.parserListeners = new CopyOnWriteArrayList<BinlogParserListener>();
 	}
 
 	/**
 	 * 
 	 */
-	public boolean isRunning()
-	{
-		return this.running.get();
-	}
-
+	@Override
 	public void start() throws Exception
 	{
 		//
@@ -93,6 +61,7 @@ public abstract class AbstractBinlogParser implements BinlogParser
 		}
 
 		//
+		restoreTableMapEvents();
 		doStart();
 
 		//
@@ -103,6 +72,7 @@ public abstract class AbstractBinlogParser implements BinlogParser
 		notifyOnStart();
 	}
 
+	@Override
 	public void stop(long timeout, TimeUnit unit) throws Exception
 	{
 		//
@@ -128,171 +98,52 @@ public abstract class AbstractBinlogParser implements BinlogParser
 		}
 		finally
 		{
-			notifyOnStop();
+			release();
 		}
 	}
 
 	/**
-	 * 
+	 * Returns the state of the parser thread, e.g. WAITING for data from the transport or in the
+	 * listener, null if it is not started
 	 */
-	public boolean isVerbose()
-	{
-		return this.verbose.get();
-	}
-
-	public void setVerbose(boolean verbose)
-	{
-		this.verbose.set(verbose);
-	}
-
-	public ThreadFactory getThreadFactory()
-	{
-		return threadFactory;
-	}
-
-	public void setThreadFactory(ThreadFactory tf)
-	{
-		this.threadFactory = tf;
-	}
-
-	public BinlogEventFilter getEventFilter()
-	{
-		return eventFilter;
-	}
-
-	public void setEventFilter(BinlogEventFilter filter)
-	{
-		this.eventFilter = filter;
-	}
-
-	public BinlogEventListener getEventListener()
-	{
-		return eventListener;
-	}
-
-	public void setEventListener(BinlogEventListener listener)
-	{
-		this.eventListener = listener;
-	}
-
-	public boolean isClearTableMapEventsOnRotate()
-	{
-		return clearTableMapEventsOnRotate;
-	}
-
-	public void setClearTableMapEventsOnRotate(boolean clearTableMapEventsOnRotate)
-	{
-		this.clearTableMapEventsOnRotate = clearTableMapEventsOnRotate;
-	}
-
-	public BinlogParserContext getContext()
+	public Thread.State getWorkerState()
 	{
-		return context;
+		final Thread t = this.worker;
+		return t == null ? null : t.getState();
 	}
 
-	public void setContext(BinlogParserContext context)
+	public StackTraceElement[] getWorkerStackTrace()
 	{
-		this.context = context;
+		final Thread t = this.worker;
+		return t == null ? new StackTraceElement[0] : t.getStackTrace();
 	}
 
 	/**
-	 * 
+	 * Whether the parser stops itself, and notifies onStop, once {@link #doParse()} returns because
+	 * the source is exhausted (e.g. the end of a binlog file). By default the worker just exits and
+	 * the parser stays running until it is stopped.
 	 */
-	public void clearEventParsers()
-	{
-		for (int i = 0; i < this.parsers.length; i++)
-		{
-			this.parsers[i] = null;
-		}
-	}
-
-	public BinlogEventParser getEventParser(int type)
-	{
-		return this.parsers[type];
-	}
-
-	public BinlogEventParser unregistgerEventParser(int type)
+	public boolean isStopOnEndOfStream()
 	{
-		return this.parsers[type] = null;
+		return stopOnEndOfStream;
 	}
 
-	public void registgerEventParser(BinlogEventParser parser)
+	public void setStopOnEndOfStream(boolean stopOnEndOfStream)
 	{
-		this.parsers[parser.getEventType()] = parser;
-	}
-
-	public void setEventParsers(List<BinlogEventParser> parsers)
-	{
-		clearEventParsers();
-		if (parsers != null)
-		{
-			for (BinlogEventParser parser : parsers)
-			{
-				registgerEventParser(parser);
-			}
-		}
+		this.stopOnEndOfStream = stopOnEndOfStream;
 	}
 
 	/**
 	 * 
 	 */
-	public List<BinlogParserListener> getParserListeners()
-	{
-		return new ArrayList<BinlogParserListener>(this.parserListeners);
-	}
-
-	public boolean addParserListener(BinlogParserListener listener)
-	{
-		return this.parserListeners.add(listener);
-	}
-
-	public boolean removeParserListener(BinlogParserListener listener)
-	{
-		return this.parserListeners.remove(listener);
-	}
-
-	public void setParserListeners(List<BinlogParserListener> listeners)
-	{
-		this.parserListeners.clear();
-		if (listeners != null)
-			this.parserListeners.addAll(listeners);
-	}
-
-	public int getChecksumLength()
-	{
-		return checksumLength;
-	}
-
-	public void setChecksumLength(int checksumLength)
-	{
-		this.checksumLength = checksumLength;
-	}
-
-	/**
-	 * 
-	 */
-	private void notifyOnStart()
-	{
-		for (BinlogParserListener listener : this.parserListeners)
-		{
-			listener.onStart(this);
-		}
-	}
-
-	private void notifyOnStop()
+	public ThreadFactory getThreadFactory()
 	{
-		for (BinlogParserListener listener : this.parserListeners)
-		{
-			listener.onStop(this);
-		}
+		return threadFactory;
 	}
 
-	private void notifyOnException(Exception exception)
+	public void setThreadFactory(ThreadFactory tf)
 	{
-		for (BinlogParserListener listener : this.parserListeners)
-		{
-			listener.onException(this, exception);
-		}
+		this.threadFactory = tf;
 	}
 
 	/**
@@ -310,107 +161,21 @@ public abstract class AbstractBinlogParser implements BinlogParser
 			catch (Exception e)
 			{
 				notifyOnException(e);
-			}
-		}
-	}
-
-	protected class Context implements BinlogParserContext, BinlogEventListener
-	{
-		//
-		private String binlogFileName;
-		private Long currentPosition;
-		private final Map<Long, TableMapEvent> tableMapEvents = new HashMap<Long, TableMapEvent>();
-
-		/**
-		 * 
-		 */
-		public Context()
-		{
-		}
-
-		public Context(String binlogFileName, Long currentPosition)
-		{
-			this.binlogFileName = binlogFileName;
-			this.currentPosition = currentPosition;
-		}
-
-		/**
-		 * 
-		 */
-		public final String getBinlogFileName()
-		{
-			return binlogFileName;
-		}
-
-		public final void setBinlogFileName(String name)
-		{
-			this.binlogFileName = name;
-		}
-
-		public Long getCurrentPosition()
-		{
-			return currentPosition;
-		}
-
-		public void setCurrentPosition(Long currentPosition)
-		{
-			this.currentPosition = currentPosition;
-		}
-
-		public final BinlogEventListener getEventListener()
-		{
-			return this;
-		}
-
-		public final TableMapEvent getTableMapEvent(long tableId)
-		{
-			return this.tableMapEvents.get(tableId);
-		}
-
-		public final Map<Long, TableMapEvent> getTableMapEvents()
-		{
-			return this.tableMapEvents;
-		}
-
-		/**
-		 * 
-		 */
-		public void onEvents(BinlogEventV4 event)
-		{
-			//
-			if (event == null)
-			{
 				return;
 			}
-			if (event.getHeader().getPosition() > 0)
-			{
-				this.currentPosition = event.getHeader().getPosition();
-			}
-			//
-			if (event instanceof TableMapEvent)
-			{
-				final TableMapEvent tme = (TableMapEvent) event;
-				this.tableMapEvents.put(tme.getTableId(), tme);
-			}
-			else if (event instanceof RotateEvent)
-			{
-				final RotateEvent re = (RotateEvent) event;
-				this.binlogFileName = re.getBinlogFileName().toString();
-				this.currentPosition = re.getBinlogPosition();
-				if (isClearTableMapEventsOnRotate())
-					this.tableMapEvents.clear();
-			}
 
 			//
-			try
+			if (stopOnEndOfStream)
 			{
-				AbstractBinlogParser.this.eventListener.onEvents(event);
-			}
-			catch (Exception e)
-			{
-				LOGGER.error("failed to notify binlog event listener, event: " + event, e);
+				try
+				{
+					stop(0, TimeUnit.MILLISECONDS);
+				}
+				catch (Exception e)
+				{
+					LOGGER.error("failed to stop binlog parser", e);
+				}
 			}
 		}
 	}
-
 }
@@ -0,0 +1,90 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.code.or.binlog.impl;
+
+import java.util.concurrent.Flow;
+
+import com.google.code.or.binlog.BinlogEventPublisher;
+import com.google.code.or.binlog.BinlogEventV4;
+
+/**
+ * Exposes a {@link BinlogEventPublisher} as a java.util.concurrent.Flow.Publisher, e.g. new
+ * BinlogEventFlowPublisher(replicator.getBinlogEventPublisher()), the demand of the subscriber is
+ * passed through as is. It requires java 9+ and is the only class which links
+ * java.util.concurrent.Flow: open replicator itself never loads it, so the rest of the library still
+ * runs on java 8.
+ * 
+ * @author Jingqi Xu
+ */
+public class BinlogEventFlowPublisher implements Flow.Publisher<BinlogEventV4>
+{
+	//
+	private final BinlogEventPublisher publisher;
+
+	/**
+	 * 
+	 */
+	public BinlogEventFlowPublisher(BinlogEventPublisher publisher)
+	{
+		this.publisher = publisher;
+	}
+
+	/**
+	 * 
+	 */
+	public void subscribe(final Flow.Subscriber<? super BinlogEventV4> subscriber)
+	{
+		//
+		if (subscriber == null)
+		{
+			throw new NullPointerException("subscriber");
+		}
+
+		//
+		this.publisher.subscribe(new BinlogEventPublisher.Subscriber()
+		{
+			public void onSubscribe(final BinlogEventPublisher.Subscription subscription)
+			{
+				subscriber.onSubscribe(new Flow.Subscription()
+				{
+					public void request(long n)
+					{
+						subscription.request(n);
+					}
+
+					public void cancel()
+					{
+						subscription.cancel();
+					}
+				});
+			}
+
+			public void onNext(BinlogEventV4 event)
+			{
+				subscriber.onNext(event);
+			}
+
+			public void onError(Throwable throwable)
+			{
+				subscriber.onError(throwable);
+			}
+
+			public void onComplete()
+			{
+				subscriber.onComplete();
+			}
+		});
+	}
+}
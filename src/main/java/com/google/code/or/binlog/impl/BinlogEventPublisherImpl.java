@@ -0,0 +1,317 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.code.or.binlog.impl;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import com.google.code.or.binlog.BinlogEventListener;
+import com.google.code.or.binlog.BinlogEventPublisher;
+import com.google.code.or.binlog.BinlogEventV4;
+
+/**
+ * A single subscriber publisher which is installed as the parser's event listener. The parser
+ * thread is parked in {@link #onEvents(BinlogEventV4)} while there is no outstanding demand, so
+ * nothing is buffered here: the backlog stays in the transport buffers and eventually in the
+ * socket, where TCP flow control throttles the master.
+ * 
+ * @author Jingqi Xu
+ */
+public class BinlogEventPublisherImpl implements BinlogEventPublisher, BinlogEventListener
+{
+	//
+	private final ReentrantLock lock = new ReentrantLock(false);
+	private final ReentrantLock signalLock = new ReentrantLock(false);
+	private final Condition demandAvailable = this.lock.newCondition();
+
+	//
+	private long demand;
+	private boolean cancelled;
+	private boolean subscribed;
+	private boolean terminated;
+	private boolean terminalDelivered;
+	private Throwable failure;
+	private Subscriber subscriber;
+
+	/**
+	 * 
+	 */
+	public void subscribe(Subscriber subscriber)
+	{
+		//
+		if (subscriber == null)
+		{
+			throw new NullPointerException("subscriber");
+		}
+
+		//
+		this.lock.lock();
+		try
+		{
+			if (this.subscriber != null)
+			{
+				subscriber.onSubscribe(new Subscription()
+				{
+					public void request(long n)
+					{
+					}
+
+					public void cancel()
+					{
+					}
+				});
+				subscriber.onError(new IllegalStateException("publisher supports a single subscriber"));
+				return;
+			}
+			this.subscriber = subscriber;
+		}
+		finally
+		{
+			this.lock.unlock();
+		}
+
+		//
+		subscriber.onSubscribe(new SubscriptionImpl());
+		this.lock.lock();
+		try
+		{
+			this.subscribed = true;
+		}
+		finally
+		{
+			this.lock.unlock();
+		}
+		deliverTerminal();
+	}
+
+	/**
+	 * Called by the parser thread, blocks until the subscriber has requested more events. An event
+	 * which can no longer be delivered, once the subscription is cancelled or the publisher is
+	 * terminated, is refused with a CancellationException: the parser drops it without logging
+	 * and it is not checkpointed.
+	 */
+	public void onEvents(BinlogEventV4 event)
+	{
+		//
+		final Subscriber s;
+		this.lock.lock();
+		try
+		{
+			while (this.demand == 0 && !this.cancelled && !this.terminated)
+			{
+				this.demandAvailable.awaitUninterruptibly();
+			}
+			if (this.cancelled)
+			{
+				throw new CancellationException("subscription is cancelled, event is dropped: " + event.getHeader());
+			}
+			else if (this.terminated)
+			{
+				throw new CancellationException("publisher is terminated, event is dropped: " + event.getHeader());
+			}
+			if (this.demand != Long.MAX_VALUE)
+			{
+				this.demand--;
+			}
+			s = this.subscriber;
+		}
+		finally
+		{
+			this.lock.unlock();
+		}
+
+		//
+		this.signalLock.lock();
+		try
+		{
+			s.onNext(event);
+		}
+		finally
+		{
+			this.signalLock.unlock();
+		}
+	}
+
+	/**
+	 * 
+	 */
+	public boolean isCancelled()
+	{
+		this.lock.lock();
+		try
+		{
+			return this.cancelled;
+		}
+		finally
+		{
+			this.lock.unlock();
+		}
+	}
+
+	public long getDemand()
+	{
+		this.lock.lock();
+		try
+		{
+			return this.demand;
+		}
+		finally
+		{
+			this.lock.unlock();
+		}
+	}
+
+	public void complete()
+	{
+		terminate(null);
+	}
+
+	public void error(Throwable throwable)
+	{
+		terminate(throwable);
+	}
+
+	/**
+	 * Invoked once when the subscriber cancels, sub-classes may stop the underlying source here.
+	 */
+	protected void doCancel()
+	{
+		// NOP
+	}
+
+	/**
+	 * 
+	 */
+	private void terminate(Throwable throwable)
+	{
+		this.lock.lock();
+		try
+		{
+			if (this.terminated)
+			{
+				return;
+			}
+			this.terminated = true;
+			this.failure = throwable;
+			this.demandAvailable.signalAll();
+		}
+		finally
+		{
+			this.lock.unlock();
+		}
+		deliverTerminal();
+	}
+
+	private void deliverTerminal()
+	{
+		//
+		final Subscriber s;
+		final Throwable throwable;
+		this.lock.lock();
+		try
+		{
+			if (!this.terminated || !this.subscribed || this.cancelled || this.terminalDelivered)
+			{
+				return;
+			}
+			this.terminalDelivered = true;
+			s = this.subscriber;
+			throwable = this.failure;
+		}
+		finally
+		{
+			this.lock.unlock();
+		}
+
+		//
+		this.signalLock.lock();
+		try
+		{
+			if (throwable == null)
+				s.onComplete();
+			else
+				s.onError(throwable);
+		}
+		finally
+		{
+			this.signalLock.unlock();
+		}
+	}
+
+	/**
+	 * 
+	 */
+	private class SubscriptionImpl implements Subscription
+	{
+
+		public void request(long n)
+		{
+			//
+			if (n <= 0)
+			{
+				cancel();
+				signalLock.lock();
+				try
+				{
+					subscriber.onError(new IllegalArgumentException("non-positive request: " + n));
+				}
+				finally
+				{
+					signalLock.unlock();
+				}
+				return;
+			}
+
+			//
+			lock.lock();
+			try
+			{
+				if (cancelled)
+				{
+					return;
+				}
+				demand = demand + n < 0 ? Long.MAX_VALUE : demand + n;
+				demandAvailable.signalAll();
+			}
+			finally
+			{
+				lock.unlock();
+			}
+		}
+
+		public void cancel()
+		{
+			//
+			lock.lock();
+			try
+			{
+				if (cancelled)
+				{
+					return;
+				}
+				cancelled = true;
+				demandAvailable.signalAll();
+			}
+			finally
+			{
+				lock.unlock();
+			}
+
+			//
+			doCancel();
+		}
+	}
+}
@@ -0,0 +1,923 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.code.or.binlog.impl;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.apache.commons.lang.exception.NestableRuntimeException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.code.or.binlog.BinlogEventFilter;
+import com.google.code.or.binlog.BinlogEventListener;
+import com.google.code.or.binlog.BinlogEventParser;
+import com.google.code.or.binlog.BinlogEventV4;
+import com.google.code.or.binlog.BinlogEventV4Header;
+import com.google.code.or.binlog.BinlogParser;
+import com.google.code.or.binlog.BinlogParserContext;
+import com.google.code.or.binlog.BinlogParserListener;
+import com.google.code.or.binlog.impl.event.AbstractRowEvent;
+import com.google.code.or.binlog.impl.event.BinlogEventV4HeaderImpl;
+import com.google.code.or.binlog.impl.event.QueryEvent;
+import com.google.code.or.binlog.impl.event.RotateEvent;
+import com.google.code.or.binlog.impl.event.TableMapEvent;
+import com.google.code.or.binlog.impl.event.XidEvent;
+import com.google.code.or.binlog.impl.index.BinlogIndexer;
+import com.google.code.or.binlog.impl.parser.NopEventParser;
+import com.google.code.or.binlog.impl.snapshot.TableMapSnapshotStore;
+import com.google.code.or.common.util.MySQLConstants;
+import com.google.code.or.io.XInputStream;
+import com.google.code.or.jfr.BinlogParseEvent;
+import com.google.code.or.jfr.FlightRecorderSupport;
+import com.google.code.or.jfr.ListenerDispatchEvent;
+import com.google.code.or.metrics.BinlogParserMetrics;
+import com.google.code.or.metrics.MetricsRegistry;
+
+/**
+ * The event parsing and the context shared by the binlog parsers, the events are parsed on the
+ * caller's thread. {@link AbstractBinlogParser} pulls them on a worker thread, while
+ * {@link PacketBasedBinlogParser} is pushed the packets, e.g. by the replication hub.
+ * 
+ * @author Jingqi Xu
+ */
+public abstract class BinlogParserSupport implements BinlogParser
+{
+	//
+	private static final Logger LOGGER = LoggerFactory.getLogger(BinlogParserSupport.class);
+
+	//
+	protected BinlogEventFilter eventFilter;
+	protected BinlogEventListener eventListener;
+	protected boolean clearTableMapEventsOnRotate = true;
+	protected boolean failOnListenerException = false;
+	protected int checksumLength = 0;
+	protected int maxTableMapEvents = 65536;
+	protected final List<BinlogParserListener> parserListeners;
+	protected final AtomicBoolean verbose = new AtomicBoolean(false);
+	protected final AtomicBoolean running = new AtomicBoolean(false);
+	protected final BinlogEventParser defaultParser = new NopEventParser();
+	protected final BinlogEventParser[] parsers = new BinlogEventParser[128];
+	protected BinlogParserContext context;
+	protected BinlogIndexer indexer;
+	protected TableMapSnapshotStore snapshotStore;
+	protected BinlogParserMetrics metrics;
+	protected long heartbeatPeriod;
+
+	// Pause and the events passed to the listener, the counters are only updated by the parser thread
+	protected volatile boolean paused;
+	protected final ReentrantLock pauseLock = new ReentrantLock(false);
+	protected final Condition resumed = this.pauseLock.newCondition();
+	protected final AtomicLong dispatchedEvents = new AtomicLong(0);
+	protected final AtomicLong deliveredEvents = new AtomicLong(0);
+
+	// The flight recorder event of the event being parsed, only while recording
+	protected BinlogParseEvent parseEvent;
+
+	//
+	protected abstract void doStart() throws Exception;
+
+	protected abstract void doStop(long timeout, TimeUnit unit) throws Exception;
+
+	/**
+	 * 
+	 */
+	public BinlogParserSupport()
+	{
+		this.parserListeners = new CopyOnWriteArrayList<BinlogParserListener>();
+	}
+
+	/**
+	 * 
+	 */
+	public boolean isRunning()
+	{
+		return this.running.get();
+	}
+
+	public void start() throws Exception
+	{
+		//
+		if (!this.running.compareAndSet(false, true))
+		{
+			return;
+		}
+
+		//
+		restoreTableMapEvents();
+		doStart();
+		notifyOnStart();
+	}
+
+	public void stop(long timeout, TimeUnit unit) throws Exception
+	{
+		//
+		if (!this.running.compareAndSet(true, false))
+		{
+			return;
+		}
+
+		//
+		try
+		{
+			doStop(timeout, unit);
+		}
+		finally
+		{
+			release();
+		}
+	}
+
+	/**
+	 * Pauses the parsing before the next event, the transport stops reading once its buffers are full
+	 */
+	public boolean isPaused()
+	{
+		return this.paused;
+	}
+
+	public void pause()
+	{
+		this.paused = true;
+	}
+
+	public void resume()
+	{
+		this.pauseLock.lock();
+		try
+		{
+			this.paused = false;
+			this.resumed.signalAll();
+		}
+		finally
+		{
+			this.pauseLock.unlock();
+		}
+	}
+
+	/**
+	 * Returns the number of events passed to the listener which it has not returned from yet
+	 */
+	public long getEventsInFlight()
+	{
+		final long delivered = this.deliveredEvents.get();
+		return Math.max(0, this.dispatchedEvents.get() - delivered);
+	}
+
+	public long getDeliveredEvents()
+	{
+		return this.deliveredEvents.get();
+	}
+
+	/**
+	 * 
+	 */
+	public boolean isVerbose()
+	{
+		return this.verbose.get();
+	}
+
+	public void setVerbose(boolean verbose)
+	{
+		this.verbose.set(verbose);
+	}
+
+	public BinlogEventFilter getEventFilter()
+	{
+		return eventFilter;
+	}
+
+	public void setEventFilter(BinlogEventFilter filter)
+	{
+		this.eventFilter = filter;
+	}
+
+	public BinlogEventListener getEventListener()
+	{
+		return eventListener;
+	}
+
+	public void setEventListener(BinlogEventListener listener)
+	{
+		this.eventListener = listener;
+	}
+
+	public boolean isClearTableMapEventsOnRotate()
+	{
+		return clearTableMapEventsOnRotate;
+	}
+
+	public void setClearTableMapEventsOnRotate(boolean clearTableMapEventsOnRotate)
+	{
+		this.clearTableMapEventsOnRotate = clearTableMapEventsOnRotate;
+	}
+
+	/**
+	 * Whether an exception of the event listener fails the parsing, instead of being logged. Either
+	 * way the delivered and restart positions do not advance past the event, so that a parser retried
+	 * from the context's restart position delivers it again. A CancellationException, e.g. of a
+	 * cancelled publisher, neither fails the parsing nor is logged.
+	 */
+	public boolean isFailOnListenerException()
+	{
+		return failOnListenerException;
+	}
+
+	public void setFailOnListenerException(boolean failOnListenerException)
+	{
+		this.failOnListenerException = failOnListenerException;
+	}
+
+	public BinlogParserContext getContext()
+	{
+		return context;
+	}
+
+	/**
+	 * A context of another parser, e.g. the failed one being retried, notifies the listener of this
+	 * parser from now on and counts its events in this parser's statistics.
+	 */
+	public void setContext(BinlogParserContext context)
+	{
+		this.context = context;
+		if (context instanceof Context)
+			((Context) context).parser = this;
+	}
+
+	/**
+	 * 
+	 */
+	public void clearEventParsers()
+	{
+		for (int i = 0; i < this.parsers.length; i++)
+		{
+			this.parsers[i] = null;
+		}
+	}
+
+	public BinlogEventParser getEventParser(int type)
+	{
+		return this.parsers[type];
+	}
+
+	public BinlogEventParser unregistgerEventParser(int type)
+	{
+		return this.parsers[type] = null;
+	}
+
+	public void registgerEventParser(BinlogEventParser parser)
+	{
+		this.parsers[parser.getEventType()] = parser;
+	}
+
+	public void setEventParsers(List<BinlogEventParser> parsers)
+	{
+		clearEventParsers();
+		if (parsers != null)
+		{
+			for (BinlogEventParser parser : parsers)
+			{
+				registgerEventParser(parser);
+			}
+		}
+	}
+
+	/**
+	 * 
+	 */
+	public List<BinlogParserListener> getParserListeners()
+	{
+		return new ArrayList<BinlogParserListener>(this.parserListeners);
+	}
+
+	public boolean addParserListener(BinlogParserListener listener)
+	{
+		return this.parserListeners.add(listener);
+	}
+
+	public boolean removeParserListener(BinlogParserListener listener)
+	{
+		return this.parserListeners.remove(listener);
+	}
+
+	public void setParserListeners(List<BinlogParserListener> listeners)
+	{
+		this.parserListeners.clear();
+		if (listeners != null)
+			this.parserListeners.addAll(listeners);
+	}
+
+	public BinlogIndexer getIndexer()
+	{
+		return indexer;
+	}
+
+	public void setIndexer(BinlogIndexer indexer)
+	{
+		this.indexer = indexer;
+	}
+
+	/**
+	 * Persists the table map events periodically, the ones of the nearest snapshot are restored by
+	 * {@link #start()} so that the row events are decoded right away if parsing starts mid-file
+	 */
+	public TableMapSnapshotStore getSnapshotStore()
+	{
+		return snapshotStore;
+	}
+
+	public void setSnapshotStore(TableMapSnapshotStore snapshotStore)
+	{
+		this.snapshotStore = snapshotStore;
+	}
+
+	public int getTableMapEventCount()
+	{
+		return this.context instanceof Context ? ((Context) this.context).tableMapEvents.size() : 0;
+	}
+
+	public int getMaxTableMapEvents()
+	{
+		return maxTableMapEvents;
+	}
+
+	public void setMaxTableMapEvents(int maxTableMapEvents)
+	{
+		this.maxTableMapEvents = maxTableMapEvents;
+		if (this.context instanceof Context)
+			((Context) this.context).tableMapEvents.setMaxSize(maxTableMapEvents);
+	}
+
+	/**
+	 * Events ending at or before the position in the current binlog file are parsed but not delivered
+	 * again, e.g. after resuming from a restart position.
+	 */
+	public void setDeliveredPosition(long position)
+	{
+		if (this.context instanceof Context)
+			((Context) this.context).setDeliveredPosition(position);
+	}
+
+	/**
+	 * Counts the events and bytes per event type, samples the parse time per event parser and the
+	 * listener time and tracks the replication lag, null disables the metrics
+	 */
+	public MetricsRegistry getMetricsRegistry()
+	{
+		return this.metrics == null ? null : this.metrics.getRegistry();
+	}
+
+	public void setMetricsRegistry(MetricsRegistry registry)
+	{
+		this.metrics = registry == null ? null : new BinlogParserMetrics(registry);
+		if (this.metrics != null)
+			this.metrics.getLag().setHeartbeatPeriod(this.heartbeatPeriod);
+	}
+
+	/**
+	 * The heartbeat period in milliseconds the master was asked for, the replication lag is corrected
+	 * with heartbeats while the master is idle
+	 */
+	public long getHeartbeatPeriod()
+	{
+		return heartbeatPeriod;
+	}
+
+	public void setHeartbeatPeriod(long heartbeatPeriod)
+	{
+		this.heartbeatPeriod = heartbeatPeriod;
+		if (this.metrics != null)
+			this.metrics.getLag().setHeartbeatPeriod(heartbeatPeriod);
+	}
+
+	public int getChecksumLength()
+	{
+		return checksumLength;
+	}
+
+	public void setChecksumLength(int checksumLength)
+	{
+		this.checksumLength = checksumLength;
+	}
+
+	/**
+	 * 
+	 */
+	protected BinlogEventV4HeaderImpl parseEventHeader(XInputStream is) throws IOException
+	{
+		final BinlogEventV4HeaderImpl header = new BinlogEventV4HeaderImpl();
+		header.setTimestamp(is.readLong(4) * 1000L);
+		header.setEventType(is.readInt(1));
+		header.setServerId(is.readLong(4));
+		header.setEventLength(is.readInt(4));
+		header.setNextPosition(is.readLong(4));
+		header.setFlags(is.readInt(2));
+		header.setTimestampOfReceipt(System.currentTimeMillis());
+		return header;
+	}
+
+	/**
+	 * Parses the event body, the read limit of the stream must have been set to the body's length
+	 */
+	protected void parseEventBody(XInputStream is, BinlogEventV4HeaderImpl header) throws IOException
+	{
+		//
+		if (this.paused)
+		{
+			awaitResume();
+		}
+		final String binlogFileName = this.context.getBinlogFileName();
+
+		//
+		final BinlogParserMetrics metrics = this.metrics;
+		if (metrics != null)
+		{
+			metrics.onEvent(header);
+		}
+
+		//
+		final BinlogParseEvent jfr = FlightRecorderSupport.isRecording() ? BinlogParseEvent.begin(header) : null;
+		this.parseEvent = jfr;
+		BinlogEventParser parser = this.defaultParser;
+		if (this.eventFilter == null || this.eventFilter.accepts(header, this.context))
+		{
+			parser = getEventParser(header.getEventType());
+			if (parser == null)
+				parser = this.defaultParser;
+		}
+		parser.parse(is, header, this.context);
+		if (parser == this.defaultParser && this.context instanceof Context)
+		{
+			((Context) this.context).updateRestartPosition(header); // Not delivered to the context
+		}
+		if (metrics != null)
+		{
+			metrics.onParsed(header, parser);
+		}
+		if (jfr != null)
+		{
+			this.parseEvent = null;
+			jfr.end(this.context.getBinlogFileName());
+		}
+		if (this.indexer != null)
+		{
+			final int boundaryType = this.context instanceof Context ? ((Context) this.context).getBoundaryType(header)
+			        : header.getEventType();
+			this.indexer.onEvent(binlogFileName, header, boundaryType);
+		}
+
+		// Ensure the event data boundary
+		if (is.available() != 0)
+		{
+			throw new NestableRuntimeException("assertion failed, available: " + is.available() + ", event type: "
+			        + header.getEventType());
+		}
+	}
+
+	protected void awaitResume()
+	{
+		this.pauseLock.lock();
+		try
+		{
+			LOGGER.info("binlog parser paused");
+			while (this.paused && isRunning())
+			{
+				this.resumed.await(100, TimeUnit.MILLISECONDS);
+			}
+			LOGGER.info("binlog parser resumed");
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+		}
+		finally
+		{
+			this.pauseLock.unlock();
+		}
+	}
+
+	/**
+	 * 
+	 */
+	protected void notifyOnStart()
+	{
+		for (BinlogParserListener listener : this.parserListeners)
+		{
+			listener.onStart(this);
+		}
+	}
+
+	protected void notifyOnStop()
+	{
+		for (BinlogParserListener listener : this.parserListeners)
+		{
+			listener.onStop(this);
+		}
+	}
+
+	protected void notifyOnException(Exception exception)
+	{
+		for (BinlogParserListener listener : this.parserListeners)
+		{
+			listener.onException(this, exception);
+		}
+	}
+
+	/**
+	 * Closes the indexer and the snapshot store and notifies the listeners, once the parser is stopped
+	 */
+	protected void release()
+	{
+		if (this.indexer != null)
+			this.indexer.close();
+		if (this.snapshotStore != null)
+			this.snapshotStore.close();
+		notifyOnStop();
+	}
+
+	/**
+	 * 
+	 */
+	protected void restoreTableMapEvents()
+	{
+		//
+		if (this.snapshotStore == null || !(this.context instanceof Context))
+		{
+			return;
+		}
+		final Context c = (Context) this.context;
+		if (c.tableMapEvents.size() > 0 || c.getBinlogFileName() == null || c.getCurrentPosition() == null)
+		{
+			return;
+		}
+
+		//
+		try
+		{
+			final List<TableMapEvent> events = this.snapshotStore.load(c.getBinlogFileName(), c.getCurrentPosition());
+			for (TableMapEvent event : events)
+			{
+				c.tableMapEvents.put(event.getTableId(), event);
+			}
+			LOGGER.info("restored {} table map events, binlog: {}:{}", new Object[] { events.size(),
+			        c.getBinlogFileName(), c.getCurrentPosition() });
+		}
+		catch (IOException e)
+		{
+			LOGGER.error("failed to restore table map events, binlog: " + c.getBinlogFileName(), e);
+		}
+	}
+
+	protected class Context implements BinlogParserContext, BinlogEventListener
+	{
+		//
+		private String binlogFileName;
+		private Long currentPosition;
+		private final TableMapEventCache tableMapEvents = new TableMapEventCache(maxTableMapEvents);
+		private BinlogParserSupport parser = BinlogParserSupport.this; // See setContext()
+
+		// Restart position and duplicate suppression
+		private long restartPosition;
+		private long deliveredPosition;
+		private String deliveredFileName;
+		private boolean inTransaction;
+		private boolean inTableMapGroup;
+
+		// Table map snapshots
+		private boolean tableMapEventsChanged;
+
+		// The last query event, for the boundary type of the indexer
+		private QueryEvent queryEvent;
+
+		/**
+		 * 
+		 */
+		public Context()
+		{
+		}
+
+		public Context(String binlogFileName, Long currentPosition)
+		{
+			this.binlogFileName = binlogFileName;
+			this.currentPosition = currentPosition;
+			this.restartPosition = currentPosition == null ? 0 : currentPosition;
+		}
+
+		/**
+		 * 
+		 */
+		public final String getBinlogFileName()
+		{
+			return binlogFileName;
+		}
+
+		public final void setBinlogFileName(String name)
+		{
+			this.binlogFileName = name;
+		}
+
+		public Long getCurrentPosition()
+		{
+			return currentPosition;
+		}
+
+		public void setCurrentPosition(Long currentPosition)
+		{
+			this.currentPosition = currentPosition;
+		}
+
+		public Long getRestartPosition()
+		{
+			return restartPosition;
+		}
+
+		public long getDeliveredPosition()
+		{
+			return deliveredPosition;
+		}
+
+		public void setDeliveredPosition(long deliveredPosition)
+		{
+			this.deliveredPosition = deliveredPosition;
+			this.deliveredFileName = this.binlogFileName;
+		}
+
+		public final BinlogEventListener getEventListener()
+		{
+			return this;
+		}
+
+		public final TableMapEvent getTableMapEvent(long tableId)
+		{
+			final TableMapEvent r = this.tableMapEvents.get(tableId);
+			final BinlogParserMetrics m = this.parser.metrics;
+			if (m != null)
+				m.onTableMapLookup(r != null);
+			return r;
+		}
+
+		public final Map<Long, TableMapEvent> getTableMapEvents()
+		{
+			return this.tableMapEvents.asMap();
+		}
+
+		/**
+		 * 
+		 */
+		public void onEvents(BinlogEventV4 event)
+		{
+			//
+			if (event == null)
+			{
+				return;
+			}
+			final String previousFileName = this.binlogFileName;
+			if (event.getHeader().getPosition() > 0)
+			{
+				this.currentPosition = event.getHeader().getPosition();
+			}
+			//
+			if (event instanceof QueryEvent)
+			{
+				this.queryEvent = (QueryEvent) event;
+			}
+			if (event instanceof TableMapEvent)
+			{
+				final TableMapEvent tme = (TableMapEvent) event;
+				if (this.tableMapEvents.put(tme.getTableId(), tme) == null)
+					this.tableMapEventsChanged = true;
+			}
+			else if (event instanceof RotateEvent)
+			{
+				final RotateEvent re = (RotateEvent) event;
+				this.binlogFileName = re.getBinlogFileName().toString();
+				this.currentPosition = re.getBinlogPosition();
+				if (!this.binlogFileName.equals(previousFileName))
+				{
+					// The artificial rotate event sent on (re)connection keeps the binlog file
+					if (this.parser.isClearTableMapEventsOnRotate())
+						this.tableMapEvents.clear();
+					this.tableMapEventsChanged = this.tableMapEvents.size() > 0;
+				}
+			}
+
+			// Already delivered before a reconnect
+			final long nextPosition = event.getHeader().getNextPosition();
+			final boolean duplicate = nextPosition > 0 && nextPosition <= this.deliveredPosition
+			        && previousFileName != null && previousFileName.equals(this.deliveredFileName);
+			final long restartPosition = this.restartPosition;
+			final boolean inTransaction = this.inTransaction, inTableMapGroup = this.inTableMapGroup;
+			updateRestartPosition(event, previousFileName);
+			if (duplicate)
+			{
+				return;
+			}
+
+			//
+			final BinlogParserSupport p = this.parser;
+			final BinlogParserMetrics m = p.metrics;
+			final boolean timed = m != null && m.isTimed();
+			final long start = timed ? m.onDispatch() : 0L;
+			final BinlogParseEvent jfr = p.parseEvent;
+			if ((m != null || jfr != null) && event instanceof AbstractRowEvent)
+			{
+				final AbstractRowEvent are = (AbstractRowEvent) event;
+				final TableMapEvent tme = this.tableMapEvents.get(are.getTableId());
+				if (m != null)
+					m.onRows(are, tme);
+				if (jfr != null)
+					jfr.setRows(tme, are.getRowCount());
+			}
+			final ListenerDispatchEvent dispatch =
+			        FlightRecorderSupport.isRecording() ? ListenerDispatchEvent.begin(event.getHeader()) : null;
+			p.dispatchedEvents.lazySet(p.dispatchedEvents.get() + 1);
+			Exception failure = null;
+			try
+			{
+				p.eventListener.onEvents(event);
+			}
+			catch (Exception e)
+			{
+				failure = e;
+			}
+			p.deliveredEvents.lazySet(p.deliveredEvents.get() + 1);
+			if (dispatch != null)
+			{
+				dispatch.end(previousFileName);
+			}
+			if (timed)
+			{
+				m.onListener(System.nanoTime() - start);
+			}
+
+			//
+			if (failure == null)
+			{
+				if (nextPosition > 0)
+				{
+					this.deliveredPosition = nextPosition;
+					this.deliveredFileName = previousFileName;
+					if (p.snapshotStore != null && !(event instanceof RotateEvent))
+						snapshot(nextPosition);
+				}
+				return;
+			}
+			this.restartPosition = restartPosition;
+			this.inTransaction = inTransaction;
+			this.inTableMapGroup = inTableMapGroup;
+			if (failure instanceof CancellationException)
+				return; // Refused by a cancelled or completed publisher, the parser is being stopped
+			if (p.failOnListenerException)
+				throw new NestableRuntimeException("failed to notify binlog event listener, event: " + event, failure);
+			LOGGER.error("failed to notify binlog event listener, event: " + event, failure);
+		}
+
+		/**
+		 * 
+		 */
+		private void snapshot(long position)
+		{
+			final TableMapSnapshotStore store = this.parser.snapshotStore;
+			if (this.tableMapEventsChanged && store.isDue(this.binlogFileName, position))
+			{
+				store.save(this.binlogFileName, position, this.tableMapEvents.asMap().values());
+				this.tableMapEventsChanged = false;
+			}
+		}
+
+		/**
+		 * Returns the boundary type of the event which has just been parsed, see
+		 * {@link BinlogIndexer#getBoundaryType(int, byte[], int, int)}. A query event which has not been
+		 * parsed (e.g. filtered) is not a boundary.
+		 */
+		private int getBoundaryType(BinlogEventV4Header header)
+		{
+			final QueryEvent event = this.queryEvent;
+			this.queryEvent = null;
+			if (header.getEventType() != MySQLConstants.QUERY_EVENT || event == null || event.getHeader() != header)
+			{
+				return header.getEventType();
+			}
+			final byte[] sql = event.getSql().getValue();
+			return BinlogIndexer.getBoundaryType(header.getEventType(), sql, 0, sql.length);
+		}
+
+		/**
+		 * Keeps the restart position of an event which has been skipped, i.e. filtered or of an unknown
+		 * type, from its header only: a skipped row or query event is taken as ending neither a
+		 * statement nor a transaction.
+		 */
+		private void updateRestartPosition(BinlogEventV4Header header)
+		{
+			//
+			if (header.getNextPosition() <= 0)
+			{
+				return; // Artificial event
+			}
+
+			//
+			if (header.getEventType() == MySQLConstants.TABLE_MAP_EVENT)
+			{
+				if (!this.inTableMapGroup)
+				{
+					this.inTableMapGroup = true;
+					this.restartPosition = header.getPosition();
+				}
+				return;
+			}
+			else if (header.getEventType() == MySQLConstants.XID_EVENT)
+			{
+				this.inTransaction = false;
+				this.inTableMapGroup = false;
+			}
+			if (!this.inTransaction && !this.inTableMapGroup)
+			{
+				this.restartPosition = header.getNextPosition();
+			}
+		}
+
+		private void updateRestartPosition(BinlogEventV4 event, String previousFileName)
+		{
+			// The artificial rotate event sent on (re)connection does not end a transaction
+			final BinlogEventV4Header header = event.getHeader();
+			if (event instanceof RotateEvent)
+			{
+				if (header.getNextPosition() > 0 || !this.binlogFileName.equals(previousFileName))
+				{
+					this.restartPosition = ((RotateEvent) event).getBinlogPosition();
+					this.inTransaction = false;
+					this.inTableMapGroup = false;
+				}
+				return;
+			}
+			if (header.getNextPosition() <= 0)
+			{
+				return; // Artificial event
+			}
+
+			//
+			if (event instanceof TableMapEvent)
+			{
+				if (!this.inTableMapGroup)
+				{
+					this.inTableMapGroup = true;
+					this.restartPosition = header.getPosition();
+				}
+				return;
+			}
+			else if (event instanceof AbstractRowEvent)
+			{
+				if ((((AbstractRowEvent) event).getReserved() & MySQLConstants.ROWS_EVENT_STMT_END_F) != 0)
+					this.inTableMapGroup = false;
+			}
+			else if (event instanceof XidEvent)
+			{
+				this.inTransaction = false;
+				this.inTableMapGroup = false;
+			}
+			else if (event instanceof QueryEvent)
+			{
+				final String sql = ((QueryEvent) event).getSql().toString();
+				if ("BEGIN".equalsIgnoreCase(sql))
+				{
+					this.inTransaction = true;
+					this.restartPosition = header.getPosition();
+					return;
+				}
+				else if ("COMMIT".equalsIgnoreCase(sql) || "ROLLBACK".equalsIgnoreCase(sql))
+				{
+					this.inTransaction = false;
+					this.inTableMapGroup = false;
+				}
+			}
+
+			//
+			if (!this.inTransaction && !this.inTableMapGroup)
+			{
+				this.restartPosition = header.getNextPosition();
+			}
+		}
+	}
+
+}
@@ -14,6 +14,7 @@
  */
 package com.google.code.or.binlog.impl;
 
+import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.util.concurrent.TimeUnit;
 
@@ -21,7 +22,6 @@ import org.apache.commons.lang.exception.NestableRuntimeException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import com.google.code.or.binlog.BinlogEventParser;
 import com.google.code.or.binlog.impl.event.BinlogEventV4HeaderImpl;
 import com.google.code.or.common.util.CodecUtils;
 import com.google.code.or.common.util.IOUtils;
@@ -50,6 +50,8 @@ public class FileBasedBinlogParser extends AbstractBinlogParser
 	 */
 	public FileBasedBinlogParser(String binlogFilePath, String binlogFileName, Long startPosition)
 	{
+		this.binlogFilePath = binlogFilePath;
+		this.binlogFileName = binlogFileName;
 		this.startPosition = startPosition;
 		this.context = new Context(binlogFileName, startPosition);
 	}
@@ -105,58 +107,106 @@ public class FileBasedBinlogParser extends AbstractBinlogParser
 		{
 			try
 			{
-				//
-				final BinlogEventV4HeaderImpl header = new BinlogEventV4HeaderImpl();
-				header.setTimestamp(is.readLong(4) * 1000L);
-				header.setEventType(is.readInt(1));
-				header.setServerId(is.readLong(4));
-				header.setEventLength(is.readInt(4));
-				header.setNextPosition(is.readLong(4));
-				header.setFlags(is.readInt(2));
-				header.setTimestampOfReceipt(System.currentTimeMillis());
-				is.setReadLimit((int) (header.getEventLength() - header.getHeaderLength())); // Ensure the event
-				                                                                             // boundary
-				if (isVerbose() && LOGGER.isInfoEnabled())
-				{
-					LOGGER.info("read an event, header: {}", header);
-				}
-
-				//
-				if (this.stopPosition > 0 && header.getPosition() > this.stopPosition)
+				if (parseEvent() == null)
 				{
 					break;
 				}
-
-				// Parse the event body
-				if (this.eventFilter != null && !this.eventFilter.accepts(header, context))
-				{
-					this.defaultParser.parse(is, header, context);
-				}
-				else
-				{
-					BinlogEventParser parser = getEventParser(header.getEventType());
-					if (parser == null)
-						parser = this.defaultParser;
-					parser.parse(is, header, context);
-				}
-
-				// Ensure the packet boundary
-				if (is.available() != 0)
-				{
-					throw new NestableRuntimeException("assertion failed, available: " + is.available()
-					        + ", event type: " + header.getEventType());
-				}
 			}
 			catch (Exception e)
 			{
 				IOUtils.closeQuietly(is);
 				throw e;
 			}
-			finally
+		}
+	}
+
+	/**
+	 * Parses the next event, returns its header or null if it is after the stop position
+	 */
+	protected BinlogEventV4HeaderImpl parseEvent() throws Exception
+	{
+		try
+		{
+			//
+			final BinlogEventV4HeaderImpl header = parseEventHeader(is);
+			if (isVerbose() && LOGGER.isInfoEnabled())
+			{
+				LOGGER.info("read an event, header: {}", header);
+			}
+
+			//
+			if (this.stopPosition > 0 && header.getPosition() > this.stopPosition)
 			{
+				return null;
+			}
+
+			// Parse the event body
+			if (header.getEventType() == MySQLConstants.FORMAT_DESCRIPTION_EVENT)
+			{
+				parseFormatDescriptionEvent(header);
+			}
+			else
+			{
+				is.setReadLimit((int) header.getDataLength() - this.checksumLength); // Ensure the event boundary
+				parseEventBody(is, header);
 				is.setReadLimit(0);
+				is.skip(this.checksumLength);
 			}
+			return header;
+		}
+		finally
+		{
+			is.setReadLimit(0);
+		}
+	}
+
+	/**
+	 * Since 5.6.1 the format description event ends with the checksum algorithm of the file and its
+	 * own checksum, which the server does not report for a file.
+	 */
+	protected void parseFormatDescriptionEvent(BinlogEventV4HeaderImpl header) throws Exception
+	{
+		//
+		final byte[] body = is.readBytes((int) header.getDataLength());
+		int length = body.length;
+		if (detectChecksumLength(body))
+		{
+			length -= ChecksumType.CRC32.getLength();
 		}
+
+		//
+		parseEventBody(new XInputStreamImpl(new ByteArrayInputStream(body, 0, length), Math.max(length, 1)), header);
+	}
+
+	/**
+	 * Returns true if the body of the format description event ends with a checksum trailer
+	 */
+	protected boolean detectChecksumLength(byte[] body)
+	{
+		if (!hasChecksumAlgorithm(body))
+		{
+			return false;
+		}
+		final int algorithm = body[body.length - ChecksumType.CRC32.getLength() - 1];
+		this.checksumLength = algorithm == 1 ? ChecksumType.CRC32.getLength() : ChecksumType.NONE.getLength();
+		return true;
+	}
+
+	protected boolean hasChecksumAlgorithm(byte[] body)
+	{
+		// The server version starts at offset 2, e.g. "5.6.10-log"
+		final int[] version = new int[3];
+		for (int i = 2, n = 0; i < 52 && n < 3; i++)
+		{
+			final int c = body[i];
+			if (c >= '0' && c <= '9')
+				version[n] = version[n] * 10 + (c - '0');
+			else if (c == '.')
+				n++;
+			else
+				break;
+		}
+		return version[0] > 5 || (version[0] == 5 && (version[1] > 6 || (version[1] == 6 && version[2] >= 1)));
 	}
 
 	/**
@@ -176,9 +226,18 @@ public class FileBasedBinlogParser extends AbstractBinlogParser
 			}
 
 			//
-			if (this.startPosition > MySQLConstants.BINLOG_MAGIC.length)
+			long skip = this.startPosition - MySQLConstants.BINLOG_MAGIC.length;
+			if (skip > 0)
 			{
-				is.skip(this.startPosition - MySQLConstants.BINLOG_MAGIC.length);
+				// The checksum algorithm is only known from the format description event
+				final BinlogEventV4HeaderImpl header = parseEventHeader(is);
+				final byte[] body = is.readBytes((int) header.getDataLength());
+				if (header.getEventType() == MySQLConstants.FORMAT_DESCRIPTION_EVENT)
+				{
+					detectChecksumLength(body);
+				}
+				skip -= header.getEventLength();
+				if (skip > 0) is.skip(skip);
 			}
 			return is;
 		}
@@ -0,0 +1,169 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.code.or.binlog.impl;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+import org.apache.commons.lang.exception.NestableRuntimeException;
+
+import com.google.code.or.binlog.BinlogHeaderListener;
+import com.google.code.or.binlog.impl.event.BinlogEventV4HeaderImpl;
+import com.google.code.or.common.util.CodecUtils;
+import com.google.code.or.common.util.MySQLConstants;
+
+/**
+ * Scans the event headers of a binlog file without reading the event bodies: the file is mapped
+ * in windows and the scanner jumps from header to header by the event length. An incomplete event
+ * at the end of the file (e.g. still being written) ends the scan.
+ * 
+ * @author Jingqi Xu
+ */
+public class HeaderScanner
+{
+	//
+	private static final int HEADER_LENGTH = 19;
+	private static final int MIN_WINDOW_SIZE = 1024 * 1024; // Mappings are only released by gc
+
+	//
+	protected final File file;
+	protected long startPosition = MySQLConstants.BINLOG_MAGIC.length;
+	protected long stopPosition = 0;
+	protected int windowSize = 256 * 1024 * 1024;
+
+	/**
+	 * 
+	 */
+	public HeaderScanner(File file)
+	{
+		this.file = file;
+	}
+
+	/**
+	 * 
+	 */
+	public File getFile()
+	{
+		return file;
+	}
+
+	public long getStartPosition()
+	{
+		return startPosition;
+	}
+
+	public void setStartPosition(long startPosition)
+	{
+		this.startPosition = startPosition;
+	}
+
+	public long getStopPosition()
+	{
+		return stopPosition;
+	}
+
+	public void setStopPosition(long stopPosition)
+	{
+		this.stopPosition = stopPosition;
+	}
+
+	public int getWindowSize()
+	{
+		return windowSize;
+	}
+
+	public void setWindowSize(int windowSize)
+	{
+		this.windowSize = windowSize;
+	}
+
+	/**
+	 * Returns the position of the first event which was not passed to the listener
+	 */
+	public long scan(BinlogHeaderListener listener) throws IOException
+	{
+		//
+		final RandomAccessFile raf = new RandomAccessFile(this.file, "r");
+		try
+		{
+			//
+			final FileChannel channel = raf.getChannel();
+			final long size = channel.size();
+			final byte[] magic = new byte[MySQLConstants.BINLOG_MAGIC.length];
+			if (channel.read(ByteBuffer.wrap(magic), 0) < magic.length || !CodecUtils.equals(magic, MySQLConstants.BINLOG_MAGIC))
+			{
+				throw new NestableRuntimeException("invalid binlog magic, file: " + this.file);
+			}
+
+			//
+			final BinlogEventV4HeaderImpl header = new BinlogEventV4HeaderImpl();
+			header.setTimestampOfReceipt(System.currentTimeMillis());
+			final int windowSize = Math.max(this.windowSize, MIN_WINDOW_SIZE);
+			MappedByteBuffer window = null;
+			long base = 0;
+			long position = Math.max(this.startPosition, magic.length);
+			while (position + HEADER_LENGTH <= size)
+			{
+				//
+				if (window == null || position + HEADER_LENGTH > base + window.limit())
+				{
+					base = position;
+					window = channel.map(FileChannel.MapMode.READ_ONLY, base, Math.min(windowSize, size - base));
+					window.order(ByteOrder.LITTLE_ENDIAN);
+				}
+
+				//
+				final int offset = (int) (position - base);
+				final long eventLength = window.getInt(offset + 9) & 0xFFFFFFFFL;
+				if (eventLength < HEADER_LENGTH)
+				{
+					throw new NestableRuntimeException("invalid event length: " + eventLength + ", position: " + position
+					        + ", file: " + this.file);
+				}
+				if (position + eventLength > size)
+				{
+					break; // Incomplete event
+				}
+				if (this.stopPosition > 0 && position > this.stopPosition)
+				{
+					break;
+				}
+
+				//
+				header.setTimestamp((window.getInt(offset) & 0xFFFFFFFFL) * 1000L);
+				header.setEventType(window.get(offset + 4) & 0xFF);
+				header.setServerId(window.getInt(offset + 5) & 0xFFFFFFFFL);
+				header.setEventLength(eventLength);
+				header.setNextPosition(window.getInt(offset + 13) & 0xFFFFFFFFL);
+				header.setFlags(window.getShort(offset + 17) & 0xFFFF);
+				position += eventLength;
+				if (!listener.onHeader(header))
+				{
+					break;
+				}
+			}
+			return position;
+		}
+		finally
+		{
+			raf.close();
+		}
+	}
+}
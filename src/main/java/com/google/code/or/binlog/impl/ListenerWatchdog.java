@@ -0,0 +1,203 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.code.or.binlog.impl;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.code.or.binlog.SlowListenerCallback;
+import com.google.code.or.common.util.XThreadFactory;
+import com.google.code.or.metrics.MetricsRegistry;
+
+/**
+ * Detects a listener call which takes longer than the threshold. The parser thread does not read
+ * the clock for this: the watchdog checks every interval whether the same event is still in the
+ * listener, so the elapsed time is accurate to the interval. A slow call is logged with the stack
+ * trace of the parser thread, counted as listener.slow if the parser has metrics and passed to the
+ * callback once, and logged again when it returns.
+ * 
+ * @author Jingqi Xu
+ */
+public class ListenerWatchdog
+{
+	//
+	private static final Logger LOGGER = LoggerFactory.getLogger(ListenerWatchdog.class);
+
+	//
+	protected long threshold = 10000;
+	protected long interval = 1000;
+	protected SlowListenerCallback callback;
+	protected volatile AbstractBinlogParser parser;
+	protected ScheduledExecutorService scheduler;
+	private final ReentrantLock lock = new ReentrantLock(false);
+
+	// The call being watched, only accessed by the watchdog thread
+	private AbstractBinlogParser watched;
+	private long dispatched = -1;
+	private long since;
+	private boolean reported;
+
+	/**
+	 * 
+	 */
+	public void start()
+	{
+		this.lock.lock();
+		try
+		{
+			//
+			if (this.scheduler != null)
+			{
+				return;
+			}
+
+			//
+			this.scheduler = Executors.newSingleThreadScheduledExecutor(new XThreadFactory("listener-watchdog", true));
+			this.scheduler.scheduleWithFixedDelay(new Runnable()
+			{
+				public void run()
+				{
+					try
+					{
+						check();
+					}
+					catch (Exception e)
+					{
+						LOGGER.error("failed to check the binlog event listener", e);
+					}
+				}
+			}, this.interval, this.interval, TimeUnit.MILLISECONDS);
+		}
+		finally
+		{
+			this.lock.unlock();
+		}
+	}
+
+	public void stop()
+	{
+		this.lock.lock();
+		try
+		{
+			if (this.scheduler != null)
+			{
+				this.scheduler.shutdownNow();
+				this.scheduler = null;
+			}
+		}
+		finally
+		{
+			this.lock.unlock();
+		}
+	}
+
+	/**
+	 * 
+	 */
+	public long getThreshold()
+	{
+		return threshold;
+	}
+
+	public void setThreshold(long threshold)
+	{
+		this.threshold = threshold;
+	}
+
+	public long getInterval()
+	{
+		return interval;
+	}
+
+	public void setInterval(long interval)
+	{
+		this.interval = interval;
+	}
+
+	public SlowListenerCallback getCallback()
+	{
+		return callback;
+	}
+
+	public void setCallback(SlowListenerCallback callback)
+	{
+		this.callback = callback;
+	}
+
+	/**
+	 * The parser to watch, replaced by OpenReplicator on reconnection
+	 */
+	public AbstractBinlogParser getParser()
+	{
+		return parser;
+	}
+
+	public void setParser(AbstractBinlogParser parser)
+	{
+		this.parser = parser;
+	}
+
+	/**
+	 * 
+	 */
+	protected void check()
+	{
+		//
+		final AbstractBinlogParser p = this.parser;
+		final long now = System.nanoTime();
+		final long delivered = p == null ? 0 : p.getDeliveredEvents();
+		final long dispatched = delivered + (p == null ? 0 : p.getEventsInFlight());
+		if (p != this.watched || dispatched != this.dispatched || delivered == dispatched)
+		{
+			if (this.reported)
+			{
+				final long elapsed = TimeUnit.NANOSECONDS.toMillis(now - this.since);
+				LOGGER.warn("slow binlog event listener returned after about {} ms", elapsed);
+			}
+			this.watched = p;
+			this.dispatched = dispatched;
+			this.since = now;
+			this.reported = false;
+			return;
+		}
+
+		//
+		final long elapsed = TimeUnit.NANOSECONDS.toMillis(now - this.since);
+		if (this.reported || elapsed < this.threshold)
+		{
+			return;
+		}
+		this.reported = true;
+		final StackTraceElement[] stackTrace = p.getWorkerStackTrace();
+		final Throwable t = new Throwable("binlog event listener stack trace");
+		t.setStackTrace(stackTrace);
+		LOGGER.warn("binlog event listener has been running for about " + elapsed + " ms, binlog: "
+		        + p.getContext().getBinlogFileName() + ":" + p.getContext().getCurrentPosition(), t);
+		final MetricsRegistry registry = p.getMetricsRegistry();
+		if (registry != null)
+		{
+			registry.getCounter("listener.slow").increment();
+		}
+		if (this.callback != null)
+		{
+			this.callback.onSlowListener(p, elapsed, stackTrace);
+		}
+	}
+}
@@ -0,0 +1,107 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.code.or.binlog.impl;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.lang.exception.NestableRuntimeException;
+
+import com.google.code.or.binlog.BinlogEventV4Header;
+import com.google.code.or.binlog.impl.event.BinlogEventV4HeaderImpl;
+import com.google.code.or.io.XInputStream;
+import com.google.code.or.io.impl.XInputStreamImpl;
+import com.google.code.or.net.TransportException;
+import com.google.code.or.net.impl.packet.EOFPacket;
+import com.google.code.or.net.impl.packet.ErrorPacket;
+import com.google.code.or.net.impl.packet.OKPacket;
+import com.google.code.or.net.impl.packet.RawPacket;
+
+/**
+ * A binlog parser without a worker thread: the caller pushes the bodies of the binlog dump packets,
+ * e.g. framed from a non-blocking channel, through {@link #parse(byte[], long)}.
+ * 
+ * @author Jingqi Xu
+ */
+public class PacketBasedBinlogParser extends BinlogParserSupport
+{
+
+	/**
+	 * 
+	 */
+	public PacketBasedBinlogParser(String binlogFileName, Long currentPosition)
+	{
+		this.context = new Context(binlogFileName, currentPosition);
+	}
+
+	@Override
+	protected void doStart() throws Exception
+	{
+		// NOP
+	}
+
+	@Override
+	protected void doStop(long timeout, TimeUnit unit) throws Exception
+	{
+		// NOP
+	}
+
+	/**
+	 * 
+	 */
+	public String getBinlogFileName()
+	{
+		return context.getBinlogFileName();
+	}
+
+	public Long getCurrentPosition()
+	{
+		return context.getCurrentPosition();
+	}
+
+	public Long getRestartPosition()
+	{
+		return context.getRestartPosition();
+	}
+
+	/**
+	 * Parses the event carried by a binlog dump packet, the body starts with the packet marker.
+	 */
+	public BinlogEventV4Header parse(byte[] body, long timestampOfReceipt) throws IOException
+	{
+		//
+		if (body[0] != OKPacket.PACKET_MARKER)
+		{
+			final RawPacket packet = new RawPacket();
+			packet.setLength(body.length);
+			packet.setPacketBody(body);
+			if (body[0] == ErrorPacket.PACKET_MARKER)
+				throw new TransportException(ErrorPacket.valueOf(packet));
+			else if (body[0] == EOFPacket.PACKET_MARKER)
+				throw new NestableRuntimeException(EOFPacket.valueOf(packet).toString());
+			else
+				throw new NestableRuntimeException("assertion failed, invalid packet marker: " + body[0]);
+		}
+
+		//
+		final XInputStream is = new XInputStreamImpl(new ByteArrayInputStream(body, 1, body.length - 1), body.length);
+		final BinlogEventV4HeaderImpl header = parseEventHeader(is);
+		header.setTimestampOfReceipt(timestampOfReceipt);
+		is.setReadLimit((int) header.getDataLength() - this.getChecksumLength());
+		parseEventBody(is, header);
+		return header;
+	}
+}
@@ -0,0 +1,121 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.code.or.binlog.impl;
+
+import com.google.code.or.binlog.impl.event.BinlogEventV4HeaderImpl;
+import com.google.code.or.common.util.IOUtils;
+import com.google.code.or.common.util.MySQLConstants;
+import com.google.code.or.relay.RelayLog;
+
+/**
+ * Parses the segments of a {@link RelayLog} as they are written, the context follows the master's
+ * binlog positions of the spooled events.
+ * 
+ * @author Jingqi Xu
+ */
+public class RelayLogParser extends FileBasedBinlogParser
+{
+	//
+	protected final RelayLog relayLog;
+	protected long segment;
+	protected long offset;
+	protected long pollInterval = 100;
+
+	/**
+	 * 
+	 */
+	public RelayLogParser(RelayLog relayLog, long segment, String binlogFileName, Long binlogPosition)
+	{
+		super(relayLog.getDirectory().getPath(), RelayLog.getSegmentFile(relayLog.getDirectory(), segment).getName(),
+		        (long) MySQLConstants.BINLOG_MAGIC.length);
+		this.relayLog = relayLog;
+		this.segment = segment;
+		this.context = new Context(binlogFileName, binlogPosition);
+	}
+
+	@Override
+	protected void doStart() throws Exception
+	{
+		this.relayLog.setReadSegment(this.segment);
+		super.doStart();
+		this.offset = MySQLConstants.BINLOG_MAGIC.length;
+	}
+
+	/**
+	 * 
+	 */
+	public RelayLog getRelayLog()
+	{
+		return relayLog;
+	}
+
+	public long getSegment()
+	{
+		return segment;
+	}
+
+	public long getPollInterval()
+	{
+		return pollInterval;
+	}
+
+	public void setPollInterval(long pollInterval)
+	{
+		this.pollInterval = pollInterval;
+	}
+
+	/**
+	 * 
+	 */
+	@Override
+	protected void doParse() throws Exception
+	{
+		try
+		{
+			while (isRunning())
+			{
+				// The next segment is checked first, a segment is complete once it is followed
+				final Long next = this.relayLog.getNextSegment(this.segment);
+				if (this.offset < this.relayLog.getCommittedLength(this.segment))
+				{
+					final BinlogEventV4HeaderImpl header = parseEvent();
+					if (header == null)
+					{
+						break;
+					}
+					this.offset += header.getEventLength();
+				}
+				else if (next != null)
+				{
+					IOUtils.closeQuietly(this.is);
+					this.segment = next;
+					this.binlogFileName = RelayLog.getSegmentFile(this.relayLog.getDirectory(), next).getName();
+					this.relayLog.setReadSegment(next);
+					this.is = open(this.binlogFilePath + "/" + this.binlogFileName);
+					this.offset = MySQLConstants.BINLOG_MAGIC.length;
+				}
+				else
+				{
+					this.relayLog.await(this.segment, this.offset, this.pollInterval);
+				}
+			}
+		}
+		catch (Exception e)
+		{
+			IOUtils.closeQuietly(this.is);
+			throw e;
+		}
+	}
+}
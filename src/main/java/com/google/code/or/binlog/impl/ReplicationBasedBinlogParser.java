@@ -20,7 +20,6 @@ import org.apache.commons.lang.exception.NestableRuntimeException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import com.google.code.or.binlog.BinlogEventParser;
 import com.google.code.or.binlog.impl.event.BinlogEventV4HeaderImpl;
 import com.google.code.or.io.XInputStream;
 import com.google.code.or.net.Transport;
@@ -120,14 +119,7 @@ public class ReplicationBasedBinlogParser extends AbstractBinlogParser
 				}
 
 				// Parse the event header
-				final BinlogEventV4HeaderImpl header = new BinlogEventV4HeaderImpl();
-				header.setTimestamp(is.readLong(4) * 1000L);
-				header.setEventType(is.readInt(1));
-				header.setServerId(is.readLong(4));
-				header.setEventLength(is.readInt(4));
-				header.setNextPosition(is.readLong(4));
-				header.setFlags(is.readInt(2));
-				header.setTimestampOfReceipt(System.currentTimeMillis());
+				final BinlogEventV4HeaderImpl header = parseEventHeader(is);
 				if (isVerbose() && LOGGER.isInfoEnabled())
 				{
 					LOGGER.info("received an event, sequence: {}, header: {}", packetSequence, header);
@@ -135,24 +127,7 @@ public class ReplicationBasedBinlogParser extends AbstractBinlogParser
 				// Ensure the event data boundary
 				is.setReadLimit((int) header.getDataLength() - this.getChecksumLength());
 				// Parse the event body
-				if (this.eventFilter != null && !this.eventFilter.accepts(header, context))
-				{
-					this.defaultParser.parse(is, header, context);
-				}
-				else
-				{
-					BinlogEventParser parser = getEventParser(header.getEventType());
-					if (parser == null)
-						parser = this.defaultParser;
-					parser.parse(is, header, context);
-
-				}
-				// Ensure the event data boundary
-				if (is.available() != 0)
-				{
-					throw new NestableRuntimeException("assertion failed, available: " + is.available()
-					        + ", event type: " + header.getEventType());
-				}
+				parseEventBody(is, header);
 			}
 			finally
 			{
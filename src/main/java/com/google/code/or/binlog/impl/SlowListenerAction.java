@@ -0,0 +1,39 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.code.or.binlog.impl;
+
+/**
+ * What OpenReplicator does once the listener has been blocked for longer than the slow listener
+ * threshold, in addition to logging it and notifying the {@link com.google.code.or.binlog.SlowListenerCallback}.
+ * 
+ * The blocked call itself is never interrupted or abandoned, a listener that must be unblocked can
+ * do it from the callback.
+ * 
+ * @author Jingqi Xu
+ */
+public enum SlowListenerAction
+{
+	/**
+	 * Only log the stack trace of the listener
+	 */
+	LOG,
+
+	/**
+	 * Pause the parser, no further event is passed to the listener until it is resumed. Like any
+	 * action it takes effect only once the blocked call has returned: the parser checks the pause
+	 * before parsing its next event, it cannot stop a listener which never returns.
+	 */
+	PAUSE;
+}
@@ -0,0 +1,447 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.code.or.binlog.impl;
+
+import java.util.AbstractCollection;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+import com.google.code.or.binlog.impl.event.TableMapEvent;
+
+/**
+ * An open addressing tableId to TableMapEvent map with LRU eviction. Row events nearly always
+ * follow their TableMapEvent, so the last looked up entry is checked before probing.
+ * 
+ * Not thread safe, it is only accessed by the thread parsing the binlog.
+ * 
+ * @author Jingqi Xu
+ */
+public final class TableMapEventCache
+{
+	//
+	private static final int NIL = -1;
+	private static final int INITIAL_CAPACITY = 16;
+
+	//
+	private int maxSize;
+	private int size;
+	private int mask;
+	private long[] keys;
+	private TableMapEvent[] values;
+	private int[] before; // The less recently used slot
+	private int[] after; // The more recently used slot
+	private int eldest = NIL;
+	private int youngest = NIL;
+
+	//
+	private long lastKey;
+	private TableMapEvent lastValue;
+	private final View view = new View();
+
+	/**
+	 * 
+	 */
+	public TableMapEventCache(int maxSize)
+	{
+		if (maxSize <= 0)
+		{
+			throw new IllegalArgumentException("invalid max size: " + maxSize);
+		}
+		this.maxSize = maxSize;
+		allocate(INITIAL_CAPACITY);
+	}
+
+	/**
+	 * 
+	 */
+	public int size()
+	{
+		return size;
+	}
+
+	public int getMaxSize()
+	{
+		return maxSize;
+	}
+
+	public void setMaxSize(int maxSize)
+	{
+		if (maxSize <= 0)
+		{
+			throw new IllegalArgumentException("invalid max size: " + maxSize);
+		}
+		this.maxSize = maxSize;
+		while (this.size > this.maxSize)
+		{
+			removeSlot(this.eldest);
+		}
+	}
+
+	/**
+	 * 
+	 */
+	public TableMapEvent get(long tableId)
+	{
+		//
+		if (this.lastValue != null && this.lastKey == tableId)
+		{
+			return this.lastValue;
+		}
+
+		//
+		final int slot = find(tableId);
+		if (slot == NIL)
+		{
+			return null;
+		}
+		touch(slot);
+		this.lastKey = tableId;
+		this.lastValue = this.values[slot];
+		return this.lastValue;
+	}
+
+	public TableMapEvent put(long tableId, TableMapEvent event)
+	{
+		//
+		if (event == null)
+		{
+			throw new IllegalArgumentException("null event, table id: " + tableId);
+		}
+
+		//
+		int slot = find(tableId);
+		if (slot != NIL)
+		{
+			final TableMapEvent r = this.values[slot];
+			this.values[slot] = event;
+			touch(slot);
+			this.lastKey = tableId;
+			this.lastValue = event;
+			return r;
+		}
+
+		//
+		if (this.size >= this.maxSize)
+		{
+			removeSlot(this.eldest);
+		}
+		if ((this.size + 1) * 2 > this.keys.length)
+		{
+			resize(this.keys.length * 2);
+		}
+
+		//
+		slot = home(tableId);
+		while (this.values[slot] != null)
+		{
+			slot = (slot + 1) & this.mask;
+		}
+		this.keys[slot] = tableId;
+		this.values[slot] = event;
+		link(slot);
+		this.size++;
+		this.lastKey = tableId;
+		this.lastValue = event;
+		return null;
+	}
+
+	public TableMapEvent remove(long tableId)
+	{
+		final int slot = find(tableId);
+		if (slot == NIL)
+		{
+			return null;
+		}
+		final TableMapEvent r = this.values[slot];
+		removeSlot(slot);
+		return r;
+	}
+
+	public void clear()
+	{
+		if (this.size > 0 || this.keys.length > INITIAL_CAPACITY)
+		{
+			allocate(INITIAL_CAPACITY);
+		}
+	}
+
+	/**
+	 * Returns a read only view of the entries from the least recently used, it reflects the later
+	 * changes and its lookups do not change the LRU order
+	 */
+	public Map<Long, TableMapEvent> asMap()
+	{
+		return this.view;
+	}
+
+	/**
+	 * 
+	 */
+	private int home(long key)
+	{
+		final long h = key * 0x9E3779B97F4A7C15L;
+		return (int) (h ^ (h >>> 32)) & this.mask;
+	}
+
+	private int find(long key)
+	{
+		for (int slot = home(key); this.values[slot] != null; slot = (slot + 1) & this.mask)
+		{
+			if (this.keys[slot] == key)
+			{
+				return slot;
+			}
+		}
+		return NIL;
+	}
+
+	private void allocate(int capacity)
+	{
+		this.keys = new long[capacity];
+		this.values = new TableMapEvent[capacity];
+		this.before = new int[capacity];
+		this.after = new int[capacity];
+		this.mask = capacity - 1;
+		this.size = 0;
+		this.eldest = NIL;
+		this.youngest = NIL;
+		this.lastValue = null;
+	}
+
+	private void resize(int capacity)
+	{
+		//
+		final long[] oldKeys = this.keys;
+		final TableMapEvent[] oldValues = this.values;
+		final int[] oldAfter = this.after;
+		final int oldEldest = this.eldest;
+		final long key = this.lastKey;
+		final TableMapEvent value = this.lastValue;
+
+		// Re-insert from the eldest so that the LRU order is kept
+		allocate(capacity);
+		for (int i = oldEldest; i != NIL; i = oldAfter[i])
+		{
+			int slot = home(oldKeys[i]);
+			while (this.values[slot] != null)
+			{
+				slot = (slot + 1) & this.mask;
+			}
+			this.keys[slot] = oldKeys[i];
+			this.values[slot] = oldValues[i];
+			link(slot);
+			this.size++;
+		}
+		this.lastKey = key;
+		this.lastValue = value;
+	}
+
+	private void link(int slot)
+	{
+		this.before[slot] = this.youngest;
+		this.after[slot] = NIL;
+		if (this.youngest != NIL)
+			this.after[this.youngest] = slot;
+		else
+			this.eldest = slot;
+		this.youngest = slot;
+	}
+
+	private void unlink(int slot)
+	{
+		final int b = this.before[slot], a = this.after[slot];
+		if (b != NIL)
+			this.after[b] = a;
+		else
+			this.eldest = a;
+		if (a != NIL)
+			this.before[a] = b;
+		else
+			this.youngest = b;
+	}
+
+	private void touch(int slot)
+	{
+		if (slot != this.youngest)
+		{
+			unlink(slot);
+			link(slot);
+		}
+	}
+
+	private Long keyOf(Object key)
+	{
+		return key instanceof Long ? (Long) key : null;
+	}
+
+	private void removeSlot(int slot)
+	{
+		//
+		if (this.lastValue != null && this.lastKey == this.keys[slot])
+		{
+			this.lastValue = null;
+		}
+		unlink(slot);
+		this.values[slot] = null;
+		this.size--;
+
+		// Shift back the entries of the probe sequence, no tombstones
+		int hole = slot;
+		for (int i = (slot + 1) & this.mask; this.values[i] != null; i = (i + 1) & this.mask)
+		{
+			//
+			final int home = home(this.keys[i]);
+			final boolean reachable = hole <= i ? (home <= hole || home > i) : (home <= hole && home > i);
+			if (!reachable)
+			{
+				continue;
+			}
+
+			//
+			this.keys[hole] = this.keys[i];
+			this.values[hole] = this.values[i];
+			this.before[hole] = this.before[i];
+			this.after[hole] = this.after[i];
+			if (this.before[hole] != NIL)
+				this.after[this.before[hole]] = hole;
+			else
+				this.eldest = hole;
+			if (this.after[hole] != NIL)
+				this.before[this.after[hole]] = hole;
+			else
+				this.youngest = hole;
+			this.values[i] = null;
+			hole = i;
+		}
+	}
+
+	/**
+	 * 
+	 */
+	private final class View extends AbstractMap<Long, TableMapEvent>
+	{
+		//
+		private final Set<Map.Entry<Long, TableMapEvent>> entries = new AbstractSet<Map.Entry<Long, TableMapEvent>>()
+		{
+			@Override
+			public int size()
+			{
+				return size;
+			}
+
+			@Override
+			public Iterator<Map.Entry<Long, TableMapEvent>> iterator()
+			{
+				return new SlotIterator<Map.Entry<Long, TableMapEvent>>()
+				{
+					@Override
+					protected Map.Entry<Long, TableMapEvent> get(int slot)
+					{
+						return new AbstractMap.SimpleImmutableEntry<Long, TableMapEvent>(keys[slot],
+						        TableMapEventCache.this.values[slot]);
+					}
+				};
+			}
+		};
+		private final Collection<TableMapEvent> values = new AbstractCollection<TableMapEvent>()
+		{
+			@Override
+			public int size()
+			{
+				return size;
+			}
+
+			@Override
+			public Iterator<TableMapEvent> iterator()
+			{
+				return new SlotIterator<TableMapEvent>()
+				{
+					@Override
+					protected TableMapEvent get(int slot)
+					{
+						return TableMapEventCache.this.values[slot];
+					}
+				};
+			}
+		};
+
+		@Override
+		public int size()
+		{
+			return size;
+		}
+
+		@Override
+		public boolean containsKey(Object key)
+		{
+			final Long k = keyOf(key);
+			return k != null && find(k) != NIL;
+		}
+
+		@Override
+		public TableMapEvent get(Object key)
+		{
+			final Long k = keyOf(key);
+			final int slot = k == null ? NIL : find(k);
+			return slot == NIL ? null : TableMapEventCache.this.values[slot];
+		}
+
+		@Override
+		public Set<Map.Entry<Long, TableMapEvent>> entrySet()
+		{
+			return this.entries;
+		}
+
+		@Override
+		public Collection<TableMapEvent> values()
+		{
+			return this.values;
+		}
+	}
+
+	private abstract class SlotIterator<T> implements Iterator<T>
+	{
+		//
+		private int next = eldest;
+
+		protected abstract T get(int slot);
+
+		public boolean hasNext()
+		{
+			return this.next != NIL;
+		}
+
+		public T next()
+		{
+			if (this.next == NIL)
+			{
+				throw new NoSuchElementException();
+			}
+			final int slot = this.next;
+			this.next = after[slot];
+			return get(slot);
+		}
+
+		public void remove()
+		{
+			throw new UnsupportedOperationException();
+		}
+	}
+}
@@ -43,4 +43,9 @@ public abstract class AbstractRowEvent extends AbstractBinlogEventV4 {
 	public void setReserved(int reserved) {
 		this.reserved = reserved;
 	}
+	
+	/**
+	 * The number of rows, a before/after pair of an update counts as one
+	 */
+	public abstract int getRowCount();
 }
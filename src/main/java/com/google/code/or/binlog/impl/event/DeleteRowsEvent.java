@@ -91,4 +91,9 @@ public final class DeleteRowsEvent extends AbstractRowEvent {
 	public void setRows(List<Row> rows) {
 		this.rows = rows;
 	}
+
+	@Override
+	public int getRowCount() {
+		return rows == null ? 0 : rows.size();
+	}
 }
@@ -0,0 +1,110 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.code.or.binlog.impl.event;
+
+import org.apache.commons.lang.builder.ToStringBuilder;
+import org.apache.commons.lang.builder.ToStringStyle;
+
+import com.google.code.or.binlog.BinlogEventV4Header;
+import com.google.code.or.common.util.MySQLConstants;
+
+/**
+ * Written before each transaction when gtid_mode is on, identifies the transaction as sourceId:gno.
+ * Since 5.7 it also carries the logical clock (lastCommitted, sequenceNumber) of the parallel applier.
+ * 
+ * @author Jingqi Xu
+ */
+public final class GtidEvent extends AbstractBinlogEventV4 {
+	//
+	public static final int EVENT_TYPE = MySQLConstants.GTID_LOG_EVENT;
+	
+	//
+	private int commitFlag;
+	private String sourceId;
+	private long gno;
+	private long lastCommitted;
+	private long sequenceNumber;
+	
+	/**
+	 * 
+	 */
+	public GtidEvent() {
+	}
+	
+	public GtidEvent(BinlogEventV4Header header) {
+		this.header = header;
+	}
+	
+	/**
+	 * 
+	 */
+	@Override
+	public String toString() {
+		return new ToStringBuilder(this, ToStringStyle.SHORT_PREFIX_STYLE)
+		.append("header", header)
+		.append("commitFlag", commitFlag)
+		.append("sourceId", sourceId)
+		.append("gno", gno)
+		.append("lastCommitted", lastCommitted)
+		.append("sequenceNumber", sequenceNumber).toString();
+	}
+	
+	/**
+	 * 
+	 */
+	public String getGtid() {
+		return sourceId + ":" + gno;
+	}
+	
+	public int getCommitFlag() {
+		return commitFlag;
+	}
+
+	public void setCommitFlag(int commitFlag) {
+		this.commitFlag = commitFlag;
+	}
+
+	public String getSourceId() {
+		return sourceId;
+	}
+
+	public void setSourceId(String sourceId) {
+		this.sourceId = sourceId;
+	}
+
+	public long getGno() {
+		return gno;
+	}
+
+	public void setGno(long gno) {
+		this.gno = gno;
+	}
+
+	public long getLastCommitted() {
+		return lastCommitted;
+	}
+
+	public void setLastCommitted(long lastCommitted) {
+		this.lastCommitted = lastCommitted;
+	}
+
+	public long getSequenceNumber() {
+		return sequenceNumber;
+	}
+
+	public void setSequenceNumber(long sequenceNumber) {
+		this.sequenceNumber = sequenceNumber;
+	}
+}
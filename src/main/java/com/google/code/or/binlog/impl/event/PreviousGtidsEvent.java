@@ -0,0 +1,66 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.code.or.binlog.impl.event;
+
+import org.apache.commons.lang.builder.ToStringBuilder;
+import org.apache.commons.lang.builder.ToStringStyle;
+
+import com.google.code.or.binlog.BinlogEventV4Header;
+import com.google.code.or.common.glossary.GtidSet;
+import com.google.code.or.common.util.MySQLConstants;
+
+/**
+ * Written at the beginning of each binlog file, the set of the transactions in all previous files.
+ * 
+ * @author Jingqi Xu
+ */
+public final class PreviousGtidsEvent extends AbstractBinlogEventV4 {
+	//
+	public static final int EVENT_TYPE = MySQLConstants.PREVIOUS_GTIDS_LOG_EVENT;
+	
+	//
+	private GtidSet gtidSet;
+	
+	/**
+	 * 
+	 */
+	public PreviousGtidsEvent() {
+	}
+	
+	public PreviousGtidsEvent(BinlogEventV4Header header) {
+		this.header = header;
+	}
+	
+	/**
+	 * 
+	 */
+	@Override
+	public String toString() {
+		return new ToStringBuilder(this, ToStringStyle.SHORT_PREFIX_STYLE)
+		.append("header", header)
+		.append("gtidSet", gtidSet).toString();
+	}
+	
+	/**
+	 * 
+	 */
+	public GtidSet getGtidSet() {
+		return gtidSet;
+	}
+
+	public void setGtidSet(GtidSet gtidSet) {
+		this.gtidSet = gtidSet;
+	}
+}
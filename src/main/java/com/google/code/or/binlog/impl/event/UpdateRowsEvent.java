@@ -102,4 +102,9 @@ public final class UpdateRowsEvent extends AbstractRowEvent {
 	public void setRows(List<Pair<Row>> rows) {
 		this.rows = rows;
 	}
+
+	@Override
+	public int getRowCount() {
+		return rows == null ? 0 : rows.size();
+	}
 }
@@ -122,4 +122,9 @@ public final class UpdateRowsEventV2 extends AbstractRowEvent {
 	public void setRows(List<Pair<Row>> rows) {
 		this.rows = rows;
 	}
+
+	@Override
+	public int getRowCount() {
+		return rows == null ? 0 : rows.size();
+	}
 }
@@ -111,4 +111,9 @@ public final class WriteRowsEventV2 extends AbstractRowEvent {
 	public void setRows(List<Row> rows) {
 		this.rows = rows;
 	}
+
+	@Override
+	public int getRowCount() {
+		return rows == null ? 0 : rows.size();
+	}
 }
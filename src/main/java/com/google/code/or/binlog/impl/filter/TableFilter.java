@@ -0,0 +1,180 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.code.or.binlog.impl.filter;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Pattern;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.code.or.binlog.BinlogEventV4Header;
+import com.google.code.or.binlog.BinlogParserContext;
+import com.google.code.or.binlog.BinlogRowEventFilter;
+import com.google.code.or.binlog.impl.event.TableMapEvent;
+import com.google.code.or.common.util.LongHashSet;
+
+/**
+ * Accepts the row events of the tables matching the include/exclude patterns. Database patterns
+ * are matched against the database name, table patterns against "database.table". An empty
+ * include list includes everything, excludes win over includes.
+ * 
+ * The patterns are evaluated once per table id, the verdicts are cached until the binlog file
+ * changes (table ids are only unique within a server's lifetime).
+ * 
+ * @author Jingqi Xu
+ */
+public class TableFilter implements BinlogRowEventFilter {
+	//
+	private static final Logger LOGGER = LoggerFactory.getLogger(TableFilter.class);
+	
+	//
+	private boolean verbose = true;
+	private final List<Pattern> includeDatabases = new ArrayList<Pattern>();
+	private final List<Pattern> excludeDatabases = new ArrayList<Pattern>();
+	private final List<Pattern> includeTables = new ArrayList<Pattern>();
+	private final List<Pattern> excludeTables = new ArrayList<Pattern>();
+	
+	//
+	private String binlogFileName;
+	private final LongHashSet accepted = new LongHashSet();
+	private final LongHashSet rejected = new LongHashSet();
+	
+	/**
+	 * 
+	 */
+	public boolean isVerbose() {
+		return verbose;
+	}
+
+	public void setVerbose(boolean verbose) {
+		this.verbose = verbose;
+	}
+	
+	public void setIncludeDatabases(List<String> patterns) {
+		compile(this.includeDatabases, patterns);
+	}
+	
+	public void setExcludeDatabases(List<String> patterns) {
+		compile(this.excludeDatabases, patterns);
+	}
+	
+	public void setIncludeTables(List<String> patterns) {
+		compile(this.includeTables, patterns);
+	}
+	
+	public void setExcludeTables(List<String> patterns) {
+		compile(this.excludeTables, patterns);
+	}
+	
+	public void addIncludeDatabase(String pattern) {
+		add(this.includeDatabases, pattern);
+	}
+	
+	public void addExcludeDatabase(String pattern) {
+		add(this.excludeDatabases, pattern);
+	}
+	
+	public void addIncludeTable(String pattern) {
+		add(this.includeTables, pattern);
+	}
+	
+	public void addExcludeTable(String pattern) {
+		add(this.excludeTables, pattern);
+	}
+	
+	/**
+	 * 
+	 */
+	public boolean accepts(BinlogEventV4Header header, BinlogParserContext context, TableMapEvent event) {
+		//
+		if(event == null) {
+			if(isVerbose() && LOGGER.isWarnEnabled()) {
+				LOGGER.warn("failed to find TableMapEvent, header: {}", header);
+			}
+			return false;
+		}
+		
+		//
+		final String name = context.getBinlogFileName();
+		if(name != this.binlogFileName) {
+			if(name == null || !name.equals(this.binlogFileName)) {
+				this.accepted.clear();
+				this.rejected.clear();
+			}
+			this.binlogFileName = name;
+		}
+		
+		//
+		final long tableId = event.getTableId();
+		if(this.accepted.contains(tableId)) {
+			return true;
+		} else if(this.rejected.contains(tableId)) {
+			return false;
+		}
+		
+		//
+		final boolean r = accepts(event.getDatabaseName().toString(), event.getTableName().toString());
+		if(r) this.accepted.add(tableId); else this.rejected.add(tableId);
+		return r;
+	}
+	
+	public boolean accepts(String database, String table) {
+		//
+		if(!this.includeDatabases.isEmpty() && !matches(this.includeDatabases, database)) {
+			return false;
+		}
+		if(matches(this.excludeDatabases, database)) {
+			return false;
+		}
+		
+		//
+		final String qualified = database + "." + table;
+		if(!this.includeTables.isEmpty() && !matches(this.includeTables, qualified)) {
+			return false;
+		}
+		return !matches(this.excludeTables, qualified);
+	}
+	
+	/**
+	 * 
+	 */
+	private void compile(List<Pattern> target, List<String> patterns) {
+		target.clear();
+		if(patterns != null) {
+			for(String pattern : patterns) {
+				target.add(Pattern.compile(pattern));
+			}
+		}
+		this.accepted.clear();
+		this.rejected.clear();
+	}
+	
+	private void add(List<Pattern> target, String pattern) {
+		target.add(Pattern.compile(pattern));
+		this.accepted.clear();
+		this.rejected.clear();
+	}
+	
+	private static boolean matches(List<Pattern> patterns, String value) {
+		for(int i = 0; i < patterns.size(); i++) {
+			if(patterns.get(i).matcher(value).matches()) {
+				return true;
+			}
+		}
+		return false;
+	}
+}
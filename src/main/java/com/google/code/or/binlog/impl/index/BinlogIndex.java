@@ -0,0 +1,182 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.code.or.binlog.impl.index;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+
+/**
+ * A sparse timestamp to position index of a binlog file, see {@link BinlogIndexer}. Each entry is
+ * the start position of an event, its event type and the greatest timestamp (in seconds) of the
+ * indexed events before it, except the first entry which has the timestamp of its own event. The
+ * timestamps of the entries never decrease although the ones of the events may (they are the start
+ * times of the statements), so a binary search finds the position from which no event older than
+ * the target is skipped.
+ * 
+ * @author Jingqi Xu
+ */
+public final class BinlogIndex
+{
+	//
+	static final int MAGIC = 0x4F524249; // "ORBI"
+	static final int VERSION = 1;
+	static final int HEADER_LENGTH = 5;
+	static final int ENTRY_LENGTH = 9;
+
+	//
+	private int size;
+	private long[] timestamps;
+	private long[] positions;
+	private byte[] eventTypes;
+
+	/**
+	 * 
+	 */
+	BinlogIndex(int capacity)
+	{
+		this.timestamps = new long[Math.max(capacity, 4)];
+		this.positions = new long[Math.max(capacity, 4)];
+		this.eventTypes = new byte[Math.max(capacity, 4)];
+	}
+
+	/**
+	 * Returns an empty index if the file does not exist, ignores a torn last entry
+	 */
+	public static BinlogIndex load(File file) throws IOException
+	{
+		//
+		if (!file.exists())
+		{
+			return new BinlogIndex(0);
+		}
+
+		//
+		final long length = file.length();
+		final BinlogIndex r = new BinlogIndex((int) Math.max(0, (length - HEADER_LENGTH) / ENTRY_LENGTH));
+		final DataInputStream is = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 64 * 1024));
+		try
+		{
+			//
+			if (length < HEADER_LENGTH || is.readInt() != MAGIC || is.readByte() != VERSION)
+			{
+				throw new IOException("invalid binlog index: " + file);
+			}
+
+			//
+			final byte[] entry = new byte[ENTRY_LENGTH];
+			while (readFully(is, entry))
+			{
+				r.add(readUnsignedInt(entry, 0), readUnsignedInt(entry, 4), entry[8]);
+			}
+			return r;
+		}
+		finally
+		{
+			is.close();
+		}
+	}
+
+	/**
+	 * 
+	 */
+	public int size()
+	{
+		return size;
+	}
+
+	public long getTimestamp(int index)
+	{
+		return timestamps[index] * 1000L;
+	}
+
+	public long getPosition(int index)
+	{
+		return positions[index];
+	}
+
+	public int getEventType(int index)
+	{
+		return eventTypes[index] & 0xFF;
+	}
+
+	/**
+	 * Returns the position of the last entry before which all indexed events are older than the
+	 * timestamp (in milliseconds), or -1 if there is none.
+	 */
+	public long seek(long timestamp)
+	{
+		final long seconds = timestamp / 1000L + (timestamp % 1000L > 0 ? 1 : 0);
+		int low = 0, high = this.size;
+		while (low < high)
+		{
+			final int mid = (low + high) >>> 1;
+			if (this.timestamps[mid] < seconds)
+				low = mid + 1;
+			else
+				high = mid;
+		}
+		return low == 0 ? -1 : this.positions[low - 1];
+	}
+
+	/**
+	 * 
+	 */
+	void add(long timestamp, long position, int eventType)
+	{
+		if (this.size == this.positions.length)
+		{
+			this.timestamps = Arrays.copyOf(this.timestamps, this.size * 2);
+			this.positions = Arrays.copyOf(this.positions, this.size * 2);
+			this.eventTypes = Arrays.copyOf(this.eventTypes, this.size * 2);
+		}
+		this.timestamps[this.size] = timestamp;
+		this.positions[this.size] = position;
+		this.eventTypes[this.size] = (byte) eventType;
+		this.size++;
+	}
+
+	static void writeUnsignedInt(byte[] buffer, int offset, long value)
+	{
+		buffer[offset] = (byte) (value >>> 24);
+		buffer[offset + 1] = (byte) (value >>> 16);
+		buffer[offset + 2] = (byte) (value >>> 8);
+		buffer[offset + 3] = (byte) value;
+	}
+
+	private static long readUnsignedInt(byte[] buffer, int offset)
+	{
+		return (buffer[offset] & 0xFFL) << 24 | (buffer[offset + 1] & 0xFFL) << 16 | (buffer[offset + 2] & 0xFFL) << 8
+		        | (buffer[offset + 3] & 0xFFL);
+	}
+
+	private static boolean readFully(InputStream is, byte[] buffer) throws IOException
+	{
+		for (int n = 0; n < buffer.length;)
+		{
+			final int count = is.read(buffer, n, buffer.length - n);
+			if (count < 0)
+			{
+				return false; // The end of the file, or a torn entry
+			}
+			n += count;
+		}
+		return true;
+	}
+}
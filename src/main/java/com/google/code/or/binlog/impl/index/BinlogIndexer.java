@@ -0,0 +1,548 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.code.or.binlog.impl.index;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.Charset;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.code.or.binlog.BinlogEventV4Header;
+import com.google.code.or.binlog.BinlogHeaderListener;
+import com.google.code.or.binlog.impl.HeaderScanner;
+import com.google.code.or.common.util.MySQLConstants;
+import com.google.code.or.common.util.XThreadFactory;
+
+/**
+ * Builds the {@link BinlogIndex} of the binlog files as their events are parsed: an entry is
+ * appended at the first transaction boundary (see {@link #isSafePosition(int, int)}) once interval
+ * bytes have been parsed since the previous entry. The
+ * first entry of a file has the timestamp of its event, so that the file of a timestamp can be
+ * found. The index of a file is only extended if the parsing is contiguous with it. The index files
+ * are written by a writer thread, the parsing thread only waits for it when it switches files.
+ * 
+ * @author Jingqi Xu
+ */
+public class BinlogIndexer
+{
+	//
+	private static final Logger LOGGER = LoggerFactory.getLogger(BinlogIndexer.class);
+
+	//
+	public static final String SUFFIX = ".idx";
+	public static final int BEGIN_EVENT = 0x100; // A query event of BEGIN, see getBoundaryType
+	public static final int COMMIT_EVENT = 0x101; // A query event of COMMIT or ROLLBACK
+	private static final int HEADER_LENGTH = 19;
+	private static final int QUERY_POST_HEADER_LENGTH = 13;
+	private static final Charset ASCII = Charset.forName("US-ASCII");
+	private static final byte[] BEGIN = "BEGIN".getBytes(ASCII);
+	private static final byte[] COMMIT = "COMMIT".getBytes(ASCII);
+	private static final byte[] ROLLBACK = "ROLLBACK".getBytes(ASCII);
+
+	//
+	protected final File directory;
+	protected int interval = 64 * 1024;
+
+	//
+	private final ReentrantLock lock = new ReentrantLock(false);
+	private IndexWriter writer;
+	private String binlogFileName;
+	private boolean enabled;
+	private long resumePosition;
+	private long lastPosition;
+	private long maxTimestamp;
+	private int previousBoundaryType;
+
+	/**
+	 * 
+	 */
+	public BinlogIndexer(File directory)
+	{
+		this.directory = directory;
+	}
+
+	/**
+	 * 
+	 */
+	public static File getIndexFile(File directory, String binlogFileName)
+	{
+		return new File(directory, binlogFileName + SUFFIX);
+	}
+
+	public File getDirectory()
+	{
+		return directory;
+	}
+
+	public int getInterval()
+	{
+		return interval;
+	}
+
+	public void setInterval(int interval)
+	{
+		this.interval = interval;
+	}
+
+	/**
+	 * Called with the header of each event and its boundary type, see
+	 * {@link #getBoundaryType(int, byte[], int, int)}
+	 */
+	public void onEvent(String binlogFileName, BinlogEventV4Header header, int boundaryType)
+	{
+		//
+		if (header.getNextPosition() <= 0 || binlogFileName == null)
+		{
+			return; // Artificial event
+		}
+		if (!binlogFileName.equals(getBinlogFileName()))
+		{
+			open(binlogFileName, header.getPosition());
+		}
+
+		//
+		this.lock.lock();
+		try
+		{
+			if (!this.enabled || !binlogFileName.equals(this.binlogFileName))
+			{
+				return;
+			}
+
+			//
+			final long position = header.getPosition();
+			if (position > this.resumePosition && (this.lastPosition < 0 || position - this.lastPosition >= this.interval)
+			        && isSafePosition(boundaryType))
+			{
+				append(position, header.getEventType(), this.lastPosition < 0 ? header.getTimestamp() / 1000L
+				        : this.maxTimestamp);
+			}
+			if (position >= this.resumePosition)
+			{
+				this.maxTimestamp = Math.max(this.maxTimestamp, header.getTimestamp() / 1000L);
+			}
+			this.previousBoundaryType = boundaryType;
+		}
+		finally
+		{
+			this.lock.unlock();
+		}
+	}
+
+	/**
+	 * Builds or extends the index of the binlog file by scanning its event headers, only the bodies of
+	 * the query events are read
+	 */
+	public void index(File binlogFile) throws IOException
+	{
+		//
+		final String name = binlogFile.getName();
+		final File f = getIndexFile(this.directory, name);
+		final BinlogIndex index = f.exists() ? BinlogIndex.load(f) : null;
+		final HeaderScanner scanner = new HeaderScanner(binlogFile);
+		if (index != null && index.size() > 0)
+		{
+			scanner.setStartPosition(index.getPosition(index.size() - 1));
+		}
+
+		//
+		final RandomAccessFile raf = new RandomAccessFile(binlogFile, "r");
+		try
+		{
+			scanner.scan(new BinlogHeaderListener()
+			{
+				public boolean onHeader(BinlogEventV4Header header)
+				{
+					int boundaryType = header.getEventType();
+					try
+					{
+						if (boundaryType == MySQLConstants.QUERY_EVENT)
+						{
+							final byte[] event = new byte[(int) header.getEventLength()];
+							raf.seek(header.getPosition());
+							raf.readFully(event);
+							boundaryType = getBoundaryType(event, 0, event.length, -1);
+						}
+					}
+					catch (IOException e)
+					{
+						LOGGER.warn("failed to read query event, binlog: " + name + ", position: "
+						        + header.getPosition(), e);
+					}
+					onEvent(name, header, boundaryType);
+					return true;
+				}
+			});
+		}
+		finally
+		{
+			raf.close();
+		}
+		close();
+	}
+
+	/**
+	 * Closes the index file, once its pending entries are written
+	 */
+	public void close()
+	{
+		//
+		final IndexWriter writer;
+		this.lock.lock();
+		try
+		{
+			writer = this.writer;
+			this.writer = null;
+			this.binlogFileName = null;
+			this.enabled = false;
+		}
+		finally
+		{
+			this.lock.unlock();
+		}
+
+		//
+		if (writer != null)
+		{
+			writer.close();
+		}
+	}
+
+	/**
+	 * 
+	 */
+	protected boolean isSafePosition(int boundaryType)
+	{
+		return this.lastPosition < 0 || isSafePosition(this.previousBoundaryType, boundaryType);
+	}
+
+	/**
+	 * Returns true if parsing can start at an event of the boundary type which follows an event of
+	 * the previous boundary type (negative if there is none), i.e. no transaction is cut: after a xid
+	 * event or a COMMIT, or at a gtid event or a BEGIN which does not follow one.
+	 */
+	public static boolean isSafePosition(int previousBoundaryType, int boundaryType)
+	{
+		if (previousBoundaryType < 0 || previousBoundaryType == MySQLConstants.XID_EVENT
+		        || previousBoundaryType == COMMIT_EVENT)
+		{
+			return true;
+		}
+		switch (boundaryType)
+		{
+		case MySQLConstants.GTID_LOG_EVENT:
+		case MySQLConstants.ANONYMOUS_GTID_LOG_EVENT:
+			return true;
+		case BEGIN_EVENT:
+			return previousBoundaryType != MySQLConstants.GTID_LOG_EVENT
+			        && previousBoundaryType != MySQLConstants.ANONYMOUS_GTID_LOG_EVENT;
+		default:
+			return false;
+		}
+	}
+
+	/**
+	 * Returns the type of the event for {@link #isSafePosition(int, int)}: the event type, except
+	 * {@link #BEGIN_EVENT} and {@link #COMMIT_EVENT} for the query events which start and end a
+	 * transaction. The event includes its header and its checksum of checksumLength bytes, or of 0
+	 * or 4 bytes if checksumLength is negative (unknown).
+	 */
+	public static int getBoundaryType(byte[] event, int offset, int length, int checksumLength)
+	{
+		//
+		final int eventType = event[offset + 4] & 0xFF;
+		if (eventType != MySQLConstants.QUERY_EVENT || length < HEADER_LENGTH + QUERY_POST_HEADER_LENGTH)
+		{
+			return eventType;
+		}
+
+		//
+		final int body = offset + HEADER_LENGTH;
+		final int statusVariablesLength = (event[body + 11] & 0xFF) | (event[body + 12] & 0xFF) << 8;
+		final int start = body + QUERY_POST_HEADER_LENGTH + statusVariablesLength + (event[body + 8] & 0xFF) + 1;
+		final int end = offset + length - Math.max(checksumLength, 0);
+		int r = getBoundaryType(eventType, event, start, end - start);
+		if (r == eventType && checksumLength < 0)
+		{
+			r = getBoundaryType(eventType, event, start, end - start - 4); // With a CRC32 checksum
+		}
+		return r;
+	}
+
+	/**
+	 * Returns the type of the event of the statement for {@link #isSafePosition(int, int)}
+	 */
+	public static int getBoundaryType(int eventType, byte[] statement, int offset, int length)
+	{
+		if (eventType != MySQLConstants.QUERY_EVENT || offset < 0 || length < 0 || offset + length > statement.length)
+			return eventType;
+		else if (equalsIgnoreCase(statement, offset, length, BEGIN))
+			return BEGIN_EVENT;
+		else if (equalsIgnoreCase(statement, offset, length, COMMIT)
+		        || equalsIgnoreCase(statement, offset, length, ROLLBACK))
+			return COMMIT_EVENT;
+		else
+			return eventType;
+	}
+
+	private static boolean equalsIgnoreCase(byte[] data, int offset, int length, byte[] expected)
+	{
+		if (length != expected.length)
+		{
+			return false;
+		}
+		for (int i = 0; i < length; i++)
+		{
+			if (Character.toUpperCase((char) (data[offset + i] & 0xFF)) != expected[i])
+				return false;
+		}
+		return true;
+	}
+
+	private static boolean isExtensible(BinlogIndex index, long position)
+	{
+		return index == null || index.size() == 0 || position <= index.getPosition(index.size() - 1);
+	}
+
+	private String getBinlogFileName()
+	{
+		this.lock.lock();
+		try
+		{
+			return this.binlogFileName;
+		}
+		finally
+		{
+			this.lock.unlock();
+		}
+	}
+
+	private void open(String binlogFileName, long position)
+	{
+		//
+		final IndexWriter writer;
+		this.lock.lock();
+		try
+		{
+			if (this.writer == null)
+			{
+				this.writer = new IndexWriter();
+			}
+			writer = this.writer;
+		}
+		finally
+		{
+			this.lock.unlock();
+		}
+
+		// The file i/o is done by the writer, out of the lock
+		final File f = getIndexFile(this.directory, binlogFileName);
+		BinlogIndex index = null;
+		boolean enabled = false;
+		try
+		{
+			index = writer.open(f, position);
+			enabled = isExtensible(index, position);
+			if (!enabled)
+			{
+				LOGGER.info("binlog index is not extended, parsing starts after its end, file: {}", f);
+			}
+		}
+		catch (IOException e)
+		{
+			LOGGER.error("failed to index binlog: " + binlogFileName + ", the indexing of the file is disabled", e);
+		}
+
+		//
+		this.lock.lock();
+		try
+		{
+			this.binlogFileName = binlogFileName;
+			this.enabled = enabled && writer == this.writer; // Unless closed meanwhile
+			this.resumePosition = -1;
+			this.lastPosition = -1;
+			this.maxTimestamp = 0;
+			this.previousBoundaryType = -1;
+			if (enabled && index != null && index.size() > 0)
+			{
+				this.resumePosition = index.getPosition(index.size() - 1);
+				this.lastPosition = this.resumePosition;
+				this.maxTimestamp = index.getTimestamp(index.size() - 1) / 1000L;
+			}
+		}
+		finally
+		{
+			this.lock.unlock();
+		}
+	}
+
+	private void append(long position, int eventType, long timestamp)
+	{
+		final byte[] entry = new byte[BinlogIndex.ENTRY_LENGTH];
+		BinlogIndex.writeUnsignedInt(entry, 0, timestamp);
+		BinlogIndex.writeUnsignedInt(entry, 4, position);
+		entry[8] = (byte) eventType;
+		this.writer.append(entry);
+		this.lastPosition = position;
+	}
+
+	/**
+	 * Writes the index files on a single thread, in the order of the calls
+	 */
+	private static final class IndexWriter
+	{
+		//
+		private final ExecutorService executor = Executors.newSingleThreadExecutor(new XThreadFactory(
+		        "binlog-indexer", true));
+		private File f;
+		private RandomAccessFile file;
+
+		/**
+		 * Closes the current index file and opens the index file f, returns its entries loaded
+		 */
+		public BinlogIndex open(final File f, final long position) throws IOException
+		{
+			try
+			{
+				return this.executor.submit(new Callable<BinlogIndex>()
+				{
+					public BinlogIndex call() throws IOException
+					{
+						return doOpen(f, position);
+					}
+				}).get();
+			}
+			catch (ExecutionException e)
+			{
+				throw e.getCause() instanceof IOException ? (IOException) e.getCause() : new IOException(e.getCause());
+			}
+			catch (InterruptedException e)
+			{
+				Thread.currentThread().interrupt();
+				throw new InterruptedIOException("interrupted while opening binlog index: " + f);
+			}
+		}
+
+		public void append(final byte[] entry)
+		{
+			this.executor.execute(new Runnable()
+			{
+				public void run()
+				{
+					doAppend(entry);
+				}
+			});
+		}
+
+		public void close()
+		{
+			this.executor.execute(new Runnable()
+			{
+				public void run()
+				{
+					closeQuietly();
+				}
+			});
+			this.executor.shutdown();
+			try
+			{
+				this.executor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+			}
+			catch (InterruptedException e)
+			{
+				Thread.currentThread().interrupt();
+			}
+		}
+
+		/**
+		 * 
+		 */
+		private BinlogIndex doOpen(File f, long position) throws IOException
+		{
+			//
+			closeQuietly();
+			final BinlogIndex index = f.exists() ? BinlogIndex.load(f) : null;
+			if (!isExtensible(index, position))
+			{
+				return index;
+			}
+
+			//
+			this.f = f;
+			this.file = new RandomAccessFile(f, "rw");
+			try
+			{
+				if (index == null)
+				{
+					this.file.setLength(0);
+					this.file.writeInt(BinlogIndex.MAGIC);
+					this.file.writeByte(BinlogIndex.VERSION);
+				}
+				else
+				{
+					this.file.setLength(BinlogIndex.HEADER_LENGTH + (long) index.size() * BinlogIndex.ENTRY_LENGTH);
+				}
+				this.file.seek(this.file.length());
+				return index;
+			}
+			catch (IOException e)
+			{
+				closeQuietly();
+				throw e;
+			}
+		}
+
+		private void doAppend(byte[] entry)
+		{
+			if (this.file == null)
+			{
+				return; // Disabled
+			}
+			try
+			{
+				this.file.write(entry);
+			}
+			catch (IOException e)
+			{
+				LOGGER.error("failed to write binlog index: " + this.f + ", the indexing of the file is disabled", e);
+				closeQuietly();
+			}
+		}
+
+		private void closeQuietly()
+		{
+			try
+			{
+				if (this.file != null)
+					this.file.close();
+			}
+			catch (IOException e)
+			{
+				// NOP
+			}
+			this.file = null;
+		}
+	}
+}
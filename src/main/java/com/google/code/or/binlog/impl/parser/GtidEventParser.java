@@ -0,0 +1,59 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.code.or.binlog.impl.parser;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.UUID;
+
+import com.google.code.or.binlog.BinlogEventV4Header;
+import com.google.code.or.binlog.BinlogParserContext;
+import com.google.code.or.binlog.impl.event.GtidEvent;
+import com.google.code.or.io.XInputStream;
+
+/**
+ * 
+ * @author Jingqi Xu
+ */
+public class GtidEventParser extends AbstractBinlogEventParser {
+	//
+	private static final int LOGICAL_TIMESTAMP_TYPECODE = 2;
+	
+	/**
+	 * 
+	 */
+	public GtidEventParser() {
+		super(GtidEvent.EVENT_TYPE);
+	}
+	
+	/**
+	 * The fields following the logical clock (e.g. the commit timestamps of 8.0) are skipped.
+	 */
+	public void parse(XInputStream is, BinlogEventV4Header header, BinlogParserContext context)
+	throws IOException {
+		//
+		final GtidEvent event = new GtidEvent(header);
+		event.setCommitFlag(is.readInt(1));
+		final ByteBuffer sid = ByteBuffer.wrap(is.readBytes(16));
+		event.setSourceId(new UUID(sid.getLong(), sid.getLong()).toString());
+		event.setGno(is.readLong(8));
+		if(is.available() >= 17 && is.readInt(1) == LOGICAL_TIMESTAMP_TYPECODE) {
+			event.setLastCommitted(is.readLong(8));
+			event.setSequenceNumber(is.readLong(8));
+		}
+		is.skip(is.available());
+		context.getEventListener().onEvents(event);
+	}
+}
@@ -0,0 +1,474 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.code.or.binlog.impl.snapshot;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.CRC32;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.code.or.binlog.impl.event.BinlogEventV4HeaderImpl;
+import com.google.code.or.binlog.impl.event.TableMapEvent;
+import com.google.code.or.common.glossary.Metadata;
+import com.google.code.or.common.glossary.UnsignedLong;
+import com.google.code.or.common.glossary.column.BitColumn;
+import com.google.code.or.common.glossary.column.StringColumn;
+import com.google.code.or.common.util.MySQLConstants;
+import com.google.code.or.common.util.XThreadFactory;
+
+/**
+ * Persists snapshots of the table map events known by the parser, so that the row events of a
+ * binlog can be decoded right away when parsing resumes in the middle of it. The snapshots of a
+ * binlog file are appended to a sidecar file (&lt;binlog&gt;.tms) as records of the binlog position,
+ * the payload length, its crc32 and the encoded table map events. A torn last record is ignored.
+ * The records are encoded by the caller and written by a writer thread.
+ * 
+ * @author Jingqi Xu
+ */
+public class TableMapSnapshotStore
+{
+	//
+	private static final Logger LOGGER = LoggerFactory.getLogger(TableMapSnapshotStore.class);
+
+	//
+	public static final String SUFFIX = ".tms";
+	static final int MAGIC = 0x4F52544D; // "ORTM"
+	static final int VERSION = 1;
+	static final int HEADER_LENGTH = 5;
+	static final int RECORD_HEADER_LENGTH = 16;
+
+	//
+	protected final File directory;
+	protected int interval = 16 * 1024 * 1024;
+
+	//
+	private final ReentrantLock lock = new ReentrantLock(false);
+	private SnapshotWriter writer;
+	private String binlogFileName;
+	private long lastPosition;
+
+	/**
+	 * 
+	 */
+	public TableMapSnapshotStore(File directory)
+	{
+		this.directory = directory;
+	}
+
+	/**
+	 * 
+	 */
+	public static File getSnapshotFile(File directory, String binlogFileName)
+	{
+		return new File(directory, binlogFileName + SUFFIX);
+	}
+
+	public File getDirectory()
+	{
+		return directory;
+	}
+
+	/**
+	 * The minimum number of bytes of the binlog between two snapshots of a binlog file
+	 */
+	public int getInterval()
+	{
+		return interval;
+	}
+
+	public void setInterval(int interval)
+	{
+		this.interval = interval;
+	}
+
+	/**
+	 * Returns true if a snapshot at the position is due, the first one of a binlog file always is
+	 */
+	public boolean isDue(String binlogFileName, long position)
+	{
+		this.lock.lock();
+		try
+		{
+			return !binlogFileName.equals(this.binlogFileName) || position - this.lastPosition >= this.interval;
+		}
+		finally
+		{
+			this.lock.unlock();
+		}
+	}
+
+	/**
+	 * Encodes the snapshot and hands it to the writer thread, the events are not retained
+	 */
+	public void save(String binlogFileName, long position, Collection<TableMapEvent> events)
+	{
+		//
+		byte[] record = null;
+		try
+		{
+			final byte[] payload = encode(events);
+			final CRC32 crc = new CRC32();
+			crc.update(payload);
+			final ByteArrayOutputStream bos = new ByteArrayOutputStream(RECORD_HEADER_LENGTH + payload.length);
+			final DataOutputStream os = new DataOutputStream(bos);
+			os.writeLong(position);
+			os.writeInt(payload.length);
+			os.writeInt((int) crc.getValue());
+			os.write(payload);
+			record = bos.toByteArray();
+		}
+		catch (IOException e)
+		{
+			LOGGER.error("failed to encode table map snapshot, binlog: " + binlogFileName + ":" + position, e);
+		}
+
+		//
+		this.lock.lock();
+		try
+		{
+			if (record != null)
+			{
+				if (this.writer == null)
+				{
+					this.writer = new SnapshotWriter(this.directory);
+				}
+				this.writer.write(binlogFileName, position, record);
+			}
+			this.binlogFileName = binlogFileName;
+			this.lastPosition = position;
+		}
+		finally
+		{
+			this.lock.unlock();
+		}
+	}
+
+	/**
+	 * Returns the table map events of the latest snapshot at or before the position, or an empty
+	 * list if there is none
+	 */
+	public List<TableMapEvent> load(String binlogFileName, long position) throws IOException
+	{
+		//
+		final File f = getSnapshotFile(this.directory, binlogFileName);
+		if (!f.exists())
+		{
+			return Collections.emptyList();
+		}
+
+		//
+		final byte[] data = readFully(f);
+		long nearest = -1;
+		int offset = -1, length = 0;
+		for (int i = HEADER_LENGTH; isRecord(data, i); i += RECORD_HEADER_LENGTH + readInt(data, i + 8))
+		{
+			final long p = readLong(data, i);
+			if (p <= position && p >= nearest)
+			{
+				nearest = p;
+				offset = i + RECORD_HEADER_LENGTH;
+				length = readInt(data, i + 8);
+			}
+		}
+		return offset < 0 ? Collections.<TableMapEvent> emptyList() : decode(data, offset, length);
+	}
+
+	/**
+	 * Closes the snapshot file, once the pending snapshots are written
+	 */
+	public void close()
+	{
+		//
+		final SnapshotWriter writer;
+		this.lock.lock();
+		try
+		{
+			writer = this.writer;
+			this.writer = null;
+			this.binlogFileName = null;
+		}
+		finally
+		{
+			this.lock.unlock();
+		}
+
+		//
+		if (writer != null)
+		{
+			writer.close();
+		}
+	}
+
+	/**
+	 * 
+	 */
+	protected byte[] encode(Collection<TableMapEvent> events) throws IOException
+	{
+		final ByteArrayOutputStream bos = new ByteArrayOutputStream(64 + events.size() * 64);
+		final DataOutputStream os = new DataOutputStream(bos);
+		os.writeInt(events.size());
+		for (TableMapEvent event : events)
+		{
+			//
+			final int columnCount = event.getColumnCount().intValue();
+			os.writeLong(event.getTableId());
+			os.writeShort(event.getReserved());
+			writeBytes(os, event.getDatabaseName().getValue());
+			writeBytes(os, event.getTableName().getValue());
+			os.writeShort(columnCount);
+			os.write(event.getColumnTypes(), 0, columnCount);
+			os.writeShort(event.getColumnMetadataCount().intValue());
+			for (int i = 0; i < columnCount; i++)
+			{
+				os.writeShort(event.getColumnMetadata().getMetadata(i));
+			}
+			os.write(event.getColumnNullabilities().getValue(), 0, (columnCount + 7) >> 3);
+		}
+		return bos.toByteArray();
+	}
+
+	protected List<TableMapEvent> decode(byte[] data, int offset, int length) throws IOException
+	{
+		//
+		final DataInputStream is = new DataInputStream(new ByteArrayInputStream(data, offset, length));
+		final int size = is.readInt();
+		final List<TableMapEvent> r = new ArrayList<TableMapEvent>(size);
+		for (int n = 0; n < size; n++)
+		{
+			//
+			final BinlogEventV4HeaderImpl header = new BinlogEventV4HeaderImpl();
+			header.setEventType(MySQLConstants.TABLE_MAP_EVENT);
+			final TableMapEvent event = new TableMapEvent(header);
+			event.setTableId(is.readLong());
+			event.setReserved(is.readUnsignedShort());
+			final byte[] databaseName = readBytes(is);
+			event.setDatabaseNameLength(databaseName.length);
+			event.setDatabaseName(StringColumn.valueOf(databaseName));
+			final byte[] tableName = readBytes(is);
+			event.setTableNameLength(tableName.length);
+			event.setTableName(StringColumn.valueOf(tableName));
+
+			//
+			final int columnCount = is.readUnsignedShort();
+			final byte[] columnTypes = new byte[columnCount];
+			is.readFully(columnTypes);
+			event.setColumnCount(UnsignedLong.valueOf(columnCount));
+			event.setColumnTypes(columnTypes);
+			event.setColumnMetadataCount(UnsignedLong.valueOf(is.readUnsignedShort()));
+			final int[] metadata = new int[columnCount];
+			for (int i = 0; i < columnCount; i++)
+			{
+				metadata[i] = is.readUnsignedShort();
+			}
+			event.setColumnMetadata(new Metadata(columnTypes, metadata));
+			final byte[] nullabilities = new byte[(columnCount + 7) >> 3];
+			is.readFully(nullabilities);
+			event.setColumnNullabilities(BitColumn.valueOf(columnCount, nullabilities));
+			r.add(event);
+		}
+		return r;
+	}
+
+	/**
+	 * 
+	 */
+	private static byte[] readFully(File file) throws IOException
+	{
+		final RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try
+		{
+			final byte[] r = new byte[(int) raf.length()];
+			raf.readFully(r);
+			return r;
+		}
+		finally
+		{
+			raf.close();
+		}
+	}
+
+	private static boolean isRecord(byte[] data, int offset)
+	{
+		//
+		if (offset + RECORD_HEADER_LENGTH > data.length)
+		{
+			return false;
+		}
+		final int length = readInt(data, offset + 8);
+		if (length < 0 || offset + RECORD_HEADER_LENGTH + length > data.length)
+		{
+			return false;
+		}
+
+		//
+		final CRC32 crc = new CRC32();
+		crc.update(data, offset + RECORD_HEADER_LENGTH, length);
+		return (int) crc.getValue() == readInt(data, offset + 12);
+	}
+
+	private static int readInt(byte[] data, int offset)
+	{
+		return ((data[offset] & 0xFF) << 24) | ((data[offset + 1] & 0xFF) << 16) | ((data[offset + 2] & 0xFF) << 8)
+		        | (data[offset + 3] & 0xFF);
+	}
+
+	private static long readLong(byte[] data, int offset)
+	{
+		return ((long) readInt(data, offset) << 32) | (readInt(data, offset + 4) & 0xFFFFFFFFL);
+	}
+
+	private static void writeBytes(DataOutputStream os, byte[] value) throws IOException
+	{
+		os.writeByte(value.length);
+		os.write(value);
+	}
+
+	private static byte[] readBytes(DataInputStream is) throws IOException
+	{
+		final byte[] r = new byte[is.readUnsignedByte()];
+		is.readFully(r);
+		return r;
+	}
+
+	/**
+	 * Writes the snapshot files on a single thread, in the order of the calls
+	 */
+	private static final class SnapshotWriter
+	{
+		//
+		private final File directory;
+		private final ExecutorService executor = Executors.newSingleThreadExecutor(new XThreadFactory(
+		        "table-map-snapshot-writer", true));
+		private String binlogFileName;
+		private RandomAccessFile file;
+
+		/**
+		 * 
+		 */
+		public SnapshotWriter(File directory)
+		{
+			this.directory = directory;
+		}
+
+		public void write(final String binlogFileName, final long position, final byte[] record)
+		{
+			this.executor.execute(new Runnable()
+			{
+				public void run()
+				{
+					doWrite(binlogFileName, position, record);
+				}
+			});
+		}
+
+		public void close()
+		{
+			this.executor.execute(new Runnable()
+			{
+				public void run()
+				{
+					closeQuietly();
+				}
+			});
+			this.executor.shutdown();
+			try
+			{
+				this.executor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+			}
+			catch (InterruptedException e)
+			{
+				Thread.currentThread().interrupt();
+			}
+		}
+
+		/**
+		 * 
+		 */
+		private void doWrite(String binlogFileName, long position, byte[] record)
+		{
+			try
+			{
+				if (!binlogFileName.equals(this.binlogFileName) || this.file == null)
+				{
+					open(binlogFileName);
+				}
+				this.file.write(record);
+			}
+			catch (IOException e)
+			{
+				LOGGER.error("failed to save table map snapshot, binlog: " + binlogFileName + ":" + position, e);
+				closeQuietly();
+			}
+		}
+
+		private void open(String binlogFileName) throws IOException
+		{
+			//
+			closeQuietly();
+			this.binlogFileName = binlogFileName;
+			final File f = getSnapshotFile(this.directory, binlogFileName);
+			final byte[] data = f.exists() ? readFully(f) : new byte[0];
+			this.file = new RandomAccessFile(f, "rw");
+
+			//
+			if (data.length < HEADER_LENGTH || readInt(data, 0) != MAGIC || data[4] != VERSION)
+			{
+				this.file.setLength(0);
+				this.file.writeInt(MAGIC);
+				this.file.writeByte(VERSION);
+			}
+			else
+			{
+				// Truncates a torn last record
+				int end = HEADER_LENGTH;
+				while (isRecord(data, end))
+				{
+					end += RECORD_HEADER_LENGTH + readInt(data, end + 8);
+				}
+				this.file.setLength(end);
+			}
+			this.file.seek(this.file.length());
+		}
+
+		private void closeQuietly()
+		{
+			try
+			{
+				if (this.file != null)
+					this.file.close();
+			}
+			catch (IOException e)
+			{
+				// NOP
+			}
+			this.file = null;
+		}
+	}
+}
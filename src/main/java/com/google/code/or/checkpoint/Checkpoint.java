@@ -0,0 +1,84 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.code.or.checkpoint;
+
+import java.io.Serializable;
+
+import org.apache.commons.lang.builder.ToStringBuilder;
+import org.apache.commons.lang.builder.ToStringStyle;
+
+/**
+ * The replication progress: the position after the last delivered event, and the restart position
+ * (see {@link com.google.code.or.binlog.BinlogParserContext#getRestartPosition()}) from which the
+ * following events can be parsed.
+ * 
+ * @author Jingqi Xu
+ */
+public final class Checkpoint implements Serializable
+{
+	//
+	private static final long serialVersionUID = -3105541563428466395L;
+
+	//
+	private final String binlogFileName;
+	private final long binlogPosition;
+	private final long restartPosition;
+	private final long timestamp;
+
+	/**
+	 * 
+	 */
+	public Checkpoint(String binlogFileName, long binlogPosition, long restartPosition, long timestamp)
+	{
+		this.binlogFileName = binlogFileName;
+		this.binlogPosition = binlogPosition;
+		this.restartPosition = restartPosition;
+		this.timestamp = timestamp;
+	}
+
+	/**
+	 * 
+	 */
+	@Override
+	public String toString()
+	{
+		return new ToStringBuilder(this, ToStringStyle.SHORT_PREFIX_STYLE)
+		        .append("binlogFileName", binlogFileName).append("binlogPosition", binlogPosition)
+		        .append("restartPosition", restartPosition).append("timestamp", timestamp).toString();
+	}
+
+	/**
+	 * 
+	 */
+	public String getBinlogFileName()
+	{
+		return binlogFileName;
+	}
+
+	public long getBinlogPosition()
+	{
+		return binlogPosition;
+	}
+
+	public long getRestartPosition()
+	{
+		return restartPosition;
+	}
+
+	public long getTimestamp()
+	{
+		return timestamp;
+	}
+}
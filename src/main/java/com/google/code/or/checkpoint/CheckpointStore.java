@@ -0,0 +1,39 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.code.or.checkpoint;
+
+import java.io.IOException;
+
+/**
+ * Persists the replication progress. Saves are cheap and may be lost on a crash until they are
+ * committed, stores commit in groups (by time and by count) and on {@link #flush()}.
+ * 
+ * @author Jingqi Xu
+ */
+public interface CheckpointStore
+{
+
+	/**
+	 * Returns the last committed checkpoint, or null if there is none
+	 */
+	Checkpoint load() throws IOException;
+
+	void save(String binlogFileName, long binlogPosition, long restartPosition, long timestamp)
+	        throws IOException;
+
+	void flush() throws IOException;
+
+	void close() throws IOException;
+}
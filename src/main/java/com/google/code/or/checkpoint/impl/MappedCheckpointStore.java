@@ -0,0 +1,301 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.code.or.checkpoint.impl;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.CRC32;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.code.or.checkpoint.Checkpoint;
+import com.google.code.or.checkpoint.CheckpointStore;
+import com.google.code.or.common.util.XThreadFactory;
+
+/**
+ * Keeps the checkpoint in a memory mapped file of two slots which are written alternately, so a
+ * torn write (detected by the crc) never loses the previous checkpoint. Saves are committed, i.e.
+ * written and forced to the disk, every commitEvents saves or commitIntervalMillis, whichever comes
+ * first; a background thread commits the saves of an idle stream.
+ * 
+ * @author Jingqi Xu
+ */
+public class MappedCheckpointStore implements CheckpointStore
+{
+	//
+	private static final Logger LOGGER = LoggerFactory.getLogger(MappedCheckpointStore.class);
+
+	//
+	private static final int SLOT_SIZE = 4096;
+	private static final int HEADER_SIZE = 36;
+	private static final int MAX_NAME_LENGTH = SLOT_SIZE - HEADER_SIZE - 8;
+
+	//
+	protected int commitEvents = 1000;
+	protected long commitIntervalMillis = 1000;
+
+	//
+	private final File file;
+	private final RandomAccessFile raf;
+	private final MappedByteBuffer buffer;
+	private final ScheduledExecutorService flusher;
+	private final ReentrantLock lock = new ReentrantLock(false);
+	private final CRC32 crc = new CRC32();
+	private final byte[] checksumBuffer = new byte[SLOT_SIZE];
+	private long sequence;
+	private long lastCommitTime = System.currentTimeMillis();
+	private boolean closed;
+
+	//
+	private int pendingSaves;
+	private String binlogFileName;
+	private long binlogPosition;
+	private long restartPosition;
+	private long timestamp;
+
+	/**
+	 * 
+	 */
+	public MappedCheckpointStore(File file) throws IOException
+	{
+		//
+		this.file = file;
+		this.raf = new RandomAccessFile(file, "rw");
+		this.buffer = this.raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, 2 * SLOT_SIZE);
+		final Checkpoint checkpoint = load();
+		LOGGER.info("opened checkpoint store, file: {}, checkpoint: {}", file, checkpoint);
+
+		//
+		this.flusher = Executors.newSingleThreadScheduledExecutor(new XThreadFactory("checkpoint-flusher", true));
+		this.flusher.scheduleWithFixedDelay(new Runnable()
+		{
+			public void run()
+			{
+				try
+				{
+					commitIfDue(false);
+				}
+				catch (Exception e)
+				{
+					LOGGER.error("failed to commit checkpoint, file: " + MappedCheckpointStore.this.file, e);
+				}
+			}
+		}, 100, 100, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * 
+	 */
+	public int getCommitEvents()
+	{
+		return commitEvents;
+	}
+
+	public void setCommitEvents(int commitEvents)
+	{
+		this.commitEvents = commitEvents;
+	}
+
+	public long getCommitIntervalMillis()
+	{
+		return commitIntervalMillis;
+	}
+
+	public void setCommitIntervalMillis(long commitIntervalMillis)
+	{
+		this.commitIntervalMillis = commitIntervalMillis;
+	}
+
+	/**
+	 * 
+	 */
+	public Checkpoint load() throws IOException
+	{
+		this.lock.lock();
+		try
+		{
+			//
+			Checkpoint r = null;
+			long max = 0;
+			for (int slot = 0; slot < 2; slot++)
+			{
+				final long s = this.buffer.getLong(slot * SLOT_SIZE);
+				final Checkpoint checkpoint = read(slot);
+				if (checkpoint != null && s > max)
+				{
+					r = checkpoint;
+					max = s;
+				}
+			}
+
+			//
+			this.sequence = Math.max(this.sequence, max);
+			return r;
+		}
+		finally
+		{
+			this.lock.unlock();
+		}
+	}
+
+	public void save(String binlogFileName, long binlogPosition, long restartPosition, long timestamp)
+	        throws IOException
+	{
+		this.lock.lock();
+		try
+		{
+			this.binlogFileName = binlogFileName;
+			this.binlogPosition = binlogPosition;
+			this.restartPosition = restartPosition;
+			this.timestamp = timestamp;
+			this.pendingSaves++;
+			if (this.pendingSaves >= this.commitEvents)
+				commit();
+			else
+				commitIfDue(false);
+		}
+		finally
+		{
+			this.lock.unlock();
+		}
+	}
+
+	public void flush() throws IOException
+	{
+		commitIfDue(true);
+	}
+
+	public void close() throws IOException
+	{
+		//
+		this.flusher.shutdownNow();
+		this.lock.lock();
+		try
+		{
+			if (this.closed)
+			{
+				return;
+			}
+			if (this.pendingSaves > 0)
+			{
+				commit();
+			}
+			this.closed = true;
+			this.raf.close();
+		}
+		finally
+		{
+			this.lock.unlock();
+		}
+	}
+
+	/**
+	 * 
+	 */
+	private void commitIfDue(boolean force) throws IOException
+	{
+		this.lock.lock();
+		try
+		{
+			if (this.pendingSaves > 0
+			        && (force || System.currentTimeMillis() - this.lastCommitTime >= this.commitIntervalMillis))
+			{
+				commit();
+			}
+		}
+		finally
+		{
+			this.lock.unlock();
+		}
+	}
+
+	private void commit() throws IOException
+	{
+		//
+		if (this.closed)
+		{
+			throw new IOException("checkpoint store is closed, file: " + this.file);
+		}
+		final byte[] name = this.binlogFileName == null ? new byte[0] : this.binlogFileName.getBytes("utf-8");
+		if (name.length > MAX_NAME_LENGTH)
+		{
+			throw new IOException("binlog file name is too long: " + this.binlogFileName);
+		}
+
+		//
+		final int offset = (int) ((this.sequence + 1) % 2) * SLOT_SIZE;
+		this.buffer.putLong(offset, this.sequence + 1);
+		this.buffer.putLong(offset + 8, this.binlogPosition);
+		this.buffer.putLong(offset + 16, this.restartPosition);
+		this.buffer.putLong(offset + 24, this.timestamp);
+		this.buffer.putInt(offset + 32, name.length);
+		for (int i = 0; i < name.length; i++)
+		{
+			this.buffer.put(offset + HEADER_SIZE + i, name[i]);
+		}
+		this.buffer.putLong(offset + HEADER_SIZE + name.length, checksum(offset, HEADER_SIZE + name.length));
+		this.buffer.force();
+
+		//
+		this.sequence++;
+		this.pendingSaves = 0;
+		this.lastCommitTime = System.currentTimeMillis();
+	}
+
+	private Checkpoint read(int slot) throws IOException
+	{
+		//
+		final int offset = slot * SLOT_SIZE;
+		final int length = this.buffer.getInt(offset + 32);
+		if (this.buffer.getLong(offset) <= 0 || length < 0 || length > MAX_NAME_LENGTH)
+		{
+			return null;
+		}
+		if (this.buffer.getLong(offset + HEADER_SIZE + length) != checksum(offset, HEADER_SIZE + length))
+		{
+			LOGGER.warn("ignored torn checkpoint slot: {}, file: {}", slot, this.file);
+			return null;
+		}
+
+		//
+		final byte[] name = new byte[length];
+		for (int i = 0; i < length; i++)
+		{
+			name[i] = this.buffer.get(offset + HEADER_SIZE + i);
+		}
+		return new Checkpoint(length == 0 ? null : new String(name, "utf-8"), this.buffer.getLong(offset + 8),
+		        this.buffer.getLong(offset + 16), this.buffer.getLong(offset + 24));
+	}
+
+	private long checksum(int offset, int length)
+	{
+		// CRC32.update(ByteBuffer) is java 9+
+		for (int i = 0; i < length; i++)
+		{
+			this.checksumBuffer[i] = this.buffer.get(offset + i);
+		}
+		this.crc.reset();
+		this.crc.update(this.checksumBuffer, 0, length);
+		return this.crc.getValue();
+	}
+}
@@ -0,0 +1,339 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.code.or.common.glossary;
+
+import java.io.IOException;
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.UUID;
+
+import com.google.code.or.io.XInputStream;
+import com.google.code.or.io.util.XSerializer;
+
+/**
+ * A set of global transaction identifiers, e.g. "3e11fa47-71ca-11e1-9e33-c80aa9429562:1-5:11-18".
+ * The transaction numbers of each server are kept as sorted, disjoint and non adjacent intervals,
+ * adding the next transaction number of a server is O(1), any other addition is O(log(n)) plus the
+ * array copy of merging. Not thread safe.
+ * 
+ * @author Jingqi Xu
+ */
+public final class GtidSet implements Serializable {
+	//
+	private static final long serialVersionUID = 6213421357396318410L;
+	
+	//
+	private final Map<String, UuidSet> sets = new TreeMap<String, UuidSet>();
+	
+	/**
+	 * 
+	 */
+	public GtidSet() {
+	}
+	
+	public GtidSet(GtidSet set) {
+		addAll(set);
+	}
+	
+	/**
+	 * 
+	 */
+	@Override
+	public String toString() {
+		final StringBuilder r = new StringBuilder();
+		for(UuidSet set : this.sets.values()) {
+			if(r.length() > 0) r.append(',');
+			r.append(set);
+		}
+		return r.toString();
+	}
+	
+	@Override
+	public boolean equals(Object obj) {
+		if(obj == this) return true;
+		if(!(obj instanceof GtidSet)) return false;
+		return this.sets.equals(((GtidSet)obj).sets);
+	}
+	
+	@Override
+	public int hashCode() {
+		return this.sets.hashCode();
+	}
+	
+	/**
+	 * 
+	 */
+	public boolean isEmpty() {
+		return this.sets.isEmpty();
+	}
+	
+	public Iterator<UuidSet> iterator() {
+		return this.sets.values().iterator();
+	}
+	
+	public UuidSet getUuidSet(String uuid) {
+		return this.sets.get(uuid.toLowerCase());
+	}
+	
+	public boolean contains(String uuid, long gno) {
+		final UuidSet set = this.sets.get(uuid.toLowerCase());
+		return set != null && set.contains(gno);
+	}
+	
+	/**
+	 * Returns false if the transaction was already in the set
+	 */
+	public boolean add(String uuid, long gno) {
+		return getOrCreate(uuid).add(gno, gno);
+	}
+	
+	public boolean add(String uuid, long start, long end) {
+		return getOrCreate(uuid).add(start, end);
+	}
+	
+	public void addAll(GtidSet set) {
+		for(UuidSet s : set.sets.values()) {
+			final UuidSet target = getOrCreate(s.uuid);
+			for(int i = 0; i < s.size; i++) {
+				target.add(s.starts[i], s.ends[i]);
+			}
+		}
+	}
+	
+	/**
+	 * The binary format of COM_BINLOG_DUMP_GTID and PREVIOUS_GTIDS_LOG_EVENT, intervals are
+	 * encoded with an exclusive end
+	 */
+	public byte[] toByteArray() {
+		final XSerializer s = new XSerializer(8 + this.sets.size() * 64);
+		s.writeLong(this.sets.size(), 8);
+		for(UuidSet set : this.sets.values()) {
+			final UUID uuid = UUID.fromString(set.uuid);
+			s.writeBytes(ByteBuffer.allocate(16).putLong(uuid.getMostSignificantBits())
+			.putLong(uuid.getLeastSignificantBits()).array());
+			s.writeLong(set.size, 8);
+			for(int i = 0; i < set.size; i++) {
+				s.writeLong(set.starts[i], 8);
+				s.writeLong(set.ends[i] + 1, 8);
+			}
+		}
+		return s.toByteArray();
+	}
+	
+	public static GtidSet valueOf(XInputStream is) throws IOException {
+		final GtidSet r = new GtidSet();
+		final long sids = is.readLong(8);
+		for(long i = 0; i < sids; i++) {
+			final ByteBuffer uuid = ByteBuffer.wrap(is.readBytes(16));
+			final UuidSet set = r.getOrCreate(new UUID(uuid.getLong(), uuid.getLong()).toString());
+			final long intervals = is.readLong(8);
+			for(long j = 0; j < intervals; j++) {
+				final long start = is.readLong(8);
+				set.add(start, is.readLong(8) - 1);
+			}
+		}
+		return r;
+	}
+	
+	/**
+	 * Parses the text format, e.g. the value of @@gtid_executed
+	 */
+	public static GtidSet valueOf(String value) {
+		final GtidSet r = new GtidSet();
+		if(value == null) {
+			return r;
+		}
+		for(String set : value.split(",")) {
+			final String[] tokens = set.trim().split(":");
+			if(tokens.length == 0 || tokens[0].length() == 0) {
+				continue;
+			}
+			final UuidSet s = r.getOrCreate(tokens[0].trim());
+			for(int i = 1; i < tokens.length; i++) {
+				final String interval = tokens[i].trim();
+				final int index = interval.indexOf('-');
+				if(index < 0) {
+					final long gno = Long.parseLong(interval);
+					s.add(gno, gno);
+				} else {
+					s.add(Long.parseLong(interval.substring(0, index)), Long.parseLong(interval.substring(index + 1)));
+				}
+			}
+		}
+		return r;
+	}
+	
+	/**
+	 * 
+	 */
+	private UuidSet getOrCreate(String uuid) {
+		UuidSet r = this.sets.get(uuid); // Usually lower case already
+		if(r != null) {
+			return r;
+		}
+		final String key = uuid.toLowerCase();
+		r = this.sets.get(key);
+		if(r == null) {
+			UUID.fromString(key); // Validates
+			r = new UuidSet(key);
+			this.sets.put(key, r);
+		}
+		return r;
+	}
+	
+	/**
+	 * The transactions of a server, as intervals with inclusive ends
+	 */
+	public static final class UuidSet implements Serializable {
+		//
+		private static final long serialVersionUID = 2931702574930297217L;
+		
+		//
+		private final String uuid;
+		private long[] starts = new long[4];
+		private long[] ends = new long[4];
+		private int size;
+		
+		/**
+		 * 
+		 */
+		public UuidSet(String uuid) {
+			this.uuid = uuid;
+		}
+		
+		/**
+		 * 
+		 */
+		@Override
+		public String toString() {
+			final StringBuilder r = new StringBuilder(this.uuid);
+			for(int i = 0; i < this.size; i++) {
+				r.append(':').append(this.starts[i]);
+				if(this.ends[i] != this.starts[i]) r.append('-').append(this.ends[i]);
+			}
+			return r.toString();
+		}
+		
+		@Override
+		public boolean equals(Object obj) {
+			if(obj == this) return true;
+			if(!(obj instanceof UuidSet)) return false;
+			final UuidSet rhs = (UuidSet)obj;
+			if(!this.uuid.equals(rhs.uuid) || this.size != rhs.size) return false;
+			for(int i = 0; i < this.size; i++) {
+				if(this.starts[i] != rhs.starts[i] || this.ends[i] != rhs.ends[i]) return false;
+			}
+			return true;
+		}
+		
+		@Override
+		public int hashCode() {
+			int r = this.uuid.hashCode();
+			for(int i = 0; i < this.size; i++) {
+				r = 31 * r + (int)(this.starts[i] ^ this.ends[i]);
+			}
+			return r;
+		}
+		
+		/**
+		 * 
+		 */
+		public String getUuid() {
+			return uuid;
+		}
+		
+		public int getIntervalCount() {
+			return size;
+		}
+		
+		public long getStart(int index) {
+			return starts[index];
+		}
+		
+		public long getEnd(int index) {
+			return ends[index];
+		}
+		
+		public boolean contains(long gno) {
+			final int i = firstEndingAtOrAfter(gno);
+			return i < this.size && this.starts[i] <= gno;
+		}
+		
+		/**
+		 * Returns false if the interval was already in the set
+		 */
+		public boolean add(long start, long end) {
+			//
+			if(start > end || start <= 0) {
+				throw new IllegalArgumentException("invalid interval: " + start + "-" + end);
+			}
+			
+			// Fast path: the next transaction of the server
+			final int last = this.size - 1;
+			if(last >= 0 && start == this.ends[last] + 1) {
+				this.ends[last] = end;
+				return true;
+			}
+			
+			// Intervals [i, j] overlap or touch [start, end]
+			final int i = firstEndingAtOrAfter(start - 1);
+			int j = i;
+			final long next = end == Long.MAX_VALUE ? end : end + 1;
+			while(j < this.size && this.starts[j] <= next) j++;
+			j--;
+			
+			//
+			if(i > j) {
+				if(this.size == this.starts.length) {
+					this.starts = Arrays.copyOf(this.starts, this.size * 2);
+					this.ends = Arrays.copyOf(this.ends, this.size * 2);
+				}
+				System.arraycopy(this.starts, i, this.starts, i + 1, this.size - i);
+				System.arraycopy(this.ends, i, this.ends, i + 1, this.size - i);
+				this.starts[i] = start;
+				this.ends[i] = end;
+				this.size++;
+				return true;
+			}
+			
+			//
+			final boolean r = start < this.starts[i] || end > this.ends[j] || i != j;
+			this.starts[i] = Math.min(start, this.starts[i]);
+			this.ends[i] = Math.max(end, this.ends[j]);
+			if(j > i) {
+				System.arraycopy(this.starts, j + 1, this.starts, i + 1, this.size - j - 1);
+				System.arraycopy(this.ends, j + 1, this.ends, i + 1, this.size - j - 1);
+				this.size -= j - i;
+			}
+			return r;
+		}
+		
+		/**
+		 * 
+		 */
+		private int firstEndingAtOrAfter(long gno) {
+			int low = 0, high = this.size;
+			while(low < high) {
+				final int mid = (low + high) >>> 1;
+				if(this.ends[mid] < gno) low = mid + 1; else high = mid;
+			}
+			return low;
+		}
+	}
+}
@@ -0,0 +1,114 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.code.or.common.util;
+
+/**
+ * An open addressing set of longs, e.g. table ids, without boxing. Not thread safe.
+ * 
+ * @author Jingqi Xu
+ */
+public final class LongHashSet {
+	//
+	private static final int INITIAL_CAPACITY = 16;
+	
+	//
+	private int size;
+	private int mask;
+	private long[] keys;
+	private boolean[] used;
+	
+	/**
+	 * 
+	 */
+	public LongHashSet() {
+		allocate(INITIAL_CAPACITY);
+	}
+	
+	/**
+	 * 
+	 */
+	public int size() {
+		return size;
+	}
+	
+	public boolean isEmpty() {
+		return size == 0;
+	}
+	
+	public boolean contains(long key) {
+		for(int slot = home(key); this.used[slot]; slot = (slot + 1) & this.mask) {
+			if(this.keys[slot] == key) {
+				return true;
+			}
+		}
+		return false;
+	}
+	
+	public boolean add(long key) {
+		//
+		int slot = home(key);
+		for(; this.used[slot]; slot = (slot + 1) & this.mask) {
+			if(this.keys[slot] == key) {
+				return false;
+			}
+		}
+		
+		//
+		this.keys[slot] = key;
+		this.used[slot] = true;
+		if(++this.size * 2 > this.keys.length) {
+			resize(this.keys.length * 2);
+		}
+		return true;
+	}
+	
+	public void clear() {
+		if(this.size > 0) {
+			allocate(INITIAL_CAPACITY);
+		}
+	}
+	
+	/**
+	 * 
+	 */
+	private int home(long key) {
+		final long h = key * 0x9E3779B97F4A7C15L;
+		return (int)(h ^ (h >>> 32)) & this.mask;
+	}
+	
+	private void allocate(int capacity) {
+		this.keys = new long[capacity];
+		this.used = new boolean[capacity];
+		this.mask = capacity - 1;
+		this.size = 0;
+	}
+	
+	private void resize(int capacity) {
+		final long[] oldKeys = this.keys;
+		final boolean[] oldUsed = this.used;
+		allocate(capacity);
+		for(int i = 0; i < oldKeys.length; i++) {
+			if(oldUsed[i]) {
+				int slot = home(oldKeys[i]);
+				while(this.used[slot]) {
+					slot = (slot + 1) & this.mask;
+				}
+				this.keys[slot] = oldKeys[i];
+				this.used[slot] = true;
+				this.size++;
+			}
+		}
+	}
+}
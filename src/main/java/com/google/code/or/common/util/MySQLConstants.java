@@ -80,6 +80,7 @@ public final class MySQLConstants
 	public static final int COM_SET_OPTION = 0x1b;
 	public static final int COM_STMT_FETCH = 0x1c;
 	public static final int COM_DAEMON = 0x1d;
+	public static final int COM_BINLOG_DUMP_GTID = 0x1e;
 	public static final int COM_END = 0x1e;
 
 	// Status variable type
@@ -211,4 +212,7 @@ public final class MySQLConstants
 	public static final int GTID_LOG_EVENT = 33;
 	public static final int ANONYMOUS_GTID_LOG_EVENT = 34;
 	public static final int PREVIOUS_GTIDS_LOG_EVENT = 35;
+
+	//
+	public static final int ROWS_EVENT_STMT_END_F = 0x0001;
 }
@@ -1,12 +1,14 @@
 package com.google.code.or.common.util;
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.LinkedList;
 import java.util.List;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.google.code.or.binlog.impl.ChecksumType;
 import com.google.code.or.common.glossary.UnsignedLong;
 import com.google.code.or.common.glossary.column.StringColumn;
 import com.google.code.or.net.Packet;
@@ -86,4 +88,31 @@ public class QueryUtil
 		return resultSet;
 	}
 
+	public static List<String> fetchBinaryLogs(Transport transport) throws IOException
+	{
+		List<ResultSetRowPacket> resultSet = query("show binary logs", transport);
+		List<String> binlogFileNames = new ArrayList<String>(resultSet.size());
+		for (ResultSetRowPacket row : resultSet)
+		{
+			binlogFileNames.add(row.getColumns().get(0).toString());
+		}
+		return binlogFileNames;
+	}
+
+	public static ChecksumType fetchBinlogChecksum(Transport transport) throws IOException
+	{
+		// #https://dev.mysql.com/worklog/task/?id=2540
+		List<ResultSetRowPacket> resultSet = query("show global variables like 'binlog_checksum'", transport);
+		ChecksumType checksumType =
+		        resultSet.size() > 0 ? ChecksumType.valueOf(resultSet.get(0).getColumns().get(1).toString()
+		                .toUpperCase()) : ChecksumType.NONE;
+
+		// checksum handshake
+		if (checksumType != ChecksumType.NONE)
+		{
+			query("set @master_binlog_checksum= @@global.binlog_checksum", transport);
+		}
+		return checksumType;
+	}
+
 }
@@ -2,6 +2,7 @@ package com.google.code.or.common.util;
 
 import java.lang.Thread.UncaughtExceptionHandler;
 import java.lang.ref.WeakReference;
+import java.lang.reflect.Method;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
@@ -10,6 +11,7 @@ import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.ReentrantLock;
 
 import org.apache.commons.lang.ClassUtils;
 import org.slf4j.Logger;
@@ -23,11 +25,28 @@ public final class XThreadFactory implements ThreadFactory {
 	//
 	private static final Logger LOGGER = LoggerFactory.getLogger(XThreadFactory.class);
 	
+	// Thread.ofVirtual() and Thread.Builder.unstarted(Runnable), resolved reflectively (java 21+)
+	private static final Method OF_VIRTUAL;
+	private static final Method UNSTARTED;
+	static {
+		Method ofVirtual = null, unstarted = null;
+		try {
+			ofVirtual = Thread.class.getMethod("ofVirtual");
+			unstarted = Class.forName("java.lang.Thread$Builder").getMethod("unstarted", Runnable.class);
+		} catch(Exception e) {
+			ofVirtual = null; // Virtual threads are not available on this jvm
+		}
+		OF_VIRTUAL = ofVirtual;
+		UNSTARTED = unstarted;
+	}
+	
 	//
 	protected String name;
 	protected final AtomicBoolean daemon;
+	protected final AtomicBoolean virtual;
 	protected final AtomicBoolean trackThreads;
 	protected final List<WeakReference<Thread>> threads;
+	protected final ReentrantLock threadsLock = new ReentrantLock(false);
 	protected final ConcurrentHashMap<String, AtomicLong> sequences;
 	protected final AtomicReference<UncaughtExceptionHandler> uncaughtExceptionHandler;
 	
@@ -50,6 +69,7 @@ public final class XThreadFactory implements ThreadFactory {
 	public XThreadFactory(String name, boolean daemon, UncaughtExceptionHandler handler) {
 		this.name = name;
 		this.daemon = new AtomicBoolean(daemon);
+		this.virtual = new AtomicBoolean(false);
 		this.trackThreads = new AtomicBoolean(false);
 		this.threads = new LinkedList<WeakReference<Thread>>();
 		this.sequences = new ConcurrentHashMap<String, AtomicLong>();
@@ -75,6 +95,25 @@ public final class XThreadFactory implements ThreadFactory {
 		this.daemon.set(daemon);
 	}
 	
+	/**
+	 * Virtual threads are always daemon threads. If the jvm does not support them,
+	 * platform threads are created instead.
+	 */
+	public boolean isVirtual() {
+		return virtual.get();
+	}
+	
+	public void setVirtual(boolean virtual) {
+		if(virtual && !isVirtualThreadSupported()) {
+			LOGGER.warn("virtual threads are not supported by this jvm, platform threads will be used, name: {}", this.name);
+		}
+		this.virtual.set(virtual);
+	}
+	
+	public static boolean isVirtualThreadSupported() {
+		return OF_VIRTUAL != null;
+	}
+	
 	public UncaughtExceptionHandler getUncaughtExceptionHandler() {
 		return uncaughtExceptionHandler.get();
 	}
@@ -100,8 +139,9 @@ public final class XThreadFactory implements ThreadFactory {
 	 */
 	public Thread newThread(Runnable r) {
 		//
-		final Thread t = new Thread(r);
-		t.setDaemon(isDaemon());
+		final boolean virtual = isVirtual() && isVirtualThreadSupported();
+		final Thread t = virtual ? newVirtualThread(r) : new Thread(r);
+		if(!virtual) t.setDaemon(isDaemon());
 		
 		//
 		String prefix = this.name;
@@ -134,6 +174,14 @@ public final class XThreadFactory implements ThreadFactory {
 	/**
 	 * 
 	 */
+	protected Thread newVirtualThread(Runnable r) {
+		try {
+			return (Thread)UNSTARTED.invoke(OF_VIRTUAL.invoke(null), r);
+		} catch(Exception e) {
+			throw new IllegalStateException("failed to create virtual thread", e);
+		}
+	}
+	
 	protected String getInvoker(int depth) {
 		final Exception e = new Exception();
 		final StackTraceElement[] stes = e.getStackTrace();
@@ -156,29 +204,39 @@ public final class XThreadFactory implements ThreadFactory {
 		return r.incrementAndGet();
 	}
 	
-	protected synchronized void addThread(Thread thread) {
-		//
-		for(Iterator<WeakReference<Thread>> iter = this.threads.iterator(); iter.hasNext(); ) {
-			Thread t = iter.next().get();
-			if(t == null) {
-				iter.remove();
+	protected void addThread(Thread thread) {
+		this.threadsLock.lock();
+		try {
+			//
+			for(Iterator<WeakReference<Thread>> iter = this.threads.iterator(); iter.hasNext(); ) {
+				Thread t = iter.next().get();
+				if(t == null) {
+					iter.remove();
+				}
 			}
+			
+			//
+			this.threads.add(new WeakReference<Thread>(thread));
+		} finally {
+			this.threadsLock.unlock();
 		}
-		
-		//
-		this.threads.add(new WeakReference<Thread>(thread));
 	}
 	
-	protected synchronized List<Thread> getThreads(boolean aliveOnly) {
-		final List<Thread> r = new LinkedList<Thread>();
-		for(Iterator<WeakReference<Thread>> iter = this.threads.iterator(); iter.hasNext(); ) {
-			Thread t = iter.next().get();
-			if(t == null) {
-				iter.remove();
-			} else if(!aliveOnly || t.isAlive()){
-				r.add(t);
+	protected List<Thread> getThreads(boolean aliveOnly) {
+		this.threadsLock.lock();
+		try {
+			final List<Thread> r = new LinkedList<Thread>();
+			for(Iterator<WeakReference<Thread>> iter = this.threads.iterator(); iter.hasNext(); ) {
+				Thread t = iter.next().get();
+				if(t == null) {
+					iter.remove();
+				} else if(!aliveOnly || t.isAlive()){
+					r.add(t);
+				}
 			}
+			return r;
+		} finally {
+			this.threadsLock.unlock();
 		}
-		return r;
 	}
 }
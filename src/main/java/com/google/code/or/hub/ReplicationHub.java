@@ -0,0 +1,365 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.code.or.hub;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.apache.commons.lang.exception.NestableRuntimeException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.code.or.binlog.impl.PacketBasedBinlogParser;
+import com.google.code.or.binlog.impl.parser.DeleteRowsEventParser;
+import com.google.code.or.binlog.impl.parser.DeleteRowsEventV2Parser;
+import com.google.code.or.binlog.impl.parser.FormatDescriptionEventParser;
+import com.google.code.or.binlog.impl.parser.GtidEventParser;
+import com.google.code.or.binlog.impl.parser.IncidentEventParser;
+import com.google.code.or.binlog.impl.parser.IntvarEventParser;
+import com.google.code.or.binlog.impl.parser.PreviousGtidsEventParser;
+import com.google.code.or.binlog.impl.parser.QueryEventParser;
+import com.google.code.or.binlog.impl.parser.RandEventParser;
+import com.google.code.or.binlog.impl.parser.RotateEventParser;
+import com.google.code.or.binlog.impl.parser.StopEventParser;
+import com.google.code.or.binlog.impl.parser.TableMapEventParser;
+import com.google.code.or.binlog.impl.parser.UpdateRowsEventParser;
+import com.google.code.or.binlog.impl.parser.UpdateRowsEventV2Parser;
+import com.google.code.or.binlog.impl.parser.UserVarEventParser;
+import com.google.code.or.binlog.impl.parser.WriteRowsEventParser;
+import com.google.code.or.binlog.impl.parser.WriteRowsEventV2Parser;
+import com.google.code.or.binlog.impl.parser.XidEventParser;
+import com.google.code.or.common.util.BackoffTimer.BackoffTimerConfig;
+import com.google.code.or.common.util.XThreadFactory;
+
+/**
+ * Replicates from many masters with a fixed number of threads: the channels are read by a few
+ * selector threads, the events are decoded by a shared pool. Each source keeps its own binlog
+ * file/position, TableMapEvents and checksum length.
+ * 
+ * @author Jingqi Xu
+ */
+public class ReplicationHub
+{
+	//
+	private static final Logger LOGGER = LoggerFactory.getLogger(ReplicationHub.class);
+
+	//
+	protected int selectorThreads = 2;
+	protected int decodeThreads = Runtime.getRuntime().availableProcessors();
+	protected int decodeBatchSize = 64;
+	protected long maxPendingBytes = 4 * 1024 * 1024;
+	protected boolean virtualThreads = false;
+	protected BackoffTimerConfig retryConfig = new BackoffTimerConfig(1, 60000, 2, 5, 20);
+
+	//
+	private ExecutorService decoders;
+	private ScheduledExecutorService scheduler;
+	private final List<SelectorLoop> loops = new ArrayList<SelectorLoop>();
+	private final AtomicInteger nextLoop = new AtomicInteger();
+	private final AtomicBoolean running = new AtomicBoolean(false);
+	private final Map<String, SourceChannel> sources = new ConcurrentHashMap<String, SourceChannel>();
+	private final Map<String, long[]> fairnessWindow = new HashMap<String, long[]>();
+	private final ReentrantLock fairnessLock = new ReentrantLock(false);
+
+	/**
+	 * 
+	 */
+	public boolean isRunning()
+	{
+		return this.running.get();
+	}
+
+	public void start() throws Exception
+	{
+		//
+		if (!this.running.compareAndSet(false, true))
+		{
+			return;
+		}
+
+		//
+		final XThreadFactory tf = new XThreadFactory("hub-decoder", true);
+		tf.setVirtual(this.virtualThreads);
+		this.decoders = Executors.newFixedThreadPool(this.decodeThreads, tf);
+		this.scheduler = Executors.newSingleThreadScheduledExecutor(new XThreadFactory("hub-scheduler", true));
+
+		//
+		final XThreadFactory stf = new XThreadFactory("hub-selector", true);
+		for (int i = 0; i < this.selectorThreads; i++)
+		{
+			final SelectorLoop loop = new SelectorLoop();
+			this.loops.add(loop);
+			stf.newThread(loop).start();
+		}
+
+		//
+		for (SourceChannel source : this.sources.values())
+		{
+			source.start();
+		}
+	}
+
+	public void stop(long timeout, TimeUnit unit) throws Exception
+	{
+		//
+		if (!this.running.compareAndSet(true, false))
+		{
+			return;
+		}
+
+		//
+		for (SourceChannel source : this.sources.values())
+		{
+			source.stop();
+		}
+		this.scheduler.shutdownNow();
+		this.decoders.shutdown();
+		for (SelectorLoop loop : this.loops)
+		{
+			loop.close();
+		}
+		this.loops.clear();
+
+		//
+		if (!this.decoders.awaitTermination(timeout, unit))
+		{
+			this.decoders.shutdownNow();
+		}
+	}
+
+	/**
+	 * 
+	 */
+	public void addSource(ReplicationSource source) throws Exception
+	{
+		//
+		if (this.sources.containsKey(source.getName()))
+		{
+			throw new NestableRuntimeException("duplicate source: " + source.getName());
+		}
+
+		//
+		final SourceChannel channel = new SourceChannel(this, source);
+		this.sources.put(source.getName(), channel);
+		if (isRunning())
+		{
+			channel.start();
+		}
+	}
+
+	public boolean removeSource(String name)
+	{
+		final SourceChannel channel = this.sources.remove(name);
+		if (channel == null)
+		{
+			return false;
+		}
+		channel.stop();
+		return true;
+	}
+
+	public List<SourceMetrics> getSourceMetrics()
+	{
+		final List<SourceMetrics> r = new ArrayList<SourceMetrics>(this.sources.size());
+		for (SourceChannel source : this.sources.values())
+		{
+			r.add(source.getMetrics());
+		}
+		return r;
+	}
+
+	/**
+	 * Jain's fairness index of the decode throughput since the previous call: 1.0 if every source
+	 * decoded all it received, down to 1/n if a single source was served.
+	 */
+	public double getFairnessIndex()
+	{
+		this.fairnessLock.lock();
+		try
+		{
+			//
+			double sum = 0, squares = 0;
+			int n = 0;
+			for (SourceChannel source : this.sources.values())
+			{
+				//
+				long[] w = this.fairnessWindow.get(source.getSource().getName());
+				if (w == null)
+				{
+					w = new long[2];
+					this.fairnessWindow.put(source.getSource().getName(), w);
+				}
+				final long received = source.getReceivedBytes(), decoded = source.getDecodedBytes();
+				final long r = received - w[0], d = decoded - w[1];
+				w[0] = received;
+				w[1] = decoded;
+				if (r <= 0)
+				{
+					continue; // Idle
+				}
+
+				//
+				final double x = Math.min(1.0d, (double) d / r);
+				sum += x;
+				squares += x * x;
+				n++;
+			}
+			this.fairnessWindow.keySet().retainAll(this.sources.keySet());
+			return squares == 0 ? 1.0d : (sum * sum) / (n * squares);
+		}
+		finally
+		{
+			this.fairnessLock.unlock();
+		}
+	}
+
+	/**
+	 * 
+	 */
+	public int getSelectorThreads()
+	{
+		return selectorThreads;
+	}
+
+	public void setSelectorThreads(int selectorThreads)
+	{
+		this.selectorThreads = selectorThreads;
+	}
+
+	public int getDecodeThreads()
+	{
+		return decodeThreads;
+	}
+
+	public void setDecodeThreads(int decodeThreads)
+	{
+		this.decodeThreads = decodeThreads;
+	}
+
+	public int getDecodeBatchSize()
+	{
+		return decodeBatchSize;
+	}
+
+	public void setDecodeBatchSize(int decodeBatchSize)
+	{
+		this.decodeBatchSize = decodeBatchSize;
+	}
+
+	public long getMaxPendingBytes()
+	{
+		return maxPendingBytes;
+	}
+
+	public void setMaxPendingBytes(long maxPendingBytes)
+	{
+		this.maxPendingBytes = maxPendingBytes;
+	}
+
+	public boolean isVirtualThreads()
+	{
+		return virtualThreads;
+	}
+
+	public void setVirtualThreads(boolean virtualThreads)
+	{
+		this.virtualThreads = virtualThreads;
+	}
+
+	public BackoffTimerConfig getRetryConfig()
+	{
+		return retryConfig;
+	}
+
+	public void setRetryConfig(BackoffTimerConfig retryConfig)
+	{
+		this.retryConfig = retryConfig;
+	}
+
+	/**
+	 * 
+	 */
+	boolean execute(Runnable task)
+	{
+		try
+		{
+			this.decoders.execute(task);
+			return true;
+		}
+		catch (RejectedExecutionException e)
+		{
+			LOGGER.warn("hub is stopped, task rejected: {}", task);
+			return false;
+		}
+	}
+
+	void schedule(Runnable task, long delayMillis)
+	{
+		try
+		{
+			this.scheduler.schedule(task, delayMillis, TimeUnit.MILLISECONDS);
+		}
+		catch (RejectedExecutionException e)
+		{
+			LOGGER.warn("hub is stopped, task rejected: {}", task);
+		}
+	}
+
+	SelectorLoop nextLoop()
+	{
+		final int index = this.nextLoop.getAndIncrement() & Integer.MAX_VALUE;
+		return this.loops.get(index % this.loops.size());
+	}
+
+	protected PacketBasedBinlogParser getDefaultBinlogParser(ReplicationSource source) throws Exception
+	{
+		//
+		final PacketBasedBinlogParser r =
+		        new PacketBasedBinlogParser(source.getBinlogFileName(), source.getBinlogPosition());
+		r.registgerEventParser(new StopEventParser());
+		r.registgerEventParser(new RotateEventParser());
+		r.registgerEventParser(new IntvarEventParser());
+		r.registgerEventParser(new XidEventParser());
+		r.registgerEventParser(new RandEventParser());
+		r.registgerEventParser(new QueryEventParser());
+		r.registgerEventParser(new UserVarEventParser());
+		r.registgerEventParser(new IncidentEventParser());
+		r.registgerEventParser(new TableMapEventParser());
+		r.registgerEventParser(new WriteRowsEventParser());
+		r.registgerEventParser(new UpdateRowsEventParser());
+		r.registgerEventParser(new DeleteRowsEventParser());
+		r.registgerEventParser(new WriteRowsEventV2Parser());
+		r.registgerEventParser(new UpdateRowsEventV2Parser());
+		r.registgerEventParser(new DeleteRowsEventV2Parser());
+		r.registgerEventParser(new FormatDescriptionEventParser());
+		r.registgerEventParser(new GtidEventParser());
+		r.registgerEventParser(new PreviousGtidsEventParser());
+
+		//
+		r.setEventListener(source.getBinlogEventListener());
+		return r;
+	}
+}
@@ -0,0 +1,165 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.code.or.hub;
+
+import org.apache.commons.lang.builder.ToStringBuilder;
+import org.apache.commons.lang.builder.ToStringStyle;
+
+import com.google.code.or.binlog.BinlogEventListener;
+
+/**
+ * The connection settings and the event listener of one master served by a {@link ReplicationHub}.
+ * 
+ * @author Jingqi Xu
+ */
+public class ReplicationSource
+{
+	//
+	protected String name;
+	protected int port = 3306;
+	protected String host;
+	protected String user;
+	protected String password;
+	protected int serverId = 6789;
+	protected String binlogFileName;
+	protected long binlogPosition = 4;
+	protected String encoding = "utf-8";
+	protected int socketReceiveBufferSize = 512 * 1024;
+	protected BinlogEventListener binlogEventListener;
+
+	/**
+	 * 
+	 */
+	@Override
+	public String toString()
+	{
+		return new ToStringBuilder(this, ToStringStyle.SHORT_PREFIX_STYLE).append("name", name)
+		        .append("host", host).append("port", port).append("user", user).append("serverId", serverId)
+		        .append("binlogFileName", binlogFileName).append("binlogPosition", binlogPosition).toString();
+	}
+
+	/**
+	 * 
+	 */
+	public String getName()
+	{
+		return name;
+	}
+
+	public void setName(String name)
+	{
+		this.name = name;
+	}
+
+	public int getPort()
+	{
+		return port;
+	}
+
+	public void setPort(int port)
+	{
+		this.port = port;
+	}
+
+	public String getHost()
+	{
+		return host;
+	}
+
+	public void setHost(String host)
+	{
+		this.host = host;
+	}
+
+	public String getUser()
+	{
+		return user;
+	}
+
+	public void setUser(String user)
+	{
+		this.user = user;
+	}
+
+	public String getPassword()
+	{
+		return password;
+	}
+
+	public void setPassword(String password)
+	{
+		this.password = password;
+	}
+
+	public int getServerId()
+	{
+		return serverId;
+	}
+
+	public void setServerId(int serverId)
+	{
+		this.serverId = serverId;
+	}
+
+	public String getBinlogFileName()
+	{
+		return binlogFileName;
+	}
+
+	public void setBinlogFileName(String binlogFileName)
+	{
+		this.binlogFileName = binlogFileName;
+	}
+
+	public long getBinlogPosition()
+	{
+		return binlogPosition;
+	}
+
+	public void setBinlogPosition(long binlogPosition)
+	{
+		this.binlogPosition = binlogPosition;
+	}
+
+	public String getEncoding()
+	{
+		return encoding;
+	}
+
+	public void setEncoding(String encoding)
+	{
+		this.encoding = encoding;
+	}
+
+	public int getSocketReceiveBufferSize()
+	{
+		return socketReceiveBufferSize;
+	}
+
+	public void setSocketReceiveBufferSize(int socketReceiveBufferSize)
+	{
+		this.socketReceiveBufferSize = socketReceiveBufferSize;
+	}
+
+	public BinlogEventListener getBinlogEventListener()
+	{
+		return binlogEventListener;
+	}
+
+	public void setBinlogEventListener(BinlogEventListener listener)
+	{
+		this.binlogEventListener = listener;
+	}
+}
@@ -0,0 +1,156 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.code.or.hub;
+
+import java.io.IOException;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Reads the channels of many sources on one thread. Registrations and interest changes are queued
+ * and applied by the selector thread itself.
+ * 
+ * @author Jingqi Xu
+ */
+final class SelectorLoop implements Runnable
+{
+	//
+	private static final Logger LOGGER = LoggerFactory.getLogger(SelectorLoop.class);
+
+	//
+	private final Selector selector;
+	private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<Runnable>();
+	private final AtomicBoolean running = new AtomicBoolean(true);
+
+	/**
+	 * 
+	 */
+	public SelectorLoop() throws IOException
+	{
+		this.selector = Selector.open();
+	}
+
+	/**
+	 * 
+	 */
+	public void register(final SourceChannel.Connection connection)
+	{
+		execute(new Runnable()
+		{
+			public void run()
+			{
+				try
+				{
+					connection.setKey(connection.getChannel().register(selector, SelectionKey.OP_READ, connection));
+				}
+				catch (IOException e)
+				{
+					connection.fail(e);
+				}
+			}
+		});
+	}
+
+	public void resume(final SourceChannel.Connection connection)
+	{
+		execute(new Runnable()
+		{
+			public void run()
+			{
+				connection.resumeReading();
+			}
+		});
+	}
+
+	public void close()
+	{
+		if (this.running.compareAndSet(true, false))
+		{
+			this.selector.wakeup();
+		}
+	}
+
+	/**
+	 * 
+	 */
+	public void run()
+	{
+		try
+		{
+			while (this.running.get())
+			{
+				//
+				this.selector.select();
+				for (Runnable task = this.tasks.poll(); task != null; task = this.tasks.poll())
+				{
+					task.run();
+				}
+
+				//
+				for (Iterator<SelectionKey> iter = this.selector.selectedKeys().iterator(); iter.hasNext();)
+				{
+					final SelectionKey key = iter.next();
+					iter.remove();
+					final SourceChannel.Connection connection = (SourceChannel.Connection) key.attachment();
+					try
+					{
+						if (key.isValid() && key.isReadable())
+							connection.read();
+					}
+					catch (Exception e)
+					{
+						connection.fail(e);
+					}
+				}
+			}
+		}
+		catch (ClosedSelectorException e)
+		{
+			// NOP
+		}
+		catch (Exception e)
+		{
+			LOGGER.error("selector loop failed", e);
+		}
+		finally
+		{
+			try
+			{
+				this.selector.close();
+			}
+			catch (IOException e)
+			{
+				// NOP
+			}
+		}
+	}
+
+	/**
+	 * 
+	 */
+	private void execute(Runnable task)
+	{
+		this.tasks.offer(task);
+		this.selector.wakeup();
+	}
+}
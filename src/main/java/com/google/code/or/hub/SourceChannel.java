@@ -0,0 +1,605 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.code.or.hub;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.StandardSocketOptions;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.code.or.binlog.BinlogEventV4Header;
+import com.google.code.or.binlog.impl.PacketBasedBinlogParser;
+import com.google.code.or.common.glossary.column.StringColumn;
+import com.google.code.or.common.util.BackoffTimer;
+import com.google.code.or.common.util.QueryUtil;
+import com.google.code.or.io.SocketFactory;
+import com.google.code.or.net.impl.AuthenticatorImpl;
+import com.google.code.or.net.impl.TransportImpl;
+import com.google.code.or.net.impl.packet.command.ComBinlogDumpPacket;
+
+/**
+ * The per source state of a {@link ReplicationHub}: the parser with its context (binlog file/position,
+ * TableMapEvents and checksum length), the frames waiting for the decode pool and the counters.
+ * 
+ * The handshake runs on blocking streams; once COM_BINLOG_DUMP has been sent, the channel is
+ * switched to non-blocking mode and is read by a {@link SelectorLoop}. Frames are decoded by the
+ * shared pool, at most one batch per source at a time, so events of a source stay in order.
+ * 
+ * @author Jingqi Xu
+ */
+final class SourceChannel implements Runnable
+{
+	//
+	private static final Logger LOGGER = LoggerFactory.getLogger(SourceChannel.class);
+
+	//
+	enum State
+	{
+		CONNECTING, STREAMING, BACKOFF, FAILED, STOPPED
+	}
+
+	//
+	private final ReplicationHub hub;
+	private final ReplicationSource source;
+	private final BackoffTimer retryTimer;
+	private final PacketBasedBinlogParser parser;
+	private final ReentrantLock stateLock = new ReentrantLock(false);
+	private final ReentrantLock decodeLock = new ReentrantLock(false);
+	private final AtomicBoolean scheduled = new AtomicBoolean(false);
+	private final Queue<Frame> frames = new ConcurrentLinkedQueue<Frame>();
+
+	//
+	private final AtomicLong pendingBytes = new AtomicLong();
+	private final AtomicLong receivedBytes = new AtomicLong();
+	private final AtomicLong receivedPackets = new AtomicLong();
+	private final AtomicLong decodedBytes = new AtomicLong();
+	private final AtomicLong decodedPackets = new AtomicLong();
+	private final AtomicLong decodeNanos = new AtomicLong();
+	private final AtomicLong readPauses = new AtomicLong();
+	private final AtomicLong reconnects = new AtomicLong();
+	private volatile long lastReceiptTime;
+	private volatile long lastEventTimestamp;
+	private volatile long lastDecodeTime;
+
+	//
+	private volatile State state = State.STOPPED;
+	private volatile Connection connection;
+	private volatile SelectorLoop loop;
+
+	/**
+	 * 
+	 */
+	public SourceChannel(ReplicationHub hub, ReplicationSource source) throws Exception
+	{
+		this.hub = hub;
+		this.source = source;
+		this.retryTimer = new BackoffTimer(hub.getRetryConfig(), "hubRetry-" + source.getName());
+		this.parser = hub.getDefaultBinlogParser(source);
+	}
+
+	/**
+	 * 
+	 */
+	public ReplicationSource getSource()
+	{
+		return source;
+	}
+
+	public State getState()
+	{
+		return state;
+	}
+
+	public long getReceivedBytes()
+	{
+		return receivedBytes.get();
+	}
+
+	public long getDecodedBytes()
+	{
+		return decodedBytes.get();
+	}
+
+	public SourceMetrics getMetrics()
+	{
+		//
+		final long now = System.currentTimeMillis();
+		final SourceMetrics r = new SourceMetrics();
+		r.setName(this.source.getName());
+		r.setState(this.state.name());
+		this.decodeLock.lock();
+		try
+		{
+			r.setBinlogFileName(this.parser.getBinlogFileName());
+			r.setBinlogPosition(this.parser.getCurrentPosition());
+		}
+		finally
+		{
+			this.decodeLock.unlock();
+		}
+
+		//
+		r.setReceivedBytes(this.receivedBytes.get());
+		r.setReceivedPackets(this.receivedPackets.get());
+		r.setDecodedBytes(this.decodedBytes.get());
+		r.setDecodedPackets(this.decodedPackets.get());
+		r.setDecodeNanos(this.decodeNanos.get());
+		r.setPendingBytes(this.pendingBytes.get());
+		r.setReadPauses(this.readPauses.get());
+		r.setReconnects(this.reconnects.get());
+		r.setLagMillis(this.lastEventTimestamp > 0 ? Math.max(0, this.lastDecodeTime - this.lastEventTimestamp) : 0);
+		r.setIdleMillis(this.lastReceiptTime > 0 ? now - this.lastReceiptTime : 0);
+		return r;
+	}
+
+	/**
+	 * 
+	 */
+	public void start() throws Exception
+	{
+		this.stateLock.lock();
+		try
+		{
+			if (this.state != State.STOPPED)
+			{
+				return;
+			}
+			this.state = State.CONNECTING;
+		}
+		finally
+		{
+			this.stateLock.unlock();
+		}
+
+		//
+		this.loop = this.hub.nextLoop();
+		this.parser.start();
+		this.hub.execute(new ConnectTask());
+	}
+
+	public void stop()
+	{
+		//
+		final Connection c;
+		this.stateLock.lock();
+		try
+		{
+			if (this.state == State.STOPPED)
+			{
+				return;
+			}
+			this.state = State.STOPPED;
+			c = this.connection;
+			this.connection = null;
+		}
+		finally
+		{
+			this.stateLock.unlock();
+		}
+
+		//
+		if (c != null)
+			c.close();
+		this.frames.clear();
+		this.pendingBytes.set(0);
+		try
+		{
+			this.parser.stop(0, TimeUnit.MILLISECONDS);
+		}
+		catch (Exception e)
+		{
+			// NOP
+		}
+	}
+
+	/**
+	 * Decodes a batch of frames, then yields the decode thread to other sources
+	 */
+	public void run()
+	{
+		//
+		for (int i = 0; i < this.hub.getDecodeBatchSize(); i++)
+		{
+			final Frame frame = this.frames.poll();
+			if (frame == null)
+			{
+				break;
+			}
+			this.pendingBytes.addAndGet(-frame.body.length);
+			if (frame.connection == this.connection)
+			{
+				decode(frame);
+			}
+		}
+
+		//
+		final Connection c = this.connection;
+		if (c != null && c.paused && this.pendingBytes.get() <= this.hub.getMaxPendingBytes() / 2)
+		{
+			this.loop.resume(c);
+		}
+
+		//
+		this.scheduled.set(false);
+		if (!this.frames.isEmpty())
+		{
+			schedule();
+		}
+	}
+
+	/**
+	 * 
+	 */
+	private void schedule()
+	{
+		if (this.scheduled.compareAndSet(false, true))
+		{
+			if (!this.hub.execute(this))
+				this.scheduled.set(false);
+		}
+	}
+
+	private void decode(Frame frame)
+	{
+		final long start = System.nanoTime();
+		this.decodeLock.lock();
+		try
+		{
+			final BinlogEventV4Header header = this.parser.parse(frame.body, frame.timestampOfReceipt);
+			if (header.getTimestamp() > 0)
+			{
+				this.lastEventTimestamp = header.getTimestamp();
+				this.lastDecodeTime = System.currentTimeMillis();
+			}
+			if (frame.connection.streaming.compareAndSet(false, true))
+			{
+				this.stateLock.lock(); // The master is streaming again
+				try
+				{
+					this.retryTimer.reset();
+				}
+				finally
+				{
+					this.stateLock.unlock();
+				}
+			}
+			this.decodedPackets.incrementAndGet();
+			this.decodedBytes.addAndGet(frame.body.length);
+		}
+		catch (Exception e)
+		{
+			frame.connection.fail(e);
+		}
+		finally
+		{
+			this.decodeLock.unlock();
+			this.decodeNanos.addAndGet(System.nanoTime() - start);
+		}
+	}
+
+	private void connect()
+	{
+		//
+		final Connection c = new Connection();
+		this.stateLock.lock();
+		try
+		{
+			if (this.state != State.CONNECTING)
+			{
+				return;
+			}
+			this.connection = c;
+		}
+		finally
+		{
+			this.stateLock.unlock();
+		}
+
+		//
+		try
+		{
+			final String binlogFileName;
+			final long binlogPosition;
+			this.decodeLock.lock(); // Wait for the in-flight decoding of the previous connection
+			try
+			{
+				binlogFileName = this.parser.getBinlogFileName();
+				binlogPosition = this.parser.getRestartPosition();
+			}
+			finally
+			{
+				this.decodeLock.unlock();
+			}
+			c.open(binlogFileName, binlogPosition);
+
+			//
+			this.stateLock.lock();
+			try
+			{
+				if (this.connection != c)
+				{
+					c.close();
+					return;
+				}
+				this.state = State.STREAMING;
+			}
+			finally
+			{
+				this.stateLock.unlock();
+			}
+			this.loop.register(c);
+			LOGGER.info("source streaming, name: {}, binlog: {}:{}",
+			        new Object[]{this.source.getName(), binlogFileName, binlogPosition});
+		}
+		catch (Exception e)
+		{
+			c.fail(e);
+		}
+	}
+
+	/**
+	 * 
+	 */
+	private final class ConnectTask implements Runnable
+	{
+
+		public void run()
+		{
+			connect();
+		}
+	}
+
+	private static final class Frame
+	{
+		//
+		private final Connection connection;
+		private final byte[] body;
+		private final long timestampOfReceipt;
+
+		public Frame(Connection connection, byte[] body, long timestampOfReceipt)
+		{
+			this.connection = connection;
+			this.body = body;
+			this.timestampOfReceipt = timestampOfReceipt;
+		}
+	}
+
+	/**
+	 * One attempt to stream from the master
+	 */
+	final class Connection
+	{
+		//
+		private SocketChannel channel;
+		private TransportImpl transport;
+		private SelectionKey key;
+		private ByteBuffer buffer = ByteBuffer.allocate(64 * 1024);
+		private volatile boolean paused;
+		private final AtomicBoolean streaming = new AtomicBoolean(false);
+
+		/**
+		 * 
+		 */
+		public SocketChannel getChannel()
+		{
+			return channel;
+		}
+
+		public void setKey(SelectionKey key)
+		{
+			this.key = key;
+		}
+
+		/**
+		 * Connects, logs in and requests the binlog dump on blocking streams
+		 */
+		public void open(String binlogFileName, long binlogPosition) throws Exception
+		{
+			//
+			final AuthenticatorImpl authenticator = new AuthenticatorImpl();
+			authenticator.setUser(source.getUser());
+			authenticator.setPassword(source.getPassword());
+			authenticator.setEncoding(source.getEncoding());
+
+			//
+			this.transport = new TransportImpl();
+			this.transport.setLevel1BufferSize(16 * 1024);
+			this.transport.setLevel2BufferSize(0); // No pump thread, the selector reads the channel
+			this.transport.setAuthenticator(authenticator);
+			this.transport.setSocketFactory(new SocketFactory()
+			{
+				public Socket create(String host, int port) throws Exception
+				{
+					channel = SocketChannel.open();
+					channel.setOption(StandardSocketOptions.SO_KEEPALIVE, true);
+					channel.setOption(StandardSocketOptions.SO_RCVBUF, source.getSocketReceiveBufferSize());
+					channel.connect(new InetSocketAddress(host, port));
+					return channel.socket();
+				}
+			});
+			this.transport.connect(source.getHost(), source.getPort());
+			parser.setChecksumLength(QueryUtil.fetchBinlogChecksum(this.transport).getLength());
+
+			//
+			final ComBinlogDumpPacket command = new ComBinlogDumpPacket();
+			command.setBinlogFlag(0);
+			command.setServerId(source.getServerId());
+			command.setBinlogPosition(binlogPosition);
+			command.setBinlogFileName(StringColumn.valueOf(binlogFileName.getBytes(source.getEncoding())));
+			this.transport.getOutputStream().writePacket(command);
+			this.transport.getOutputStream().flush();
+			this.channel.configureBlocking(false);
+		}
+
+		/**
+		 * Called by the selector thread, frames the packets and hands them to the decode pool
+		 */
+		public void read() throws IOException
+		{
+			//
+			final int n = this.channel.read(this.buffer);
+			if (n < 0)
+			{
+				throw new EOFException("connection closed by master");
+			}
+			final long now = System.currentTimeMillis();
+			receivedBytes.addAndGet(n);
+			lastReceiptTime = now;
+
+			// Flipped through Buffer, the covariant ByteBuffer overrides are java 9+
+			int required = 0;
+			((Buffer) this.buffer).flip();
+			while (this.buffer.remaining() >= 4)
+			{
+				final int p = this.buffer.position();
+				final int length =
+				        (this.buffer.get(p) & 0xFF) | (this.buffer.get(p + 1) & 0xFF) << 8
+				                | (this.buffer.get(p + 2) & 0xFF) << 16;
+				if (this.buffer.remaining() < 4 + length)
+				{
+					required = 4 + length;
+					break;
+				}
+
+				//
+				final byte[] body = new byte[length];
+				((Buffer) this.buffer).position(p + 4);
+				this.buffer.get(body);
+				receivedPackets.incrementAndGet();
+				pendingBytes.addAndGet(length);
+				frames.offer(new Frame(this, body, now));
+			}
+			this.buffer.compact();
+
+			// The packet does not fit into the buffer
+			if (required > this.buffer.capacity())
+			{
+				final ByteBuffer b = ByteBuffer.allocate(required);
+				((Buffer) this.buffer).flip();
+				b.put(this.buffer);
+				this.buffer = b;
+			}
+
+			//
+			if (pendingBytes.get() > hub.getMaxPendingBytes())
+			{
+				this.paused = true;
+				this.key.interestOps(0);
+				readPauses.incrementAndGet();
+			}
+			schedule();
+		}
+
+		public void resumeReading()
+		{
+			if (this.paused && this.key != null && this.key.isValid())
+			{
+				this.paused = false;
+				this.key.interestOps(SelectionKey.OP_READ);
+			}
+		}
+
+		public void fail(Exception exception)
+		{
+			//
+			stateLock.lock();
+			try
+			{
+				if (connection != this)
+				{
+					return;
+				}
+				connection = null;
+				close();
+
+				//
+				reconnects.incrementAndGet();
+				final long sleep = retryTimer.backoff();
+				if (sleep < 0 || !hub.isRunning())
+				{
+					state = State.FAILED;
+					LOGGER.error("source failed, giving up, name: " + source.getName(), exception);
+					return;
+				}
+				state = State.BACKOFF;
+				LOGGER.error("source failed, reconnecting in " + sleep + " ms, name: " + source.getName(),
+				        exception);
+				hub.schedule(new Runnable()
+				{
+					public void run()
+					{
+						stateLock.lock();
+						try
+						{
+							if (state != State.BACKOFF)
+								return;
+							state = State.CONNECTING;
+						}
+						finally
+						{
+							stateLock.unlock();
+						}
+						connect();
+					}
+				}, sleep);
+			}
+			finally
+			{
+				stateLock.unlock();
+			}
+		}
+
+		public void close()
+		{
+			//
+			if (this.key != null)
+				this.key.cancel();
+
+			//
+			try
+			{
+				if (this.transport != null)
+					this.transport.disconnect();
+			}
+			catch (Exception e)
+			{
+				// NOP
+			}
+			try
+			{
+				if (this.channel != null)
+					this.channel.close();
+			}
+			catch (IOException e)
+			{
+				// NOP
+			}
+		}
+	}
+}
@@ -0,0 +1,216 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.code.or.hub;
+
+import org.apache.commons.lang.builder.ToStringBuilder;
+import org.apache.commons.lang.builder.ToStringStyle;
+
+/**
+ * A point in time snapshot of one source of a {@link ReplicationHub}.
+ * 
+ * @author Jingqi Xu
+ */
+public final class SourceMetrics
+{
+	//
+	private String name;
+	private String state;
+	private String binlogFileName;
+	private long binlogPosition;
+	private long receivedBytes;
+	private long receivedPackets;
+	private long decodedBytes;
+	private long decodedPackets;
+	private long decodeNanos;
+	private long pendingBytes;
+	private long readPauses;
+	private long reconnects;
+	private long lagMillis;
+	private long idleMillis;
+
+	/**
+	 * 
+	 */
+	@Override
+	public String toString()
+	{
+		return new ToStringBuilder(this, ToStringStyle.SHORT_PREFIX_STYLE).append("name", name)
+		        .append("state", state).append("binlogFileName", binlogFileName)
+		        .append("binlogPosition", binlogPosition).append("receivedBytes", receivedBytes)
+		        .append("receivedPackets", receivedPackets).append("decodedBytes", decodedBytes)
+		        .append("decodedPackets", decodedPackets).append("decodeNanos", decodeNanos)
+		        .append("pendingBytes", pendingBytes).append("readPauses", readPauses)
+		        .append("reconnects", reconnects).append("lagMillis", lagMillis).append("idleMillis", idleMillis)
+		        .toString();
+	}
+
+	/**
+	 * 
+	 */
+	public String getName()
+	{
+		return name;
+	}
+
+	public void setName(String name)
+	{
+		this.name = name;
+	}
+
+	public String getState()
+	{
+		return state;
+	}
+
+	public void setState(String state)
+	{
+		this.state = state;
+	}
+
+	public String getBinlogFileName()
+	{
+		return binlogFileName;
+	}
+
+	public void setBinlogFileName(String binlogFileName)
+	{
+		this.binlogFileName = binlogFileName;
+	}
+
+	public long getBinlogPosition()
+	{
+		return binlogPosition;
+	}
+
+	public void setBinlogPosition(long binlogPosition)
+	{
+		this.binlogPosition = binlogPosition;
+	}
+
+	public long getReceivedBytes()
+	{
+		return receivedBytes;
+	}
+
+	public void setReceivedBytes(long receivedBytes)
+	{
+		this.receivedBytes = receivedBytes;
+	}
+
+	public long getReceivedPackets()
+	{
+		return receivedPackets;
+	}
+
+	public void setReceivedPackets(long receivedPackets)
+	{
+		this.receivedPackets = receivedPackets;
+	}
+
+	public long getDecodedBytes()
+	{
+		return decodedBytes;
+	}
+
+	public void setDecodedBytes(long decodedBytes)
+	{
+		this.decodedBytes = decodedBytes;
+	}
+
+	public long getDecodedPackets()
+	{
+		return decodedPackets;
+	}
+
+	public void setDecodedPackets(long decodedPackets)
+	{
+		this.decodedPackets = decodedPackets;
+	}
+
+	/**
+	 * Time spent in the shared decode pool, the listener included
+	 */
+	public long getDecodeNanos()
+	{
+		return decodeNanos;
+	}
+
+	public void setDecodeNanos(long decodeNanos)
+	{
+		this.decodeNanos = decodeNanos;
+	}
+
+	/**
+	 * Bytes framed by the selector but not decoded yet
+	 */
+	public long getPendingBytes()
+	{
+		return pendingBytes;
+	}
+
+	public void setPendingBytes(long pendingBytes)
+	{
+		this.pendingBytes = pendingBytes;
+	}
+
+	/**
+	 * How many times reading was suspended because the pending bytes exceeded the limit
+	 */
+	public long getReadPauses()
+	{
+		return readPauses;
+	}
+
+	public void setReadPauses(long readPauses)
+	{
+		this.readPauses = readPauses;
+	}
+
+	public long getReconnects()
+	{
+		return reconnects;
+	}
+
+	public void setReconnects(long reconnects)
+	{
+		this.reconnects = reconnects;
+	}
+
+	/**
+	 * The master commit time of the last decoded event, relative to when it was decoded
+	 */
+	public long getLagMillis()
+	{
+		return lagMillis;
+	}
+
+	public void setLagMillis(long lagMillis)
+	{
+		this.lagMillis = lagMillis;
+	}
+
+	/**
+	 * Time since the last packet was received from the master
+	 */
+	public long getIdleMillis()
+	{
+		return idleMillis;
+	}
+
+	public void setIdleMillis(long idleMillis)
+	{
+		this.idleMillis = idleMillis;
+	}
+}
@@ -16,6 +16,7 @@
  */
 package com.google.code.or.io.impl;
 
+import java.io.ByteArrayOutputStream;
 import java.io.EOFException;
 import java.io.IOException;
 import java.io.InputStream;
@@ -28,7 +29,6 @@ import com.google.code.or.common.glossary.column.StringColumn;
 import com.google.code.or.common.util.CodecUtils;
 import com.google.code.or.io.ExceedLimitException;
 import com.google.code.or.io.XInputStream;
-import com.google.code.or.io.util.XSerializer;
 
 /**
  * 
@@ -99,11 +99,11 @@ public class XInputStreamImpl extends InputStream implements XInputStream {
 	}
 	
 	public StringColumn readNullTerminatedString() throws IOException {
-		final XSerializer s = new XSerializer(128); // 128 should be OK for most schema names
+		final ByteArrayOutputStream s = new ByteArrayOutputStream(128); // 128 should be OK for most schema names
 		while(true) {
 			final int v = this.read();
 			if(v == 0) break;
-			s.writeInt(v, 1);
+			s.write(v);
 		}
 		return StringColumn.valueOf(s.toByteArray());
 	}
@@ -26,6 +26,8 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.google.code.or.common.util.XThreadFactory;
+import com.google.code.or.jfr.BufferStallEvent;
+import com.google.code.or.jfr.FlightRecorderSupport;
 
 /**
  * @author Jingqi Xu
@@ -117,6 +119,11 @@ public final class ActiveBufferedInputStream extends InputStream implements Runn
 		return this.ringBuffer.size();
 	}
 
+	public int getCapacity()
+	{
+		return this.ringBuffer.capacity();
+	}
+
 	@Override
 	public void close() throws IOException
 	{
@@ -153,14 +160,19 @@ public final class ActiveBufferedInputStream extends InputStream implements Runn
 		try
 		{
 			//
+			BufferStallEvent stall = null;
 			while (this.ringBuffer.isEmpty())
 			{
 				if (this.exception != null)
 					throw this.exception;
+				if (stall == null && FlightRecorderSupport.isRecording())
+					stall = BufferStallEvent.begin(false, this.ringBuffer.capacity());
 				this.bufferNotEmpty.awaitUninterruptibly();
 				if (this.closed.get())
 					throw new EOFException();
 			}
+			if (stall != null)
+				stall.end(this.ringBuffer.size());
 
 			//
 			final int r = this.ringBuffer.read();
@@ -180,14 +192,19 @@ public final class ActiveBufferedInputStream extends InputStream implements Runn
 		try
 		{
 			//
+			BufferStallEvent stall = null;
 			while (this.ringBuffer.isEmpty())
 			{
 				if (this.exception != null)
 					throw this.exception;
+				if (stall == null && FlightRecorderSupport.isRecording())
+					stall = BufferStallEvent.begin(false, this.ringBuffer.capacity());
 				this.bufferNotEmpty.awaitUninterruptibly();
 				if (this.closed.get())
 					throw new EOFException();
 			}
+			if (stall != null)
+				stall.end(this.ringBuffer.size());
 
 			//
 			final int r = this.ringBuffer.read(b, off, len);
@@ -206,12 +223,17 @@ public final class ActiveBufferedInputStream extends InputStream implements Runn
 		try
 		{
 			//
+			BufferStallEvent stall = null;
 			while (this.ringBuffer.isFull())
 			{
+				if (stall == null && FlightRecorderSupport.isRecording())
+					stall = BufferStallEvent.begin(true, this.ringBuffer.capacity());
 				this.bufferNotFull.awaitUninterruptibly();
 				if (this.closed.get())
 					throw new EOFException();
 			}
+			if (stall != null)
+				stall.end(this.ringBuffer.size());
 
 			//
 			final int w = this.ringBuffer.write(b, off, len);
@@ -251,6 +273,11 @@ public final class ActiveBufferedInputStream extends InputStream implements Runn
 			return this.size;
 		}
 
+		public int capacity()
+		{
+			return this.buffer.length;
+		}
+
 		public boolean isEmpty()
 		{
 			return this.size == 0;
@@ -0,0 +1,72 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.code.or.io.util;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import com.google.code.or.metrics.Counter;
+
+/**
+ * Counts the bytes read from the underlying stream, it sits below the buffers so a counter is
+ * updated once per fill rather than once per packet.
+ * 
+ * @author Jingqi Xu
+ */
+public final class CountingInputStream extends FilterInputStream
+{
+	//
+	private final Counter bytes;
+
+	/**
+	 * 
+	 */
+	public CountingInputStream(InputStream is, Counter bytes)
+	{
+		super(is);
+		this.bytes = bytes;
+	}
+
+	/**
+	 * 
+	 */
+	@Override
+	public int read() throws IOException
+	{
+		final int r = super.read();
+		if (r >= 0)
+			this.bytes.increment();
+		return r;
+	}
+
+	@Override
+	public int read(byte b[], int off, int len) throws IOException
+	{
+		final int r = super.read(b, off, len);
+		if (r > 0)
+			this.bytes.add(r);
+		return r;
+	}
+
+	@Override
+	public long skip(long n) throws IOException
+	{
+		final long r = super.skip(n);
+		if (r > 0)
+			this.bytes.add(r);
+		return r;
+	}
+}
@@ -37,7 +37,8 @@ public class XDeserializer implements XInputStream {
 	 * 
 	 */
 	public XDeserializer(byte[] data) {
-		this.tis = new XInputStreamImpl(new ByteArrayInputStream(data));
+		// The data is in memory, a buffer of its length is enough
+		this.tis = new XInputStreamImpl(new ByteArrayInputStream(data), Math.max(data.length, 1));
 	}
 	
 	/**
@@ -0,0 +1,70 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.code.or.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Threshold;
+
+/**
+ * 
+ * @author Jingqi Xu
+ */
+@Name("com.google.code.or.BufferStall")
+@Label("Read Buffer Stall")
+@Description("The parser waiting for data from the network, or the network reader waiting for the parser")
+@Category({ "Open Replicator", "Transport" })
+@Threshold("10 ms")
+public final class BufferStallEvent extends Event
+{
+	//
+	@Label("Buffer Full")
+	@Description("True if the network reader waited for free space, false if the parser waited for data")
+	boolean full;
+
+	@Label("Capacity")
+	@DataAmount
+	int capacity;
+
+	@Label("Buffered")
+	@DataAmount
+	int buffered;
+
+	/**
+	 * Only to be called if {@link FlightRecorderSupport#isRecording()}
+	 */
+	public static BufferStallEvent begin(boolean full, int capacity)
+	{
+		final BufferStallEvent r = new BufferStallEvent();
+		r.full = full;
+		r.capacity = capacity;
+		r.begin();
+		return r;
+	}
+
+	public void end(int buffered)
+	{
+		end();
+		if (shouldCommit())
+		{
+			this.buffered = buffered;
+			commit();
+		}
+	}
+}
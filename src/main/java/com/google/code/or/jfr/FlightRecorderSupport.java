@@ -0,0 +1,124 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.code.or.jfr;
+
+import jdk.jfr.FlightRecorder;
+import jdk.jfr.FlightRecorderListener;
+import jdk.jfr.Recording;
+import jdk.jfr.RecordingState;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Guards the flight recorder events of open replicator. The event classes are only touched if
+ * {@link #isRecording()} (or {@link #isAvailable()} for rare events) returns true, so that they are
+ * neither loaded on a jvm without jdk.jfr nor allocated for every binlog event while nothing is
+ * recorded. The recording state is tracked by a {@link FlightRecorderListener}, the hot path only
+ * reads a volatile flag.
+ * 
+ * @author Jingqi Xu
+ */
+public final class FlightRecorderSupport
+{
+	//
+	private static final Logger LOGGER = LoggerFactory.getLogger(FlightRecorderSupport.class);
+
+	//
+	private static final boolean AVAILABLE;
+	private static volatile boolean recording;
+	static
+	{
+		boolean available = false;
+		try
+		{
+			Class.forName("jdk.jfr.FlightRecorder");
+			available = Registrar.register();
+		}
+		catch (ClassNotFoundException e)
+		{
+			// Flight recorder is not available on this jvm
+		}
+		catch (Throwable t)
+		{
+			LOGGER.warn("failed to listen to flight recorder", t);
+		}
+		AVAILABLE = available;
+	}
+
+	/**
+	 * 
+	 */
+	private FlightRecorderSupport()
+	{
+	}
+
+	/**
+	 * 
+	 */
+	public static boolean isAvailable()
+	{
+		return AVAILABLE;
+	}
+
+	public static boolean isRecording()
+	{
+		return recording;
+	}
+
+	/**
+	 * Links jdk.jfr only once it is known to be present
+	 */
+	private static final class Registrar
+	{
+
+		private static boolean register()
+		{
+			//
+			if (!FlightRecorder.isAvailable())
+			{
+				return false;
+			}
+
+			//
+			FlightRecorder.addListener(new FlightRecorderListener()
+			{
+				public void recordingStateChanged(Recording r)
+				{
+					update();
+				}
+			});
+			if (FlightRecorder.isInitialized())
+			{
+				update();
+			}
+			return true;
+		}
+
+		private static void update()
+		{
+			boolean running = false;
+			for (Recording r : FlightRecorder.getFlightRecorder().getRecordings())
+			{
+				if (r.getState() == RecordingState.RUNNING)
+				{
+					running = true;
+					break;
+				}
+			}
+			recording = running;
+		}
+	}
+}
@@ -0,0 +1,81 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.code.or.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+
+import com.google.code.or.binlog.BinlogEventV4Header;
+import com.google.code.or.metrics.BinlogParserMetrics;
+
+/**
+ * 
+ * @author Jingqi Xu
+ */
+@Name("com.google.code.or.ListenerDispatch")
+@Label("Binlog Listener Dispatch")
+@Description("A parsed binlog event passed to the BinlogEventListener")
+@Category({ "Open Replicator", "Parser" })
+@StackTrace(false)
+@Threshold("1 ms")
+public final class ListenerDispatchEvent extends Event
+{
+	//
+	@Label("Event Type")
+	String eventType;
+
+	@Label("Event Length")
+	@DataAmount
+	long bytes;
+
+	@Label("Binlog File")
+	String binlogFileName;
+
+	@Label("Next Position")
+	long nextPosition;
+
+	//
+	private transient int type;
+
+	/**
+	 * Only to be called if {@link FlightRecorderSupport#isRecording()}
+	 */
+	public static ListenerDispatchEvent begin(BinlogEventV4Header header)
+	{
+		final ListenerDispatchEvent r = new ListenerDispatchEvent();
+		r.type = header.getEventType();
+		r.bytes = header.getEventLength();
+		r.nextPosition = header.getNextPosition();
+		r.begin();
+		return r;
+	}
+
+	public void end(String binlogFileName)
+	{
+		end();
+		if (shouldCommit())
+		{
+			this.eventType = BinlogParserMetrics.getEventTypeName(this.type);
+			this.binlogFileName = binlogFileName;
+			commit();
+		}
+	}
+}
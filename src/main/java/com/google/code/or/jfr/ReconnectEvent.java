@@ -0,0 +1,78 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.code.or.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+/**
+ * 
+ * @author Jingqi Xu
+ */
+@Name("com.google.code.or.Reconnect")
+@Label("Replication Reconnect")
+@Description("A retry cycle of OpenReplicator, from the broken connection to the restarted binlog dump")
+@Category({ "Open Replicator", "Transport" })
+public final class ReconnectEvent extends Event
+{
+	//
+	@Label("Binlog File")
+	String binlogFileName;
+
+	@Label("Restart Position")
+	long position;
+
+	@Label("Retry Count")
+	long retryCount;
+
+	@Label("Backoff")
+	@Timespan(Timespan.MILLISECONDS)
+	long backoff;
+
+	@Label("Succeeded")
+	boolean succeeded;
+
+	@Label("Error")
+	String error;
+
+	/**
+	 * Only to be called if {@link FlightRecorderSupport#isAvailable()}
+	 */
+	public static ReconnectEvent begin(String binlogFileName, Long position)
+	{
+		final ReconnectEvent r = new ReconnectEvent();
+		r.binlogFileName = binlogFileName;
+		r.position = position == null ? -1 : position;
+		r.begin();
+		return r;
+	}
+
+	public void end(long retryCount, long backoff, Exception error)
+	{
+		end();
+		if (shouldCommit())
+		{
+			this.retryCount = retryCount;
+			this.backoff = backoff;
+			this.succeeded = error == null;
+			this.error = error == null ? null : error.toString();
+			commit();
+		}
+	}
+}
@@ -0,0 +1,55 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.code.or.management;
+
+/**
+ * The live state of the current binlog parser of an {@link com.google.code.or.OpenReplicator}, the
+ * parser is replaced on reconnection. Registered as com.google.code.or:type=BinlogParser,name=&lt;jmxName&gt;.
+ * 
+ * @author Jingqi Xu
+ */
+public interface BinlogParserMXBean
+{
+
+	boolean isRunning();
+
+	/**
+	 * The state of the parser thread, e.g. WAITING for data or in the listener
+	 */
+	String getWorkerState();
+
+	String getBinlogFileName();
+
+	long getCurrentPosition();
+
+	long getRestartPosition();
+
+	int getTableMapEventCount();
+
+	int getMaxTableMapEvents();
+
+	long getEventsInFlight();
+
+	long getDeliveredEvents();
+
+	/**
+	 * 
+	 */
+	boolean isPaused();
+
+	void pause();
+
+	void resume();
+}
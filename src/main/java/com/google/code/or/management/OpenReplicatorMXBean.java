@@ -0,0 +1,71 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.code.or.management;
+
+/**
+ * The live state of an {@link com.google.code.or.OpenReplicator}, registered as
+ * com.google.code.or:type=OpenReplicator,name=&lt;jmxName&gt;.
+ * 
+ * @author Jingqi Xu
+ */
+public interface OpenReplicatorMXBean
+{
+
+	boolean isRunning();
+
+	String getHost();
+
+	int getPort();
+
+	int getServerId();
+
+	/**
+	 * The binlog coordinates of the last parsed event, the configured start ones before parsing
+	 */
+	String getBinlogFileName();
+
+	long getBinlogPosition();
+
+	long getRestartPosition();
+
+	/**
+	 * Returns the end to end replication lag in milliseconds, -1 without a metrics registry
+	 */
+	long getLagMillis();
+
+	/**
+	 * The reconnection backoff: the retries since the last reset, the current sleep in milliseconds and
+	 * the remaining retries
+	 */
+	long getRetryCount();
+
+	long getRetrySleepMillis();
+
+	long getRemainingRetries();
+
+	/**
+	 * Returns the outstanding demand of the event publisher's subscriber, -1 without a publisher
+	 */
+	long getPublisherDemand();
+
+	/**
+	 * 
+	 */
+	boolean isPaused();
+
+	void pause();
+
+	void resume();
+}
@@ -0,0 +1,47 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.code.or.management;
+
+/**
+ * The live state of the current connection of an {@link com.google.code.or.OpenReplicator} to the
+ * master. Registered as com.google.code.or:type=Transport,name=&lt;jmxName&gt;.
+ * 
+ * @author Jingqi Xu
+ */
+public interface TransportMXBean
+{
+
+	boolean isConnected();
+
+	String getServerHost();
+
+	int getServerPort();
+
+	String getServerVersion();
+
+	long getThreadId();
+
+	int getLevel1BufferSize();
+
+	int getLevel2BufferSize();
+
+	/**
+	 * The bytes received but not parsed yet and their ratio to the level 2 buffer size, a full buffer
+	 * means the parser is the bottleneck
+	 */
+	int getLevel2BufferedBytes();
+
+	double getLevel2BufferFillRatio();
+}
@@ -0,0 +1,126 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.code.or.management.impl;
+
+import com.google.code.or.OpenReplicator;
+import com.google.code.or.binlog.BinlogParser;
+import com.google.code.or.binlog.BinlogParserContext;
+import com.google.code.or.binlog.impl.AbstractBinlogParser;
+import com.google.code.or.management.BinlogParserMXBean;
+
+/**
+ * @author Jingqi Xu
+ */
+public class BinlogParserMXBeanImpl implements BinlogParserMXBean
+{
+	//
+	protected final OpenReplicator replicator;
+
+	/**
+	 * 
+	 */
+	public BinlogParserMXBeanImpl(OpenReplicator replicator)
+	{
+		this.replicator = replicator;
+	}
+
+	/**
+	 * 
+	 */
+	public boolean isRunning()
+	{
+		final BinlogParser parser = this.replicator.getBinlogParser();
+		return parser != null && parser.isRunning();
+	}
+
+	public String getWorkerState()
+	{
+		final AbstractBinlogParser parser = getParser();
+		final Thread.State state = parser == null ? null : parser.getWorkerState();
+		return state == null ? null : state.name();
+	}
+
+	public String getBinlogFileName()
+	{
+		final BinlogParserContext context = getContext();
+		return context == null ? null : context.getBinlogFileName();
+	}
+
+	public long getCurrentPosition()
+	{
+		final BinlogParserContext context = getContext();
+		return context == null || context.getCurrentPosition() == null ? -1 : context.getCurrentPosition();
+	}
+
+	public long getRestartPosition()
+	{
+		final BinlogParserContext context = getContext();
+		return context == null || context.getRestartPosition() == null ? -1 : context.getRestartPosition();
+	}
+
+	public int getTableMapEventCount()
+	{
+		final AbstractBinlogParser parser = getParser();
+		return parser == null ? 0 : parser.getTableMapEventCount();
+	}
+
+	public int getMaxTableMapEvents()
+	{
+		final AbstractBinlogParser parser = getParser();
+		return parser == null ? 0 : parser.getMaxTableMapEvents();
+	}
+
+	public long getEventsInFlight()
+	{
+		final AbstractBinlogParser parser = getParser();
+		return parser == null ? 0 : parser.getEventsInFlight();
+	}
+
+	public long getDeliveredEvents()
+	{
+		final AbstractBinlogParser parser = getParser();
+		return parser == null ? 0 : parser.getDeliveredEvents();
+	}
+
+	public boolean isPaused()
+	{
+		return this.replicator.isPaused();
+	}
+
+	public void pause()
+	{
+		this.replicator.pause();
+	}
+
+	public void resume()
+	{
+		this.replicator.resume();
+	}
+
+	/**
+	 * 
+	 */
+	protected AbstractBinlogParser getParser()
+	{
+		final BinlogParser parser = this.replicator.getBinlogParser();
+		return parser instanceof AbstractBinlogParser ? (AbstractBinlogParser) parser : null;
+	}
+
+	protected BinlogParserContext getContext()
+	{
+		final AbstractBinlogParser parser = getParser();
+		return parser == null ? null : parser.getContext();
+	}
+}
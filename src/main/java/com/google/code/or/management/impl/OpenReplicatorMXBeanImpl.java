@@ -0,0 +1,143 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.code.or.management.impl;
+
+import com.google.code.or.OpenReplicator;
+import com.google.code.or.binlog.BinlogParser;
+import com.google.code.or.binlog.BinlogParserContext;
+import com.google.code.or.binlog.impl.AbstractBinlogParser;
+import com.google.code.or.binlog.impl.BinlogEventPublisherImpl;
+import com.google.code.or.common.util.BackoffTimer;
+import com.google.code.or.management.OpenReplicatorMXBean;
+import com.google.code.or.metrics.Gauge;
+import com.google.code.or.metrics.MetricsRegistry;
+
+/**
+ * @author Jingqi Xu
+ */
+public class OpenReplicatorMXBeanImpl implements OpenReplicatorMXBean
+{
+	//
+	protected final OpenReplicator replicator;
+
+	/**
+	 * 
+	 */
+	public OpenReplicatorMXBeanImpl(OpenReplicator replicator)
+	{
+		this.replicator = replicator;
+	}
+
+	/**
+	 * 
+	 */
+	public boolean isRunning()
+	{
+		return this.replicator.isRunning();
+	}
+
+	public String getHost()
+	{
+		return this.replicator.getHost();
+	}
+
+	public int getPort()
+	{
+		return this.replicator.getPort();
+	}
+
+	public int getServerId()
+	{
+		return this.replicator.getServerId();
+	}
+
+	public String getBinlogFileName()
+	{
+		final BinlogParserContext context = getParserContext();
+		if (context == null || context.getBinlogFileName() == null)
+			return this.replicator.getBinlogFileName();
+		return context.getBinlogFileName();
+	}
+
+	public long getBinlogPosition()
+	{
+		final BinlogParserContext context = getParserContext();
+		if (context == null || context.getCurrentPosition() == null)
+			return this.replicator.getBinlogPosition();
+		return context.getCurrentPosition();
+	}
+
+	public long getRestartPosition()
+	{
+		final BinlogParserContext context = getParserContext();
+		if (context == null || context.getRestartPosition() == null)
+			return this.replicator.getBinlogPosition();
+		return context.getRestartPosition();
+	}
+
+	public long getLagMillis()
+	{
+		final MetricsRegistry registry = this.replicator.getMetricsRegistry();
+		final Gauge lag = registry == null ? null : registry.getGauge("lag.millis");
+		return lag == null ? -1 : lag.getValue();
+	}
+
+	public long getRetryCount()
+	{
+		return this.replicator.getRetryCounter().getRetryCount();
+	}
+
+	public long getRetrySleepMillis()
+	{
+		return this.replicator.getRetryCounter().getCurrentSleep();
+	}
+
+	public long getRemainingRetries()
+	{
+		final BackoffTimer timer = this.replicator.getRetryCounter();
+		return timer.getRemainingRetriesCount();
+	}
+
+	public long getPublisherDemand()
+	{
+		if (!(this.replicator.getBinlogEventListener() instanceof BinlogEventPublisherImpl))
+			return -1;
+		return ((BinlogEventPublisherImpl) this.replicator.getBinlogEventListener()).getDemand();
+	}
+
+	public boolean isPaused()
+	{
+		return this.replicator.isPaused();
+	}
+
+	public void pause()
+	{
+		this.replicator.pause();
+	}
+
+	public void resume()
+	{
+		this.replicator.resume();
+	}
+
+	/**
+	 * 
+	 */
+	protected BinlogParserContext getParserContext()
+	{
+		final BinlogParser parser = this.replicator.getBinlogParser();
+		return parser instanceof AbstractBinlogParser ? ((AbstractBinlogParser) parser).getContext() : null;
+	}
+}
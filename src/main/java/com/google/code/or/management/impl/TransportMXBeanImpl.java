@@ -0,0 +1,115 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.code.or.management.impl;
+
+import java.io.IOException;
+
+import com.google.code.or.OpenReplicator;
+import com.google.code.or.management.TransportMXBean;
+import com.google.code.or.net.Transport;
+import com.google.code.or.net.TransportContext;
+import com.google.code.or.net.impl.TransportImpl;
+
+/**
+ * @author Jingqi Xu
+ */
+public class TransportMXBeanImpl implements TransportMXBean
+{
+	//
+	protected final OpenReplicator replicator;
+
+	/**
+	 * 
+	 */
+	public TransportMXBeanImpl(OpenReplicator replicator)
+	{
+		this.replicator = replicator;
+	}
+
+	/**
+	 * 
+	 */
+	public boolean isConnected()
+	{
+		final Transport transport = this.replicator.getTransport();
+		return transport != null && transport.isConnected();
+	}
+
+	public String getServerHost()
+	{
+		final TransportContext context = getContext();
+		return context == null ? null : context.getServerHost();
+	}
+
+	public int getServerPort()
+	{
+		final TransportContext context = getContext();
+		return context == null ? 0 : context.getServerPort();
+	}
+
+	public String getServerVersion()
+	{
+		final TransportContext context = getContext();
+		return context == null ? null : context.getServerVersion();
+	}
+
+	public long getThreadId()
+	{
+		final TransportContext context = getContext();
+		return context == null ? 0 : context.getThreadId();
+	}
+
+	public int getLevel1BufferSize()
+	{
+		return this.replicator.getLevel1BufferSize();
+	}
+
+	public int getLevel2BufferSize()
+	{
+		return this.replicator.getLevel2BufferSize();
+	}
+
+	public int getLevel2BufferedBytes()
+	{
+		final Transport transport = this.replicator.getTransport();
+		if (!(transport instanceof TransportImpl) || !transport.isConnected())
+		{
+			return 0;
+		}
+		try
+		{
+			return ((TransportImpl) transport).getLevel2BufferedBytes();
+		}
+		catch (IOException e)
+		{
+			return 0;
+		}
+	}
+
+	public double getLevel2BufferFillRatio()
+	{
+		final int size = getLevel2BufferSize();
+		return size <= 0 ? 0.0d : getLevel2BufferedBytes() / (double) size;
+	}
+
+	/**
+	 * 
+	 */
+	protected TransportContext getContext()
+	{
+		final Transport transport = this.replicator.getTransport();
+		return transport == null ? null : transport.getContext();
+	}
+}
@@ -0,0 +1,268 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.code.or.metrics;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import com.google.code.or.binlog.BinlogEventParser;
+import com.google.code.or.binlog.BinlogEventV4Header;
+import com.google.code.or.binlog.impl.event.AbstractRowEvent;
+import com.google.code.or.binlog.impl.event.TableMapEvent;
+import com.google.code.or.common.util.MySQLConstants;
+
+/**
+ * The metrics of a binlog parser, resolved once per event type so that the parser thread only
+ * touches pre-allocated counters. Names are:
+ * <ul>
+ * <li>events.count, events.bytes and events.&lt;TYPE&gt;.count, events.&lt;TYPE&gt;.bytes</li>
+ * <li>parse.&lt;parser class&gt;: sampled parse time in nanoseconds, the listener excluded</li>
+ * <li>listener: sampled listener time in nanoseconds</li>
+ * <li>tableMapCache.hits, tableMapCache.misses</li>
+ * <li>lag.*: see {@link ReplicationLag}</li>
+ * <li>the rows per table if the registry has {@link TableStatistics}</li>
+ * </ul>
+ * Events are sampled per type, a global sequence would keep timing the same type of a transaction with a
+ * fixed shape. Not thread safe, it is only used by the parser thread.
+ * 
+ * @author Jingqi Xu
+ */
+public final class BinlogParserMetrics
+{
+	//
+	private static final String[] EVENT_TYPE_NAMES = new String[] { "UNKNOWN_EVENT", "START_EVENT_V3", "QUERY_EVENT",
+	        "STOP_EVENT", "ROTATE_EVENT", "INTVAR_EVENT", "LOAD_EVENT", "SLAVE_EVENT", "CREATE_FILE_EVENT",
+	        "APPEND_BLOCK_EVENT", "EXEC_LOAD_EVENT", "DELETE_FILE_EVENT", "NEW_LOAD_EVENT", "RAND_EVENT",
+	        "USER_VAR_EVENT", "FORMAT_DESCRIPTION_EVENT", "XID_EVENT", "BEGIN_LOAD_QUERY_EVENT",
+	        "EXECUTE_LOAD_QUERY_EVENT", "TABLE_MAP_EVENT", "PRE_GA_WRITE_ROWS_EVENT", "PRE_GA_UPDATE_ROWS_EVENT",
+	        "PRE_GA_DELETE_ROWS_EVENT", "WRITE_ROWS_EVENT", "UPDATE_ROWS_EVENT", "DELETE_ROWS_EVENT",
+	        "INCIDENT_EVENT", "HEARTBEAT_LOG_EVENT", "IGNORABLE_LOG_EVENT", "ROWS_QUERY_LOG_EVENT",
+	        "WRITE_ROWS_EVENT_V2", "UPDATE_ROWS_EVENT_V2", "DELETE_ROWS_EVENT_V2", "GTID_LOG_EVENT",
+	        "ANONYMOUS_GTID_LOG_EVENT", "PREVIOUS_GTIDS_LOG_EVENT" };
+
+	//
+	private final MetricsRegistry registry;
+	private final int timingSampleMask;
+	private final Counter events;
+	private final Counter bytes;
+	private final Counter[] eventsByType = new Counter[256];
+	private final Counter[] bytesByType = new Counter[256];
+	private final Histogram listener;
+	private final Counter tableMapCacheHits;
+	private final Counter tableMapCacheMisses;
+	private final ReplicationLag lag;
+	private final BinlogEventParser[] parsers = new BinlogEventParser[256];
+	private final Histogram[] parseNanos = new Histogram[256];
+	private final int[] sequences = new int[256];
+	private final TableStatistics tableStatistics;
+	private final Map<Long, TableEntry> tables = new HashMap<Long, TableEntry>();
+
+	// State of the current event
+	private boolean timed;
+	private long startNanos;
+	private long listenerNanos;
+
+	/**
+	 * 
+	 */
+	public BinlogParserMetrics(MetricsRegistry registry)
+	{
+		this.registry = registry;
+		this.timingSampleMask = registry.getTimingSampleInterval() - 1;
+		this.events = registry.getCounter("events.count");
+		this.bytes = registry.getCounter("events.bytes");
+		this.listener = registry.getHistogram("listener");
+		this.tableMapCacheHits = registry.getCounter("tableMapCache.hits");
+		this.tableMapCacheMisses = registry.getCounter("tableMapCache.misses");
+		this.lag = new ReplicationLag(registry);
+		this.tableStatistics = registry.getTableStatistics();
+	}
+
+	/**
+	 * 
+	 */
+	public MetricsRegistry getRegistry()
+	{
+		return registry;
+	}
+
+	public ReplicationLag getLag()
+	{
+		return lag;
+	}
+
+	public static String getEventTypeName(int type)
+	{
+		return type >= 0 && type < EVENT_TYPE_NAMES.length ? EVENT_TYPE_NAMES[type] : "EVENT_" + type;
+	}
+
+	/**
+	 * Counts the event once its header has been received, returns true if it is timed
+	 */
+	public boolean onEvent(BinlogEventV4Header header)
+	{
+		//
+		final int type = header.getEventType() & 0xFF;
+		final long length = header.getEventLength();
+		Counter counter = this.eventsByType[type];
+		if (counter == null)
+		{
+			final String name = getEventTypeName(type);
+			this.eventsByType[type] = counter = this.registry.getCounter("events." + name + ".count");
+			this.bytesByType[type] = this.registry.getCounter("events." + name + ".bytes");
+		}
+		counter.increment();
+		this.bytesByType[type].add(length);
+		this.events.increment();
+		this.bytes.add(length);
+
+		//
+		this.listenerNanos = 0;
+		this.timed = (this.sequences[type]++ & this.timingSampleMask) == 0;
+		this.lag.onReceipt(header, this.timed);
+		if (this.timed)
+		{
+			this.startNanos = System.nanoTime();
+		}
+		return this.timed;
+	}
+
+	/**
+	 * The parsed event is about to be passed to the listener, returns the current nano time
+	 */
+	public long onDispatch()
+	{
+		final long r = System.nanoTime();
+		this.lag.onParsed(r - this.startNanos);
+		return r;
+	}
+
+	/**
+	 * The event has been parsed and passed to the listener, if it was not filtered out
+	 */
+	public void onParsed(BinlogEventV4Header header, BinlogEventParser parser)
+	{
+		//
+		if (this.timed)
+		{
+			final int type = header.getEventType() & 0xFF;
+			Histogram histogram = this.parseNanos[type];
+			if (histogram == null || this.parsers[type] != parser)
+			{
+				this.parsers[type] = parser;
+				histogram = this.registry.getHistogram("parse." + parser.getClass().getSimpleName());
+				this.parseNanos[type] = histogram;
+			}
+			histogram.record(System.nanoTime() - this.startNanos - this.listenerNanos);
+		}
+
+		//
+		this.lag.onCompleted(header);
+	}
+
+	public boolean isTimed()
+	{
+		return timed;
+	}
+
+	public void onListener(long nanos)
+	{
+		this.listenerNanos += nanos;
+		this.listener.record(nanos);
+		this.lag.onListener(nanos);
+	}
+
+	/**
+	 * Counts the rows of the event for the table of its TableMapEvent, if any
+	 */
+	public void onRows(AbstractRowEvent event, TableMapEvent tme)
+	{
+		//
+		if (this.tableStatistics == null || tme == null)
+		{
+			return;
+		}
+
+		//
+		final TableStats stats = getTableStats(event.getTableId(), tme);
+		final long length = event.getHeader().getEventLength();
+		switch (event.getHeader().getEventType())
+		{
+		case MySQLConstants.WRITE_ROWS_EVENT:
+		case MySQLConstants.WRITE_ROWS_EVENT_V2:
+			stats.onInserts(event.getRowCount(), length);
+			break;
+		case MySQLConstants.UPDATE_ROWS_EVENT:
+		case MySQLConstants.UPDATE_ROWS_EVENT_V2:
+			stats.onUpdates(event.getRowCount(), length);
+			break;
+		case MySQLConstants.DELETE_ROWS_EVENT:
+		case MySQLConstants.DELETE_ROWS_EVENT_V2:
+			stats.onDeletes(event.getRowCount(), length);
+			break;
+		}
+	}
+
+	public void onTableMapLookup(boolean hit)
+	{
+		if (hit)
+			this.tableMapCacheHits.increment();
+		else
+			this.tableMapCacheMisses.increment();
+	}
+
+	/**
+	 * 
+	 */
+	private TableStats getTableStats(long tableId, TableMapEvent tme)
+	{
+		// The same table id is mapped by a new TableMapEvent in every transaction
+		TableEntry entry = this.tables.get(tableId);
+		if (entry == null || entry.tableMap != tme)
+		{
+			if (entry == null || !entry.isSameTable(tme))
+			{
+				if (this.tables.size() >= 65536)
+					this.tables.clear();
+				final TableStats stats = this.tableStatistics.getTableStats(tme.getDatabaseName().toString(),
+				        tme.getTableName().toString());
+				entry = new TableEntry(stats, tme);
+				this.tables.put(tableId, entry);
+			}
+			entry.tableMap = tme;
+		}
+		return entry.stats;
+	}
+
+	private static final class TableEntry
+	{
+		//
+		private final TableStats stats;
+		private TableMapEvent tableMap;
+
+		private TableEntry(TableStats stats, TableMapEvent tme)
+		{
+			this.stats = stats;
+			this.tableMap = tme;
+		}
+
+		private boolean isSameTable(TableMapEvent tme)
+		{
+			return Arrays.equals(this.tableMap.getTableName().getValue(), tme.getTableName().getValue())
+			        && Arrays.equals(this.tableMap.getDatabaseName().getValue(), tme.getDatabaseName().getValue());
+		}
+	}
+}
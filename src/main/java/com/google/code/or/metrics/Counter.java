@@ -0,0 +1,71 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.code.or.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A striped counter, cheap to update from the hot paths of several threads.
+ * 
+ * @author Jingqi Xu
+ */
+public final class Counter
+{
+	//
+	private final String name;
+	private final LongAdder value = new LongAdder();
+
+	/**
+	 * 
+	 */
+	public Counter(String name)
+	{
+		this.name = name;
+	}
+
+	@Override
+	public String toString()
+	{
+		return this.name + "=" + this.value.sum();
+	}
+
+	/**
+	 * 
+	 */
+	public String getName()
+	{
+		return name;
+	}
+
+	public long get()
+	{
+		return this.value.sum();
+	}
+
+	public void increment()
+	{
+		this.value.increment();
+	}
+
+	public void add(long delta)
+	{
+		this.value.add(delta);
+	}
+
+	public void reset()
+	{
+		this.value.reset();
+	}
+}
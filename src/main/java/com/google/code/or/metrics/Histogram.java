@@ -0,0 +1,110 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.code.or.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A latency histogram with fixed power of two buckets, bucket i counts the values in [2^(i-1), 2^i).
+ * Recording a value never allocates and takes no lock.
+ * 
+ * @author Jingqi Xu
+ */
+public final class Histogram
+{
+	//
+	public static final int BUCKETS = 64;
+
+	//
+	private final String name;
+	private final LongAdder sum = new LongAdder();
+	private final AtomicLong max = new AtomicLong();
+	private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+
+	/**
+	 * 
+	 */
+	public Histogram(String name)
+	{
+		this.name = name;
+	}
+
+	@Override
+	public String toString()
+	{
+		return snapshot().toString();
+	}
+
+	/**
+	 * 
+	 */
+	public String getName()
+	{
+		return name;
+	}
+
+	public void record(long value)
+	{
+		//
+		if (value < 0)
+		{
+			value = 0;
+		}
+		this.buckets.incrementAndGet(bucketOf(value));
+		this.sum.add(value);
+
+		//
+		for (long m = this.max.get(); value > m; m = this.max.get())
+		{
+			if (this.max.compareAndSet(m, value))
+				break;
+		}
+	}
+
+	public HistogramSnapshot snapshot()
+	{
+		final long[] counts = new long[BUCKETS];
+		for (int i = 0; i < BUCKETS; i++)
+		{
+			counts[i] = this.buckets.get(i);
+		}
+		return new HistogramSnapshot(this.name, counts, this.sum.sum(), this.max.get());
+	}
+
+	public void reset()
+	{
+		for (int i = 0; i < BUCKETS; i++)
+		{
+			this.buckets.set(i, 0);
+		}
+		this.sum.reset();
+		this.max.set(0);
+	}
+
+	/**
+	 * 
+	 */
+	static int bucketOf(long value)
+	{
+		return Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(value));
+	}
+
+	static long upperBoundOf(int bucket)
+	{
+		return bucket >= BUCKETS - 1 ? Long.MAX_VALUE : (1L << bucket) - 1;
+	}
+}
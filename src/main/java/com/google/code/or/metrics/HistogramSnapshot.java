@@ -0,0 +1,113 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.code.or.metrics;
+
+import org.apache.commons.lang.builder.ToStringBuilder;
+import org.apache.commons.lang.builder.ToStringStyle;
+
+/**
+ * A point in time copy of a {@link Histogram}. Percentiles are bucket upper bounds capped by the
+ * maximum, so they overestimate by less than a factor of two.
+ * 
+ * @author Jingqi Xu
+ */
+public final class HistogramSnapshot
+{
+	//
+	private final String name;
+	private final long[] buckets;
+	private final long count;
+	private final long sum;
+	private final long max;
+
+	/**
+	 * 
+	 */
+	public HistogramSnapshot(String name, long[] buckets, long sum, long max)
+	{
+		this.name = name;
+		this.buckets = buckets;
+		this.sum = sum;
+		this.max = max;
+		long count = 0;
+		for (long bucket : buckets)
+		{
+			count += bucket;
+		}
+		this.count = count;
+	}
+
+	@Override
+	public String toString()
+	{
+		return new ToStringBuilder(this, ToStringStyle.SHORT_PREFIX_STYLE).append("name", name)
+		        .append("count", count).append("mean", getMean()).append("p50", getPercentile(50))
+		        .append("p99", getPercentile(99)).append("p999", getPercentile(99.9)).append("max", max)
+		        .toString();
+	}
+
+	/**
+	 * 
+	 */
+	public String getName()
+	{
+		return name;
+	}
+
+	public long getCount()
+	{
+		return count;
+	}
+
+	public long getSum()
+	{
+		return sum;
+	}
+
+	public long getMax()
+	{
+		return max;
+	}
+
+	public long getMean()
+	{
+		return this.count == 0 ? 0 : this.sum / this.count;
+	}
+
+	public long[] getBuckets()
+	{
+		return buckets.clone();
+	}
+
+	public long getPercentile(double percentile)
+	{
+		//
+		if (this.count == 0)
+		{
+			return 0;
+		}
+
+		//
+		final long rank = Math.max(1, (long) Math.ceil(this.count * percentile / 100.0d));
+		long seen = 0;
+		for (int i = 0; i < this.buckets.length; i++)
+		{
+			seen += this.buckets[i];
+			if (seen >= rank)
+				return Math.min(Histogram.upperBoundOf(i), this.max);
+		}
+		return this.max;
+	}
+}
@@ -0,0 +1,144 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.code.or.metrics;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Named counters, gauges and histograms shared by the parser and the transport. The instrumented
+ * components resolve their metrics once and update them without any lookup, a component without a
+ * registry records nothing.
+ * 
+ * @author Jingqi Xu
+ */
+public class MetricsRegistry
+{
+	//
+	protected int timingSampleInterval = 16;
+	protected TableStatistics tableStatistics;
+	protected final ConcurrentMap<String, Counter> counters = new ConcurrentHashMap<String, Counter>();
+	protected final ConcurrentMap<String, Gauge> gauges = new ConcurrentHashMap<String, Gauge>();
+	protected final ConcurrentMap<String, Histogram> histograms = new ConcurrentHashMap<String, Histogram>();
+
+	/**
+	 * 
+	 */
+	public Counter getCounter(String name)
+	{
+		Counter r = this.counters.get(name);
+		if (r == null)
+		{
+			final Counter existing = this.counters.putIfAbsent(name, r = new Counter(name));
+			if (existing != null)
+				r = existing;
+		}
+		return r;
+	}
+
+	public Gauge getGauge(String name)
+	{
+		return this.gauges.get(name);
+	}
+
+	/**
+	 * Registers the gauge, replacing the one of the same name, e.g. of a restarted parser
+	 */
+	public void register(String name, Gauge gauge)
+	{
+		this.gauges.put(name, gauge);
+	}
+
+	public Histogram getHistogram(String name)
+	{
+		Histogram r = this.histograms.get(name);
+		if (r == null)
+		{
+			final Histogram existing = this.histograms.putIfAbsent(name, r = new Histogram(name));
+			if (existing != null)
+				r = existing;
+		}
+		return r;
+	}
+
+	public MetricsSnapshot snapshot()
+	{
+		//
+		final Map<String, Long> counters = new TreeMap<String, Long>();
+		for (Counter counter : this.counters.values())
+		{
+			counters.put(counter.getName(), counter.get());
+		}
+
+		//
+		final Map<String, Long> gauges = new TreeMap<String, Long>();
+		for (Map.Entry<String, Gauge> entry : this.gauges.entrySet())
+		{
+			gauges.put(entry.getKey(), entry.getValue().getValue());
+		}
+
+		//
+		final Map<String, HistogramSnapshot> histograms = new TreeMap<String, HistogramSnapshot>();
+		for (Histogram histogram : this.histograms.values())
+		{
+			histograms.put(histogram.getName(), histogram.snapshot());
+		}
+		return new MetricsSnapshot(System.nanoTime(), counters, gauges, histograms);
+	}
+
+	public void reset()
+	{
+		for (Counter counter : this.counters.values())
+		{
+			counter.reset();
+		}
+		for (Histogram histogram : this.histograms.values())
+		{
+			histogram.reset();
+		}
+	}
+
+	/**
+	 * Only one out of every interval events is timed, reading the clock for every event would cost
+	 * more than the parsing of a small one. Rounded up to a power of two.
+	 */
+	public int getTimingSampleInterval()
+	{
+		return timingSampleInterval;
+	}
+
+	public void setTimingSampleInterval(int interval)
+	{
+		if (interval < 1)
+			throw new IllegalArgumentException("invalid timing sample interval: " + interval);
+		this.timingSampleInterval = interval == 1 ? 1 : Integer.highestOneBit(interval - 1) << 1;
+	}
+
+	/**
+	 * The per table statistics of the row events, null to not collect them. It is read when the
+	 * parser starts using the registry.
+	 */
+	public TableStatistics getTableStatistics()
+	{
+		return tableStatistics;
+	}
+
+	public void setTableStatistics(TableStatistics tableStatistics)
+	{
+		this.tableStatistics = tableStatistics;
+	}
+}
@@ -0,0 +1,109 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.code.or.metrics;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.lang.builder.ToStringBuilder;
+import org.apache.commons.lang.builder.ToStringStyle;
+
+/**
+ * A point in time copy of a {@link MetricsRegistry}, rates are derived from two snapshots.
+ * 
+ * @author Jingqi Xu
+ */
+public final class MetricsSnapshot
+{
+	//
+	private final long nanoTime;
+	private final Map<String, Long> counters;
+	private final Map<String, Long> gauges;
+	private final Map<String, HistogramSnapshot> histograms;
+
+	/**
+	 * 
+	 */
+	public MetricsSnapshot(long nanoTime, Map<String, Long> counters, Map<String, Long> gauges,
+	        Map<String, HistogramSnapshot> histograms)
+	{
+		this.nanoTime = nanoTime;
+		this.counters = Collections.unmodifiableMap(counters);
+		this.gauges = Collections.unmodifiableMap(gauges);
+		this.histograms = Collections.unmodifiableMap(histograms);
+	}
+
+	@Override
+	public String toString()
+	{
+		return new ToStringBuilder(this, ToStringStyle.SHORT_PREFIX_STYLE).append("counters", counters)
+		        .append("gauges", gauges).append("histograms", histograms.values()).toString();
+	}
+
+	/**
+	 * 
+	 */
+	public long getNanoTime()
+	{
+		return nanoTime;
+	}
+
+	public Map<String, Long> getCounters()
+	{
+		return counters;
+	}
+
+	public Map<String, Long> getGauges()
+	{
+		return gauges;
+	}
+
+	public Map<String, HistogramSnapshot> getHistograms()
+	{
+		return histograms;
+	}
+
+	public long getCounter(String name)
+	{
+		final Long r = this.counters.get(name);
+		return r == null ? 0 : r;
+	}
+
+	public long getGauge(String name)
+	{
+		final Long r = this.gauges.get(name);
+		return r == null ? 0 : r;
+	}
+
+	public HistogramSnapshot getHistogram(String name)
+	{
+		return this.histograms.get(name);
+	}
+
+	/**
+	 * Returns the per second rate of the counter since the previous snapshot
+	 */
+	public double getRate(MetricsSnapshot previous, String name)
+	{
+		final long elapsed = this.nanoTime - previous.nanoTime;
+		if (elapsed <= 0)
+		{
+			return 0.0d;
+		}
+		final long delta = getCounter(name) - previous.getCounter(name);
+		return delta * (double) TimeUnit.SECONDS.toNanos(1) / elapsed;
+	}
+}
@@ -0,0 +1,205 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.code.or.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.google.code.or.binlog.BinlogEventV4Header;
+import com.google.code.or.common.util.MySQLConstants;
+
+/**
+ * Tracks the replication lag of a binlog parser per stage:
+ * <ul>
+ * <li>lag.masterToReceipt: from the master's timestamp to the receipt of the event, in milliseconds.
+ * The master's timestamp has a resolution of one second and the clocks may be skewed.</li>
+ * <li>lag.receiptToParsed: from the receipt to the parsed event, in nanoseconds</li>
+ * <li>lag.parsedToListener: from the parsed event to the completion of the listener, in nanoseconds,
+ * the histogram is the parser's listener histogram</li>
+ * </ul>
+ * Each stage is a gauge of the last value and a histogram of the sampled ones. The end to end lag is
+ * the gauge lag.millis, which is corrected with heartbeats if a heartbeat period is set. The master
+ * only sends a heartbeat when it has no events to send, so a heartbeat received after the last event
+ * means the parser is caught up and the master is idle, rather than the lag growing with the age of
+ * the last event. Without events and heartbeats for two periods, lag.stalled is set to 1.
+ * 
+ * @author Jingqi Xu
+ */
+public final class ReplicationLag
+{
+	//
+	private volatile long heartbeatPeriod;
+	private final Histogram masterToReceipt;
+	private final Histogram receiptToParsed;
+	private final AtomicLong lastMasterToReceipt = new AtomicLong();
+	private final AtomicLong lastReceiptToParsed = new AtomicLong();
+	private final AtomicLong lastParsedToListener = new AtomicLong();
+
+	// Wall clock times in milliseconds
+	private final AtomicLong lastReceipt = new AtomicLong();
+	private final AtomicLong lastHeartbeat = new AtomicLong();
+	private final AtomicLong completedTimestamp = new AtomicLong();
+	private final AtomicLong completedReceipt = new AtomicLong();
+
+	/**
+	 * 
+	 */
+	public ReplicationLag(MetricsRegistry registry)
+	{
+		//
+		this.masterToReceipt = registry.getHistogram("lag.masterToReceipt");
+		this.receiptToParsed = registry.getHistogram("lag.receiptToParsed");
+		registry.register("lag.masterToReceipt", newGauge(this.lastMasterToReceipt));
+		registry.register("lag.receiptToParsed", newGauge(this.lastReceiptToParsed));
+		registry.register("lag.parsedToListener", newGauge(this.lastParsedToListener));
+
+		//
+		registry.register("lag.millis", new Gauge()
+		{
+			public long getValue()
+			{
+				return getLagMillis();
+			}
+		});
+		registry.register("lag.idle", new Gauge()
+		{
+			public long getValue()
+			{
+				return getIdleMillis();
+			}
+		});
+		registry.register("lag.stalled", new Gauge()
+		{
+			public long getValue()
+			{
+				return isStalled() ? 1 : 0;
+			}
+		});
+	}
+
+	/**
+	 * The master's heartbeat period in milliseconds, 0 if the master sends no heartbeats
+	 */
+	public long getHeartbeatPeriod()
+	{
+		return heartbeatPeriod;
+	}
+
+	public void setHeartbeatPeriod(long heartbeatPeriod)
+	{
+		this.heartbeatPeriod = heartbeatPeriod;
+	}
+
+	/**
+	 * Returns the end to end lag in milliseconds, 0 if caught up with an idle master
+	 */
+	public long getLagMillis()
+	{
+		//
+		final long now = System.currentTimeMillis();
+		final long heartbeat = this.lastHeartbeat.get();
+		if (heartbeat > 0 && heartbeat >= this.completedReceipt.get())
+		{
+			return Math.max(0, now - heartbeat - this.heartbeatPeriod);
+		}
+
+		//
+		final long timestamp = this.completedTimestamp.get();
+		return timestamp <= 0 ? 0 : Math.max(0, now - timestamp);
+	}
+
+	/**
+	 * Returns the milliseconds since the last event or heartbeat was received
+	 */
+	public long getIdleMillis()
+	{
+		final long receipt = this.lastReceipt.get();
+		return receipt <= 0 ? 0 : Math.max(0, System.currentTimeMillis() - receipt);
+	}
+
+	/**
+	 * Returns true if neither events nor heartbeats were received for two heartbeat periods, always
+	 * false without heartbeats since an idle master can not be told apart then
+	 */
+	public boolean isStalled()
+	{
+		final long period = this.heartbeatPeriod;
+		return period > 0 && this.lastReceipt.get() > 0 && getIdleMillis() > 2 * period;
+	}
+
+	/**
+	 * 
+	 */
+	public void onReceipt(BinlogEventV4Header header, boolean sampled)
+	{
+		//
+		final long receipt = header.getTimestampOfReceipt();
+		this.lastReceipt.lazySet(receipt);
+		if (header.getEventType() == MySQLConstants.HEARTBEAT_LOG_EVENT)
+		{
+			this.lastHeartbeat.lazySet(receipt);
+			return;
+		}
+
+		//
+		if (isMasterEvent(header))
+		{
+			final long lag = receipt - header.getTimestamp();
+			this.lastMasterToReceipt.lazySet(lag);
+			if (sampled)
+				this.masterToReceipt.record(lag);
+		}
+	}
+
+	public void onParsed(long nanos)
+	{
+		this.lastReceiptToParsed.lazySet(nanos);
+		this.receiptToParsed.record(nanos);
+	}
+
+	public void onListener(long nanos)
+	{
+		this.lastParsedToListener.lazySet(nanos);
+	}
+
+	public void onCompleted(BinlogEventV4Header header)
+	{
+		if (isMasterEvent(header))
+		{
+			this.completedTimestamp.lazySet(header.getTimestamp());
+			this.completedReceipt.lazySet(header.getTimestampOfReceipt());
+		}
+	}
+
+	/**
+	 * Artificial events and the format description event at the start of a binlog file do not tell
+	 * the time of a change on the master
+	 */
+	private static boolean isMasterEvent(BinlogEventV4Header header)
+	{
+		return header.getTimestamp() > 0 && header.getNextPosition() > 0
+		        && header.getEventType() != MySQLConstants.FORMAT_DESCRIPTION_EVENT;
+	}
+
+	private static Gauge newGauge(final AtomicLong value)
+	{
+		return new Gauge()
+		{
+			public long getValue()
+			{
+				return value.get();
+			}
+		};
+	}
+}
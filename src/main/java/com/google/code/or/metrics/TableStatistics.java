@@ -0,0 +1,173 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.code.or.metrics;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.code.or.common.util.XThreadFactory;
+
+/**
+ * The row events per database.table, see {@link MetricsRegistry#setTableStatistics}. The parser
+ * resolves the table of a row event once per table id through its TableMapEvent, so the statistics
+ * of a table survive the new table ids assigned by the master after DDL or a restart.
+ * 
+ * @author Jingqi Xu
+ */
+public class TableStatistics
+{
+	//
+	private static final Logger LOGGER = LoggerFactory.getLogger(TableStatistics.class);
+
+	//
+	public static final Comparator<TableStatsSnapshot> BY_ROWS = new Comparator<TableStatsSnapshot>()
+	{
+		public int compare(TableStatsSnapshot a, TableStatsSnapshot b)
+		{
+			return a.getRows() == b.getRows() ? 0 : (a.getRows() > b.getRows() ? -1 : 1);
+		}
+	};
+	public static final Comparator<TableStatsSnapshot> BY_BYTES = new Comparator<TableStatsSnapshot>()
+	{
+		public int compare(TableStatsSnapshot a, TableStatsSnapshot b)
+		{
+			return a.getBytes() == b.getBytes() ? 0 : (a.getBytes() > b.getBytes() ? -1 : 1);
+		}
+	};
+
+	//
+	protected final ConcurrentMap<String, TableStats> tables = new ConcurrentHashMap<String, TableStats>();
+	protected ScheduledExecutorService exporter;
+	private final ReentrantLock lock = new ReentrantLock(false);
+
+	/**
+	 * 
+	 */
+	public TableStats getTableStats(String databaseName, String tableName)
+	{
+		final String name = databaseName + "." + tableName;
+		TableStats r = this.tables.get(name);
+		if (r == null)
+		{
+			final TableStats existing = this.tables.putIfAbsent(name, r = new TableStats(databaseName, tableName));
+			if (existing != null)
+				r = existing;
+		}
+		return r;
+	}
+
+	public List<TableStatsSnapshot> snapshot()
+	{
+		final List<TableStatsSnapshot> r = new ArrayList<TableStatsSnapshot>(this.tables.size());
+		for (TableStats table : this.tables.values())
+		{
+			r.add(table.snapshot());
+		}
+		return r;
+	}
+
+	/**
+	 * Returns at most n tables in descending order
+	 */
+	public List<TableStatsSnapshot> getTop(int n, Comparator<TableStatsSnapshot> order)
+	{
+		final List<TableStatsSnapshot> r = snapshot();
+		Collections.sort(r, order);
+		return r.size() > n ? new ArrayList<TableStatsSnapshot>(r.subList(0, n)) : r;
+	}
+
+	public List<TableStatsSnapshot> getTopByRows(int n)
+	{
+		return getTop(n, BY_ROWS);
+	}
+
+	public List<TableStatsSnapshot> getTopByBytes(int n)
+	{
+		return getTop(n, BY_BYTES);
+	}
+
+	public void reset()
+	{
+		for (TableStats table : this.tables.values())
+		{
+			table.reset();
+		}
+	}
+
+	/**
+	 * Passes a snapshot of all tables to the exporter every period milliseconds on a daemon thread
+	 */
+	public void start(long period, final TableStatsExporter exporter)
+	{
+		this.lock.lock();
+		try
+		{
+			//
+			if (this.exporter != null)
+			{
+				throw new IllegalStateException("table statistics exporter is already started");
+			}
+
+			//
+			this.exporter = Executors.newSingleThreadScheduledExecutor(new XThreadFactory("table-stats-exporter", true));
+			this.exporter.scheduleAtFixedRate(new Runnable()
+			{
+				public void run()
+				{
+					try
+					{
+						exporter.export(System.currentTimeMillis(), snapshot());
+					}
+					catch (Exception e)
+					{
+						LOGGER.error("failed to export table statistics", e);
+					}
+				}
+			}, period, period, TimeUnit.MILLISECONDS);
+		}
+		finally
+		{
+			this.lock.unlock();
+		}
+	}
+
+	public void stop()
+	{
+		this.lock.lock();
+		try
+		{
+			if (this.exporter != null)
+			{
+				this.exporter.shutdownNow();
+				this.exporter = null;
+			}
+		}
+		finally
+		{
+			this.lock.unlock();
+		}
+	}
+}
@@ -0,0 +1,96 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.code.or.metrics;
+
+/**
+ * The row events of a table, updated by the parser threads without contention.
+ * 
+ * @author Jingqi Xu
+ */
+public final class TableStats
+{
+	//
+	private final String databaseName;
+	private final String tableName;
+	private final Counter events = new Counter("events");
+	private final Counter bytes = new Counter("bytes");
+	private final Counter inserts = new Counter("inserts");
+	private final Counter updates = new Counter("updates");
+	private final Counter deletes = new Counter("deletes");
+
+	/**
+	 * 
+	 */
+	public TableStats(String databaseName, String tableName)
+	{
+		this.databaseName = databaseName;
+		this.tableName = tableName;
+	}
+
+	/**
+	 * 
+	 */
+	public String getDatabaseName()
+	{
+		return databaseName;
+	}
+
+	public String getTableName()
+	{
+		return tableName;
+	}
+
+	public void onInserts(int rows, long bytes)
+	{
+		this.inserts.add(rows);
+		onEvent(bytes);
+	}
+
+	public void onUpdates(int rows, long bytes)
+	{
+		this.updates.add(rows);
+		onEvent(bytes);
+	}
+
+	public void onDeletes(int rows, long bytes)
+	{
+		this.deletes.add(rows);
+		onEvent(bytes);
+	}
+
+	public TableStatsSnapshot snapshot()
+	{
+		return new TableStatsSnapshot(this.databaseName, this.tableName, this.events.get(), this.bytes.get(),
+		        this.inserts.get(), this.updates.get(), this.deletes.get());
+	}
+
+	public void reset()
+	{
+		this.events.reset();
+		this.bytes.reset();
+		this.inserts.reset();
+		this.updates.reset();
+		this.deletes.reset();
+	}
+
+	/**
+	 * 
+	 */
+	private void onEvent(long bytes)
+	{
+		this.events.increment();
+		this.bytes.add(bytes);
+	}
+}
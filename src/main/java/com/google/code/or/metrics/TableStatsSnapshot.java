@@ -0,0 +1,114 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.code.or.metrics;
+
+import org.apache.commons.lang.builder.ToStringBuilder;
+import org.apache.commons.lang.builder.ToStringStyle;
+
+/**
+ * 
+ * @author Jingqi Xu
+ */
+public final class TableStatsSnapshot
+{
+	//
+	private final String databaseName;
+	private final String tableName;
+	private final long events;
+	private final long bytes;
+	private final long inserts;
+	private final long updates;
+	private final long deletes;
+
+	/**
+	 * 
+	 */
+	public TableStatsSnapshot(String databaseName, String tableName, long events, long bytes, long inserts,
+	        long updates, long deletes)
+	{
+		this.databaseName = databaseName;
+		this.tableName = tableName;
+		this.events = events;
+		this.bytes = bytes;
+		this.inserts = inserts;
+		this.updates = updates;
+		this.deletes = deletes;
+	}
+
+	/**
+	 * 
+	 */
+	@Override
+	public String toString()
+	{
+		return new ToStringBuilder(this, ToStringStyle.SHORT_PREFIX_STYLE).append("name", getName())
+		        .append("events", events).append("bytes", bytes).append("inserts", inserts)
+		        .append("updates", updates).append("deletes", deletes).toString();
+	}
+
+	/**
+	 * 
+	 */
+	public String getName()
+	{
+		return databaseName + "." + tableName;
+	}
+
+	public String getDatabaseName()
+	{
+		return databaseName;
+	}
+
+	public String getTableName()
+	{
+		return tableName;
+	}
+
+	/**
+	 * The number of row events, and their length including the header
+	 */
+	public long getEvents()
+	{
+		return events;
+	}
+
+	public long getBytes()
+	{
+		return bytes;
+	}
+
+	/**
+	 * The number of rows inserted, updated and deleted, an update counts as one row
+	 */
+	public long getRows()
+	{
+		return inserts + updates + deletes;
+	}
+
+	public long getInserts()
+	{
+		return inserts;
+	}
+
+	public long getUpdates()
+	{
+		return updates;
+	}
+
+	public long getDeletes()
+	{
+		return deletes;
+	}
+}
@@ -0,0 +1,457 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.code.or.net.impl;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.Socket;
+import java.net.SocketException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.zip.CRC32;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.code.or.common.glossary.UnsignedLong;
+import com.google.code.or.common.glossary.column.StringColumn;
+import com.google.code.or.common.util.CodecUtils;
+import com.google.code.or.common.util.IOUtils;
+import com.google.code.or.common.util.MySQLConstants;
+import com.google.code.or.io.util.XDeserializer;
+import com.google.code.or.net.Packet;
+import com.google.code.or.net.TransportInputStream;
+import com.google.code.or.net.TransportOutputStream;
+import com.google.code.or.net.impl.packet.AbstractPacket;
+import com.google.code.or.net.impl.packet.EOFPacket;
+import com.google.code.or.net.impl.packet.ErrorPacket;
+import com.google.code.or.net.impl.packet.GreetingPacket;
+import com.google.code.or.net.impl.packet.OKPacket;
+import com.google.code.or.net.impl.packet.RawPacket;
+import com.google.code.or.net.impl.packet.ResultSetFieldPacket;
+import com.google.code.or.net.impl.packet.ResultSetHeaderPacket;
+import com.google.code.or.net.impl.packet.ResultSetRowPacket;
+import com.google.code.or.net.impl.packet.command.ComBinlogDumpPacket;
+import com.google.code.or.net.impl.packet.command.ComQuery;
+
+/**
+ * The server side of a replication client's connection, which plays the master. It speaks just
+ * enough of the protocol for a replication client: the handshake, the binlog checksum and heartbeat
+ * period queries and COM_BINLOG_DUMP, which is left to the subclass.
+ * 
+ * @author Jingqi Xu
+ */
+public abstract class AbstractServerSession implements Runnable
+{
+	//
+	private static final Logger LOGGER = LoggerFactory.getLogger(AbstractServerSession.class);
+
+	//
+	public static final int SERVER_CAPABILITIES =
+	        (MySQLConstants.CLIENT_LONG_FLAG | MySQLConstants.CLIENT_CONNECT_WITH_DB
+	                | MySQLConstants.CLIENT_PROTOCOL_41 | MySQLConstants.CLIENT_SECURE_CONNECTION);
+	protected static final int SERVER_COLLATION = 33; // utf8_general_ci
+	protected static final int SERVER_STATUS_AUTOCOMMIT = 0x0002;
+	protected static final int ER_ACCESS_DENIED_ERROR = 1045;
+	protected static final int ER_NOT_SUPPORTED_YET = 1235;
+	protected static final int ER_MASTER_FATAL_ERROR_READING_BINLOG = 1236;
+	private static final int MYSQL_TYPE_VAR_STRING = 253;
+	private static final int LOG_EVENT_ARTIFICIAL_F = 0x20;
+
+	//
+	protected final Socket socket;
+	protected final long threadId;
+	protected final TransportInputStream is;
+	protected final TransportOutputStream os;
+	protected final AtomicBoolean running = new AtomicBoolean(true);
+	protected int sequence;
+	protected String user;
+	protected volatile long serverId;
+	protected volatile long heartbeatPeriod;
+
+	/**
+	 * 
+	 */
+	public AbstractServerSession(Socket socket, long threadId) throws IOException
+	{
+		this.socket = socket;
+		this.threadId = threadId;
+		this.is = new TransportInputStreamImpl(socket.getInputStream(), 64 * 1024);
+		this.os = new TransportOutputStreamImpl(socket.getOutputStream());
+	}
+
+	/**
+	 * 
+	 */
+	public long getThreadId()
+	{
+		return threadId;
+	}
+
+	public String getUser()
+	{
+		return user;
+	}
+
+	/**
+	 * The server id of the client, as sent with COM_BINLOG_DUMP
+	 */
+	public long getServerId()
+	{
+		return serverId;
+	}
+
+	/**
+	 * The heartbeat period in nanoseconds as set by the client with @master_heartbeat_period, 0 if
+	 * the client does not want heartbeats
+	 */
+	public long getHeartbeatPeriod()
+	{
+		return heartbeatPeriod;
+	}
+
+	public boolean isRunning()
+	{
+		return this.running.get();
+	}
+
+	public void close()
+	{
+		this.running.set(false);
+		IOUtils.closeQuietly(this.socket);
+	}
+
+	/**
+	 * 
+	 */
+	protected abstract String getServerVersion();
+
+	/**
+	 * Returns the value of the binlog_checksum variable, i.e. CRC32 or NONE
+	 */
+	protected abstract String getBinlogChecksum();
+
+	protected abstract boolean authenticate(String user, byte[] scramble, byte[] token) throws IOException;
+
+	/**
+	 * Streams the binlog events, returns only if the dump is non blocking or failed
+	 */
+	protected abstract void dump(ComBinlogDumpPacket command) throws Exception;
+
+	protected void onClose()
+	{
+	}
+
+	/**
+	 * 
+	 */
+	public void run()
+	{
+		try
+		{
+			//
+			if (!handshake())
+			{
+				return;
+			}
+
+			//
+			while (isRunning())
+			{
+				final Packet packet = this.is.readPacket();
+				this.sequence = packet.getSequence() + 1;
+				final int command = packet.getPacketBody()[0] & 0xFF;
+				switch (command)
+				{
+				case MySQLConstants.COM_QUIT:
+					return;
+				case MySQLConstants.COM_PING:
+				case MySQLConstants.COM_INIT_DB:
+				case MySQLConstants.COM_REGISTER_SLAVE:
+					writeOK();
+					break;
+				case MySQLConstants.COM_QUERY:
+					query(ComQuery.valueOf(packet).getSql().toString());
+					break;
+				case MySQLConstants.COM_BINLOG_DUMP:
+					final ComBinlogDumpPacket dump = ComBinlogDumpPacket.valueOf(packet);
+					this.serverId = dump.getServerId();
+					dump(dump);
+					break;
+				default:
+					writeError(ER_NOT_SUPPORTED_YET, "command is not supported: " + command);
+					break;
+				}
+			}
+		}
+		catch (EOFException e)
+		{
+			// The consumer has disconnected
+		}
+		catch (SocketException e)
+		{
+			if (isRunning())
+				LOGGER.info("session closed: {}, {}", this, e.getMessage());
+		}
+		catch (Exception e)
+		{
+			if (isRunning())
+				LOGGER.error("session failed: " + this, e);
+		}
+		finally
+		{
+			close();
+			onClose();
+		}
+	}
+
+	/**
+	 * 
+	 */
+	protected boolean handshake() throws IOException
+	{
+		//
+		final byte[] scramble = new byte[20];
+		final Random random = new Random();
+		for (int i = 0; i < scramble.length; i++)
+		{
+			scramble[i] = (byte) (33 + random.nextInt(94)); // Printable, never 0
+		}
+		final GreetingPacket greeting = new GreetingPacket();
+		greeting.setProtocolVersion(10);
+		greeting.setServerVersion(StringColumn.valueOf(getServerVersion().getBytes("US-ASCII")));
+		greeting.setThreadId(this.threadId);
+		greeting.setScramble1(StringColumn.valueOf(Arrays.copyOfRange(scramble, 0, 8)));
+		greeting.setServerCapabilities(SERVER_CAPABILITIES);
+		greeting.setServerCollation(SERVER_COLLATION);
+		greeting.setServerStatus(SERVER_STATUS_AUTOCOMMIT);
+		greeting.setScramble2(StringColumn.valueOf(Arrays.copyOfRange(scramble, 8, 20)));
+		this.sequence = 0;
+		write(greeting);
+		this.os.flush();
+
+		//
+		final Packet packet = this.is.readPacket();
+		this.sequence = packet.getSequence() + 1;
+		final XDeserializer d = new XDeserializer(packet.getPacketBody());
+		final int capabilities = d.readInt(4);
+		d.skip(4 + 1 + 23); // maximum packet length, collation and reserved
+		this.user = d.readNullTerminatedString().toString();
+		final byte[] token;
+		if ((capabilities & MySQLConstants.CLIENT_SECURE_CONNECTION) != 0)
+			token = d.readBytes(d.readInt(1));
+		else
+			token = d.readNullTerminatedString().getValue();
+
+		//
+		if (!authenticate(this.user, scramble, token))
+		{
+			LOGGER.warn("access denied for user: {}, remote: {}", this.user, this.socket.getRemoteSocketAddress());
+			writeError(ER_ACCESS_DENIED_ERROR, "Access denied for user '" + this.user + "'");
+			return false;
+		}
+		writeOK();
+		return true;
+	}
+
+	protected void query(String sql) throws IOException
+	{
+		final String s = sql.trim().toLowerCase();
+		if (s.startsWith("set "))
+		{
+			if (s.contains("@master_heartbeat_period") && s.indexOf('=') > 0)
+			{
+				try
+				{
+					this.heartbeatPeriod = Long.parseLong(s.substring(s.indexOf('=') + 1).trim());
+				}
+				catch (NumberFormatException e)
+				{
+					LOGGER.warn("invalid heartbeat period: {}, session: {}", sql, this);
+				}
+			}
+			writeOK(); // e.g. set @master_binlog_checksum
+		}
+		else if (s.startsWith("show") && s.contains("binlog_checksum"))
+		{
+			writeResultSet(new String[] { "Variable_name", "Value" }, new String[] { "binlog_checksum", getBinlogChecksum() });
+		}
+		else
+		{
+			writeError(ER_NOT_SUPPORTED_YET, "query is not supported: " + sql);
+		}
+	}
+
+	/**
+	 * 
+	 */
+	protected void write(AbstractPacket packet) throws IOException
+	{
+		packet.setSequence(this.sequence);
+		this.os.writePacket(packet);
+		this.sequence = (this.sequence + 1 + packet.getLength() / MySQLConstants.MAX_PACKET_LENGTH) & 0xFF;
+	}
+
+	/**
+	 * Writes an event packet, the body starts with the ok packet marker
+	 */
+	protected void writeEventPacket(byte[] body) throws IOException
+	{
+		final RawPacket packet = new RawPacket();
+		packet.setPacketBody(body);
+		packet.setLength(body.length);
+		write(packet);
+	}
+
+	/**
+	 * Writes an event packet of the event
+	 */
+	protected void writeEvent(byte[] event) throws IOException
+	{
+		writeEvent(event, 0, event.length);
+	}
+
+	protected void writeEvent(byte[] event, int offset, int length) throws IOException
+	{
+		if (length + 1 >= MySQLConstants.MAX_PACKET_LENGTH)
+		{
+			writeEventPacket(CodecUtils.concat(new byte[] { OKPacket.PACKET_MARKER },
+			        Arrays.copyOfRange(event, offset, offset + length)));
+			return;
+		}
+		this.os.writeInt(length + 1, 3);
+		this.os.writeInt(this.sequence, 1);
+		this.os.writeInt(OKPacket.PACKET_MARKER, 1);
+		this.os.writeBytes(event, offset, length);
+		this.sequence = (this.sequence + 1) & 0xFF;
+	}
+
+	/**
+	 * Writes a heartbeat event, which the master sends instead of events when it has none to send
+	 * for a heartbeat period. It carries the current binlog coordinates and no timestamp.
+	 */
+	protected void writeHeartbeat(String binlogFileName, long binlogPosition) throws IOException
+	{
+		//
+		final byte[] name = binlogFileName.getBytes("US-ASCII");
+		final int checksumLength = "NONE".equalsIgnoreCase(getBinlogChecksum()) ? 0 : 4;
+		final byte[] event = new byte[19 + name.length + checksumLength];
+		putLong(event, 4, MySQLConstants.HEARTBEAT_LOG_EVENT, 1);
+		putLong(event, 9, event.length, 4);
+		putLong(event, 13, binlogPosition, 4);
+		putLong(event, 17, LOG_EVENT_ARTIFICIAL_F, 2);
+		System.arraycopy(name, 0, event, 19, name.length);
+		if (checksumLength > 0)
+		{
+			final CRC32 crc = new CRC32();
+			crc.update(event, 0, event.length - checksumLength);
+			putLong(event, event.length - checksumLength, crc.getValue(), 4);
+		}
+
+		//
+		writeEvent(event);
+		this.os.flush();
+	}
+
+	protected void writeOK() throws IOException
+	{
+		final OKPacket ok = new OKPacket();
+		ok.setPacketMarker(OKPacket.PACKET_MARKER);
+		ok.setAffectedRows(UnsignedLong.valueOf(0));
+		ok.setInsertId(UnsignedLong.valueOf(0));
+		ok.setServerStatus(SERVER_STATUS_AUTOCOMMIT);
+		write(ok);
+		this.os.flush();
+	}
+
+	protected void writeEOF() throws IOException
+	{
+		final EOFPacket eof = new EOFPacket();
+		eof.setPacketMarker(EOFPacket.PACKET_MARKER & 0xFF);
+		eof.setServerStatus(SERVER_STATUS_AUTOCOMMIT);
+		write(eof);
+		this.os.flush();
+	}
+
+	protected void writeError(int errorCode, String message) throws IOException
+	{
+		final ErrorPacket error = new ErrorPacket();
+		error.setPacketMarker(ErrorPacket.PACKET_MARKER & 0xFF);
+		error.setErrorCode(errorCode);
+		error.setSlash(StringColumn.valueOf("#".getBytes("US-ASCII")));
+		error.setSqlState(StringColumn.valueOf((errorCode == ER_ACCESS_DENIED_ERROR ? "28000" : "HY000")
+		        .getBytes("US-ASCII")));
+		error.setErrorMessage(StringColumn.valueOf(message.getBytes("utf-8")));
+		write(error);
+		this.os.flush();
+	}
+
+	protected void writeResultSet(String[] columns, String[]... rows) throws IOException
+	{
+		//
+		final ResultSetHeaderPacket header = new ResultSetHeaderPacket();
+		header.setFieldCount(UnsignedLong.valueOf(columns.length));
+		write(header);
+		for (String column : columns)
+		{
+			final ResultSetFieldPacket field = new ResultSetFieldPacket();
+			field.setCatalog(toStringColumn("def"));
+			field.setDb(toStringColumn(""));
+			field.setTable(toStringColumn(""));
+			field.setOrginalTable(toStringColumn(""));
+			field.setColumn(toStringColumn(column));
+			field.setOriginalColumn(toStringColumn(column));
+			field.setFixed12(0x0C);
+			field.setCharset(SERVER_COLLATION);
+			field.setFieldLength(1024);
+			field.setFieldType(MYSQL_TYPE_VAR_STRING);
+			write(field);
+		}
+		writeEOF();
+
+		//
+		for (String[] row : rows)
+		{
+			final List<StringColumn> values = new ArrayList<StringColumn>(row.length);
+			for (String value : row)
+			{
+				values.add(toStringColumn(value));
+			}
+			final ResultSetRowPacket packet = new ResultSetRowPacket();
+			packet.setColumns(values);
+			write(packet);
+		}
+		writeEOF();
+	}
+
+	/**
+	 * 
+	 */
+	private static void putLong(byte[] data, int offset, long value, int length)
+	{
+		for (int i = 0; i < length; i++)
+		{
+			data[offset + i] = (byte) (value >>> (i << 3));
+		}
+	}
+
+	protected static StringColumn toStringColumn(String value) throws IOException
+	{
+		return StringColumn.valueOf(value.getBytes("utf-8"));
+	}
+}
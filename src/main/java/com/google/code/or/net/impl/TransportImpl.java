@@ -14,7 +14,10 @@
  */
 package com.google.code.or.net.impl;
 
+import java.io.IOException;
+import java.io.InputStream;
 import java.net.Socket;
+import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 import org.slf4j.Logger;
@@ -23,6 +26,8 @@ import org.slf4j.LoggerFactory;
 import com.google.code.or.common.util.IOUtils;
 import com.google.code.or.io.SocketFactory;
 import com.google.code.or.io.util.ActiveBufferedInputStream;
+import com.google.code.or.io.util.CountingInputStream;
+import com.google.code.or.metrics.MetricsRegistry;
 import com.google.code.or.net.Packet;
 import com.google.code.or.net.TransportException;
 import com.google.code.or.net.TransportInputStream;
@@ -43,8 +48,11 @@ public class TransportImpl extends AbstractTransport
 	protected TransportInputStream is;
 	protected TransportOutputStream os;
 	protected SocketFactory socketFactory;
+	protected ThreadFactory threadFactory;
 	protected int level1BufferSize = 1024 * 1024;
 	protected int level2BufferSize = 8 * 1024 * 1024;
+	protected MetricsRegistry metricsRegistry;
+	protected ActiveBufferedInputStream level2Buffer;
 	protected final AtomicBoolean connected = new AtomicBoolean(false);
 
 	/**
@@ -72,15 +80,21 @@ public class TransportImpl extends AbstractTransport
 		//
 		this.socket = this.socketFactory.create(host, port);
 		this.os = new TransportOutputStreamImpl(this.socket.getOutputStream());
+		InputStream sis = this.socket.getInputStream();
+		if (this.metricsRegistry != null)
+		{
+			sis = new CountingInputStream(sis, this.metricsRegistry.getCounter("transport.bytes"));
+		}
 		if (this.level2BufferSize <= 0)
 		{
-			this.is = new TransportInputStreamImpl(this.socket.getInputStream(), this.level1BufferSize);
+			this.is = new TransportInputStreamImpl(sis, this.level1BufferSize);
 		}
 		else
 		{
-			this.is =
-			        new TransportInputStreamImpl(new ActiveBufferedInputStream(this.socket.getInputStream(),
-			                this.level2BufferSize), this.level1BufferSize);
+			this.level2Buffer =
+			        this.threadFactory == null ? new ActiveBufferedInputStream(sis, this.level2BufferSize)
+			                : new ActiveBufferedInputStream(sis, this.level2BufferSize, this.threadFactory);
+			this.is = new TransportInputStreamImpl(this.level2Buffer, this.level1BufferSize);
 		}
 
 		//
@@ -159,6 +173,29 @@ public class TransportImpl extends AbstractTransport
 		this.level2BufferSize = size;
 	}
 
+	/**
+	 * Counts the bytes received from the socket as transport.bytes
+	 */
+	public MetricsRegistry getMetricsRegistry()
+	{
+		return metricsRegistry;
+	}
+
+	public void setMetricsRegistry(MetricsRegistry registry)
+	{
+		this.metricsRegistry = registry;
+	}
+
+	/**
+	 * Returns the bytes received but not read by the parser yet, 0 without a level 2 buffer. A full
+	 * level 2 buffer means the parser is the bottleneck, an empty one that the master or the network is.
+	 */
+	public int getLevel2BufferedBytes() throws IOException
+	{
+		final ActiveBufferedInputStream buffer = this.level2Buffer;
+		return buffer == null ? 0 : buffer.available();
+	}
+
 	public TransportInputStream getInputStream()
 	{
 		return this.is;
@@ -179,4 +216,17 @@ public class TransportImpl extends AbstractTransport
 		this.socketFactory = factory;
 	}
 
+	/**
+	 * The thread factory of the level 2 buffer's pump thread, see {@link ActiveBufferedInputStream}
+	 */
+	public ThreadFactory getThreadFactory()
+	{
+		return threadFactory;
+	}
+
+	public void setThreadFactory(ThreadFactory tf)
+	{
+		this.threadFactory = tf;
+	}
+
 }
@@ -76,7 +76,7 @@ public class GreetingPacket extends AbstractPacket {
 		s.writeInt(this.serverStatus, 2);
 		s.writeInt(0, 13);
 		s.writeNullTerminatedString(this.scramble2);
-		s.writeNullTerminatedString(this.pluginProvidedData);
+		if(this.pluginProvidedData != null) s.writeNullTerminatedString(this.pluginProvidedData);
 		return s.toByteArray();
 	}
 	
@@ -87,33 +87,73 @@ public class GreetingPacket extends AbstractPacket {
 		return protocolVersion;
 	}
 
+	public void setProtocolVersion(int protocolVersion) {
+		this.protocolVersion = protocolVersion;
+	}
+
 	public StringColumn getServerVersion() {
 		return serverVersion;
 	}
 
+	public void setServerVersion(StringColumn serverVersion) {
+		this.serverVersion = serverVersion;
+	}
+
 	public long getThreadId() {
 		return threadId;
 	}
 
+	public void setThreadId(long threadId) {
+		this.threadId = threadId;
+	}
+
 	public StringColumn getScramble1() {
 		return scramble1;
 	}
+
+	public void setScramble1(StringColumn scramble1) {
+		this.scramble1 = scramble1;
+	}
 	
 	public int getServerCapabilities() {
 		return serverCapabilities;
 	}
 
+	public void setServerCapabilities(int serverCapabilities) {
+		this.serverCapabilities = serverCapabilities;
+	}
+
 	public int getServerCollation() {
 		return serverCollation;
 	}
 
+	public void setServerCollation(int serverCollation) {
+		this.serverCollation = serverCollation;
+	}
+
 	public int getServerStatus() {
 		return serverStatus;
 	}
 
+	public void setServerStatus(int serverStatus) {
+		this.serverStatus = serverStatus;
+	}
+
 	public StringColumn getScramble2() {
 		return scramble2;
 	}
+
+	public void setScramble2(StringColumn scramble2) {
+		this.scramble2 = scramble2;
+	}
+
+	public StringColumn getPluginProvidedData() {
+		return pluginProvidedData;
+	}
+
+	public void setPluginProvidedData(StringColumn pluginProvidedData) {
+		this.pluginProvidedData = pluginProvidedData;
+	}
 	
 	/**
 	 * 
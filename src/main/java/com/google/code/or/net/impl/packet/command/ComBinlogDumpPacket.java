@@ -21,7 +21,9 @@ import org.apache.commons.lang.builder.ToStringStyle;
 
 import com.google.code.or.common.glossary.column.StringColumn;
 import com.google.code.or.common.util.MySQLConstants;
+import com.google.code.or.io.util.XDeserializer;
 import com.google.code.or.io.util.XSerializer;
+import com.google.code.or.net.Packet;
 
 /**
  * @author Jingqi Xu
@@ -31,6 +33,9 @@ public class ComBinlogDumpPacket extends AbstractCommandPacket
 	//
 	private static final long serialVersionUID = 449639496684376511L;
 
+	//
+	public static final int BINLOG_DUMP_NON_BLOCK = 0x01; // An eof packet is sent at the end of the binlog
+
 	//
 	private long binlogPosition;
 	private int binlogFlag;
@@ -112,4 +117,21 @@ public class ComBinlogDumpPacket extends AbstractCommandPacket
 	{
 		this.binlogFileName = binlogFileName;
 	}
+
+	/**
+	 * 
+	 */
+	public static ComBinlogDumpPacket valueOf(Packet packet) throws IOException
+	{
+		final XDeserializer d = new XDeserializer(packet.getPacketBody());
+		final ComBinlogDumpPacket r = new ComBinlogDumpPacket();
+		r.length = packet.getLength();
+		r.sequence = packet.getSequence();
+		d.skip(1); // command
+		r.binlogPosition = d.readLong(4);
+		r.binlogFlag = d.readInt(2);
+		r.serverId = d.readLong(4);
+		r.binlogFileName = d.readFixedLengthString(d.available());
+		return r;
+	}
 }
@@ -23,7 +23,9 @@ import org.apache.commons.lang.builder.ToStringStyle;
 
 import com.google.code.or.common.glossary.column.StringColumn;
 import com.google.code.or.common.util.MySQLConstants;
+import com.google.code.or.io.util.XDeserializer;
 import com.google.code.or.io.util.XSerializer;
+import com.google.code.or.net.Packet;
 
 /**
  * 
@@ -72,4 +74,17 @@ public class ComQuery extends AbstractCommandPacket {
 	public void setSql(StringColumn sql) {
 		this.sql = sql;
 	}
+	
+	/**
+	 * 
+	 */
+	public static ComQuery valueOf(Packet packet) throws IOException {
+		final XDeserializer d = new XDeserializer(packet.getPacketBody());
+		final ComQuery r = new ComQuery();
+		r.length = packet.getLength();
+		r.sequence = packet.getSequence();
+		d.skip(1); // command
+		r.sql = d.readFixedLengthString(d.available());
+		return r;
+	}
 }
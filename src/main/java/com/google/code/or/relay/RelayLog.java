@@ -0,0 +1,831 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.code.or.relay;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.CRC32;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.code.or.binlog.impl.index.BinlogIndexer;
+import com.google.code.or.common.util.MySQLConstants;
+import com.google.code.or.common.util.XThreadFactory;
+
+/**
+ * Spools the events received from the master verbatim into rotating segment files, which are valid
+ * binlog files, so that they can be parsed at the parser's own pace, see
+ * {@link com.google.code.or.binlog.impl.RelayLogParser}. Each segment starts with a copy of the
+ * latest format description event and an artificial rotate event to the master's binlog position of
+ * its first event, so a segment can be parsed on its own. Only complete events are made visible to
+ * the reader, and a partially written event at the end of the last segment is truncated by
+ * {@link #open()}. The oldest segments which have been read are deleted by size and age, except the
+ * ones pinned by a reader, see {@link #pin(long)}. The lengths of the closed segments are cached, so
+ * that the readers do not stat the files.
+ * 
+ * @author Jingqi Xu
+ */
+public class RelayLog
+{
+	//
+	private static final Logger LOGGER = LoggerFactory.getLogger(RelayLog.class);
+
+	//
+	public static final String PREFIX = "relay.";
+	static final int HEADER_LENGTH = 19;
+	static final int LOG_EVENT_ARTIFICIAL_F = 0x20;
+
+	//
+	protected final File directory;
+	protected long segmentSize = 64L * 1024 * 1024;
+	protected long retentionSize = 1024L * 1024 * 1024;
+	protected long retentionMillis = 0;
+	protected int checksumLength = 0;
+
+	//
+	private final ReentrantLock lock = new ReentrantLock(false);
+	private final Condition committed = this.lock.newCondition();
+	private final TreeMap<Long, Long> segments = new TreeMap<Long, Long>(); // The lengths of the closed segments
+	private final TreeMap<Long, Integer> pins = new TreeMap<Long, Integer>(); // The readers of each segment
+	private long segment = -1;
+	private OutputStream os;
+	private long length;
+	private long committedLength;
+	private long readSegment = -1;
+	private byte[] formatDescriptionEvent;
+	private String masterFileName;
+	private long masterPosition;
+	private boolean pendingRotate;
+	private int previousBoundaryType = -1;
+	private ScheduledExecutorService expirer;
+
+	/**
+	 * 
+	 */
+	public RelayLog(File directory)
+	{
+		this.directory = directory;
+	}
+
+	/**
+	 * 
+	 */
+	public File getDirectory()
+	{
+		return directory;
+	}
+
+	public long getSegmentSize()
+	{
+		return segmentSize;
+	}
+
+	public void setSegmentSize(long segmentSize)
+	{
+		this.segmentSize = segmentSize;
+	}
+
+	public long getRetentionSize()
+	{
+		return retentionSize;
+	}
+
+	public void setRetentionSize(long retentionSize)
+	{
+		this.retentionSize = retentionSize;
+	}
+
+	/**
+	 * Segments older than this (unless 0) are deleted once they have been read, checked on a daemon
+	 * thread at most every minute so that an idle relay log expires them too
+	 */
+	public long getRetentionMillis()
+	{
+		return retentionMillis;
+	}
+
+	public void setRetentionMillis(long retentionMillis)
+	{
+		this.retentionMillis = retentionMillis;
+	}
+
+	public int getChecksumLength()
+	{
+		this.lock.lock();
+		try
+		{
+			return checksumLength;
+		}
+		finally
+		{
+			this.lock.unlock();
+		}
+	}
+
+	public void setChecksumLength(int checksumLength)
+	{
+		this.lock.lock();
+		try
+		{
+			this.checksumLength = checksumLength;
+		}
+		finally
+		{
+			this.lock.unlock();
+		}
+	}
+
+	/**
+	 * The master's binlog file and position following the last spooled event, null if nothing has
+	 * been spooled
+	 */
+	public String getMasterFileName()
+	{
+		this.lock.lock();
+		try
+		{
+			return masterFileName;
+		}
+		finally
+		{
+			this.lock.unlock();
+		}
+	}
+
+	public long getMasterPosition()
+	{
+		this.lock.lock();
+		try
+		{
+			return masterPosition;
+		}
+		finally
+		{
+			this.lock.unlock();
+		}
+	}
+
+	/**
+	 * Sets the master's binlog position the next events are requested from
+	 */
+	public void setMasterPosition(String masterFileName, long masterPosition)
+	{
+		this.lock.lock();
+		try
+		{
+			this.masterFileName = masterFileName;
+			this.masterPosition = masterPosition;
+			this.pendingRotate = true;
+		}
+		finally
+		{
+			this.lock.unlock();
+		}
+	}
+
+	public static File getSegmentFile(File directory, long segment)
+	{
+		return new File(directory, PREFIX + String.format("%06d", segment));
+	}
+
+	/**
+	 * Lists the segments and recovers the last one, the checksum length must have been set
+	 */
+	public void open() throws IOException
+	{
+		this.lock.lock();
+		try
+		{
+			//
+			if (!this.directory.exists() && !this.directory.mkdirs())
+			{
+				throw new IOException("failed to create relay log directory: " + this.directory);
+			}
+			final String[] names = this.directory.list();
+			for (int i = 0; names != null && i < names.length; i++)
+			{
+				if (names[i].startsWith(PREFIX) && names[i].substring(PREFIX.length()).matches("[0-9]+"))
+				{
+					final long s = Long.parseLong(names[i].substring(PREFIX.length()));
+					this.segments.put(s, getSegmentFile(this.directory, s).length());
+				}
+			}
+
+			//
+			while (!this.segments.isEmpty())
+			{
+				final long last = this.segments.lastKey();
+				if (recover(last))
+				{
+					this.segment = last;
+					this.os = new BufferedOutputStream(new FileOutputStream(getSegmentFile(this.directory, last), true),
+					        64 * 1024);
+					startExpirer();
+					return;
+				}
+				LOGGER.warn("deleting relay log segment without a master position: {}", last);
+				delete(last);
+			}
+			roll();
+			startExpirer();
+		}
+		finally
+		{
+			this.lock.unlock();
+		}
+	}
+
+	public void close()
+	{
+		this.lock.lock();
+		try
+		{
+			try
+			{
+				if (this.os != null)
+					this.os.close();
+			}
+			catch (IOException e)
+			{
+				LOGGER.error("failed to close relay log segment: " + this.segment, e);
+			}
+			this.os = null;
+			if (this.expirer != null)
+			{
+				this.expirer.shutdownNow();
+				this.expirer = null;
+			}
+			this.committed.signalAll();
+		}
+		finally
+		{
+			this.lock.unlock();
+		}
+	}
+
+	/**
+	 * Appends a complete event as received from the master, it is not visible to the reader until
+	 * {@link #flush()}
+	 */
+	public void append(byte[] event, int offset, int length) throws IOException
+	{
+		this.lock.lock();
+		try
+		{
+			//
+			final int eventType = event[offset + 4] & 0xFF;
+			final long nextPosition = readLong(event, offset + 13, 4);
+			if (eventType == MySQLConstants.HEARTBEAT_LOG_EVENT)
+			{
+				return; // Only tells that the master is alive
+			}
+			else if (eventType == MySQLConstants.ROTATE_EVENT && nextPosition == 0)
+			{
+				// Rewritten after the format description event which follows it
+				final String name = readRotateFileName(event, offset, length, this.checksumLength);
+				setMasterPosition(name, readLong(event, offset + HEADER_LENGTH, 8));
+				return;
+			}
+
+			// A segment starts at a transaction boundary, so parsing can start at any segment
+			final int boundaryType = BinlogIndexer.getBoundaryType(event, offset, length, this.checksumLength);
+			if (this.os == null || (this.length >= this.segmentSize
+			        && BinlogIndexer.isSafePosition(this.previousBoundaryType, boundaryType)))
+			{
+				roll();
+			}
+			final boolean formatDescription = eventType == MySQLConstants.FORMAT_DESCRIPTION_EVENT;
+			if (this.pendingRotate && !formatDescription)
+			{
+				writeRotate();
+			}
+			write(event, offset, length);
+			if (this.pendingRotate && formatDescription)
+			{
+				writeRotate();
+			}
+
+			//
+			if (nextPosition > 0)
+			{
+				this.previousBoundaryType = boundaryType;
+			}
+			if (formatDescription)
+			{
+				this.formatDescriptionEvent = Arrays.copyOfRange(event, offset, offset + length);
+			}
+			if (eventType == MySQLConstants.ROTATE_EVENT)
+			{
+				this.masterFileName = readRotateFileName(event, offset, length, this.checksumLength);
+				this.masterPosition = readLong(event, offset + HEADER_LENGTH, 8);
+			}
+			else if (nextPosition > 0)
+			{
+				this.masterPosition = nextPosition;
+			}
+		}
+		finally
+		{
+			this.lock.unlock();
+		}
+	}
+
+	/**
+	 * Makes the appended events visible to the reader
+	 */
+	public void flush() throws IOException
+	{
+		this.lock.lock();
+		try
+		{
+			if (this.os != null)
+			{
+				this.os.flush();
+				this.committedLength = this.length;
+				this.committed.signalAll();
+			}
+		}
+		finally
+		{
+			this.lock.unlock();
+		}
+	}
+
+	/**
+	 * 
+	 */
+	public Long getFirstSegment()
+	{
+		this.lock.lock();
+		try
+		{
+			return this.segments.isEmpty() ? null : this.segments.firstKey();
+		}
+		finally
+		{
+			this.lock.unlock();
+		}
+	}
+
+	public Long getNextSegment(long segment)
+	{
+		this.lock.lock();
+		try
+		{
+			return this.segments.higherKey(segment);
+		}
+		finally
+		{
+			this.lock.unlock();
+		}
+	}
+
+	/**
+	 * Returns the length of the segment which is visible to the reader, or -1 if it has been purged.
+	 * The length of a closed segment is cached.
+	 */
+	public long getCommittedLength(long segment)
+	{
+		this.lock.lock();
+		try
+		{
+			if (segment == this.segment)
+				return this.committedLength;
+			final Long r = this.segments.get(segment);
+			return r == null ? -1 : r;
+		}
+		finally
+		{
+			this.lock.unlock();
+		}
+	}
+
+	/**
+	 * Waits until events after the offset of the segment become visible or a segment follows it
+	 */
+	public void await(long segment, long offset, long timeoutMillis) throws InterruptedException
+	{
+		this.lock.lock();
+		try
+		{
+			if (segment == this.segment && offset >= this.committedLength && this.os != null)
+			{
+				this.committed.await(timeoutMillis, TimeUnit.MILLISECONDS);
+			}
+		}
+		finally
+		{
+			this.lock.unlock();
+		}
+	}
+
+	/**
+	 * Sets the segment being read, it and the ones after it are never deleted
+	 */
+	public void setReadSegment(long segment)
+	{
+		this.lock.lock();
+		try
+		{
+			this.readSegment = segment;
+			purge();
+		}
+		finally
+		{
+			this.lock.unlock();
+		}
+	}
+
+	/**
+	 * Pins the segment for a reader, so that it and the ones after it are not deleted until it is
+	 * unpinned. Returns false if the segment has already been purged.
+	 */
+	public boolean pin(long segment)
+	{
+		this.lock.lock();
+		try
+		{
+			if (!this.segments.containsKey(segment))
+			{
+				return false;
+			}
+			final Integer count = this.pins.get(segment);
+			this.pins.put(segment, count == null ? 1 : count + 1);
+			return true;
+		}
+		finally
+		{
+			this.lock.unlock();
+		}
+	}
+
+	public void unpin(long segment)
+	{
+		this.lock.lock();
+		try
+		{
+			final Integer count = this.pins.get(segment);
+			if (count == null || count <= 1)
+				this.pins.remove(segment);
+			else
+				this.pins.put(segment, count - 1);
+		}
+		finally
+		{
+			this.lock.unlock();
+		}
+	}
+
+	/**
+	 * Returns the last segment which starts at or before the master's binlog position, or the first
+	 * segment if there is none
+	 */
+	public Long findSegment(String masterFileName, long masterPosition) throws IOException
+	{
+		this.lock.lock();
+		try
+		{
+			final Long last = masterFileName == null || this.segments.isEmpty() ? null : this.segments.lastKey();
+			for (Long s = last; s != null; s = this.segments.lowerKey(s))
+			{
+				final Object[] start = readStart(s);
+				if (start == null)
+					continue;
+				final int c = ((String) start[0]).compareTo(masterFileName);
+				if (c < 0 || (c == 0 && (Long) start[1] <= masterPosition))
+					return s;
+			}
+			return getFirstSegment();
+		}
+		finally
+		{
+			this.lock.unlock();
+		}
+	}
+
+	/**
+	 * 
+	 */
+	private void roll() throws IOException
+	{
+		//
+		if (this.os != null)
+		{
+			this.os.close();
+			this.committedLength = this.length;
+			this.segments.put(this.segment, this.length);
+		}
+		final long next = this.segment < 0 ? 1 : this.segment + 1;
+		this.os = new BufferedOutputStream(new FileOutputStream(getSegmentFile(this.directory, next)), 64 * 1024);
+		this.segment = next;
+		this.segments.put(next, 0L);
+		this.length = 0;
+		this.committedLength = 0;
+
+		//
+		write(MySQLConstants.BINLOG_MAGIC, 0, MySQLConstants.BINLOG_MAGIC.length);
+		if (this.formatDescriptionEvent != null)
+		{
+			final byte[] copy = this.formatDescriptionEvent.clone();
+			writeLong(copy, 13, 0, 4); // Artificial
+			writeLong(copy, 17, readLong(copy, 17, 2) | LOG_EVENT_ARTIFICIAL_F, 2);
+			write(copy, 0, updateChecksum(copy, this.checksumLength));
+		}
+		if (this.masterFileName != null)
+		{
+			this.pendingRotate = true;
+			if (this.formatDescriptionEvent != null)
+				writeRotate();
+		}
+		this.os.flush();
+		this.committedLength = this.length;
+		purge();
+		this.committed.signalAll();
+	}
+
+	private void writeRotate() throws IOException
+	{
+		final byte[] event = newRotateEvent(this.masterFileName, this.masterPosition, this.checksumLength);
+		write(event, 0, event.length);
+		this.pendingRotate = false;
+	}
+
+	private void write(byte[] data, int offset, int length) throws IOException
+	{
+		this.os.write(data, offset, length);
+		this.length += length;
+	}
+
+	private void purge()
+	{
+		//
+		long size = this.length;
+		for (Map.Entry<Long, Long> e : this.segments.entrySet())
+		{
+			if (e.getKey() != this.segment)
+				size += e.getValue();
+		}
+
+		//
+		final long now = System.currentTimeMillis();
+		final long kept = this.pins.isEmpty() ? this.readSegment : Math.min(this.readSegment, this.pins.firstKey());
+		while (this.segments.size() > 1)
+		{
+			final long first = this.segments.firstKey();
+			final boolean expired = (this.retentionSize > 0 && size > this.retentionSize)
+			        || (this.retentionMillis > 0
+			                && now - getSegmentFile(this.directory, first).lastModified() > this.retentionMillis);
+			if (!expired || first >= kept)
+			{
+				break;
+			}
+			size -= this.segments.get(first);
+			delete(first);
+		}
+	}
+
+	private void startExpirer()
+	{
+		//
+		if (this.retentionMillis <= 0 || this.expirer != null)
+		{
+			return;
+		}
+
+		//
+		final long period = Math.min(this.retentionMillis, 60000L);
+		this.expirer = Executors.newSingleThreadScheduledExecutor(new XThreadFactory("relay-log-expirer", true));
+		this.expirer.scheduleWithFixedDelay(new Runnable()
+		{
+			public void run()
+			{
+				lock.lock();
+				try
+				{
+					purge();
+				}
+				catch (Exception e)
+				{
+					LOGGER.error("failed to expire relay log segments", e);
+				}
+				finally
+				{
+					lock.unlock();
+				}
+			}
+		}, period, period, TimeUnit.MILLISECONDS);
+	}
+
+	private void delete(long segment)
+	{
+		this.segments.remove(segment);
+		if (!getSegmentFile(this.directory, segment).delete())
+			LOGGER.warn("failed to delete relay log segment: {}", segment);
+	}
+
+	/**
+	 * Truncates a partially written or, if the events are checksummed, corrupted event and restores the
+	 * master position, returns false if the segment has no master position
+	 */
+	private boolean recover(long segment) throws IOException
+	{
+		//
+		final RandomAccessFile raf = new RandomAccessFile(getSegmentFile(this.directory, segment), "rw");
+		try
+		{
+			//
+			final long size = raf.length();
+			final byte[] header = new byte[HEADER_LENGTH];
+			long offset = MySQLConstants.BINLOG_MAGIC.length;
+			while (offset + HEADER_LENGTH <= size)
+			{
+				//
+				raf.seek(offset);
+				raf.readFully(header);
+				final int eventType = header[4] & 0xFF;
+				final long eventLength = readLong(header, 9, 4);
+				final long nextPosition = readLong(header, 13, 4);
+				if (eventLength < HEADER_LENGTH || offset + eventLength > size)
+				{
+					break;
+				}
+
+				//
+				int boundaryType = eventType;
+				final boolean parsed = eventType == MySQLConstants.ROTATE_EVENT
+				        || eventType == MySQLConstants.FORMAT_DESCRIPTION_EVENT || eventType == MySQLConstants.QUERY_EVENT;
+				final byte[] event = parsed || this.checksumLength > 0 ? new byte[(int) eventLength] : null;
+				if (event != null)
+				{
+					raf.seek(offset);
+					raf.readFully(event);
+					if (this.checksumLength > 0 && !verifyChecksum(event, this.checksumLength))
+					{
+						LOGGER.warn("checksum mismatch in relay log segment: {}, offset: {}", segment, offset);
+						break;
+					}
+				}
+				if (parsed)
+				{
+					if (eventType == MySQLConstants.FORMAT_DESCRIPTION_EVENT)
+					{
+						this.formatDescriptionEvent = event;
+					}
+					else if (eventType == MySQLConstants.ROTATE_EVENT)
+					{
+						this.masterFileName = readRotateFileName(event, 0, event.length, this.checksumLength);
+						this.masterPosition = readLong(event, HEADER_LENGTH, 8);
+					}
+					else
+					{
+						boundaryType = BinlogIndexer.getBoundaryType(event, 0, event.length, this.checksumLength);
+					}
+				}
+				else if (nextPosition > 0)
+				{
+					this.masterPosition = nextPosition;
+				}
+				if (nextPosition > 0)
+				{
+					this.previousBoundaryType = boundaryType;
+				}
+				offset += eventLength;
+			}
+
+			//
+			if (offset < size)
+			{
+				LOGGER.info("truncating relay log segment: {}, length: {}, valid length: {}", new Object[] { segment,
+				        size, offset });
+				raf.setLength(offset);
+			}
+			this.length = offset;
+			this.committedLength = offset;
+			return this.masterFileName != null;
+		}
+		finally
+		{
+			raf.close();
+		}
+	}
+
+	/**
+	 * Returns the master's binlog file and position of the first event of the segment
+	 */
+	private Object[] readStart(long segment) throws IOException
+	{
+		final RandomAccessFile raf = new RandomAccessFile(getSegmentFile(this.directory, segment), "r");
+		try
+		{
+			final byte[] header = new byte[HEADER_LENGTH];
+			long offset = MySQLConstants.BINLOG_MAGIC.length;
+			for (int i = 0; i < 2 && offset + HEADER_LENGTH <= raf.length(); i++)
+			{
+				raf.seek(offset);
+				raf.readFully(header);
+				final long eventLength = readLong(header, 9, 4);
+				if ((header[4] & 0xFF) == MySQLConstants.ROTATE_EVENT && offset + eventLength <= raf.length())
+				{
+					final byte[] event = new byte[(int) eventLength];
+					raf.seek(offset);
+					raf.readFully(event);
+					final String name = readRotateFileName(event, 0, event.length, this.checksumLength);
+					return new Object[] { name, readLong(event, HEADER_LENGTH, 8) };
+				}
+				offset += eventLength;
+			}
+			return null;
+		}
+		finally
+		{
+			raf.close();
+		}
+	}
+
+	/**
+	 * 
+	 */
+	static byte[] newRotateEvent(String fileName, long position, int checksumLength) throws IOException
+	{
+		final byte[] name = fileName.getBytes("US-ASCII");
+		final byte[] event = new byte[HEADER_LENGTH + 8 + name.length + checksumLength];
+		writeLong(event, 4, MySQLConstants.ROTATE_EVENT, 1);
+		writeLong(event, 9, event.length, 4);
+		writeLong(event, 17, LOG_EVENT_ARTIFICIAL_F, 2);
+		writeLong(event, HEADER_LENGTH, position, 8);
+		System.arraycopy(name, 0, event, HEADER_LENGTH + 8, name.length);
+		updateChecksum(event, checksumLength);
+		return event;
+	}
+
+	static int updateChecksum(byte[] event, int checksumLength)
+	{
+		if (checksumLength > 0)
+		{
+			final CRC32 crc = new CRC32();
+			crc.update(event, 0, event.length - checksumLength);
+			writeLong(event, event.length - checksumLength, crc.getValue(), 4);
+		}
+		return event.length;
+	}
+
+	static boolean verifyChecksum(byte[] event, int checksumLength)
+	{
+		if (event.length < HEADER_LENGTH + checksumLength)
+		{
+			return false;
+		}
+		final CRC32 crc = new CRC32();
+		crc.update(event, 0, event.length - checksumLength);
+		return crc.getValue() == readLong(event, event.length - checksumLength, 4);
+	}
+
+	static String readRotateFileName(byte[] event, int offset, int length, int checksumLength) throws IOException
+	{
+		final int start = offset + HEADER_LENGTH + 8;
+		return new String(event, start, offset + length - checksumLength - start, "US-ASCII");
+	}
+
+	static long readLong(byte[] data, int offset, int length)
+	{
+		long r = 0;
+		for (int i = length - 1; i >= 0; i--)
+		{
+			r = (r << 8) | (data[offset + i] & 0xFF);
+		}
+		return r;
+	}
+
+	static void writeLong(byte[] data, int offset, long value, int length)
+	{
+		for (int i = 0; i < length; i++)
+		{
+			data[offset + i] = (byte) (value >>> (i * 8));
+		}
+	}
+}
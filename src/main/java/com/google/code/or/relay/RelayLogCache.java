@@ -0,0 +1,170 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.code.or.relay;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A least recently used cache of fixed size blocks of the relay log segments, shared by the
+ * sessions of a {@link RelayServer} which mostly read the same recent events. Only the committed
+ * part of a segment is immutable, so a block is cached only if it is entirely committed.
+ * 
+ * @author Jingqi Xu
+ */
+public class RelayLogCache
+{
+	//
+	public static final int BLOCK_SIZE = 64 * 1024;
+
+	//
+	protected final RelayLog relayLog;
+	protected final LinkedHashMap<Long, byte[]> blocks;
+	protected final long capacity;
+	private final ReentrantLock lock = new ReentrantLock(false);
+	private long hits;
+	private long misses;
+
+	/**
+	 * 
+	 */
+	public RelayLogCache(RelayLog relayLog, long capacity)
+	{
+		this.relayLog = relayLog;
+		this.capacity = capacity;
+		this.blocks = new LinkedHashMap<Long, byte[]>(16, 0.75f, true)
+		{
+			private static final long serialVersionUID = 2829148567351683247L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Long, byte[]> eldest)
+			{
+				return (long) size() * BLOCK_SIZE > RelayLogCache.this.capacity;
+			}
+		};
+	}
+
+	/**
+	 * 
+	 */
+	public long getCapacity()
+	{
+		return capacity;
+	}
+
+	public long getHits()
+	{
+		this.lock.lock();
+		try
+		{
+			return hits;
+		}
+		finally
+		{
+			this.lock.unlock();
+		}
+	}
+
+	public long getMisses()
+	{
+		this.lock.lock();
+		try
+		{
+			return misses;
+		}
+		finally
+		{
+			this.lock.unlock();
+		}
+	}
+
+	/**
+	 * Reads length bytes at the offset of the segment, which must have been committed. The file is
+	 * only read for the uncached and the partially committed blocks.
+	 */
+	public void read(long segment, RandomAccessFile file, long offset, byte[] data, int start, int length)
+	        throws IOException
+	{
+		final long committed = this.relayLog.getCommittedLength(segment);
+		while (length > 0)
+		{
+			//
+			final long index = offset / BLOCK_SIZE;
+			final int position = (int) (offset % BLOCK_SIZE);
+			final int n = Math.min(length, BLOCK_SIZE - position);
+			final byte[] block = (index + 1) * BLOCK_SIZE <= committed ? getBlock(segment, file, index) : null;
+			if (block != null)
+			{
+				System.arraycopy(block, position, data, start, n);
+			}
+			else
+			{
+				file.seek(offset);
+				file.readFully(data, start, n);
+			}
+
+			//
+			offset += n;
+			start += n;
+			length -= n;
+		}
+	}
+
+	/**
+	 * 
+	 */
+	private byte[] getBlock(long segment, RandomAccessFile file, long index) throws IOException
+	{
+		//
+		if (this.capacity <= 0)
+		{
+			return null;
+		}
+		final Long key = (segment << 32) | index;
+		this.lock.lock();
+		try
+		{
+			final byte[] r = this.blocks.get(key);
+			if (r != null)
+			{
+				this.hits++;
+				return r;
+			}
+			this.misses++;
+		}
+		finally
+		{
+			this.lock.unlock();
+		}
+
+		//
+		final byte[] r = new byte[BLOCK_SIZE];
+		file.seek(index * BLOCK_SIZE);
+		file.readFully(r);
+		this.lock.lock();
+		try
+		{
+			this.blocks.put(key, r);
+		}
+		finally
+		{
+			this.lock.unlock();
+		}
+		return r;
+	}
+}
@@ -0,0 +1,161 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.code.or.relay;
+
+import org.apache.commons.lang.exception.NestableRuntimeException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.code.or.common.util.CodecUtils;
+import com.google.code.or.io.XInputStream;
+import com.google.code.or.net.Transport;
+import com.google.code.or.net.TransportException;
+import com.google.code.or.net.impl.packet.EOFPacket;
+import com.google.code.or.net.impl.packet.ErrorPacket;
+import com.google.code.or.net.impl.packet.OKPacket;
+
+/**
+ * Appends the events of a binlog dump to a {@link RelayLog} without decoding them. The appended
+ * events are flushed whenever the transport has no more buffered data, or every flushSize bytes.
+ * 
+ * @author Jingqi Xu
+ */
+public class RelayLogWriter implements Runnable
+{
+	//
+	private static final Logger LOGGER = LoggerFactory.getLogger(RelayLogWriter.class);
+
+	//
+	private static final int MAX_PACKET_LENGTH = 0xFFFFFF;
+
+	//
+	protected final Transport transport;
+	protected final RelayLog relayLog;
+	protected int flushSize = 1024 * 1024;
+	protected volatile boolean running = true;
+
+	/**
+	 * 
+	 */
+	public RelayLogWriter(Transport transport, RelayLog relayLog)
+	{
+		this.transport = transport;
+		this.relayLog = relayLog;
+	}
+
+	/**
+	 * 
+	 */
+	public int getFlushSize()
+	{
+		return flushSize;
+	}
+
+	public void setFlushSize(int flushSize)
+	{
+		this.flushSize = flushSize;
+	}
+
+	public boolean isRunning()
+	{
+		return running;
+	}
+
+	public void stop()
+	{
+		this.running = false;
+	}
+
+	/**
+	 * 
+	 */
+	public void run()
+	{
+		//
+		final XInputStream is = this.transport.getInputStream();
+		try
+		{
+			long unflushed = 0;
+			while (this.running)
+			{
+				final byte[] event = readEvent(is);
+				this.relayLog.append(event, 0, event.length);
+				unflushed += event.length;
+				if (unflushed >= this.flushSize || is.available() == 0)
+				{
+					this.relayLog.flush();
+					unflushed = 0;
+				}
+			}
+		}
+		catch (Exception e)
+		{
+			if (this.running)
+			{
+				onException(e);
+			}
+		}
+		finally
+		{
+			try
+			{
+				this.relayLog.flush();
+			}
+			catch (Exception e)
+			{
+				LOGGER.error("failed to flush relay log", e);
+			}
+		}
+	}
+
+	/**
+	 * Called on the writer's thread if the dump fails while it is running
+	 */
+	protected void onException(Exception exception)
+	{
+		LOGGER.error("failed to spool binlog events", exception);
+	}
+
+	/**
+	 * 
+	 */
+	protected byte[] readEvent(XInputStream is) throws Exception
+	{
+		//
+		int packetLength = is.readInt(3);
+		final int packetSequence = is.readInt(1);
+		final int packetMarker = is.readInt(1);
+		if (packetMarker != OKPacket.PACKET_MARKER)
+		{
+			if ((byte) packetMarker == ErrorPacket.PACKET_MARKER)
+				throw new TransportException(ErrorPacket.valueOf(packetLength, packetSequence, packetMarker, is));
+			else if ((byte) packetMarker == EOFPacket.PACKET_MARKER)
+				throw new NestableRuntimeException(EOFPacket.valueOf(packetLength, packetSequence, packetMarker, is)
+				        .toString());
+			else
+				throw new NestableRuntimeException("assertion failed, invalid packet marker: " + packetMarker);
+		}
+
+		// An event of 16MB or more spans several packets
+		byte[] r = is.readBytes(packetLength - 1);
+		while (packetLength == MAX_PACKET_LENGTH)
+		{
+			packetLength = is.readInt(3);
+			is.readInt(1);
+			r = CodecUtils.concat(r, is.readBytes(packetLength));
+		}
+		return r;
+	}
+}
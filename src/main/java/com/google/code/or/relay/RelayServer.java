@@ -0,0 +1,333 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.code.or.relay;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.lang.exception.NestableRuntimeException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.code.or.OpenReplicator;
+import com.google.code.or.common.util.IOUtils;
+import com.google.code.or.common.util.MySQLUtils;
+import com.google.code.or.common.util.XThreadFactory;
+
+/**
+ * An embeddable binlog relay server, so that many consumers share one connection to the master.
+ * The replicator spools the master's binlog into its relay log (the on-disk cache), and each
+ * consumer connecting to this server as if it were the master is served COM_BINLOG_DUMP from the
+ * relay log through a {@link RelayLogCache} (the in-memory cache) by a {@link RelaySession}. An
+ * unmodified {@link OpenReplicator} can connect to it, e.g.
+ * 
+ * <pre>
+ * final OpenReplicator upstream = new OpenReplicator();
+ * upstream.setHost(&quot;master&quot;); ...
+ * upstream.setRelayPath(&quot;/data/relay&quot;);
+ * final RelayServer server = new RelayServer(upstream);
+ * server.setPort(3307);
+ * server.start();
+ * </pre>
+ * 
+ * @author Jingqi Xu
+ */
+public class RelayServer
+{
+	//
+	private static final Logger LOGGER = LoggerFactory.getLogger(RelayServer.class);
+
+	//
+	protected final OpenReplicator replicator;
+	protected String bindAddress;
+	protected int port = 3306;
+	protected int backlog = 50;
+	protected String user;
+	protected String password;
+	protected String encoding = "utf-8";
+	protected long cacheSize = 64L * 1024 * 1024;
+	protected boolean virtualThreads = false;
+
+	//
+	protected final AtomicBoolean running = new AtomicBoolean(false);
+	protected final AtomicLong threadIds = new AtomicLong(0);
+	protected final List<RelaySession> sessions = new CopyOnWriteArrayList<RelaySession>();
+	protected ServerSocket serverSocket;
+	protected RelayLogCache cache;
+	protected String serverVersion;
+
+	/**
+	 * The replicator must have a relay path, it is started by this server if it is not running. The
+	 * relay log is only spooled if it has no event listener.
+	 */
+	public RelayServer(OpenReplicator replicator)
+	{
+		this.replicator = replicator;
+	}
+
+	/**
+	 * 
+	 */
+	public boolean isRunning()
+	{
+		return this.running.get();
+	}
+
+	public void start() throws Exception
+	{
+		//
+		if (!this.running.compareAndSet(false, true))
+		{
+			return;
+		}
+		if (this.replicator.getRelayPath() == null)
+		{
+			this.running.set(false);
+			throw new NestableRuntimeException("the relay path of the replicator is not set");
+		}
+
+		//
+		if (!this.replicator.isRunning())
+			this.replicator.start();
+		if (this.replicator.getBinlogEventListener() == null)
+			getRelayLog().setReadSegment(Long.MAX_VALUE); // Without a local parser, only the sessions pin segments
+		this.cache = new RelayLogCache(getRelayLog(), this.cacheSize);
+		this.serverVersion = this.replicator.getTransport().getContext().getServerVersion();
+
+		//
+		this.serverSocket = new ServerSocket();
+		this.serverSocket.setReuseAddress(true);
+		this.serverSocket.bind(this.bindAddress == null ? new InetSocketAddress(this.port) : new InetSocketAddress(
+		        this.bindAddress, this.port), this.backlog);
+		newThreadFactory("relay-server", false).newThread(new Acceptor()).start();
+		LOGGER.info("relay server started, port: {}, relay log: {}", getLocalPort(), getRelayLog().getDirectory());
+	}
+
+	public void stop(long timeout, TimeUnit unit) throws Exception
+	{
+		//
+		if (!this.running.compareAndSet(true, false))
+		{
+			return;
+		}
+
+		//
+		try
+		{
+			this.serverSocket.close();
+		}
+		catch (IOException e)
+		{
+			// NOP
+		}
+		for (RelaySession session : this.sessions)
+		{
+			session.close();
+		}
+		this.replicator.stop(timeout, unit);
+		LOGGER.info("relay server stopped, port: {}", this.port);
+	}
+
+	/**
+	 * 
+	 */
+	public OpenReplicator getReplicator()
+	{
+		return replicator;
+	}
+
+	public String getBindAddress()
+	{
+		return bindAddress;
+	}
+
+	public void setBindAddress(String bindAddress)
+	{
+		this.bindAddress = bindAddress;
+	}
+
+	public int getPort()
+	{
+		return port;
+	}
+
+	public void setPort(int port)
+	{
+		this.port = port;
+	}
+
+	/**
+	 * The port actually listened on, e.g. if the port is 0
+	 */
+	public int getLocalPort()
+	{
+		return this.serverSocket == null ? -1 : this.serverSocket.getLocalPort();
+	}
+
+	public int getBacklog()
+	{
+		return backlog;
+	}
+
+	public void setBacklog(int backlog)
+	{
+		this.backlog = backlog;
+	}
+
+	/**
+	 * The user the consumers must log in as, any user is accepted if it is null
+	 */
+	public String getUser()
+	{
+		return user;
+	}
+
+	public void setUser(String user)
+	{
+		this.user = user;
+	}
+
+	public String getPassword()
+	{
+		return password;
+	}
+
+	public void setPassword(String password)
+	{
+		this.password = password;
+	}
+
+	public String getEncoding()
+	{
+		return encoding;
+	}
+
+	public void setEncoding(String encoding)
+	{
+		this.encoding = encoding;
+	}
+
+	/**
+	 * The size of the in-memory cache of the relay log shared by the sessions, 0 disables it
+	 */
+	public long getCacheSize()
+	{
+		return cacheSize;
+	}
+
+	public void setCacheSize(long cacheSize)
+	{
+		this.cacheSize = cacheSize;
+	}
+
+	public boolean isVirtualThreads()
+	{
+		return virtualThreads;
+	}
+
+	/**
+	 * Runs the sessions on virtual threads where the jvm supports them (java 21+)
+	 */
+	public void setVirtualThreads(boolean virtualThreads)
+	{
+		this.virtualThreads = virtualThreads;
+	}
+
+	public RelayLog getRelayLog()
+	{
+		return this.replicator.getRelayLog();
+	}
+
+	public RelayLogCache getCache()
+	{
+		return cache;
+	}
+
+	public String getServerVersion()
+	{
+		return serverVersion;
+	}
+
+	public List<RelaySession> getSessions()
+	{
+		return Collections.unmodifiableList(this.sessions);
+	}
+
+	/**
+	 * 
+	 */
+	protected boolean authenticate(String user, byte[] scramble, byte[] token) throws IOException
+	{
+		if (this.user == null)
+		{
+			return true;
+		}
+		final byte[] expected = this.password == null || this.password.length() == 0 ? new byte[0] : MySQLUtils
+		        .password41OrLater(this.password.getBytes(this.encoding), scramble);
+		return this.user.equals(user) && (Arrays.equals(expected, token) || (expected.length == 0 && token.length == 0));
+	}
+
+	protected void remove(RelaySession session)
+	{
+		this.sessions.remove(session);
+	}
+
+	protected XThreadFactory newThreadFactory(String name, boolean daemon)
+	{
+		final XThreadFactory r = new XThreadFactory(name, daemon);
+		r.setVirtual(this.virtualThreads);
+		return r;
+	}
+
+	/**
+	 * 
+	 */
+	private class Acceptor implements Runnable
+	{
+		public void run()
+		{
+			final XThreadFactory tf = newThreadFactory("relay-session", true);
+			while (isRunning())
+			{
+				Socket socket = null;
+				try
+				{
+					socket = serverSocket.accept();
+					socket.setKeepAlive(true);
+					socket.setTcpNoDelay(true);
+					final RelaySession session = new RelaySession(RelayServer.this, socket, threadIds.incrementAndGet());
+					sessions.add(session);
+					tf.newThread(session).start();
+					LOGGER.info("relay session accepted: {}", session);
+				}
+				catch (Exception e)
+				{
+					IOUtils.closeQuietly(socket);
+					if (isRunning())
+						LOGGER.error("failed to accept relay session", e);
+				}
+			}
+		}
+	}
+}
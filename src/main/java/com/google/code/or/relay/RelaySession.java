@@ -0,0 +1,290 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.code.or.relay;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.net.Socket;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.code.or.common.util.MySQLConstants;
+import com.google.code.or.net.impl.AbstractServerSession;
+import com.google.code.or.net.impl.packet.command.ComBinlogDumpPacket;
+
+/**
+ * A consumer's connection to a {@link RelayServer}, COM_BINLOG_DUMP is served from the relay log the
+ * way the master would, i.e. an artificial rotate event, the format description event and the events
+ * from the requested position.
+ * 
+ * @author Jingqi Xu
+ */
+public class RelaySession extends AbstractServerSession
+{
+	//
+	private static final Logger LOGGER = LoggerFactory.getLogger(RelaySession.class);
+
+	//
+	private static final long AWAIT_MILLIS = 1000;
+
+	//
+	protected final RelayServer server;
+	private volatile String binlogFileName;
+	private volatile long binlogPosition;
+
+	/**
+	 * 
+	 */
+	public RelaySession(RelayServer server, Socket socket, long threadId) throws IOException
+	{
+		super(socket, threadId);
+		this.server = server;
+	}
+
+	/**
+	 * 
+	 */
+	@Override
+	public String toString()
+	{
+		return "RelaySession[threadId=" + this.threadId + ",remote=" + this.socket.getRemoteSocketAddress()
+		        + ",user=" + this.user + ",serverId=" + this.serverId + ",binlog=" + this.binlogFileName + ":"
+		        + this.binlogPosition + "]";
+	}
+
+	/**
+	 * The master's binlog file and position following the last event sent to the consumer
+	 */
+	public String getBinlogFileName()
+	{
+		return binlogFileName;
+	}
+
+	public long getBinlogPosition()
+	{
+		return binlogPosition;
+	}
+
+	/**
+	 * 
+	 */
+	@Override
+	protected String getServerVersion()
+	{
+		return this.server.getServerVersion();
+	}
+
+	@Override
+	protected String getBinlogChecksum()
+	{
+		return this.server.getRelayLog().getChecksumLength() > 0 ? "CRC32" : "NONE";
+	}
+
+	@Override
+	protected boolean authenticate(String user, byte[] scramble, byte[] token) throws IOException
+	{
+		return this.server.authenticate(user, scramble, token);
+	}
+
+	@Override
+	protected void onClose()
+	{
+		this.server.remove(this);
+	}
+
+	/**
+	 * Sends the events from the requested position, which are read from the relay log. Only the
+	 * artificial events which the relay log adds at the start of each segment are skipped. Once the
+	 * client is caught up, a heartbeat is sent every heartbeat period without new events. The segment
+	 * being read is pinned, so it is not purged under a consumer which falls behind.
+	 */
+	@Override
+	protected void dump(ComBinlogDumpPacket command) throws IOException, InterruptedException
+	{
+		//
+		String fileName = command.getBinlogFileName() == null ? "" : command.getBinlogFileName().toString();
+		long position = Math.max(command.getBinlogPosition(), MySQLConstants.BINLOG_MAGIC.length);
+		final boolean nonBlock = (command.getBinlogFlag() & ComBinlogDumpPacket.BINLOG_DUMP_NON_BLOCK) != 0;
+		LOGGER.info("binlog dump requested, session: {}, binlog: {}:{}", new Object[] { this, fileName, position });
+
+		//
+		final RelayLog relayLog = this.server.getRelayLog();
+		final RelayLogCache cache = this.server.getCache();
+		final int checksumLength = relayLog.getChecksumLength();
+		long segment = relayLog.findSegment(fileName.length() == 0 ? null : fileName, position);
+		if (!relayLog.pin(segment))
+		{
+			writeError(ER_MASTER_FATAL_ERROR_READING_BINLOG, "relay log segment has been purged: " + segment);
+			return;
+		}
+		RandomAccessFile file = null;
+		try
+		{
+			file = new RandomAccessFile(RelayLog.getSegmentFile(relayLog.getDirectory(), segment), "r");
+			long offset = MySQLConstants.BINLOG_MAGIC.length;
+			final byte[] header = new byte[RelayLog.HEADER_LENGTH];
+			String currentFileName = null;
+			byte[] formatDescription = null;
+			boolean sending = false;
+			long idleSince = 0;
+			while (isRunning())
+			{
+				//
+				final Long next = relayLog.getNextSegment(segment);
+				final long committedLength = relayLog.getCommittedLength(segment);
+				if (committedLength < 0)
+				{
+					writeError(ER_MASTER_FATAL_ERROR_READING_BINLOG, "relay log segment has been purged: " + segment);
+					return;
+				}
+				if (offset >= committedLength)
+				{
+					if (next != null)
+					{
+						if (next != segment + 1 || !relayLog.pin(next))
+						{
+							writeError(ER_MASTER_FATAL_ERROR_READING_BINLOG, "relay log segment has been purged: "
+							        + (segment + 1));
+							return;
+						}
+						relayLog.unpin(segment);
+						file.close();
+						file = new RandomAccessFile(RelayLog.getSegmentFile(relayLog.getDirectory(), next), "r");
+						segment = next;
+						offset = MySQLConstants.BINLOG_MAGIC.length;
+					}
+					else if (nonBlock)
+					{
+						writeEOF();
+						return;
+					}
+					else
+					{
+						this.os.flush();
+						final long period = this.heartbeatPeriod;
+						if (period > 0 && this.binlogFileName != null)
+						{
+							final long now = System.nanoTime();
+							if (idleSince == 0)
+							{
+								idleSince = now;
+							}
+							else if (now - idleSince >= period)
+							{
+								writeHeartbeat(this.binlogFileName, this.binlogPosition);
+								idleSince = now;
+							}
+						}
+						relayLog.await(segment, offset, period > 0 ? Math.max(1, Math.min(AWAIT_MILLIS,
+						        TimeUnit.NANOSECONDS.toMillis(period))) : AWAIT_MILLIS);
+					}
+					continue;
+				}
+
+				//
+				cache.read(segment, file, offset, header, 0, header.length);
+				final int eventType = header[4] & 0xFF;
+				final int eventLength = (int) RelayLog.readLong(header, 9, 4);
+				final long nextPosition = RelayLog.readLong(header, 13, 4);
+				final byte[] body = new byte[eventLength + 1]; // With the ok packet marker
+				cache.read(segment, file, offset, body, 1, eventLength);
+				offset += eventLength;
+
+				// The first event after the requested position of a real event starts the dump
+				if (!sending && nextPosition > 0 && currentFileName != null
+				        && isAtOrAfter(currentFileName, nextPosition - eventLength, fileName, position))
+				{
+					sending = true;
+					if (eventType != MySQLConstants.FORMAT_DESCRIPTION_EVENT && formatDescription != null)
+					{
+						writeEvent(toArtificial(formatDescription, checksumLength));
+					}
+				}
+
+				//
+				boolean skip = !sending;
+				if (eventType == MySQLConstants.FORMAT_DESCRIPTION_EVENT)
+				{
+					formatDescription = body;
+					skip |= nextPosition == 0; // The copy at the start of a segment
+				}
+				else if (eventType == MySQLConstants.ROTATE_EVENT)
+				{
+					final String name = RelayLog.readRotateFileName(body, 1, eventLength, checksumLength);
+					final long rotatePosition = RelayLog.readLong(body, 1 + RelayLog.HEADER_LENGTH, 8);
+					if (currentFileName == null)
+					{
+						if (fileName.length() == 0)
+						{
+							fileName = name;
+							position = Math.max(position, rotatePosition);
+						}
+						else if (!isAtOrAfter(fileName, position, name, rotatePosition))
+						{
+							writeError(ER_MASTER_FATAL_ERROR_READING_BINLOG, "binlog position is not in the relay log: "
+							        + fileName + ":" + position);
+							return;
+						}
+						writeEvent(RelayLog.newRotateEvent(fileName, position, checksumLength));
+						this.os.flush();
+					}
+					skip |= nextPosition == 0 && name.equals(currentFileName); // Not a switch to the next binlog
+					currentFileName = name;
+				}
+				if (skip)
+				{
+					continue;
+				}
+
+				//
+				writeEventPacket(body);
+				idleSince = 0;
+				if (nextPosition > 0)
+				{
+					this.binlogFileName = currentFileName;
+					this.binlogPosition = eventType == MySQLConstants.ROTATE_EVENT ? MySQLConstants.BINLOG_MAGIC.length
+					        : nextPosition;
+				}
+			}
+		}
+		finally
+		{
+			relayLog.unpin(segment);
+			if (file != null)
+				file.close();
+		}
+	}
+
+	/**
+	 * Returns a copy of the format description event with a zero next position, as the master sends
+	 * it when the dump does not start at the beginning of a binlog file
+	 */
+	private static byte[] toArtificial(byte[] body, int checksumLength)
+	{
+		final byte[] r = Arrays.copyOfRange(body, 1, body.length);
+		RelayLog.writeLong(r, 13, 0, 4);
+		RelayLog.updateChecksum(r, checksumLength);
+		return r;
+	}
+
+	private static boolean isAtOrAfter(String fileName, long position, String otherFileName, long otherPosition)
+	{
+		final int c = fileName.compareTo(otherFileName);
+		return c > 0 || (c == 0 && position >= otherPosition);
+	}
+}
@@ -0,0 +1,296 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.code.or;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import com.google.code.or.binlog.BinlogEventListener;
+import com.google.code.or.binlog.BinlogEventV4;
+import com.google.code.or.binlog.impl.PacketBasedBinlogParser;
+import com.google.code.or.binlog.impl.event.GtidEvent;
+import com.google.code.or.binlog.impl.event.XidEvent;
+import com.google.code.or.binlog.impl.parser.FormatDescriptionEventParser;
+import com.google.code.or.binlog.impl.parser.GtidEventParser;
+import com.google.code.or.binlog.impl.parser.QueryEventParser;
+import com.google.code.or.binlog.impl.parser.RotateEventParser;
+import com.google.code.or.binlog.impl.parser.TableMapEventParser;
+import com.google.code.or.binlog.impl.parser.WriteRowsEventV2Parser;
+import com.google.code.or.binlog.impl.parser.XidEventParser;
+import com.google.code.or.checkpoint.Checkpoint;
+import com.google.code.or.checkpoint.CheckpointStore;
+import com.google.code.or.common.glossary.GtidSet;
+import com.google.code.or.common.util.MySQLConstants;
+import com.google.code.or.mock.EventSource;
+import com.google.code.or.mock.SyntheticEventSource;
+
+/**
+ * Drives the listeners of {@link OpenReplicator#getParserEventListener()} with
+ * {@link PacketBasedBinlogParser}s, a retry is a new parser which shares the context of the failed
+ * one and is pushed the binlog again from the start.
+ * 
+ * @author Jingqi Xu
+ */
+public class OpenReplicatorRetryTest extends TestCase
+{
+	//
+	private static final String BINLOG = "mysql-bin.000001";
+	private static final String UUID = "3e11fa47-71ca-11e1-9e33-c80aa9429562";
+
+	/**
+	 * 
+	 */
+	public void testCheckpointsAfterListenerException() throws Exception
+	{
+		//
+		final List<BinlogEventV4> events = new ArrayList<BinlogEventV4>();
+		final RecordingCheckpointStore store = new RecordingCheckpointStore();
+		final OpenReplicator or = new OpenReplicator();
+		or.setCheckpointStore(store);
+		or.setBinlogEventListener(new BinlogEventListener()
+		{
+			private boolean failed;
+
+			public void onEvents(BinlogEventV4 event)
+			{
+				events.add(event);
+				if (event instanceof XidEvent && ((XidEvent) event).getXid() == 1 && !this.failed)
+				{
+					this.failed = true;
+					throw new IllegalStateException("listener failure");
+				}
+			}
+		});
+
+		// The xid event of the second transaction fails
+		final PacketBasedBinlogParser parser = newParser(or);
+		long failedPosition = 0;
+		try
+		{
+			push(parser, newCursor(3), 2 + 3 * 4);
+			fail();
+		}
+		catch (RuntimeException e)
+		{
+			failedPosition = events.get(events.size() - 1).getHeader().getPosition();
+		}
+		final Checkpoint failed = store.checkpoint;
+		assertEquals(failedPosition, failed.getBinlogPosition());
+		assertTrue(failed.getRestartPosition() < failedPosition);
+
+		// Retried with the context of the failed parser, the xid event is delivered again
+		final int delivered = events.size();
+		final PacketBasedBinlogParser retried = newParser(or);
+		retried.setContext(parser.getContext());
+		final long end = push(retried, newCursor(3), 2 + 3 * 4);
+		assertTrue(events.get(delivered + 1) instanceof XidEvent); // After the artificial rotate event
+		assertEquals(failedPosition, events.get(delivered + 1).getHeader().getPosition());
+		assertEquals(end, store.checkpoint.getBinlogPosition());
+		assertEquals(end, store.checkpoint.getRestartPosition());
+	}
+
+	public void testGtidResumeWithResentGtidEvent() throws Exception
+	{
+		//
+		final List<BinlogEventV4> events = new ArrayList<BinlogEventV4>();
+		final OpenReplicator or = new OpenReplicator();
+		or.setGtidSet(GtidSet.valueOf(UUID + ":1"));
+		or.setBinlogEventListener(new BinlogEventListener()
+		{
+			public void onEvents(BinlogEventV4 event)
+			{
+				events.add(event);
+			}
+		});
+		final GtidBinlog binlog = new GtidBinlog();
+		final byte[][] second = binlog.transaction(2);
+		final byte[][] third = binlog.transaction(3);
+
+		// Disconnected after the gtid and BEGIN events of the third transaction
+		final PacketBasedBinlogParser parser = newParser(or);
+		push(parser, binlog.rotate());
+		push(parser, second);
+		push(parser, third[0], third[1]);
+		assertEquals(GtidSet.valueOf(UUID + ":1-2"), or.getGtidSet());
+
+		// The master sends the third transaction again, from its gtid event
+		final PacketBasedBinlogParser retried = newParser(or);
+		retried.setContext(parser.getContext());
+		push(retried, binlog.rotate());
+		push(retried, third);
+		assertEquals(GtidSet.valueOf(UUID + ":1-3"), or.getGtidSet());
+		int gtids = 0;
+		for (BinlogEventV4 event : events)
+		{
+			if (event instanceof GtidEvent)
+				gtids++;
+		}
+		assertEquals(2, gtids);
+	}
+
+	/**
+	 * 
+	 */
+	static PacketBasedBinlogParser newParser(OpenReplicator or)
+	{
+		final PacketBasedBinlogParser r = new PacketBasedBinlogParser(BINLOG, 4L);
+		r.registgerEventParser(new RotateEventParser());
+		r.registgerEventParser(new FormatDescriptionEventParser());
+		r.registgerEventParser(new QueryEventParser());
+		r.registgerEventParser(new TableMapEventParser());
+		r.registgerEventParser(new WriteRowsEventV2Parser());
+		r.registgerEventParser(new XidEventParser());
+		r.registgerEventParser(new GtidEventParser());
+		r.setEventListener(or.getParserEventListener());
+		r.setFailOnListenerException(true);
+		or.binlogParser = r;
+		return r;
+	}
+
+	static EventSource.Cursor newCursor(int transactions) throws Exception
+	{
+		final SyntheticEventSource source = new SyntheticEventSource();
+		source.setChecksum(false);
+		source.setTransactions(transactions);
+		return source.open(BINLOG, 4);
+	}
+
+	/**
+	 * Pushes n events of the cursor, returns the next position of the last one
+	 */
+	static long push(PacketBasedBinlogParser parser, EventSource.Cursor cursor, int n) throws Exception
+	{
+		long r = 0;
+		for (int i = 0; i < n; i++)
+		{
+			final byte[] event = cursor.next();
+			final byte[] body = new byte[event.length + 1]; // Starts with the OK packet marker
+			System.arraycopy(event, 0, body, 1, event.length);
+			r = parser.parse(body, System.currentTimeMillis()).getNextPosition();
+		}
+		return r;
+	}
+
+	static void push(PacketBasedBinlogParser parser, byte[]... events) throws Exception
+	{
+		for (byte[] event : events)
+		{
+			final byte[] body = new byte[event.length + 1];
+			System.arraycopy(event, 0, body, 1, event.length);
+			parser.parse(body, System.currentTimeMillis());
+		}
+	}
+
+	/**
+	 * Transactions of a gtid, a BEGIN query and a xid event, without checksums
+	 */
+	private static final class GtidBinlog
+	{
+		//
+		private long position = MySQLConstants.BINLOG_MAGIC.length;
+
+		public byte[] rotate()
+		{
+			final byte[] name = BINLOG.getBytes();
+			final byte[] r = newEvent(MySQLConstants.ROTATE_EVENT, 0, 8 + name.length);
+			put(r, 19, MySQLConstants.BINLOG_MAGIC.length, 8);
+			System.arraycopy(name, 0, r, 19 + 8, name.length);
+			put(r, 17, 0x20, 2); // Artificial
+			return r;
+		}
+
+		public byte[][] transaction(long gno)
+		{
+			//
+			final java.util.UUID sid = java.util.UUID.fromString(UUID);
+			final byte[] gtid = allocate(MySQLConstants.GTID_LOG_EVENT, 1 + 16 + 8);
+			put(gtid, 19, 1, 1); // commit flag
+			for (int i = 0; i < 8; i++)
+			{
+				gtid[20 + i] = (byte) (sid.getMostSignificantBits() >>> (56 - 8 * i));
+				gtid[28 + i] = (byte) (sid.getLeastSignificantBits() >>> (56 - 8 * i));
+			}
+			put(gtid, 36, gno, 8);
+
+			//
+			final byte[] schema = "test".getBytes(), sql = "BEGIN".getBytes();
+			final byte[] begin = allocate(MySQLConstants.QUERY_EVENT, 13 + schema.length + 1 + sql.length);
+			put(begin, 19, 1, 4); // thread id
+			put(begin, 27, schema.length, 1);
+			System.arraycopy(schema, 0, begin, 19 + 13, schema.length);
+			System.arraycopy(sql, 0, begin, 19 + 13 + schema.length + 1, sql.length);
+
+			//
+			final byte[] xid = allocate(MySQLConstants.XID_EVENT, 8);
+			put(xid, 19, gno, 8);
+			return new byte[][] { gtid, begin, xid };
+		}
+
+		private byte[] allocate(int eventType, int bodyLength)
+		{
+			this.position += 19 + bodyLength;
+			return newEvent(eventType, this.position, bodyLength);
+		}
+
+		private static byte[] newEvent(int eventType, long nextPosition, int bodyLength)
+		{
+			final byte[] r = new byte[19 + bodyLength];
+			put(r, 4, eventType, 1);
+			put(r, 5, 1, 4); // server id
+			put(r, 9, r.length, 4);
+			put(r, 13, nextPosition, 4);
+			return r;
+		}
+
+		private static void put(byte[] data, int offset, long value, int length)
+		{
+			for (int i = 0; i < length; i++)
+			{
+				data[offset + i] = (byte) (value >>> (i << 3));
+			}
+		}
+	}
+
+	/**
+	 * 
+	 */
+	private static final class RecordingCheckpointStore implements CheckpointStore
+	{
+		//
+		private Checkpoint checkpoint;
+
+		public Checkpoint load() throws IOException
+		{
+			return this.checkpoint;
+		}
+
+		public void save(String binlogFileName, long binlogPosition, long restartPosition, long timestamp)
+		        throws IOException
+		{
+			this.checkpoint = new Checkpoint(binlogFileName, binlogPosition, restartPosition, timestamp);
+		}
+
+		public void flush() throws IOException
+		{
+		}
+
+		public void close() throws IOException
+		{
+		}
+	}
+}
@@ -0,0 +1,56 @@
+package com.google.code.or.benchmark;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps the last latency samples, in nanoseconds, in a fixed size ring and reports their
+ * percentiles in microseconds. It is written by one thread and read once that thread has stopped.
+ * 
+ * @author Jingqi Xu
+ */
+public class LatencySampler
+{
+	//
+	private final long[] samples;
+	private long count;
+	private long[] sorted;
+
+	/**
+	 * 
+	 */
+	public LatencySampler(int capacity)
+	{
+		this.samples = new long[capacity];
+	}
+
+	/**
+	 * 
+	 */
+	public void add(long nanos)
+	{
+		this.samples[(int) (this.count++ % this.samples.length)] = nanos;
+		this.sorted = null;
+	}
+
+	public int size()
+	{
+		return (int) Math.min(this.count, this.samples.length);
+	}
+
+	public long percentile(double p)
+	{
+		//
+		if (this.sorted == null)
+		{
+			this.sorted = Arrays.copyOf(this.samples, size());
+			Arrays.sort(this.sorted);
+		}
+
+		//
+		if (this.sorted.length == 0)
+			return 0;
+		return TimeUnit.NANOSECONDS.toMicros(this.sorted[Math.min(this.sorted.length - 1,
+		        (int) (this.sorted.length * p))]);
+	}
+}
@@ -0,0 +1,213 @@
+package com.google.code.or.benchmark;
+
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.TestCase;
+import junit.textui.TestRunner;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.code.or.OpenParser;
+import com.google.code.or.binlog.BinlogEventListener;
+import com.google.code.or.binlog.BinlogEventV4;
+import com.google.code.or.binlog.impl.FileBasedBinlogParser;
+import com.google.code.or.binlog.impl.writer.BinlogGenerator;
+import com.google.code.or.common.util.MySQLConstants;
+import com.google.code.or.logging.Log4jInitializer;
+
+/**
+ * Parses a generated binlog through {@link OpenParser} and checks the bytes allocated per event of
+ * each event type against its budget, so that a change which allocates more on the parse path fails
+ * fast. The allocation is read from the thread allocation counter of the parser thread between two
+ * consecutive events, i.e. it includes reading, parsing and dispatching the event but not the
+ * listener. The corpus is the v1 and v2 rows events of {@link BinlogGenerator}, two rows of all
+ * column types per event, each parsed a few times to warm up with the last pass measured. The test
+ * fails if any event type is over budget, it is skipped on a jvm without the thread allocation
+ * counter. The budgets should be lowered with the changes that allocate less.
+ * 
+ * The number of transactions is set by the system property parseAllocation.transactions, main()
+ * runs the test with logging enabled.
+ * 
+ * @author Jingqi Xu
+ */
+public class ParseAllocationTest extends TestCase
+{
+	//
+	private static final Logger LOGGER = LoggerFactory.getLogger(ParseAllocationTest.class);
+
+	//
+	private static final int PASSES = 3;
+	private static final long[] BUDGETS = new long[256]; // Bytes per event, about 20% above the measured
+	static
+	{
+		BUDGETS[MySQLConstants.QUERY_EVENT] = 768;
+		BUDGETS[MySQLConstants.XID_EVENT] = 160;
+		BUDGETS[MySQLConstants.TABLE_MAP_EVENT] = 256; // The previous event of the table is reused
+		BUDGETS[MySQLConstants.WRITE_ROWS_EVENT] = 12288;
+		BUDGETS[MySQLConstants.UPDATE_ROWS_EVENT] = 24576;
+		BUDGETS[MySQLConstants.DELETE_ROWS_EVENT] = 12288;
+		BUDGETS[MySQLConstants.WRITE_ROWS_EVENT_V2] = 12288;
+		BUDGETS[MySQLConstants.UPDATE_ROWS_EVENT_V2] = 24576;
+		BUDGETS[MySQLConstants.DELETE_ROWS_EVENT_V2] = 12288;
+	}
+
+	/**
+	 * 
+	 */
+	public static void main(String args[]) throws Exception
+	{
+		Log4jInitializer.initialize();
+		TestRunner.run(ParseAllocationTest.class);
+	}
+
+	public void testAllocationPerEvent() throws Exception
+	{
+		//
+		final long transactions = Long.getLong("parseAllocation.transactions", 10000);
+		final com.sun.management.ThreadMXBean mxBean =
+		        (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+		if (!mxBean.isThreadAllocatedMemorySupported())
+		{
+			LOGGER.warn("thread allocated memory is not supported, the test is skipped");
+			return;
+		}
+		mxBean.setThreadAllocatedMemoryEnabled(true);
+
+		//
+		final File directory = File.createTempFile("binlog", "");
+		directory.delete();
+		directory.mkdirs();
+		final Counter counter = new Counter(mxBean);
+		final StringBuilder over = new StringBuilder();
+		try
+		{
+			//
+			for (int v = 1; v <= 2; v++)
+			{
+				final BinlogGenerator generator = new BinlogGenerator(directory);
+				generator.setBinlogBaseName("mysql-bin-v" + v);
+				generator.setRowsEventV2(v == 2);
+				generator.setTransactions(transactions);
+				generator.setRowsPerEvent(2);
+				generator.setUpdateWeight(1);
+				generator.setDeleteWeight(1);
+				final List<File> files = generator.generate();
+				for (int i = 1; i <= PASSES; i++)
+				{
+					counter.setMeasuring(i == PASSES);
+					parse(files.get(0), counter);
+				}
+			}
+
+			//
+			for (int type = 0; type < BUDGETS.length; type++)
+			{
+				if (counter.events[type] == 0)
+					continue;
+				final long allocated = counter.bytes[type] / counter.events[type];
+				final boolean overBudget = BUDGETS[type] > 0 && allocated > BUDGETS[type];
+				if (overBudget)
+				{
+					over.append(String.format("%n%s: %d bytes/event, budget: %d", counter.names[type], allocated,
+					        BUDGETS[type]));
+				}
+				LOGGER.info(String.format("%-24s events: %8d, bytes/event: %7d, budget: %7s%s", counter.names[type],
+				        counter.events[type], allocated, BUDGETS[type] > 0 ? String.valueOf(BUDGETS[type]) : "-",
+				        overBudget ? ", OVER BUDGET" : ""));
+			}
+		}
+		finally
+		{
+			final File[] files = directory.listFiles();
+			for (int i = 0; files != null && i < files.length; i++)
+				files[i].delete();
+			directory.delete();
+		}
+		assertTrue("allocation per event is over budget:" + over, over.length() == 0);
+	}
+
+	private static void parse(File file, Counter counter) throws Exception
+	{
+		//
+		final OpenParser op = new OpenParser()
+		{
+			@Override
+			protected FileBasedBinlogParser getDefaultBinlogParser() throws Exception
+			{
+				final FileBasedBinlogParser r = super.getDefaultBinlogParser();
+				r.setStopOnEndOfStream(true);
+				return r;
+			}
+		};
+		op.setBinlogFilePath(file.getParent());
+		op.setBinlogFileName(file.getName());
+		op.setStartPosition(4);
+		op.setBinlogEventListener(counter);
+		counter.reset();
+		op.start();
+
+		// The parser stops at the end of the file
+		while (op.getBinlogParser().isRunning())
+		{
+			Thread.sleep(10);
+		}
+		op.stop(1, TimeUnit.SECONDS);
+	}
+
+	/**
+	 * Attributes the bytes allocated by the parser thread since the previous event to this event
+	 */
+	private static class Counter implements BinlogEventListener
+	{
+		//
+		private final com.sun.management.ThreadMXBean mxBean;
+		private final long overhead;
+		private final long[] events = new long[256];
+		private final long[] bytes = new long[256];
+		private final String[] names = new String[256];
+		private boolean measuring;
+		private long last = -1;
+
+		public Counter(com.sun.management.ThreadMXBean mxBean)
+		{
+			// The allocation of reading the counter itself, if any
+			this.mxBean = mxBean;
+			final long id = Thread.currentThread().getId();
+			final long a = mxBean.getThreadAllocatedBytes(id);
+			final long b = mxBean.getThreadAllocatedBytes(id);
+			this.overhead = b - a;
+		}
+
+		public void setMeasuring(boolean measuring)
+		{
+			this.measuring = measuring;
+		}
+
+		public void reset()
+		{
+			this.last = -1;
+		}
+
+		public void onEvents(BinlogEventV4 event)
+		{
+			//
+			final long id = Thread.currentThread().getId();
+			final long now = this.mxBean.getThreadAllocatedBytes(id);
+			final int type = event.getHeader().getEventType();
+			if (this.measuring && this.last >= 0 && type != MySQLConstants.FORMAT_DESCRIPTION_EVENT)
+			{
+				this.events[type]++;
+				this.bytes[type] += Math.max(now - this.last - this.overhead, 0);
+			}
+			if (this.names[type] == null)
+			{
+				this.names[type] = event.getClass().getSimpleName();
+			}
+			this.last = this.mxBean.getThreadAllocatedBytes(id);
+		}
+	}
+}
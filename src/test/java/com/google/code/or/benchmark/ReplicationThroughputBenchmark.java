@@ -0,0 +1,120 @@
+package com.google.code.or.benchmark;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.code.or.OpenReplicator;
+import com.google.code.or.binlog.BinlogEventListener;
+import com.google.code.or.binlog.BinlogEventV4;
+import com.google.code.or.logging.Log4jInitializer;
+import com.google.code.or.mock.BinlogFileEventSource;
+import com.google.code.or.mock.EventSource;
+import com.google.code.or.mock.MockMaster;
+import com.google.code.or.mock.SyntheticEventSource;
+
+/**
+ * Replicates from an in-process {@link MockMaster} and reports the sustained events/sec and the end
+ * to end latency of the replicator, i.e. from the master writing an event to the listener receiving
+ * it. The events are generated unless binlog files are given. The first second is the warm up, and
+ * the benchmark ends after the duration or once no event arrives for two seconds.
+ * 
+ * Usage: ReplicationThroughputBenchmark [seconds] [rate, 0 for unlimited] [rowSize] [binlog files...]
+ * 
+ * @author Jingqi Xu
+ */
+public class ReplicationThroughputBenchmark
+{
+	//
+	private static final Logger LOGGER = LoggerFactory.getLogger(ReplicationThroughputBenchmark.class);
+
+	/**
+	 * 
+	 */
+	public static void main(String args[]) throws Exception
+	{
+		//
+		Log4jInitializer.initialize();
+		final int seconds = args.length > 0 ? Integer.parseInt(args[0]) : 30;
+		final long rate = args.length > 1 ? Long.parseLong(args[1]) : 0;
+		final int rowSize = args.length > 2 ? Integer.parseInt(args[2]) : 100;
+		final String binlogFileName;
+		final EventSource source;
+		if (args.length > 3)
+		{
+			final File[] files = new File[args.length - 3];
+			for (int i = 0; i < files.length; i++)
+				files[i] = new File(args[i + 3]);
+			source = new BinlogFileEventSource(files);
+			binlogFileName = files[0].getName();
+		}
+		else
+		{
+			final SyntheticEventSource s = new SyntheticEventSource();
+			s.setRowSize(rowSize);
+			source = s;
+			binlogFileName = "mysql-bin.000001";
+		}
+
+		//
+		final MockMaster master = new MockMaster(source);
+		master.setRate(rate);
+		master.start();
+
+		//
+		final AtomicLong received = new AtomicLong();
+		final LatencySampler latencies = new LatencySampler(1024 * 1024);
+		final OpenReplicator or = new OpenReplicator();
+		or.setUser("benchmark");
+		or.setPassword("benchmark");
+		or.setHost("127.0.0.1");
+		or.setPort(master.getLocalPort());
+		or.setServerId(65535);
+		or.setBinlogFileName(binlogFileName);
+		or.setBinlogPosition(4);
+		or.setBinlogEventListener(new BinlogEventListener()
+		{
+			public void onEvents(BinlogEventV4 event)
+			{
+				received.incrementAndGet();
+				final Long sent = master.getSendTime(event.getHeader().getNextPosition());
+				if (sent != null)
+				{
+					latencies.add(System.nanoTime() - sent);
+				}
+			}
+		});
+		or.start();
+
+		//
+		final long start = System.nanoTime();
+		long warmedUp = 0, warmedUpEvents = 0, last = 0, idle = 0;
+		for (int i = 1; i <= seconds && idle < 2; i++)
+		{
+			Thread.sleep(1000);
+			final long count = received.get();
+			LOGGER.info("second: {}, events/sec: {}, sent: {}", new Object[] { i, count - last, master.getSentEvents() });
+			idle = count == last && count > 0 ? idle + 1 : 0;
+			last = count;
+			if (i == 1)
+			{
+				warmedUp = System.nanoTime();
+				warmedUpEvents = count;
+			}
+		}
+		final long elapsed = System.nanoTime() - warmedUp - TimeUnit.SECONDS.toNanos(idle);
+
+		//
+		or.stop(1, TimeUnit.SECONDS);
+		master.stop();
+		LOGGER.info("events: {}, elapsed: {} ms, sustained events/sec: {}", new Object[] { last,
+		        TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start),
+		        elapsed <= 0 ? 0 : (last - warmedUpEvents) * TimeUnit.SECONDS.toNanos(1) / elapsed });
+		LOGGER.info("latency samples: {}, p50: {} us, p99: {} us, p99.9: {} us, max: {} us", new Object[] {
+		        latencies.size(), latencies.percentile(0.5), latencies.percentile(0.99), latencies.percentile(0.999),
+		        latencies.percentile(1.0) });
+	}
+}
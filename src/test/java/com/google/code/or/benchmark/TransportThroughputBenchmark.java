@@ -0,0 +1,561 @@
+package com.google.code.or.benchmark;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.code.or.binlog.BinlogEventListener;
+import com.google.code.or.binlog.BinlogEventParser;
+import com.google.code.or.binlog.BinlogEventV4;
+import com.google.code.or.binlog.impl.ChecksumType;
+import com.google.code.or.binlog.impl.ReplicationBasedBinlogParser;
+import com.google.code.or.binlog.impl.event.FormatDescriptionEvent;
+import com.google.code.or.binlog.impl.event.RotateEvent;
+import com.google.code.or.binlog.impl.parser.DeleteRowsEventParser;
+import com.google.code.or.binlog.impl.parser.DeleteRowsEventV2Parser;
+import com.google.code.or.binlog.impl.parser.FormatDescriptionEventParser;
+import com.google.code.or.binlog.impl.parser.GtidEventParser;
+import com.google.code.or.binlog.impl.parser.IncidentEventParser;
+import com.google.code.or.binlog.impl.parser.IntvarEventParser;
+import com.google.code.or.binlog.impl.parser.PreviousGtidsEventParser;
+import com.google.code.or.binlog.impl.parser.QueryEventParser;
+import com.google.code.or.binlog.impl.parser.RandEventParser;
+import com.google.code.or.binlog.impl.parser.RotateEventParser;
+import com.google.code.or.binlog.impl.parser.StopEventParser;
+import com.google.code.or.binlog.impl.parser.TableMapEventParser;
+import com.google.code.or.binlog.impl.parser.UpdateRowsEventParser;
+import com.google.code.or.binlog.impl.parser.UpdateRowsEventV2Parser;
+import com.google.code.or.binlog.impl.parser.UserVarEventParser;
+import com.google.code.or.binlog.impl.parser.WriteRowsEventParser;
+import com.google.code.or.binlog.impl.parser.WriteRowsEventV2Parser;
+import com.google.code.or.binlog.impl.parser.XidEventParser;
+import com.google.code.or.binlog.impl.writer.BinlogGenerator;
+import com.google.code.or.binlog.impl.writer.ColumnGenerator;
+import com.google.code.or.common.glossary.column.StringColumn;
+import com.google.code.or.common.util.MySQLConstants;
+import com.google.code.or.common.util.XThreadFactory;
+import com.google.code.or.io.impl.SocketFactoryImpl;
+import com.google.code.or.logging.Log4jInitializer;
+import com.google.code.or.net.Transport;
+import com.google.code.or.net.impl.AbstractServerSession;
+import com.google.code.or.net.impl.TransportImpl;
+import com.google.code.or.net.impl.TransportOutputStreamImpl;
+import com.google.code.or.net.impl.packet.GreetingPacket;
+import com.google.code.or.net.impl.packet.OKPacket;
+
+/**
+ * Measures what the transport buffers buy, i.e. the level 1 buffer of TransportInputStreamImpl, the
+ * level 2 ActiveBufferedInputStream (0 means none) and the socket receive buffer. For each
+ * configuration a {@link TransportImpl} and a {@link ReplicationBasedBinlogParser} read the event
+ * packets a local pump writes into a loopback socket at rate MB/s. The pump skips the login and the
+ * dump command, it sends a greeting and then the events of the corpus over and over. The first
+ * second of a configuration is the warm up. Reported are the MB/s and events/sec delivered, the CPU
+ * of the parser thread and of the level 2 buffer's pump thread, and the latency from the pump
+ * writing the last byte of an event to the listener receiving it.
+ * 
+ * The corpus is generated by {@link BinlogGenerator} unless binlog files with CRC32 checksums are
+ * given. The generated rows are mostly strings and blobs, cheap to decode, so that the parser is less
+ * of a bottleneck than the transport. Only the events the parser delivers are sent, and the format description event only once.
+ * Each file of each pass is preceded by an artificial rotate event to a new binlog file name, the
+ * parser would otherwise suppress the replayed events as already delivered.
+ * 
+ * Usage: TransportThroughputBenchmark [seconds] [rate in MB/s, 0 for unlimited] [binlog files...]
+ * 
+ * @author Jingqi Xu
+ */
+public class TransportThroughputBenchmark
+{
+	//
+	private static final Logger LOGGER = LoggerFactory.getLogger(TransportThroughputBenchmark.class);
+
+	//
+	private static final int[] LEVEL1_BUFFER_SIZES = { 64 * 1024, 1024 * 1024 };
+	private static final int[] LEVEL2_BUFFER_SIZES = { 0, 1024 * 1024, 8 * 1024 * 1024 };
+	private static final int[] SOCKET_RECEIVE_BUFFER_SIZES = { 64 * 1024, 512 * 1024, 4 * 1024 * 1024 };
+	private static final int CHUNK_SIZE = 16 * 1024;
+	private static final int ARRIVALS = 1 << 20; // Ring of the write times by event sequence
+	private static final int SAMPLE_INTERVAL = 16;
+
+	/**
+	 * 
+	 */
+	public static void main(String args[]) throws Exception
+	{
+		//
+		Log4jInitializer.initialize();
+		final int seconds = args.length > 0 ? Integer.parseInt(args[0]) : 5;
+		final long rate = args.length > 1 ? Long.parseLong(args[1]) * 1024 * 1024 : 0;
+		final List<File> files = new ArrayList<File>();
+		for (int i = 2; i < args.length; i++)
+			files.add(new File(args[i]));
+		final Corpus corpus = files.isEmpty() ? generate() : new Corpus(files);
+		LOGGER.info("corpus events: {}, bytes: {}, rate: {} MB/s", new Object[] { corpus.ends.length,
+		        corpus.stream.length, rate == 0 ? "unlimited" : String.valueOf(rate / 1024 / 1024) });
+
+		//
+		final List<String> results = new ArrayList<String>();
+		for (int level2 : LEVEL2_BUFFER_SIZES)
+		{
+			for (int level1 : LEVEL1_BUFFER_SIZES)
+			{
+				for (int receive : SOCKET_RECEIVE_BUFFER_SIZES)
+				{
+					final String r = run(corpus, level1, level2, receive, seconds, rate);
+					LOGGER.info(r);
+					results.add(r);
+				}
+			}
+		}
+		LOGGER.info("results:");
+		for (String r : results)
+			LOGGER.info(r);
+	}
+
+	/**
+	 * 
+	 */
+	private static String run(Corpus corpus, int level1, int level2, int receive, int seconds, long rate)
+	        throws Exception
+	{
+		//
+		final Pump pump = new Pump(corpus, rate);
+		pump.start();
+
+		//
+		final CapturingThreadFactory parserThreads = new CapturingThreadFactory("binlog-parser");
+		final CapturingThreadFactory bufferThreads = new CapturingThreadFactory("active-bis");
+		final TransportImpl transport = new TransportImpl();
+		transport.setLevel1BufferSize(level1);
+		transport.setLevel2BufferSize(level2);
+		transport.setThreadFactory(bufferThreads);
+		transport.setAuthenticator(new Transport.Authenticator()
+		{
+			public void login(Transport transport) throws Exception
+			{
+				// NOP, the pump starts to send events after the greeting
+			}
+		});
+		final SocketFactoryImpl socketFactory = new SocketFactoryImpl();
+		socketFactory.setReceiveBufferSize(receive);
+		transport.setSocketFactory(socketFactory);
+		transport.connect("127.0.0.1", pump.getLocalPort());
+
+		//
+		final Receiver receiver = new Receiver(pump);
+		final ReplicationBasedBinlogParser parser = new ReplicationBasedBinlogParser("mysql-bin.000001", 4L);
+		parser.setTransport(transport);
+		parser.setThreadFactory(parserThreads);
+		parser.setChecksumLength(ChecksumType.CRC32.getLength());
+		parser.setEventParsers(corpus.parsers);
+		parser.setEventListener(receiver);
+		parser.start();
+
+		//
+		Thread.sleep(1000);
+		final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+		final long parserCpu = parserThreads.getCpuTime(threads), bufferCpu = bufferThreads.getCpuTime(threads);
+		final long events = receiver.events.get(), bytes = receiver.bytes.get();
+		receiver.measuring = true;
+		final long start = System.nanoTime();
+		Thread.sleep(TimeUnit.SECONDS.toMillis(seconds));
+		receiver.measuring = false;
+		final long elapsed = System.nanoTime() - start;
+		final double parserLoad = (parserThreads.getCpuTime(threads) - parserCpu) * 100.0 / elapsed;
+		final double bufferLoad = (bufferThreads.getCpuTime(threads) - bufferCpu) * 100.0 / elapsed;
+		final double mbs = (receiver.bytes.get() - bytes) * 1000000000.0 / elapsed / 1024 / 1024;
+		final long eps = (receiver.events.get() - events) * TimeUnit.SECONDS.toNanos(1) / elapsed;
+
+		//
+		parser.stop(1, TimeUnit.SECONDS);
+		pump.stop();
+		transport.disconnect();
+		final LatencySampler latencies = receiver.latencies;
+		return String.format("level1: %5dK, level2: %5dK, receive: %5dK, MB/s: %7.1f, events/sec: %8d, "
+		        + "parser cpu: %5.1f%%, buffer cpu: %5.1f%%, p50: %6d us, p99: %7d us, p99.9: %7d us", level1 / 1024,
+		        level2 / 1024, receive / 1024, mbs, eps, parserLoad, bufferLoad,
+		        latencies.percentile(0.5), latencies.percentile(0.99), latencies.percentile(0.999));
+	}
+
+	private static Corpus generate() throws IOException
+	{
+		//
+		final File directory = File.createTempFile("transport-benchmark", "");
+		directory.delete();
+		directory.mkdirs();
+		try
+		{
+			final BinlogGenerator generator = new BinlogGenerator(directory);
+			generator.setColumns(Arrays.asList(ColumnGenerator.bigint(), ColumnGenerator.integer(),
+			        ColumnGenerator.varchar(255), ColumnGenerator.blob(2, 1024)));
+			generator.setTransactions(20000);
+			generator.setUpdateWeight(1);
+			generator.setDeleteWeight(1);
+			return new Corpus(generator.generate());
+		}
+		finally
+		{
+			for (File file : directory.listFiles())
+				file.delete();
+			directory.delete();
+		}
+	}
+
+	/**
+	 * The event packets of the binlog files, in a stream sent over and over after the format
+	 * description event packet. The end of the i-th event in the stream is ends[i].
+	 */
+	private static class Corpus
+	{
+		//
+		private final List<BinlogEventParser> parsers = new ArrayList<BinlogEventParser>();
+		private byte[] formatDescription;
+		private byte[] stream;
+		private int[] ends;
+		private int[] starts;
+
+		public Corpus(List<File> files) throws IOException
+		{
+			//
+			this.parsers.add(new StopEventParser());
+			this.parsers.add(new IntvarEventParser());
+			this.parsers.add(new XidEventParser());
+			this.parsers.add(new RandEventParser());
+			this.parsers.add(new QueryEventParser());
+			this.parsers.add(new UserVarEventParser());
+			this.parsers.add(new IncidentEventParser());
+			this.parsers.add(new TableMapEventParser());
+			this.parsers.add(new WriteRowsEventParser());
+			this.parsers.add(new UpdateRowsEventParser());
+			this.parsers.add(new DeleteRowsEventParser());
+			this.parsers.add(new WriteRowsEventV2Parser());
+			this.parsers.add(new UpdateRowsEventV2Parser());
+			this.parsers.add(new DeleteRowsEventV2Parser());
+			this.parsers.add(new FormatDescriptionEventParser());
+			this.parsers.add(new GtidEventParser());
+			this.parsers.add(new PreviousGtidsEventParser());
+			this.parsers.add(new RotateEventParser());
+			final boolean[] delivered = new boolean[256];
+			for (BinlogEventParser parser : this.parsers)
+				delivered[parser.getEventType()] = true;
+			delivered[MySQLConstants.ROTATE_EVENT] = false; // Sent by the pump instead
+
+			//
+			final ByteArrayOutputStream stream = new ByteArrayOutputStream();
+			final List<Integer> ends = new ArrayList<Integer>();
+			final List<Integer> starts = new ArrayList<Integer>();
+			for (File file : files)
+			{
+				starts.add(stream.size());
+				final DataInputStream is = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+				try
+				{
+					is.readFully(new byte[MySQLConstants.BINLOG_MAGIC.length]);
+					while (true)
+					{
+						final byte[] event = readEvent(is);
+						if (event == null)
+							break;
+						final int type = event[4] & 0xFF;
+						if (type == MySQLConstants.FORMAT_DESCRIPTION_EVENT)
+						{
+							if (this.formatDescription == null)
+								this.formatDescription = toPacket(event);
+						}
+						else if (delivered[type])
+						{
+							stream.write(toPacket(event));
+							ends.add(stream.size());
+						}
+					}
+				}
+				finally
+				{
+					is.close();
+				}
+			}
+
+			//
+			this.stream = stream.toByteArray();
+			this.ends = new int[ends.size()];
+			for (int i = 0; i < this.ends.length; i++)
+				this.ends[i] = ends.get(i);
+			this.starts = new int[starts.size()];
+			for (int i = 0; i < this.starts.length; i++)
+				this.starts[i] = starts.get(i);
+		}
+
+		/**
+		 * Returns the packet of an artificial rotate event to the binlog file at position 4, with a
+		 * zero checksum that the parser skips
+		 */
+		private static byte[] rotate(String binlogFileName)
+		{
+			final byte[] name = binlogFileName.getBytes();
+			final byte[] r = new byte[19 + 8 + name.length + 4];
+			r[4] = MySQLConstants.ROTATE_EVENT;
+			r[5] = 1; // server id
+			r[9] = (byte) r.length;
+			r[10] = (byte) (r.length >>> 8);
+			r[17] = 0x20; // LOG_EVENT_ARTIFICIAL_F
+			r[19] = (byte) MySQLConstants.BINLOG_MAGIC.length;
+			System.arraycopy(name, 0, r, 27, name.length);
+			return toPacket(r);
+		}
+
+		private static byte[] readEvent(DataInputStream is) throws IOException
+		{
+			final byte[] header = new byte[19];
+			try
+			{
+				is.readFully(header);
+			}
+			catch (EOFException e)
+			{
+				return null;
+			}
+			final int length = (header[9] & 0xFF) | (header[10] & 0xFF) << 8 | (header[11] & 0xFF) << 16
+			        | (header[12] & 0xFF) << 24;
+			final byte[] r = Arrays.copyOf(header, length);
+			is.readFully(r, header.length, length - header.length);
+			return r;
+		}
+
+		private static byte[] toPacket(byte[] event)
+		{
+			final byte[] r = new byte[event.length + 5];
+			final int length = event.length + 1;
+			r[0] = (byte) length;
+			r[1] = (byte) (length >>> 8);
+			r[2] = (byte) (length >>> 16);
+			r[3] = 1; // sequence
+			r[4] = OKPacket.PACKET_MARKER;
+			System.arraycopy(event, 0, r, 5, event.length);
+			return r;
+		}
+	}
+
+	/**
+	 * Accepts one connection, sends the greeting and the format description event, then writes the
+	 * corpus in chunks at the rate in bytes per second. The time the chunk with the last byte of an
+	 * event is written is recorded by the sequence number of the event.
+	 */
+	private static class Pump implements Runnable
+	{
+		//
+		private final Corpus corpus;
+		private final long rate;
+		private final ServerSocket serverSocket;
+		private final AtomicLongArray arrivals = new AtomicLongArray(ARRIVALS);
+		private volatile boolean running = true;
+		private volatile Socket socket;
+		private Thread thread;
+
+		public Pump(Corpus corpus, long rate) throws IOException
+		{
+			this.corpus = corpus;
+			this.rate = rate;
+			this.serverSocket = new ServerSocket(0, 1, InetAddress.getLoopbackAddress());
+		}
+
+		public int getLocalPort()
+		{
+			return this.serverSocket.getLocalPort();
+		}
+
+		public long getArrival(long sequence)
+		{
+			return this.arrivals.get((int) (sequence & (ARRIVALS - 1)));
+		}
+
+		public void start()
+		{
+			this.thread = new XThreadFactory("byte-pump", true).newThread(this);
+			this.thread.start();
+		}
+
+		public void stop() throws Exception
+		{
+			this.running = false;
+			this.serverSocket.close();
+			if (this.socket != null)
+				this.socket.close();
+			this.thread.join(1000);
+		}
+
+		public void run()
+		{
+			try
+			{
+				//
+				this.socket = this.serverSocket.accept();
+				final OutputStream os = this.socket.getOutputStream();
+				final GreetingPacket greeting = new GreetingPacket();
+				greeting.setProtocolVersion(10);
+				greeting.setServerVersion(StringColumn.valueOf("5.7.30-log".getBytes()));
+				greeting.setScramble1(StringColumn.valueOf("12345678".getBytes()));
+				greeting.setServerCapabilities(AbstractServerSession.SERVER_CAPABILITIES);
+				greeting.setScramble2(StringColumn.valueOf("123456789012".getBytes()));
+				final TransportOutputStreamImpl tos = new TransportOutputStreamImpl(os);
+				tos.writePacket(greeting);
+				tos.flush();
+				os.write(this.corpus.formatDescription);
+
+				//
+				final byte[] stream = this.corpus.stream;
+				final int[] ends = this.corpus.ends;
+				final int[] starts = this.corpus.starts;
+				final long start = System.nanoTime();
+				long written = 0, sequence = 0;
+				for (int offset = 0, index = 0, file = 0, binlog = 1; this.running; )
+				{
+					//
+					if (this.rate > 0)
+					{
+						final long delay = start + written * TimeUnit.SECONDS.toNanos(1) / this.rate - System.nanoTime();
+						if (delay > 0)
+							LockSupport.parkNanos(delay);
+					}
+
+					//
+					if (file < starts.length && offset == starts[file])
+					{
+						final byte[] rotate = Corpus.rotate(String.format("mysql-bin.%06d", binlog++));
+						os.write(rotate);
+						written += rotate.length;
+						file++;
+						continue;
+					}
+
+					//
+					final int end = file < starts.length ? starts[file] : stream.length;
+					final int length = Math.min(CHUNK_SIZE, end - offset);
+					final long now = System.nanoTime();
+					for (; index < ends.length && ends[index] <= offset + length; index++, sequence++)
+						this.arrivals.set((int) (sequence & (ARRIVALS - 1)), now);
+					os.write(stream, offset, length);
+					written += length;
+					offset += length;
+					if (offset == stream.length)
+					{
+						offset = 0;
+						index = 0;
+						file = 0;
+					}
+				}
+			}
+			catch (IOException e)
+			{
+				if (this.running)
+					LOGGER.error("failed to pump", e);
+			}
+			finally
+			{
+				try
+				{
+					if (this.socket != null)
+						this.socket.close();
+				}
+				catch (IOException e)
+				{
+					// NOP
+				}
+			}
+		}
+	}
+
+	/**
+	 * Counts the events and bytes delivered, and samples the latency of every SAMPLE_INTERVAL-th
+	 * event while measuring
+	 */
+	private static class Receiver implements BinlogEventListener
+	{
+		//
+		private final Pump pump;
+		private final AtomicLong events = new AtomicLong();
+		private final AtomicLong bytes = new AtomicLong();
+		private final LatencySampler latencies = new LatencySampler(1024 * 1024);
+		private volatile boolean measuring;
+		private long sequence;
+
+		public Receiver(Pump pump)
+		{
+			this.pump = pump;
+		}
+
+		public void onEvents(BinlogEventV4 event)
+		{
+			//
+			if (event instanceof FormatDescriptionEvent || event instanceof RotateEvent)
+			{
+				return;
+			}
+			final long s = this.sequence++;
+			this.events.incrementAndGet();
+			this.bytes.addAndGet(event.getHeader().getEventLength());
+
+			//
+			if (this.measuring && s % SAMPLE_INTERVAL == 0)
+			{
+				final long arrival = this.pump.getArrival(s);
+				if (arrival > 0)
+					this.latencies.add(System.nanoTime() - arrival);
+			}
+		}
+	}
+
+	/**
+	 * Remembers the threads it creates to measure their CPU time
+	 */
+	private static class CapturingThreadFactory implements ThreadFactory
+	{
+		//
+		private final XThreadFactory delegate;
+		private final List<Thread> threads = new CopyOnWriteArrayList<Thread>();
+
+		public CapturingThreadFactory(String name)
+		{
+			this.delegate = new XThreadFactory(name, true);
+		}
+
+		public Thread newThread(Runnable r)
+		{
+			final Thread t = this.delegate.newThread(r);
+			this.threads.add(t);
+			return t;
+		}
+
+		public long getCpuTime(ThreadMXBean bean)
+		{
+			long r = 0;
+			for (Thread t : this.threads)
+			{
+				final long cpu = bean.getThreadCpuTime(t.getId());
+				if (cpu > 0)
+					r += cpu;
+			}
+			return r;
+		}
+	}
+}
@@ -0,0 +1,226 @@
+package com.google.code.or.benchmark;
+
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.code.or.binlog.BinlogEventListener;
+import com.google.code.or.binlog.BinlogEventV4;
+import com.google.code.or.binlog.impl.ReplicationBasedBinlogParser;
+import com.google.code.or.binlog.impl.parser.XidEventParser;
+import com.google.code.or.common.util.XThreadFactory;
+import com.google.code.or.io.util.ActiveBufferedInputStream;
+import com.google.code.or.logging.Log4jInitializer;
+import com.google.code.or.net.Transport;
+import com.google.code.or.net.TransportContext;
+import com.google.code.or.net.TransportInputStream;
+import com.google.code.or.net.TransportOutputStream;
+import com.google.code.or.net.impl.TransportInputStreamImpl;
+
+/**
+ * Starts many replication parsers in one jvm, each with its own loopback connection, pump thread and
+ * parser thread, and reports the startup time, throughput and the number of platform threads.
+ * 
+ * Usage: VirtualThreadScalingBenchmark [instances] [eventsPerInstance] [virtual]
+ * 
+ * @author Jingqi Xu
+ */
+public class VirtualThreadScalingBenchmark
+{
+	//
+	private static final Logger LOGGER = LoggerFactory.getLogger(VirtualThreadScalingBenchmark.class);
+
+	//
+	private static final int XID_PACKET_LENGTH = 1 + 19 + 8;
+
+	/**
+	 * 
+	 */
+	public static void main(String args[]) throws Exception
+	{
+		//
+		Log4jInitializer.initialize();
+		final int instances = args.length > 0 ? Integer.parseInt(args[0]) : 200;
+		final int events = args.length > 1 ? Integer.parseInt(args[1]) : 20000;
+		final boolean virtual = args.length > 2 ? Boolean.parseBoolean(args[2]) : true;
+
+		//
+		final XThreadFactory tf = new XThreadFactory("benchmark", true);
+		tf.setVirtual(virtual);
+		final AtomicLong received = new AtomicLong();
+		final CountDownLatch finished = new CountDownLatch(instances);
+		final ServerSocket server = new ServerSocket(0, instances, InetAddress.getLoopbackAddress());
+		final List<ReplicationBasedBinlogParser> parsers = new ArrayList<ReplicationBasedBinlogParser>();
+		final List<Socket> sockets = new ArrayList<Socket>();
+
+		//
+		final long start = System.nanoTime();
+		for (int i = 0; i < instances; i++)
+		{
+			final Socket client = new Socket(server.getInetAddress(), server.getLocalPort());
+			final Socket master = server.accept();
+			sockets.add(client);
+			sockets.add(master);
+			tf.newThread(new Pump(master, events)).start();
+
+			//
+			final TransportInputStream is =
+			        new TransportInputStreamImpl(new ActiveBufferedInputStream(client.getInputStream(), 256 * 1024,
+			                tf), 64 * 1024);
+			final ReplicationBasedBinlogParser parser = new ReplicationBasedBinlogParser("mysql-bin.000001", 4L);
+			parser.registgerEventParser(new XidEventParser());
+			parser.setThreadFactory(tf);
+			parser.setTransport(new LoopbackTransport(is));
+			parser.setEventListener(new BinlogEventListener()
+			{
+				private int count;
+
+				public void onEvents(BinlogEventV4 event)
+				{
+					received.incrementAndGet();
+					if (++this.count == events)
+						finished.countDown();
+				}
+			});
+			parser.start();
+			parsers.add(parser);
+		}
+		final long started = System.nanoTime();
+
+		//
+		if (!finished.await(10, TimeUnit.MINUTES))
+		{
+			LOGGER.warn("timed out, received: {}", received.get());
+		}
+		final long elapsed = System.nanoTime() - start;
+		LOGGER.info("virtual: {}, instances: {}, events: {}, startup: {} ms, elapsed: {} ms, events/sec: {}",
+		        new Object[]{tf.isVirtual() && XThreadFactory.isVirtualThreadSupported(), instances, received.get(),
+		                TimeUnit.NANOSECONDS.toMillis(started - start), TimeUnit.NANOSECONDS.toMillis(elapsed),
+		                received.get() * TimeUnit.SECONDS.toNanos(1) / elapsed});
+		LOGGER.info("platform threads, live: {}, peak: {}", ManagementFactory.getThreadMXBean().getThreadCount(),
+		        ManagementFactory.getThreadMXBean().getPeakThreadCount());
+
+		//
+		for (ReplicationBasedBinlogParser parser : parsers)
+			parser.stop(0, TimeUnit.MILLISECONDS);
+		for (Socket socket : sockets)
+			socket.close();
+		server.close();
+	}
+
+	/**
+	 * Plays the master, writes xid events as binlog dump packets
+	 */
+	private static final class Pump implements Runnable
+	{
+		//
+		private final Socket socket;
+		private final int events;
+
+		public Pump(Socket socket, int events)
+		{
+			this.socket = socket;
+			this.events = events;
+		}
+
+		public void run()
+		{
+			try
+			{
+				final byte[] batch = new byte[(4 + XID_PACKET_LENGTH) * 256];
+				final OutputStream os = this.socket.getOutputStream();
+				long position = 4;
+				for (int written = 0; written < this.events;)
+				{
+					final int n = Math.min(256, this.events - written);
+					int offset = 0;
+					for (int i = 0; i < n; i++, written++)
+					{
+						position += XID_PACKET_LENGTH - 1;
+						offset = writeXidPacket(batch, offset, position, written);
+					}
+					os.write(batch, 0, offset);
+				}
+				os.flush();
+			}
+			catch (Exception e)
+			{
+				LOGGER.error("failed to pump events", e);
+			}
+		}
+
+		private static int writeXidPacket(byte[] b, int offset, long nextPosition, long xid)
+		{
+			offset = put(b, offset, XID_PACKET_LENGTH, 3);
+			offset = put(b, offset, 1, 1); // sequence
+			offset = put(b, offset, 0, 1); // OK marker
+			offset = put(b, offset, System.currentTimeMillis() / 1000, 4);
+			offset = put(b, offset, 16, 1); // XID_EVENT
+			offset = put(b, offset, 1, 4);
+			offset = put(b, offset, XID_PACKET_LENGTH - 1, 4);
+			offset = put(b, offset, nextPosition, 4);
+			offset = put(b, offset, 0, 2);
+			return put(b, offset, xid, 8);
+		}
+
+		private static int put(byte[] b, int offset, long value, int length)
+		{
+			for (int i = 0; i < length; i++)
+				b[offset++] = (byte) (value >>> (i << 3));
+			return offset;
+		}
+	}
+
+	/**
+	 * 
+	 */
+	private static final class LoopbackTransport implements Transport
+	{
+		//
+		private final TransportInputStream is;
+
+		public LoopbackTransport(TransportInputStream is)
+		{
+			this.is = is;
+		}
+
+		public boolean isConnected()
+		{
+			return true;
+		}
+
+		public void disconnect() throws Exception
+		{
+			this.is.close();
+		}
+
+		public void connect(String host, int port) throws Exception
+		{
+		}
+
+		public TransportContext getContext()
+		{
+			return null;
+		}
+
+		public TransportInputStream getInputStream()
+		{
+			return this.is;
+		}
+
+		public TransportOutputStream getOutputStream()
+		{
+			return null;
+		}
+	}
+}
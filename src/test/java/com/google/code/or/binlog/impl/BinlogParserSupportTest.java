@@ -0,0 +1,212 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.code.or.binlog.impl;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import com.google.code.or.binlog.BinlogEventFilter;
+import com.google.code.or.binlog.BinlogEventListener;
+import com.google.code.or.binlog.BinlogEventV4;
+import com.google.code.or.binlog.BinlogEventV4Header;
+import com.google.code.or.binlog.BinlogParserContext;
+import com.google.code.or.binlog.impl.event.QueryEvent;
+import com.google.code.or.binlog.impl.event.TableMapEvent;
+import com.google.code.or.binlog.impl.event.XidEvent;
+import com.google.code.or.binlog.impl.parser.FormatDescriptionEventParser;
+import com.google.code.or.binlog.impl.parser.QueryEventParser;
+import com.google.code.or.binlog.impl.parser.RotateEventParser;
+import com.google.code.or.binlog.impl.parser.TableMapEventParser;
+import com.google.code.or.binlog.impl.parser.WriteRowsEventV2Parser;
+import com.google.code.or.binlog.impl.parser.XidEventParser;
+import com.google.code.or.common.util.MySQLConstants;
+import com.google.code.or.mock.EventSource;
+import com.google.code.or.mock.SyntheticEventSource;
+
+/**
+ * Pushes the events of a {@link SyntheticEventSource}, i.e. transactions of BEGIN, TABLE_MAP,
+ * WRITE_ROWS_V2 and XID, through {@link PacketBasedBinlogParser}s.
+ * 
+ * @author Jingqi Xu
+ */
+public class BinlogParserSupportTest extends TestCase
+{
+	//
+	private static final String BINLOG = "mysql-bin.000001";
+	private static final int EVENTS_PER_TRANSACTION = 4;
+
+	/**
+	 * 
+	 */
+	public void testRestartPositionAtTransactionBoundaries() throws Exception
+	{
+		//
+		final PacketBasedBinlogParser parser = newParser();
+		final List<long[]> restarts = new ArrayList<long[]>(); // The event's position and the restart position
+		parser.setEventListener(new BinlogEventListener()
+		{
+			public void onEvents(BinlogEventV4 event)
+			{
+				final BinlogEventV4Header header = event.getHeader();
+				if (header.getEventType() != MySQLConstants.ROTATE_EVENT
+				        && header.getEventType() != MySQLConstants.FORMAT_DESCRIPTION_EVENT)
+					restarts.add(new long[] { header.getPosition(), parser.getRestartPosition() });
+			}
+		});
+		push(parser, newCursor(3), 2 + 3 * EVENTS_PER_TRANSACTION);
+
+		// BEGIN, TABLE_MAP, WRITE_ROWS and XID of each transaction
+		for (int i = 0; i < 3; i++)
+		{
+			final long begin = restarts.get(i * EVENTS_PER_TRANSACTION)[0];
+			final long tableMap = restarts.get(i * EVENTS_PER_TRANSACTION + 1)[0];
+			final long end = i == 2 ? parser.getCurrentPosition() : restarts.get((i + 1) * EVENTS_PER_TRANSACTION)[0];
+			assertEquals(begin, restarts.get(i * EVENTS_PER_TRANSACTION)[1]);
+			assertEquals(tableMap, restarts.get(i * EVENTS_PER_TRANSACTION + 1)[1]);
+			assertEquals(tableMap, restarts.get(i * EVENTS_PER_TRANSACTION + 2)[1]);
+			if (i < 2)
+				assertEquals(end, restarts.get(i * EVENTS_PER_TRANSACTION + 3)[1]);
+		}
+	}
+
+	public void testRestartPositionOfFilteredEvents() throws Exception
+	{
+		//
+		final PacketBasedBinlogParser parser = newParser();
+		final List<BinlogEventV4> events = new ArrayList<BinlogEventV4>();
+		parser.setEventListener(newRecorder(events));
+		parser.setEventFilter(new BinlogEventFilter()
+		{
+			public boolean accepts(BinlogEventV4Header header, BinlogParserContext context)
+			{
+				return header.getEventType() != MySQLConstants.XID_EVENT;
+			}
+		});
+		final long end = push(parser, newCursor(2), 2 + 2 * EVENTS_PER_TRANSACTION);
+
+		// The filtered xid events still end the transactions
+		for (BinlogEventV4 event : events)
+		{
+			assertFalse(event instanceof XidEvent);
+		}
+		assertEquals(end, parser.getRestartPosition().longValue());
+	}
+
+	public void testDuplicatesAreSuppressed() throws Exception
+	{
+		//
+		final PacketBasedBinlogParser first = newParser();
+		final List<BinlogEventV4> events = new ArrayList<BinlogEventV4>();
+		first.setEventListener(newRecorder(events));
+		final long delivered = push(first, newCursor(2), 2 + EVENTS_PER_TRANSACTION + 2);
+
+		// Restarted from the beginning of the binlog with the context of the first parser
+		final PacketBasedBinlogParser second = newParser();
+		second.setContext(first.getContext());
+		second.setEventListener(newRecorder(events));
+		events.clear();
+		push(second, newCursor(2), 2 + 2 * EVENTS_PER_TRANSACTION);
+		assertEquals(1 + 2, events.size());
+		assertEquals(MySQLConstants.ROTATE_EVENT, events.get(0).getHeader().getEventType()); // Artificial
+		assertEquals(MySQLConstants.WRITE_ROWS_EVENT_V2, events.get(1).getHeader().getEventType());
+		assertEquals(delivered, events.get(1).getHeader().getPosition());
+		assertTrue(events.get(2) instanceof XidEvent);
+	}
+
+	public void testDeliveredPositionOfCheckpoint() throws Exception
+	{
+		//
+		final PacketBasedBinlogParser parser = newParser();
+		final List<BinlogEventV4> events = new ArrayList<BinlogEventV4>();
+		parser.setEventListener(newRecorder(events));
+		final long xid = getNextPosition(newCursor(1), 2 + EVENTS_PER_TRANSACTION);
+		parser.setDeliveredPosition(xid);
+		push(parser, newCursor(2), 2 + 2 * EVENTS_PER_TRANSACTION);
+
+		// The format description event is before the delivered position too
+		assertEquals(1 + EVENTS_PER_TRANSACTION, events.size());
+		assertTrue(events.get(1) instanceof QueryEvent);
+		assertTrue(events.get(2) instanceof TableMapEvent);
+		assertEquals(xid, events.get(1).getHeader().getPosition());
+	}
+
+	/**
+	 * 
+	 */
+	static PacketBasedBinlogParser newParser()
+	{
+		final PacketBasedBinlogParser r = new PacketBasedBinlogParser(BINLOG, 4L);
+		r.registgerEventParser(new RotateEventParser());
+		r.registgerEventParser(new FormatDescriptionEventParser());
+		r.registgerEventParser(new QueryEventParser());
+		r.registgerEventParser(new TableMapEventParser());
+		r.registgerEventParser(new WriteRowsEventV2Parser());
+		r.registgerEventParser(new XidEventParser());
+		return r;
+	}
+
+	/**
+	 * Returns the events of the transactions, starting with an artificial rotate event and a format
+	 * description event
+	 */
+	static EventSource.Cursor newCursor(int transactions) throws Exception
+	{
+		final SyntheticEventSource source = new SyntheticEventSource();
+		source.setChecksum(false);
+		source.setTransactions(transactions);
+		source.setTables(2);
+		return source.open(BINLOG, 4);
+	}
+
+	/**
+	 * Pushes n events of the cursor, returns the next position of the last one
+	 */
+	static long push(PacketBasedBinlogParser parser, EventSource.Cursor cursor, int n) throws Exception
+	{
+		long r = 0;
+		for (int i = 0; i < n; i++)
+		{
+			final byte[] event = cursor.next();
+			final byte[] body = new byte[event.length + 1]; // Starts with the OK packet marker
+			System.arraycopy(event, 0, body, 1, event.length);
+			r = parser.parse(body, System.currentTimeMillis()).getNextPosition();
+		}
+		return r;
+	}
+
+	static long getNextPosition(EventSource.Cursor cursor, int n) throws Exception
+	{
+		long r = 0;
+		for (int i = 0; i < n; i++)
+		{
+			final byte[] event = cursor.next();
+			r = (event[13] & 0xFFL) | (event[14] & 0xFFL) << 8 | (event[15] & 0xFFL) << 16 | (event[16] & 0xFFL) << 24;
+		}
+		return r;
+	}
+
+	static BinlogEventListener newRecorder(final List<BinlogEventV4> events)
+	{
+		return new BinlogEventListener()
+		{
+			public void onEvents(BinlogEventV4 event)
+			{
+				events.add(event);
+			}
+		};
+	}
+}
@@ -0,0 +1,235 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.code.or.binlog.impl;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.apache.commons.lang.exception.NestableRuntimeException;
+
+import com.google.code.or.binlog.BinlogEventV4Header;
+import com.google.code.or.binlog.BinlogHeaderListener;
+import com.google.code.or.common.util.MySQLConstants;
+
+/**
+ * @author Jingqi Xu
+ */
+public class HeaderScannerTest extends TestCase
+{
+	//
+	private static final int HEADER_LENGTH = 19;
+	private static final int WINDOW_SIZE = 1024 * 1024; // The minimum window size of the scanner
+
+	//
+	private File file;
+
+	/**
+	 * 
+	 */
+	@Override
+	protected void setUp() throws Exception
+	{
+		this.file = File.createTempFile("header-scanner-test-", ".bin");
+	}
+
+	@Override
+	protected void tearDown() throws Exception
+	{
+		this.file.delete();
+	}
+
+	/**
+	 * 
+	 */
+	public void testWindowEdges() throws Exception
+	{
+		//
+		final List<long[]> events = new ArrayList<long[]>();
+		long position = MySQLConstants.BINLOG_MAGIC.length;
+		position = add(events, position, WINDOW_SIZE - HEADER_LENGTH); // The next header ends at the window end
+		position = add(events, position, WINDOW_SIZE - 10); // The next header crosses the window end
+		for (int i = 0; i < 100; i++)
+		{
+			position = add(events, position, HEADER_LENGTH + i);
+		}
+		write(events, position);
+
+		//
+		final HeaderScanner scanner = new HeaderScanner(this.file);
+		scanner.setWindowSize(0);
+		final List<long[]> headers = new ArrayList<long[]>();
+		assertEquals(position, scanner.scan(newListener(headers, -1)));
+		assertEvents(events, headers);
+	}
+
+	public void testIncompleteEvent() throws Exception
+	{
+		//
+		final List<long[]> events = new ArrayList<long[]>();
+		long position = MySQLConstants.BINLOG_MAGIC.length;
+		for (int i = 0; i < 10; i++)
+		{
+			position = add(events, position, 100);
+		}
+		events.add(new long[] { position, 100, 10 });
+		write(events, position + 50); // The last event is still being written
+
+		//
+		final List<long[]> headers = new ArrayList<long[]>();
+		assertEquals(position, new HeaderScanner(this.file).scan(newListener(headers, -1)));
+		assertEvents(events.subList(0, 10), headers);
+
+		// A partial header
+		final RandomAccessFile raf = new RandomAccessFile(this.file, "rw");
+		raf.setLength(position + HEADER_LENGTH - 1);
+		raf.close();
+		headers.clear();
+		assertEquals(position, new HeaderScanner(this.file).scan(newListener(headers, -1)));
+		assertEquals(10, headers.size());
+	}
+
+	public void testStartAndStopPositions() throws Exception
+	{
+		//
+		final List<long[]> events = new ArrayList<long[]>();
+		long position = MySQLConstants.BINLOG_MAGIC.length;
+		for (int i = 0; i < 10; i++)
+		{
+			position = add(events, position, 100);
+		}
+		write(events, position);
+
+		// The event at the stop position is included
+		final HeaderScanner scanner = new HeaderScanner(this.file);
+		scanner.setStartPosition(events.get(2)[0]);
+		scanner.setStopPosition(events.get(5)[0]);
+		final List<long[]> headers = new ArrayList<long[]>();
+		assertEquals(events.get(6)[0], scanner.scan(newListener(headers, -1)));
+		assertEvents(events.subList(2, 6), headers);
+
+		// Stopped by the listener
+		scanner.setStopPosition(0);
+		headers.clear();
+		assertEquals(events.get(5)[0], scanner.scan(newListener(headers, 3)));
+		assertEvents(events.subList(2, 5), headers);
+	}
+
+	public void testInvalidFile() throws Exception
+	{
+		//
+		final List<long[]> events = new ArrayList<long[]>();
+		events.add(new long[] { MySQLConstants.BINLOG_MAGIC.length, 100, 1 });
+		events.add(new long[] { MySQLConstants.BINLOG_MAGIC.length + 100, HEADER_LENGTH - 1, 2 });
+		write(events, MySQLConstants.BINLOG_MAGIC.length + 200);
+		final List<long[]> headers = new ArrayList<long[]>();
+		try
+		{
+			new HeaderScanner(this.file).scan(newListener(headers, -1));
+			fail();
+		}
+		catch (NestableRuntimeException e)
+		{
+			assertEquals(1, headers.size()); // Invalid event length
+		}
+
+		//
+		final RandomAccessFile raf = new RandomAccessFile(this.file, "rw");
+		raf.write(new byte[] { 0, 0, 0, 0 });
+		raf.close();
+		try
+		{
+			new HeaderScanner(this.file).scan(newListener(headers, -1));
+			fail();
+		}
+		catch (NestableRuntimeException e)
+		{
+			// Invalid magic
+		}
+	}
+
+	/**
+	 * Adds an event of the length at the position, returns the position of the next event
+	 */
+	private static long add(List<long[]> events, long position, long length)
+	{
+		events.add(new long[] { position, length, events.size() + 1 });
+		return position + length;
+	}
+
+	/**
+	 * Writes the binlog magic and the headers of the events, the sequence number of which is used as
+	 * the timestamp, the event type and the server id
+	 */
+	private void write(List<long[]> events, long length) throws Exception
+	{
+		final RandomAccessFile raf = new RandomAccessFile(this.file, "rw");
+		try
+		{
+			raf.setLength(length);
+			raf.write(MySQLConstants.BINLOG_MAGIC);
+			for (long[] event : events)
+			{
+				final ByteBuffer header = ByteBuffer.allocate(HEADER_LENGTH).order(ByteOrder.LITTLE_ENDIAN);
+				header.putInt((int) event[2]);
+				header.put((byte) event[2]);
+				header.putInt((int) event[2]);
+				header.putInt((int) event[1]);
+				header.putInt((int) (event[0] + event[1]));
+				header.putShort((short) 0);
+				final long limit = Math.min(HEADER_LENGTH, length - event[0]);
+				raf.seek(event[0]);
+				raf.write(header.array(), 0, (int) limit);
+			}
+		}
+		finally
+		{
+			raf.close();
+		}
+	}
+
+	private static BinlogHeaderListener newListener(final List<long[]> headers, final int max)
+	{
+		return new BinlogHeaderListener()
+		{
+			public boolean onHeader(BinlogEventV4Header header)
+			{
+				headers.add(new long[] { header.getPosition(), header.getEventLength(), header.getEventType(),
+				        header.getTimestamp(), header.getServerId() });
+				return headers.size() != max;
+			}
+		};
+	}
+
+	private static void assertEvents(List<long[]> expected, List<long[]> headers)
+	{
+		assertEquals(expected.size(), headers.size());
+		for (int i = 0; i < expected.size(); i++)
+		{
+			final long[] event = expected.get(i);
+			final long[] header = headers.get(i);
+			assertEquals(event[0], header[0]);
+			assertEquals(event[1], header[1]);
+			assertEquals(event[2] & 0xFF, header[2]);
+			assertEquals(event[2] * 1000L, header[3]);
+			assertEquals(event[2], header[4]);
+		}
+	}
+}
@@ -0,0 +1,185 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.code.or.binlog.impl;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+import com.google.code.or.binlog.impl.event.TableMapEvent;
+
+/**
+ * @author Jingqi Xu
+ */
+public class TableMapEventCacheTest extends TestCase
+{
+
+	/**
+	 * 
+	 */
+	public void testEvictsLeastRecentlyUsed() throws Exception
+	{
+		//
+		final TableMapEventCache cache = new TableMapEventCache(3);
+		cache.put(1, newEvent(1));
+		cache.put(2, newEvent(2));
+		cache.put(3, newEvent(3));
+		assertNotNull(cache.get(1));
+		cache.put(4, newEvent(4));
+
+		//
+		assertEquals(3, cache.size());
+		assertNull(cache.get(2));
+		assertKeys(cache, 3, 1, 4);
+	}
+
+	public void testPutReplacesAndTouches() throws Exception
+	{
+		final TableMapEventCache cache = new TableMapEventCache(2);
+		final TableMapEvent e = newEvent(1);
+		cache.put(1, newEvent(1));
+		cache.put(2, newEvent(2));
+		assertNotNull(cache.put(1, e));
+		cache.put(3, newEvent(3));
+		assertSame(e, cache.get(1));
+		assertNull(cache.get(2));
+		assertKeys(cache, 3, 1);
+	}
+
+	public void testSetMaxSizeEvicts() throws Exception
+	{
+		final TableMapEventCache cache = new TableMapEventCache(10);
+		for (int i = 0; i < 10; i++)
+		{
+			cache.put(i, newEvent(i));
+		}
+		cache.setMaxSize(4);
+		assertKeys(cache, 6, 7, 8, 9);
+	}
+
+	public void testRemoveAndClear() throws Exception
+	{
+		//
+		final TableMapEventCache cache = new TableMapEventCache(100);
+		for (int i = 0; i < 50; i++)
+		{
+			cache.put(i, newEvent(i));
+		}
+		assertEquals(10, cache.remove(10).getTableId());
+		assertNull(cache.remove(10));
+		assertNull(cache.get(10));
+		assertEquals(49, cache.size());
+
+		//
+		cache.clear();
+		assertEquals(0, cache.size());
+		assertNull(cache.get(49));
+	}
+
+	public void testMatchesLinkedHashMap() throws Exception
+	{
+		//
+		final int maxSize = 64;
+		final TableMapEventCache cache = new TableMapEventCache(maxSize);
+		final Map<Long, TableMapEvent> expected = new LinkedHashMap<Long, TableMapEvent>(16, 0.75f, true)
+		{
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Long, TableMapEvent> eldest)
+			{
+				return size() > maxSize;
+			}
+		};
+
+		// Colliding table ids exercise the probing and the backward shift on removal
+		final Random random = new Random(1);
+		for (int i = 0; i < 100000; i++)
+		{
+			final long tableId = random.nextInt(256) * 1024L;
+			final int op = random.nextInt(10);
+			if (op < 5)
+			{
+				assertSame(expected.get(tableId), cache.get(tableId));
+			}
+			else if (op < 9)
+			{
+				final TableMapEvent e = newEvent(tableId);
+				assertSame(expected.put(tableId, e), cache.put(tableId, e));
+			}
+			else
+			{
+				assertSame(expected.remove(tableId), cache.remove(tableId));
+			}
+			assertEquals(expected.size(), cache.size());
+		}
+		assertEquals(expected, cache.asMap());
+		final Iterator<Long> it = expected.keySet().iterator();
+		for (Map.Entry<Long, TableMapEvent> e : cache.asMap().entrySet())
+		{
+			assertEquals(it.next(), e.getKey());
+		}
+	}
+
+	public void testAsMapIsLiveView() throws Exception
+	{
+		//
+		final TableMapEventCache cache = new TableMapEventCache(2);
+		final Map<Long, TableMapEvent> view = cache.asMap();
+		cache.put(1, newEvent(1));
+		cache.put(2, newEvent(2));
+		assertEquals(2, view.size());
+		assertNotNull(view.get(1L));
+		assertNull(view.get(1)); // Not a Long
+
+		// Looking up through the view does not change the LRU order
+		cache.put(3, newEvent(3));
+		assertFalse(view.containsKey(1L));
+		assertEquals(2, view.values().size());
+		assertSame(view, cache.asMap());
+		try
+		{
+			view.put(4L, newEvent(4));
+			fail();
+		}
+		catch (UnsupportedOperationException e)
+		{
+			// Expected
+		}
+	}
+
+	/**
+	 * 
+	 */
+	private static TableMapEvent newEvent(long tableId)
+	{
+		final TableMapEvent r = new TableMapEvent();
+		r.setTableId(tableId);
+		return r;
+	}
+
+	private static void assertKeys(TableMapEventCache cache, long... keys)
+	{
+		int i = 0;
+		for (Long key : cache.asMap().keySet())
+		{
+			assertEquals(keys[i++], key.longValue());
+		}
+		assertEquals(keys.length, i);
+	}
+}
@@ -0,0 +1,145 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.code.or.binlog.impl.filter;
+
+import java.util.Arrays;
+import java.util.Map;
+
+import junit.framework.TestCase;
+
+import com.google.code.or.binlog.BinlogEventListener;
+import com.google.code.or.binlog.BinlogParserContext;
+import com.google.code.or.binlog.impl.event.TableMapEvent;
+import com.google.code.or.common.glossary.column.StringColumn;
+
+/**
+ * @author Jingqi Xu
+ */
+public class TableFilterTest extends TestCase
+{
+
+	/**
+	 * 
+	 */
+	public void testEmptyIncludesAcceptEverything() throws Exception
+	{
+		final TableFilter filter = new TableFilter();
+		assertTrue(filter.accepts("db", "t"));
+		assertTrue(filter.accepts("other", "t"));
+	}
+
+	public void testDatabasePatterns() throws Exception
+	{
+		//
+		final TableFilter filter = new TableFilter();
+		filter.setIncludeDatabases(Arrays.asList("shop_.*", "audit"));
+		assertTrue(filter.accepts("shop_eu", "orders"));
+		assertTrue(filter.accepts("audit", "log"));
+		assertFalse(filter.accepts("auditing", "log")); // The whole name must match
+		assertFalse(filter.accepts("mysql", "user"));
+
+		// Excludes win over includes
+		filter.addExcludeDatabase("shop_test");
+		assertTrue(filter.accepts("shop_eu", "orders"));
+		assertFalse(filter.accepts("shop_test", "orders"));
+	}
+
+	public void testTablePatternsAreQualified() throws Exception
+	{
+		//
+		final TableFilter filter = new TableFilter();
+		filter.addIncludeTable("shop\\.(orders|items)");
+		filter.addExcludeTable(".*\\.tmp_.*");
+		assertTrue(filter.accepts("shop", "orders"));
+		assertTrue(filter.accepts("shop", "items"));
+		assertFalse(filter.accepts("shop", "users"));
+		assertFalse(filter.accepts("crm", "orders"));
+
+		//
+		filter.addIncludeTable(".*\\..*");
+		assertTrue(filter.accepts("crm", "orders"));
+		assertFalse(filter.accepts("crm", "tmp_orders"));
+	}
+
+	public void testVerdictsAreCachedPerTableId() throws Exception
+	{
+		//
+		final TableFilter filter = new TableFilter();
+		filter.setVerbose(false);
+		filter.addIncludeDatabase("shop");
+		final Context context = new Context("mysql-bin.000001");
+		assertTrue(filter.accepts(null, context, newEvent(1, "shop", "orders")));
+		assertFalse(filter.accepts(null, context, newEvent(2, "crm", "users")));
+		assertFalse(filter.accepts(null, context, null));
+
+		// The cached verdict is kept within the binlog file, even if the table id is reused
+		assertTrue(filter.accepts(null, context, newEvent(1, "crm", "users")));
+		assertFalse(filter.accepts(null, context, newEvent(2, "shop", "orders")));
+
+		// Reevaluated in the next binlog file, or once the patterns change
+		context.binlogFileName = "mysql-bin.000002";
+		assertFalse(filter.accepts(null, context, newEvent(1, "crm", "users")));
+		filter.addIncludeDatabase("crm");
+		assertTrue(filter.accepts(null, context, newEvent(1, "crm", "users")));
+	}
+
+	/**
+	 * 
+	 */
+	private static TableMapEvent newEvent(long tableId, String database, String table)
+	{
+		final TableMapEvent r = new TableMapEvent();
+		r.setTableId(tableId);
+		r.setDatabaseName(StringColumn.valueOf(database.getBytes()));
+		r.setTableName(StringColumn.valueOf(table.getBytes()));
+		return r;
+	}
+
+	private static final class Context implements BinlogParserContext
+	{
+		//
+		private String binlogFileName;
+
+		public Context(String binlogFileName)
+		{
+			this.binlogFileName = binlogFileName;
+		}
+
+		public String getBinlogFileName()
+		{
+			return binlogFileName;
+		}
+
+		public BinlogEventListener getEventListener()
+		{
+			return null;
+		}
+
+		public Long getCurrentPosition()
+		{
+			return null;
+		}
+
+		public Map<Long, TableMapEvent> getTableMapEvents()
+		{
+			return null;
+		}
+
+		public TableMapEvent getTableMapEvent(long tableId)
+		{
+			return null;
+		}
+	}
+}
@@ -0,0 +1,297 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.code.or.binlog.impl.index;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import com.google.code.or.binlog.impl.event.BinlogEventV4HeaderImpl;
+import com.google.code.or.common.util.MySQLConstants;
+
+/**
+ * @author Jingqi Xu
+ */
+public class BinlogIndexTest extends TestCase
+{
+	//
+	private static final String BINLOG = "mysql-bin.000001";
+
+	//
+	private File directory;
+
+	/**
+	 * 
+	 */
+	@Override
+	protected void setUp() throws Exception
+	{
+		this.directory = new File(System.getProperty("java.io.tmpdir"), "binlog-index-test-" + System.nanoTime());
+		this.directory.mkdirs();
+	}
+
+	@Override
+	protected void tearDown() throws Exception
+	{
+		final File[] files = this.directory.listFiles();
+		for (int i = 0; files != null && i < files.length; i++)
+		{
+			files[i].delete();
+		}
+		this.directory.delete();
+	}
+
+	/**
+	 * 
+	 */
+	public void testSeek() throws Exception
+	{
+		//
+		final BinlogIndex index = new BinlogIndex(0);
+		assertEquals(-1, index.seek(100000L));
+		index.add(100, 4, MySQLConstants.FORMAT_DESCRIPTION_EVENT);
+		index.add(100, 1000, MySQLConstants.GTID_LOG_EVENT);
+		index.add(105, 2000, MySQLConstants.GTID_LOG_EVENT);
+		index.add(110, 3000, MySQLConstants.GTID_LOG_EVENT);
+		index.add(110, 4000, MySQLConstants.GTID_LOG_EVENT);
+		assertEquals(5, index.size());
+		assertEquals(105000L, index.getTimestamp(2));
+
+		//
+		assertEquals(-1, index.seek(99000L));
+		assertEquals(-1, index.seek(100000L)); // The first event is not older
+		assertEquals(1000, index.seek(100001L)); // Rounded up to the next second
+		assertEquals(1000, index.seek(105000L));
+		assertEquals(2000, index.seek(105001L));
+		assertEquals(2000, index.seek(110000L));
+		assertEquals(4000, index.seek(110001L));
+		assertEquals(4000, index.seek(Long.MAX_VALUE / 2));
+	}
+
+	public void testLoad() throws Exception
+	{
+		//
+		final File file = BinlogIndexer.getIndexFile(this.directory, BINLOG);
+		assertEquals(0, BinlogIndex.load(file).size());
+
+		//
+		DataOutputStream os = new DataOutputStream(new FileOutputStream(file));
+		os.writeInt(BinlogIndex.MAGIC);
+		os.writeByte(BinlogIndex.VERSION);
+		os.writeInt(100);
+		os.writeInt(4);
+		os.writeByte(MySQLConstants.FORMAT_DESCRIPTION_EVENT);
+		os.writeInt(0xFFFFFFFF); // Unsigned
+		os.writeInt(0xFFFFFFF0);
+		os.writeByte(MySQLConstants.GTID_LOG_EVENT);
+		os.writeInt(200); // Torn
+		os.close();
+
+		//
+		final BinlogIndex index = BinlogIndex.load(file);
+		assertEquals(2, index.size());
+		assertEquals(100000L, index.getTimestamp(0));
+		assertEquals(4, index.getPosition(0));
+		assertEquals(MySQLConstants.FORMAT_DESCRIPTION_EVENT, index.getEventType(0));
+		assertEquals(0xFFFFFFFFL * 1000L, index.getTimestamp(1));
+		assertEquals(0xFFFFFFF0L, index.getPosition(1));
+		assertEquals(MySQLConstants.GTID_LOG_EVENT, index.getEventType(1));
+
+		//
+		os = new DataOutputStream(new FileOutputStream(file));
+		os.writeInt(0x12345678);
+		os.writeByte(BinlogIndex.VERSION);
+		os.close();
+		try
+		{
+			BinlogIndex.load(file);
+			fail();
+		}
+		catch (IOException e)
+		{
+			// Expected
+		}
+	}
+
+	public void testSafePositions() throws Exception
+	{
+		//
+		assertTrue(BinlogIndexer.isSafePosition(-1, MySQLConstants.WRITE_ROWS_EVENT_V2));
+		assertTrue(BinlogIndexer.isSafePosition(MySQLConstants.XID_EVENT, MySQLConstants.QUERY_EVENT));
+		assertTrue(BinlogIndexer.isSafePosition(BinlogIndexer.COMMIT_EVENT, MySQLConstants.TABLE_MAP_EVENT));
+		assertTrue(BinlogIndexer.isSafePosition(MySQLConstants.TABLE_MAP_EVENT, MySQLConstants.GTID_LOG_EVENT));
+		assertTrue(BinlogIndexer.isSafePosition(MySQLConstants.QUERY_EVENT, MySQLConstants.ANONYMOUS_GTID_LOG_EVENT));
+		assertTrue(BinlogIndexer.isSafePosition(MySQLConstants.ROTATE_EVENT, BinlogIndexer.BEGIN_EVENT));
+
+		// Inside of a transaction
+		assertFalse(BinlogIndexer.isSafePosition(MySQLConstants.GTID_LOG_EVENT, BinlogIndexer.BEGIN_EVENT));
+		assertFalse(BinlogIndexer.isSafePosition(MySQLConstants.ANONYMOUS_GTID_LOG_EVENT, BinlogIndexer.BEGIN_EVENT));
+		assertFalse(BinlogIndexer.isSafePosition(BinlogIndexer.BEGIN_EVENT, MySQLConstants.TABLE_MAP_EVENT));
+		assertFalse(BinlogIndexer.isSafePosition(MySQLConstants.TABLE_MAP_EVENT, MySQLConstants.WRITE_ROWS_EVENT_V2));
+		assertFalse(BinlogIndexer.isSafePosition(MySQLConstants.WRITE_ROWS_EVENT_V2, MySQLConstants.XID_EVENT));
+	}
+
+	public void testBoundaryTypes() throws Exception
+	{
+		//
+		assertEquals(BinlogIndexer.BEGIN_EVENT, getBoundaryType("BEGIN"));
+		assertEquals(BinlogIndexer.BEGIN_EVENT, getBoundaryType("begin"));
+		assertEquals(BinlogIndexer.COMMIT_EVENT, getBoundaryType("Commit"));
+		assertEquals(BinlogIndexer.COMMIT_EVENT, getBoundaryType("ROLLBACK"));
+		assertEquals(MySQLConstants.QUERY_EVENT, getBoundaryType("BEGIN WORK"));
+		assertEquals(MySQLConstants.QUERY_EVENT, getBoundaryType("insert into t values (1)"));
+
+		//
+		final byte[] statement = "BEGIN".getBytes("US-ASCII");
+		assertEquals(MySQLConstants.XID_EVENT, BinlogIndexer.getBoundaryType(MySQLConstants.XID_EVENT, statement, 0,
+		        statement.length));
+		assertEquals(MySQLConstants.QUERY_EVENT, BinlogIndexer.getBoundaryType(MySQLConstants.QUERY_EVENT, statement,
+		        1, statement.length));
+	}
+
+	public void testIndexerAppendsAtSafePositions() throws Exception
+	{
+		//
+		final List<long[]> events = newEvents(20);
+		final BinlogIndexer indexer = new BinlogIndexer(this.directory);
+		indexer.setInterval(1000);
+		for (long[] event : events)
+		{
+			indexer.onEvent(BINLOG, newHeader(event), (int) event[3]);
+		}
+		indexer.close();
+
+		//
+		final BinlogIndex index = BinlogIndex.load(BinlogIndexer.getIndexFile(this.directory, BINLOG));
+		assertTrue(index.size() > 2);
+		assertEquals(4, index.getPosition(0));
+		assertEquals(events.get(0)[0], index.getTimestamp(0));
+		for (int i = 1; i < index.size(); i++)
+		{
+			//
+			final long position = index.getPosition(i);
+			assertTrue(position - index.getPosition(i - 1) >= 1000);
+			assertTrue(index.getTimestamp(i) >= index.getTimestamp(i - 1));
+
+			// At a gtid event, with the greatest timestamp of the events before it
+			long timestamp = 0;
+			int eventType = -1;
+			for (long[] event : events)
+			{
+				if (event[1] == position)
+				{
+					eventType = (int) event[3];
+					break;
+				}
+				timestamp = Math.max(timestamp, event[0]);
+			}
+			assertEquals(MySQLConstants.GTID_LOG_EVENT, eventType);
+			assertEquals(MySQLConstants.GTID_LOG_EVENT, index.getEventType(i));
+			assertEquals(timestamp, index.getTimestamp(i));
+		}
+	}
+
+	public void testIndexerResumesAfterLastEntry() throws Exception
+	{
+		//
+		final List<long[]> events = newEvents(20);
+		BinlogIndexer indexer = new BinlogIndexer(this.directory);
+		indexer.setInterval(1000);
+		for (long[] event : events.subList(0, events.size() / 2))
+		{
+			indexer.onEvent(BINLOG, newHeader(event), (int) event[3]);
+		}
+		indexer.close();
+		final File file = BinlogIndexer.getIndexFile(this.directory, BINLOG);
+		final int size = BinlogIndex.load(file).size();
+
+		// Parsing restarts from the beginning of the binlog
+		indexer = new BinlogIndexer(this.directory);
+		indexer.setInterval(1000);
+		for (long[] event : events)
+		{
+			indexer.onEvent(BINLOG, newHeader(event), (int) event[3]);
+		}
+		indexer.close();
+		final BinlogIndex resumed = BinlogIndex.load(file);
+		assertTrue(resumed.size() > size);
+
+		//
+		indexer = new BinlogIndexer(this.directory);
+		indexer.setInterval(1000);
+		for (long[] event : events)
+		{
+			indexer.onEvent(BINLOG, newHeader(event), (int) event[3]);
+		}
+		indexer.close();
+		final BinlogIndex expected = BinlogIndex.load(file);
+		assertEquals(resumed.size(), expected.size());
+		for (int i = 0; i < expected.size(); i++)
+		{
+			assertEquals(resumed.getPosition(i), expected.getPosition(i));
+			assertEquals(resumed.getTimestamp(i), expected.getTimestamp(i));
+			if (i > 0) assertTrue(expected.getPosition(i) > expected.getPosition(i - 1));
+		}
+	}
+
+	/**
+	 * Returns the timestamp, position, length and boundary type of the events of the transactions,
+	 * the timestamps of which are not in order
+	 */
+	private static List<long[]> newEvents(int transactions)
+	{
+		//
+		final List<long[]> r = new ArrayList<long[]>();
+		long position = 4;
+		r.add(new long[] { 1000000L, position, 120, MySQLConstants.FORMAT_DESCRIPTION_EVENT });
+		position += 120;
+
+		//
+		final int[] types = { MySQLConstants.GTID_LOG_EVENT, BinlogIndexer.BEGIN_EVENT, MySQLConstants.TABLE_MAP_EVENT,
+		        MySQLConstants.WRITE_ROWS_EVENT_V2, MySQLConstants.XID_EVENT };
+		final int[] lengths = { 65, 75, 50, 300, 31 };
+		for (int i = 0; i < transactions; i++)
+		{
+			final long timestamp = 1000000L + (i % 3 == 2 ? i - 3 : i) * 1000L;
+			for (int j = 0; j < types.length; j++)
+			{
+				r.add(new long[] { timestamp, position, lengths[j], types[j] });
+				position += lengths[j];
+			}
+		}
+		return r;
+	}
+
+	private static BinlogEventV4HeaderImpl newHeader(long[] event)
+	{
+		final BinlogEventV4HeaderImpl r = new BinlogEventV4HeaderImpl();
+		r.setTimestamp(event[0]);
+		r.setEventType(event[3] == BinlogIndexer.BEGIN_EVENT ? MySQLConstants.QUERY_EVENT : (int) event[3]);
+		r.setEventLength(event[2]);
+		r.setNextPosition(event[1] + event[2]);
+		return r;
+	}
+
+	private static int getBoundaryType(String statement) throws Exception
+	{
+		final byte[] data = ("xx" + statement).getBytes("US-ASCII");
+		return BinlogIndexer.getBoundaryType(MySQLConstants.QUERY_EVENT, data, 2, data.length - 2);
+	}
+}
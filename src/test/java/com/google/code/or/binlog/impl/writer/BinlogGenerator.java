@@ -0,0 +1,393 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.code.or.binlog.impl.writer;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import com.google.code.or.binlog.impl.ChecksumType;
+import com.google.code.or.common.util.MySQLConstants;
+import com.google.code.or.io.util.XSerializer;
+
+/**
+ * Generates synthetic binlog files of row based transactions, for benchmarks and fuzzing. Each
+ * transaction is a BEGIN query event, transactionSize pairs of a table map event and a rows event
+ * of rowsPerEvent rows into one of tableCount tables of the given columns, and a XID event. The
+ * rows events are inserts, updates and deletes in proportion to their weights. The binlog is
+ * rotated to the next file once it exceeds maxFileSize bytes. The files are the same for the same
+ * settings and seed.
+ * 
+ * @author Jingqi Xu
+ */
+public class BinlogGenerator
+{
+	//
+	protected final File directory;
+	protected String binlogBaseName = "mysql-bin";
+	protected long maxFileSize = 1024L * 1024 * 1024;
+	protected ChecksumType checksumType = ChecksumType.CRC32;
+	protected String databaseName = "test";
+	protected List<ColumnGenerator> columns = ColumnGenerator.all();
+	protected int tableCount = 10;
+	protected int rowsPerEvent = 1;
+	protected int transactionSize = 1;
+	protected long transactions = 10000;
+	protected int insertWeight = 1;
+	protected int updateWeight = 0;
+	protected int deleteWeight = 0;
+	protected boolean rowsEventV2 = true;
+	protected double nullRatio = 0.1;
+	protected long startTimestamp = 1500000000;
+	protected int transactionsPerSecond = 1000;
+	protected long seed = 0;
+
+	/**
+	 * 
+	 */
+	public BinlogGenerator(File directory)
+	{
+		this.directory = directory;
+	}
+
+	/**
+	 * 
+	 */
+	public File getDirectory()
+	{
+		return directory;
+	}
+
+	public String getBinlogBaseName()
+	{
+		return binlogBaseName;
+	}
+
+	public void setBinlogBaseName(String binlogBaseName)
+	{
+		this.binlogBaseName = binlogBaseName;
+	}
+
+	public long getMaxFileSize()
+	{
+		return maxFileSize;
+	}
+
+	public void setMaxFileSize(long maxFileSize)
+	{
+		this.maxFileSize = maxFileSize;
+	}
+
+	public ChecksumType getChecksumType()
+	{
+		return checksumType;
+	}
+
+	public void setChecksumType(ChecksumType checksumType)
+	{
+		this.checksumType = checksumType;
+	}
+
+	public String getDatabaseName()
+	{
+		return databaseName;
+	}
+
+	public void setDatabaseName(String databaseName)
+	{
+		this.databaseName = databaseName;
+	}
+
+	public List<ColumnGenerator> getColumns()
+	{
+		return columns;
+	}
+
+	public void setColumns(List<ColumnGenerator> columns)
+	{
+		this.columns = columns;
+	}
+
+	public int getTableCount()
+	{
+		return tableCount;
+	}
+
+	public void setTableCount(int tableCount)
+	{
+		this.tableCount = tableCount;
+	}
+
+	public int getRowsPerEvent()
+	{
+		return rowsPerEvent;
+	}
+
+	public void setRowsPerEvent(int rowsPerEvent)
+	{
+		this.rowsPerEvent = rowsPerEvent;
+	}
+
+	/**
+	 * The number of rows events of a transaction
+	 */
+	public int getTransactionSize()
+	{
+		return transactionSize;
+	}
+
+	public void setTransactionSize(int transactionSize)
+	{
+		this.transactionSize = transactionSize;
+	}
+
+	public long getTransactions()
+	{
+		return transactions;
+	}
+
+	public void setTransactions(long transactions)
+	{
+		this.transactions = transactions;
+	}
+
+	public int getInsertWeight()
+	{
+		return insertWeight;
+	}
+
+	public void setInsertWeight(int insertWeight)
+	{
+		this.insertWeight = insertWeight;
+	}
+
+	public int getUpdateWeight()
+	{
+		return updateWeight;
+	}
+
+	public void setUpdateWeight(int updateWeight)
+	{
+		this.updateWeight = updateWeight;
+	}
+
+	public int getDeleteWeight()
+	{
+		return deleteWeight;
+	}
+
+	public void setDeleteWeight(int deleteWeight)
+	{
+		this.deleteWeight = deleteWeight;
+	}
+
+	/**
+	 * Whether the rows events are the v2 events of MySQL 5.6 and later, or the v1 events of 5.1
+	 */
+	public boolean isRowsEventV2()
+	{
+		return rowsEventV2;
+	}
+
+	public void setRowsEventV2(boolean rowsEventV2)
+	{
+		this.rowsEventV2 = rowsEventV2;
+	}
+
+	/**
+	 * The probability of a NULL value of a nullable column
+	 */
+	public double getNullRatio()
+	{
+		return nullRatio;
+	}
+
+	public void setNullRatio(double nullRatio)
+	{
+		this.nullRatio = nullRatio;
+	}
+
+	public long getStartTimestamp()
+	{
+		return startTimestamp;
+	}
+
+	public void setStartTimestamp(long startTimestamp)
+	{
+		this.startTimestamp = startTimestamp;
+	}
+
+	public int getTransactionsPerSecond()
+	{
+		return transactionsPerSecond;
+	}
+
+	public void setTransactionsPerSecond(int transactionsPerSecond)
+	{
+		this.transactionsPerSecond = transactionsPerSecond;
+	}
+
+	public long getSeed()
+	{
+		return seed;
+	}
+
+	public void setSeed(long seed)
+	{
+		this.seed = seed;
+	}
+
+	/**
+	 * Returns the generated binlog files in order
+	 */
+	public List<File> generate() throws IOException
+	{
+		//
+		final Random random = new Random(this.seed);
+		final Table table = new Table();
+		final List<File> r = new ArrayList<File>();
+		final int weight = this.insertWeight + this.updateWeight + this.deleteWeight;
+		if (weight <= 0)
+		{
+			throw new IllegalArgumentException("invalid weights, the sum must be positive");
+		}
+
+		//
+		BinlogWriter writer = open(r, 1, this.startTimestamp);
+		try
+		{
+			for (long t = 0; t < this.transactions; t++)
+			{
+				//
+				if (writer.getPosition() >= this.maxFileSize)
+				{
+					writer.writeRotateEvent(getBinlogFileName(r.size() + 1));
+					writer.close();
+					writer = open(r, r.size() + 1, writer.getTimestamp());
+				}
+
+				//
+				writer.setTimestamp(this.startTimestamp + t / this.transactionsPerSecond);
+				writer.writeQueryEvent(this.databaseName, "BEGIN");
+				for (int i = 0; i < this.transactionSize; i++)
+				{
+					final int n = random.nextInt(this.tableCount);
+					final int eventType = getRowsEventType(random.nextInt(weight));
+					writer.writeTableMapEvent(getTableId(n), this.databaseName, "t" + n, table.columnTypes,
+					        table.columnMetadata, table.columnNullabilities);
+					writer.writeRowsEvent(eventType, getTableId(n), MySQLConstants.ROWS_EVENT_STMT_END_F,
+					        table.columnTypes.length, table.rows(random, eventType));
+				}
+				writer.writeXidEvent(t + 1);
+			}
+		}
+		finally
+		{
+			writer.close();
+		}
+		return r;
+	}
+
+	/**
+	 * 
+	 */
+	protected BinlogWriter open(List<File> files, int index, long timestamp) throws IOException
+	{
+		final BinlogWriter r = new BinlogWriter(new File(this.directory, getBinlogFileName(index)));
+		r.setChecksumType(this.checksumType);
+		r.setTimestamp(timestamp);
+		r.open();
+		files.add(r.getFile());
+		return r;
+	}
+
+	protected String getBinlogFileName(int index)
+	{
+		return this.binlogBaseName + String.format(".%06d", index);
+	}
+
+	protected long getTableId(int table)
+	{
+		return 100 + table;
+	}
+
+	protected int getRowsEventType(int weight)
+	{
+		if (weight < this.insertWeight)
+			return this.rowsEventV2 ? MySQLConstants.WRITE_ROWS_EVENT_V2 : MySQLConstants.WRITE_ROWS_EVENT;
+		else if (weight < this.insertWeight + this.updateWeight)
+			return this.rowsEventV2 ? MySQLConstants.UPDATE_ROWS_EVENT_V2 : MySQLConstants.UPDATE_ROWS_EVENT;
+		else
+			return this.rowsEventV2 ? MySQLConstants.DELETE_ROWS_EVENT_V2 : MySQLConstants.DELETE_ROWS_EVENT;
+	}
+
+	/**
+	 * The table map of the columns, the same for all tables
+	 */
+	private class Table
+	{
+		//
+		private final byte[] columnTypes;
+		private final byte[] columnMetadata;
+		private final byte[] columnNullabilities;
+
+		public Table()
+		{
+			final XSerializer s = new XSerializer(columns.size() * 2);
+			this.columnTypes = new byte[columns.size()];
+			this.columnNullabilities = new byte[(columns.size() + 7) >> 3];
+			for (int i = 0; i < columns.size(); i++)
+			{
+				final ColumnGenerator column = columns.get(i);
+				this.columnTypes[i] = (byte) column.getType();
+				if (column.isNullable()) this.columnNullabilities[i >> 3] |= 1 << (i & 7);
+				column.writeMetadata(s);
+			}
+			this.columnMetadata = s.toByteArray();
+		}
+
+		public byte[] rows(Random random, int eventType)
+		{
+			final boolean update =
+			        eventType == MySQLConstants.UPDATE_ROWS_EVENT || eventType == MySQLConstants.UPDATE_ROWS_EVENT_V2;
+			final XSerializer s = new XSerializer(256 * rowsPerEvent);
+			for (int i = 0; i < rowsPerEvent; i++)
+			{
+				row(s, random);
+				if (update) row(s, random);
+			}
+			return s.toByteArray();
+		}
+
+		private void row(XSerializer s, Random random)
+		{
+			//
+			final boolean[] isNull = new boolean[columns.size()];
+			for (int i = 0; i < columns.size(); i++)
+			{
+				isNull[i] = columns.get(i).isNullable() && random.nextDouble() < nullRatio;
+			}
+
+			//
+			ColumnEncoder.writeNulls(s, isNull);
+			for (int i = 0; i < columns.size(); i++)
+			{
+				if (!isNull[i]) columns.get(i).writeValue(s, random);
+			}
+		}
+	}
+}
@@ -0,0 +1,312 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.code.or.binlog.impl.writer;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.CRC32;
+
+import com.google.code.or.binlog.impl.ChecksumType;
+import com.google.code.or.common.glossary.UnsignedLong;
+import com.google.code.or.common.glossary.column.StringColumn;
+import com.google.code.or.common.util.MySQLConstants;
+import com.google.code.or.io.util.XSerializer;
+
+/**
+ * Writes a v4 binlog file, i.e. the magic number and a format description event, followed by the
+ * events appended by the caller. Each event body is serialized by an {@link XSerializer} and
+ * followed by its CRC32 checksum unless the checksum type is NONE. The format description event
+ * is that of a MySQL 5.7 server, so it always has the checksum algorithm and a checksum trailer.
+ * 
+ * @author Jingqi Xu
+ */
+public class BinlogWriter
+{
+	//
+	public static final int HEADER_LENGTH = 19;
+	private static final int BINLOG_VERSION = 4;
+	private static final int SERVER_VERSION_LENGTH = 50;
+	private static final byte[] POST_HEADER_LENGTHS = new byte[] { 56, 13, 0, 8, 0, 18, 0, 4, 4, 4, 4, 18, 0, 0, 95,
+	        0, 4, 26, 8, 0, 0, 0, 8, 8, 8, 2, 0, 0, 0, 10, 10, 10, 42, 42, 0, 18, 52, 0 }; // MySQL 5.7
+
+	//
+	protected final File file;
+	protected long serverId = 1;
+	protected String serverVersion = "5.7.30-log";
+	protected ChecksumType checksumType = ChecksumType.CRC32;
+	protected int bufferSize = 64 * 1024;
+	protected long timestamp = 0;
+
+	//
+	private final CRC32 crc = new CRC32();
+	private final byte[] header = new byte[HEADER_LENGTH];
+	private final byte[] checksum = new byte[ChecksumType.CRC32.getLength()];
+	private OutputStream os;
+	private long position;
+
+	/**
+	 * 
+	 */
+	public BinlogWriter(File file)
+	{
+		this.file = file;
+	}
+
+	/**
+	 * 
+	 */
+	public File getFile()
+	{
+		return file;
+	}
+
+	public long getServerId()
+	{
+		return serverId;
+	}
+
+	public void setServerId(long serverId)
+	{
+		this.serverId = serverId;
+	}
+
+	public String getServerVersion()
+	{
+		return serverVersion;
+	}
+
+	public void setServerVersion(String serverVersion)
+	{
+		this.serverVersion = serverVersion;
+	}
+
+	public ChecksumType getChecksumType()
+	{
+		return checksumType;
+	}
+
+	public void setChecksumType(ChecksumType checksumType)
+	{
+		this.checksumType = checksumType;
+	}
+
+	public int getBufferSize()
+	{
+		return bufferSize;
+	}
+
+	public void setBufferSize(int bufferSize)
+	{
+		this.bufferSize = bufferSize;
+	}
+
+	/**
+	 * The timestamp in seconds of the events written from now on
+	 */
+	public long getTimestamp()
+	{
+		return timestamp;
+	}
+
+	public void setTimestamp(long timestamp)
+	{
+		this.timestamp = timestamp;
+	}
+
+	/**
+	 * The position of the next event, i.e. the length of the file
+	 */
+	public long getPosition()
+	{
+		return position;
+	}
+
+	/**
+	 * 
+	 */
+	public void open() throws IOException
+	{
+		this.os = new BufferedOutputStream(new FileOutputStream(this.file), this.bufferSize);
+		this.os.write(MySQLConstants.BINLOG_MAGIC);
+		this.position = MySQLConstants.BINLOG_MAGIC.length;
+		writeFormatDescriptionEvent();
+	}
+
+	public void flush() throws IOException
+	{
+		this.os.flush();
+	}
+
+	public void close() throws IOException
+	{
+		if (this.os != null)
+		{
+			this.os.close();
+			this.os = null;
+		}
+	}
+
+	/**
+	 * 
+	 */
+	public void writeQueryEvent(String databaseName, String sql) throws IOException
+	{
+		final byte[] database = databaseName.getBytes();
+		final XSerializer s = new XSerializer(13 + database.length + 1 + sql.length());
+		s.writeLong(1, 4); // thread id
+		s.writeLong(0, 4); // execution time
+		s.writeInt(database.length, 1);
+		s.writeInt(0, 2); // error code
+		s.writeInt(0, 2); // status variables length
+		s.writeNullTerminatedString(StringColumn.valueOf(database));
+		s.writeBytes(sql.getBytes());
+		writeEvent(MySQLConstants.QUERY_EVENT, s.toByteArray());
+	}
+
+	/**
+	 * The columnMetadata is that of all columns, see {@link ColumnGenerator#writeMetadata(XSerializer)}
+	 * and the columnNullabilities is a bitmap of the nullable columns
+	 */
+	public void writeTableMapEvent(long tableId, String databaseName, String tableName, byte[] columnTypes,
+	        byte[] columnMetadata, byte[] columnNullabilities) throws IOException
+	{
+		final byte[] database = databaseName.getBytes();
+		final byte[] table = tableName.getBytes();
+		final XSerializer s = new XSerializer(32 + database.length + table.length + columnTypes.length * 2);
+		s.writeLong(tableId, 6);
+		s.writeInt(0, 2); // reserved
+		s.writeInt(database.length, 1);
+		s.writeNullTerminatedString(StringColumn.valueOf(database));
+		s.writeInt(table.length, 1);
+		s.writeNullTerminatedString(StringColumn.valueOf(table));
+		s.writeUnsignedLong(UnsignedLong.valueOf(columnTypes.length));
+		s.writeBytes(columnTypes);
+		s.writeUnsignedLong(UnsignedLong.valueOf(columnMetadata.length));
+		s.writeBytes(columnMetadata);
+		s.writeBytes(columnNullabilities);
+		writeEvent(MySQLConstants.TABLE_MAP_EVENT, s.toByteArray());
+	}
+
+	/**
+	 * Writes a WRITE/UPDATE/DELETE_ROWS_EVENT(_V2) of all columns used. The rows are the row images,
+	 * i.e. the null bitmap and the values, the before and after images of each row of an update.
+	 */
+	public void writeRowsEvent(int eventType, long tableId, int flags, int columnCount, byte[] rows)
+	        throws IOException
+	{
+		//
+		final XSerializer s = new XSerializer(16 + rows.length);
+		s.writeLong(tableId, 6);
+		s.writeInt(flags, 2);
+		if (eventType == MySQLConstants.WRITE_ROWS_EVENT_V2 || eventType == MySQLConstants.UPDATE_ROWS_EVENT_V2
+		        || eventType == MySQLConstants.DELETE_ROWS_EVENT_V2)
+		{
+			s.writeInt(2, 2); // extra data length
+		}
+		s.writeUnsignedLong(UnsignedLong.valueOf(columnCount));
+
+		//
+		final byte[] usedColumns = new byte[(columnCount + 7) >> 3];
+		for (int i = 0; i < columnCount; i++)
+			usedColumns[i >> 3] |= 1 << (i & 7);
+		s.writeBytes(usedColumns);
+		if (eventType == MySQLConstants.UPDATE_ROWS_EVENT || eventType == MySQLConstants.UPDATE_ROWS_EVENT_V2)
+		{
+			s.writeBytes(usedColumns);
+		}
+		s.writeBytes(rows);
+		writeEvent(eventType, s.toByteArray());
+	}
+
+	public void writeXidEvent(long xid) throws IOException
+	{
+		final XSerializer s = new XSerializer(8);
+		s.writeLong(xid, 8);
+		writeEvent(MySQLConstants.XID_EVENT, s.toByteArray());
+	}
+
+	/**
+	 * Writes the rotate event to the next binlog file, which ends this file
+	 */
+	public void writeRotateEvent(String binlogFileName) throws IOException
+	{
+		final byte[] name = binlogFileName.getBytes();
+		final XSerializer s = new XSerializer(8 + name.length);
+		s.writeLong(MySQLConstants.BINLOG_MAGIC.length, 8);
+		s.writeBytes(name);
+		writeEvent(MySQLConstants.ROTATE_EVENT, s.toByteArray());
+	}
+
+	/**
+	 * Writes an event of any type, the body is written as is
+	 */
+	public void writeEvent(int eventType, byte[] body) throws IOException
+	{
+		writeEvent(eventType, body, this.checksumType.getLength() > 0);
+	}
+
+	/**
+	 * 
+	 */
+	protected void writeFormatDescriptionEvent() throws IOException
+	{
+		final byte[] version = this.serverVersion.getBytes();
+		final XSerializer s = new XSerializer(2 + SERVER_VERSION_LENGTH + 4 + 1 + POST_HEADER_LENGTHS.length + 1);
+		s.writeInt(BINLOG_VERSION, 2);
+		s.writeBytes(version, 0, Math.min(version.length, SERVER_VERSION_LENGTH));
+		s.writeBytes(new byte[Math.max(SERVER_VERSION_LENGTH - version.length, 0)]);
+		s.writeLong(this.timestamp, 4); // create timestamp
+		s.writeInt(HEADER_LENGTH, 1);
+		s.writeBytes(POST_HEADER_LENGTHS);
+		s.writeInt(this.checksumType == ChecksumType.CRC32 ? 1 : 0, 1); // checksum algorithm
+		writeEvent(MySQLConstants.FORMAT_DESCRIPTION_EVENT, s.toByteArray(), true);
+	}
+
+	protected void writeEvent(int eventType, byte[] body, boolean checksum) throws IOException
+	{
+		//
+		final int length = HEADER_LENGTH + body.length + (checksum ? this.checksum.length : 0);
+		this.position += length;
+		put(this.header, 0, this.timestamp, 4);
+		put(this.header, 4, eventType, 1);
+		put(this.header, 5, this.serverId, 4);
+		put(this.header, 9, length, 4);
+		put(this.header, 13, this.position, 4);
+		put(this.header, 17, 0, 2); // flags
+		this.os.write(this.header);
+		this.os.write(body);
+
+		//
+		if (checksum)
+		{
+			this.crc.reset();
+			this.crc.update(this.header);
+			this.crc.update(body);
+			put(this.checksum, 0, this.crc.getValue(), this.checksum.length);
+			this.os.write(this.checksum);
+		}
+	}
+
+	private static void put(byte[] data, int offset, long value, int length)
+	{
+		for (int i = 0; i < length; i++)
+		{
+			data[offset + i] = (byte) (value >>> (i << 3));
+		}
+	}
+}
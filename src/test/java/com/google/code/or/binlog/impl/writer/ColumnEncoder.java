@@ -0,0 +1,179 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.code.or.binlog.impl.writer;
+
+import com.google.code.or.common.util.MySQLConstants;
+import com.google.code.or.common.util.MySQLUtils;
+import com.google.code.or.io.util.XSerializer;
+
+/**
+ * Encodes the column values of the row images and the column metadata of the table map event as
+ * MySQL writes them. It is shared by the {@link ColumnGenerator} and the row schemas of the jmh
+ * benchmarks, which get it from the test jar.
+ * 
+ * @author Jingqi Xu
+ */
+public final class ColumnEncoder
+{
+	//
+	private static final int DIGITS_PER_4BYTES = 9;
+	private static final int DECIMAL_BINARY_SIZE[] = { 0, 1, 1, 2, 2, 3, 3, 4, 4, 4 };
+
+	/**
+	 * 
+	 */
+	private ColumnEncoder()
+	{
+	}
+
+	/**
+	 * Writes the metadata of a column in the table map event, the metadata of a DECIMAL is precision |
+	 * scale << 8 and that of an ENUM, SET or CHAR has the real type in the high byte
+	 */
+	public static void writeMetadata(XSerializer s, int type, int metadata)
+	{
+		switch (type)
+		{
+			case MySQLConstants.TYPE_FLOAT :
+			case MySQLConstants.TYPE_DOUBLE :
+			case MySQLConstants.TYPE_BLOB :
+			case MySQLConstants.TYPE_TIMESTAMP2 :
+			case MySQLConstants.TYPE_TIME2 :
+			case MySQLConstants.TYPE_DATETIME2 :
+				s.writeInt(metadata, 1);
+				break;
+			case MySQLConstants.TYPE_BIT :
+			case MySQLConstants.TYPE_VARCHAR :
+			case MySQLConstants.TYPE_NEWDECIMAL :
+				s.writeInt(metadata, 2);
+				break;
+			case MySQLConstants.TYPE_STRING :
+				s.writeInt(metadata >> 8, 1); // Big-endian
+				s.writeInt(metadata & 0xFF, 1);
+				break;
+		}
+	}
+
+	/**
+	 * Writes the null bitmap of a row image
+	 */
+	public static void writeNulls(XSerializer s, boolean[] isNull)
+	{
+		final byte[] nulls = new byte[(isNull.length + 7) >> 3];
+		for (int i = 0; i < isNull.length; i++)
+		{
+			if (isNull[i]) nulls[i >> 3] |= 1 << (i & 7);
+		}
+		s.writeBytes(nulls);
+	}
+
+	/**
+	 * Writes a string or a blob after its length of prefixLength bytes
+	 */
+	public static void writeString(XSerializer s, byte[] value, int prefixLength)
+	{
+		s.writeInt(value.length, prefixLength);
+		s.writeBytes(value);
+	}
+
+	/**
+	 * Writes a DECIMAL of the digits (precision digits, the last scale ones are the fraction) in the
+	 * binary format of MySQL, groups of 9 digits in 4 bytes big endian, the leading integer and the
+	 * trailing fraction digits in fewer. The sign bit is set if positive and all bits are inverted if
+	 * negative.
+	 */
+	public static void writeDecimal(XSerializer s, char[] digits, int scale, boolean negative)
+	{
+		//
+		final int precision = digits.length;
+		final byte[] value = new byte[MySQLUtils.getDecimalBinarySize(precision, scale)];
+		final int x = precision - scale;
+		int offset = putDigits(value, 0, digits, 0, x % DIGITS_PER_4BYTES);
+		for (int i = x % DIGITS_PER_4BYTES; i < x; i += DIGITS_PER_4BYTES)
+			offset = putDigits(value, offset, digits, i, DIGITS_PER_4BYTES);
+		for (int i = x; i + DIGITS_PER_4BYTES <= precision; i += DIGITS_PER_4BYTES)
+			offset = putDigits(value, offset, digits, i, DIGITS_PER_4BYTES);
+		putDigits(value, offset, digits, precision - scale % DIGITS_PER_4BYTES, scale % DIGITS_PER_4BYTES);
+
+		//
+		if (negative)
+		{
+			for (int i = 0; i < value.length; i++)
+				value[i] ^= 0xFF;
+		}
+		value[0] ^= 0x80;
+		s.writeBytes(value);
+	}
+
+	/**
+	 * The fraction is in units of 10^-fsp seconds
+	 */
+	public static void writeTime2(XSerializer s, int hour, int minute, int second, int fraction, int fsp)
+	{
+		writeBigEndian(s, 0x800000L | (hour << 12) | (minute << 6) | second, 3);
+		writeFraction(s, fraction, fsp);
+	}
+
+	public static void writeDatetime2(XSerializer s, int year, int month, int day, int hour, int minute,
+	        int second, int fraction, int fsp)
+	{
+		final long ym = year * 13L + month;
+		writeBigEndian(s, 0x8000000000L | (ym << 22) | (day << 17) | (hour << 12) | (minute << 6) | second, 5);
+		writeFraction(s, fraction, fsp);
+	}
+
+	public static void writeTimestamp2(XSerializer s, long seconds, int fraction, int fsp)
+	{
+		writeBigEndian(s, seconds, 4);
+		writeFraction(s, fraction, fsp);
+	}
+
+	/**
+	 * The fraction of a second is stored in 1 byte for fsp 1 and 2, 2 bytes for fsp 3 and 4, and 3
+	 * bytes for fsp 5 and 6, as hundredths, ten thousandths and millionths of a second
+	 */
+	public static void writeFraction(XSerializer s, int fraction, int fsp)
+	{
+		if (fsp <= 0)
+		{
+			return;
+		}
+		final int length = (fsp + 1) >> 1;
+		int scale = 1;
+		for (int i = fsp; i < length * 2; i++)
+			scale *= 10;
+		writeBigEndian(s, fraction * scale, length);
+	}
+
+	public static void writeBigEndian(XSerializer s, long value, int length)
+	{
+		for (int i = length - 1; i >= 0; i--)
+			s.writeInt((int) (value >>> (i << 3)) & 0xFF, 1);
+	}
+
+	/**
+	 * 
+	 */
+	private static int putDigits(byte[] value, int offset, char[] digits, int from, int count)
+	{
+		int v = 0;
+		for (int i = from; i < from + count; i++)
+			v = v * 10 + (digits[i] - '0');
+		final int size = DECIMAL_BINARY_SIZE[count];
+		for (int i = 0; i < size; i++)
+			value[offset + i] = (byte) (v >>> ((size - 1 - i) << 3));
+		return offset + size;
+	}
+}
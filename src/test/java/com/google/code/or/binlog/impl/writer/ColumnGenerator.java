@@ -0,0 +1,388 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.code.or.binlog.impl.writer;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.apache.commons.lang.exception.NestableRuntimeException;
+
+import com.google.code.or.common.util.MySQLConstants;
+import com.google.code.or.io.util.XSerializer;
+
+/**
+ * Generates the values of a column in the row image format of the binlog. The column type and the
+ * metadata are those of the table map event, so ENUM, SET and CHAR columns have the type STRING and
+ * the real type in the high byte of the metadata. Strings and blobs are ascii of a random length up
+ * to maxLength bytes.
+ * 
+ * @author Jingqi Xu
+ */
+public class ColumnGenerator
+{
+	//
+	protected final int type;
+	protected final int metadata;
+	protected final int maxLength;
+	protected boolean nullable = true;
+
+	/**
+	 * 
+	 */
+	public ColumnGenerator(int type, int metadata, int maxLength)
+	{
+		this.type = type;
+		this.metadata = metadata;
+		this.maxLength = maxLength;
+	}
+
+	@Override
+	public String toString()
+	{
+		return "ColumnGenerator[type=" + type + ",metadata=" + metadata + ",maxLength=" + maxLength + "]";
+	}
+
+	/**
+	 * 
+	 */
+	public int getType()
+	{
+		return type;
+	}
+
+	public int getMetadata()
+	{
+		return metadata;
+	}
+
+	public int getMaxLength()
+	{
+		return maxLength;
+	}
+
+	public boolean isNullable()
+	{
+		return nullable;
+	}
+
+	public void setNullable(boolean nullable)
+	{
+		this.nullable = nullable;
+	}
+
+	/**
+	 * 
+	 */
+	public static ColumnGenerator tinyint()
+	{
+		return new ColumnGenerator(MySQLConstants.TYPE_TINY, 0, 0);
+	}
+
+	public static ColumnGenerator smallint()
+	{
+		return new ColumnGenerator(MySQLConstants.TYPE_SHORT, 0, 0);
+	}
+
+	public static ColumnGenerator mediumint()
+	{
+		return new ColumnGenerator(MySQLConstants.TYPE_INT24, 0, 0);
+	}
+
+	public static ColumnGenerator integer()
+	{
+		return new ColumnGenerator(MySQLConstants.TYPE_LONG, 0, 0);
+	}
+
+	public static ColumnGenerator bigint()
+	{
+		return new ColumnGenerator(MySQLConstants.TYPE_LONGLONG, 0, 0);
+	}
+
+	public static ColumnGenerator float4()
+	{
+		return new ColumnGenerator(MySQLConstants.TYPE_FLOAT, 4, 0);
+	}
+
+	public static ColumnGenerator float8()
+	{
+		return new ColumnGenerator(MySQLConstants.TYPE_DOUBLE, 8, 0);
+	}
+
+	public static ColumnGenerator decimal(int precision, int scale)
+	{
+		return new ColumnGenerator(MySQLConstants.TYPE_NEWDECIMAL, precision | (scale << 8), 0);
+	}
+
+	public static ColumnGenerator bit(int bits)
+	{
+		return new ColumnGenerator(MySQLConstants.TYPE_BIT, ((bits >> 3) << 8) | (bits & 7), 0);
+	}
+
+	public static ColumnGenerator year()
+	{
+		return new ColumnGenerator(MySQLConstants.TYPE_YEAR, 0, 0);
+	}
+
+	public static ColumnGenerator date()
+	{
+		return new ColumnGenerator(MySQLConstants.TYPE_DATE, 0, 0);
+	}
+
+	public static ColumnGenerator time()
+	{
+		return new ColumnGenerator(MySQLConstants.TYPE_TIME, 0, 0);
+	}
+
+	public static ColumnGenerator datetime()
+	{
+		return new ColumnGenerator(MySQLConstants.TYPE_DATETIME, 0, 0);
+	}
+
+	public static ColumnGenerator timestamp()
+	{
+		return new ColumnGenerator(MySQLConstants.TYPE_TIMESTAMP, 0, 0);
+	}
+
+	/**
+	 * The fractional second precision fsp is 0 to 6
+	 */
+	public static ColumnGenerator time2(int fsp)
+	{
+		return new ColumnGenerator(MySQLConstants.TYPE_TIME2, fsp, 0);
+	}
+
+	public static ColumnGenerator datetime2(int fsp)
+	{
+		return new ColumnGenerator(MySQLConstants.TYPE_DATETIME2, fsp, 0);
+	}
+
+	public static ColumnGenerator timestamp2(int fsp)
+	{
+		return new ColumnGenerator(MySQLConstants.TYPE_TIMESTAMP2, fsp, 0);
+	}
+
+	/**
+	 * The maxLength of a CHAR is in bytes, up to 1020, i.e. CHAR(255) of utf8mb4
+	 */
+	public static ColumnGenerator character(int maxLength)
+	{
+		final int meta0 = 0xCE | (0x30 ^ ((maxLength >> 4) & 0x30));
+		return new ColumnGenerator(MySQLConstants.TYPE_STRING, (meta0 << 8) | (maxLength & 0xFF), maxLength);
+	}
+
+	public static ColumnGenerator varchar(int maxLength)
+	{
+		return new ColumnGenerator(MySQLConstants.TYPE_VARCHAR, maxLength, maxLength);
+	}
+
+	/**
+	 * The packLength is the length of the blob length, 1 for TINYBLOB to 4 for LONGBLOB
+	 */
+	public static ColumnGenerator blob(int packLength, int maxLength)
+	{
+		return new ColumnGenerator(MySQLConstants.TYPE_BLOB, packLength, maxLength);
+	}
+
+	public static ColumnGenerator enumeration(int elements)
+	{
+		return new ColumnGenerator(MySQLConstants.TYPE_STRING, (MySQLConstants.TYPE_ENUM << 8)
+		        | (elements < 256 ? 1 : 2), elements);
+	}
+
+	public static ColumnGenerator set(int elements)
+	{
+		return new ColumnGenerator(MySQLConstants.TYPE_STRING, (MySQLConstants.TYPE_SET << 8)
+		        | ((elements + 7) >> 3), elements);
+	}
+
+	/**
+	 * Returns a column of each type supported by the row event parsers
+	 */
+	public static List<ColumnGenerator> all()
+	{
+		final List<ColumnGenerator> r = new ArrayList<ColumnGenerator>();
+		r.add(bigint());
+		r.add(tinyint());
+		r.add(smallint());
+		r.add(mediumint());
+		r.add(integer());
+		r.add(float4());
+		r.add(float8());
+		r.add(decimal(10, 2));
+		r.add(decimal(30, 12));
+		r.add(bit(12));
+		r.add(year());
+		r.add(date());
+		r.add(time());
+		r.add(datetime());
+		r.add(timestamp());
+		r.add(time2(0));
+		r.add(datetime2(3));
+		r.add(timestamp2(6));
+		r.add(character(32));
+		r.add(character(400));
+		r.add(varchar(64));
+		r.add(varchar(1024));
+		r.add(blob(2, 512));
+		r.add(enumeration(5));
+		r.add(set(12));
+		return r;
+	}
+
+	/**
+	 * Writes the metadata of the column in the table map event
+	 */
+	public void writeMetadata(XSerializer s)
+	{
+		ColumnEncoder.writeMetadata(s, this.type, this.metadata);
+	}
+
+	/**
+	 * Writes a random value of the column in the row image
+	 */
+	public void writeValue(XSerializer s, Random random)
+	{
+		switch (this.type)
+		{
+			case MySQLConstants.TYPE_TINY :
+				s.writeInt(random.nextInt(), 1);
+				break;
+			case MySQLConstants.TYPE_SHORT :
+				s.writeInt(random.nextInt(0x8000), 2); // Read as unsigned
+				break;
+			case MySQLConstants.TYPE_INT24 :
+				s.writeInt(random.nextInt(0x800000), 3);
+				break;
+			case MySQLConstants.TYPE_LONG :
+				s.writeInt(random.nextInt(), 4);
+				break;
+			case MySQLConstants.TYPE_LONGLONG :
+				s.writeLong(random.nextLong(), 8);
+				break;
+			case MySQLConstants.TYPE_FLOAT :
+				s.writeInt(Float.floatToIntBits(random.nextFloat() * 1000000), 4);
+				break;
+			case MySQLConstants.TYPE_DOUBLE :
+				s.writeLong(Double.doubleToLongBits(random.nextDouble() * 1000000000), 8);
+				break;
+			case MySQLConstants.TYPE_NEWDECIMAL :
+				ColumnEncoder.writeDecimal(s, randomDigits(random, this.metadata & 0xFF), this.metadata >> 8,
+				        random.nextBoolean());
+				break;
+			case MySQLConstants.TYPE_BIT :
+				final int bits = (this.metadata >> 8) * 8 + (this.metadata & 0xFF);
+				final byte[] value = new byte[(bits + 7) >> 3];
+				random.nextBytes(value);
+				if ((bits & 7) != 0) value[0] &= (1 << (bits & 7)) - 1;
+				s.writeBytes(value);
+				break;
+			case MySQLConstants.TYPE_YEAR :
+				s.writeInt(1 + random.nextInt(255), 1);
+				break;
+			case MySQLConstants.TYPE_DATE :
+				s.writeInt(randomDay(random) | (randomMonth(random) << 5) | (randomYear(random) << 9), 3);
+				break;
+			case MySQLConstants.TYPE_TIME :
+				s.writeInt(random.nextInt(24) * 10000 + random.nextInt(60) * 100 + random.nextInt(60), 3);
+				break;
+			case MySQLConstants.TYPE_DATETIME :
+				s.writeLong(randomYear(random) * 10000000000L + randomMonth(random) * 100000000L
+				        + randomDay(random) * 1000000L + random.nextInt(24) * 10000L + random.nextInt(60) * 100L
+				        + random.nextInt(60), 8);
+				break;
+			case MySQLConstants.TYPE_TIMESTAMP :
+				s.writeInt(randomTimestamp(random), 4);
+				break;
+			case MySQLConstants.TYPE_TIME2 :
+				ColumnEncoder.writeTime2(s, random.nextInt(24), random.nextInt(60), random.nextInt(60),
+				        randomFraction(random, this.metadata), this.metadata);
+				break;
+			case MySQLConstants.TYPE_DATETIME2 :
+				ColumnEncoder.writeDatetime2(s, randomYear(random), randomMonth(random), randomDay(random),
+				        random.nextInt(24), random.nextInt(60), random.nextInt(60), randomFraction(random, this.metadata),
+				        this.metadata);
+				break;
+			case MySQLConstants.TYPE_TIMESTAMP2 :
+				ColumnEncoder.writeTimestamp2(s, randomTimestamp(random), randomFraction(random, this.metadata),
+				        this.metadata);
+				break;
+			case MySQLConstants.TYPE_VARCHAR :
+				ColumnEncoder.writeString(s, randomString(random), this.metadata < 256 ? 1 : 2);
+				break;
+			case MySQLConstants.TYPE_BLOB :
+				ColumnEncoder.writeString(s, randomString(random), this.metadata);
+				break;
+			case MySQLConstants.TYPE_STRING :
+				final int meta0 = this.metadata >> 8;
+				if (meta0 == MySQLConstants.TYPE_ENUM)
+					s.writeInt(1 + random.nextInt(this.maxLength), this.metadata & 0xFF);
+				else if (meta0 == MySQLConstants.TYPE_SET)
+					s.writeLong(random.nextLong() & (-1L >>> (64 - this.maxLength)), this.metadata & 0xFF);
+				else
+					ColumnEncoder.writeString(s, randomString(random), this.maxLength < 256 ? 1 : 2);
+				break;
+			default :
+				throw new NestableRuntimeException("assertion failed, unknown column type: " + this.type);
+		}
+	}
+
+	/**
+	 * 
+	 */
+	protected byte[] randomString(Random random)
+	{
+		final byte[] r = new byte[random.nextInt(this.maxLength + 1)];
+		for (int i = 0; i < r.length; i++)
+			r[i] = (byte) ('a' + random.nextInt(26));
+		return r;
+	}
+
+	protected static char[] randomDigits(Random random, int precision)
+	{
+		final char[] r = new char[precision];
+		for (int i = 0; i < precision; i++)
+			r[i] = (char) ('0' + random.nextInt(10));
+		return r;
+	}
+
+	protected static int randomFraction(Random random, int fsp)
+	{
+		int bound = 1;
+		for (int i = 0; i < fsp; i++)
+			bound *= 10;
+		return fsp <= 0 ? 0 : random.nextInt(bound);
+	}
+
+	protected static int randomYear(Random random)
+	{
+		return 1970 + random.nextInt(60);
+	}
+
+	protected static int randomMonth(Random random)
+	{
+		return 1 + random.nextInt(12);
+	}
+
+	protected static int randomDay(Random random)
+	{
+		return 1 + random.nextInt(28);
+	}
+
+	protected static int randomTimestamp(Random random)
+	{
+		return 946684800 + random.nextInt(1000000000);
+	}
+}
@@ -0,0 +1,177 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.code.or.checkpoint.impl;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+
+import junit.framework.TestCase;
+
+import com.google.code.or.checkpoint.Checkpoint;
+
+/**
+ * @author Jingqi Xu
+ */
+public class MappedCheckpointStoreTest extends TestCase
+{
+	//
+	private static final int SLOT_SIZE = 4096;
+
+	//
+	private File file;
+
+	/**
+	 * 
+	 */
+	@Override
+	protected void setUp() throws Exception
+	{
+		this.file = File.createTempFile("checkpoint", ".dat");
+		this.file.delete();
+	}
+
+	@Override
+	protected void tearDown() throws Exception
+	{
+		this.file.delete();
+	}
+
+	/**
+	 * 
+	 */
+	public void testEmptyStore() throws Exception
+	{
+		final MappedCheckpointStore store = new MappedCheckpointStore(this.file);
+		assertNull(store.load());
+		store.close();
+	}
+
+	public void testSaveAndReopen() throws Exception
+	{
+		//
+		MappedCheckpointStore store = new MappedCheckpointStore(this.file);
+		store.save("mysql-bin.000001", 1000, 900, 123);
+		store.save("mysql-bin.000002", 120, 4, 456);
+		store.close();
+
+		//
+		store = new MappedCheckpointStore(this.file);
+		assertCheckpoint(store.load(), "mysql-bin.000002", 120, 4, 456);
+		store.save("mysql-bin.000002", 200, 120, 789);
+		store.flush();
+		assertCheckpoint(store.load(), "mysql-bin.000002", 200, 120, 789);
+		store.close();
+	}
+
+	public void testGroupCommit() throws Exception
+	{
+		//
+		final MappedCheckpointStore store = new MappedCheckpointStore(this.file);
+		store.setCommitEvents(3);
+		store.setCommitIntervalMillis(Long.MAX_VALUE);
+		store.save("mysql-bin.000001", 100, 100, 1);
+		store.flush();
+
+		// Another mapping of the file sees the committed slots only
+		final MappedCheckpointStore reader = new MappedCheckpointStore(this.file);
+		store.save("mysql-bin.000001", 200, 200, 2);
+		store.save("mysql-bin.000001", 300, 300, 3);
+		assertEquals(100, reader.load().getBinlogPosition());
+		store.save("mysql-bin.000001", 400, 400, 4);
+		assertEquals(400, reader.load().getBinlogPosition());
+		reader.close();
+		store.close();
+	}
+
+	public void testTornSlotFallsBackToPreviousCheckpoint() throws Exception
+	{
+		//
+		final MappedCheckpointStore store = new MappedCheckpointStore(this.file);
+		store.save("mysql-bin.000001", 100, 50, 1);
+		store.flush();
+		store.save("mysql-bin.000001", 200, 150, 2);
+		store.close();
+
+		// The newer slot fails its crc
+		final RandomAccessFile raf = new RandomAccessFile(this.file, "rw");
+		try
+		{
+			raf.seek(0);
+			final long s0 = raf.readLong();
+			raf.seek(SLOT_SIZE);
+			final long s1 = raf.readLong();
+			corrupt(raf, (s0 > s1 ? 0 : SLOT_SIZE) + 8); // The binlog position
+		}
+		finally
+		{
+			raf.close();
+		}
+		MappedCheckpointStore reopened = new MappedCheckpointStore(this.file);
+		assertCheckpoint(reopened.load(), "mysql-bin.000001", 100, 50, 1);
+
+		// The next save overwrites the torn slot
+		reopened.save("mysql-bin.000001", 300, 250, 3);
+		reopened.close();
+		reopened = new MappedCheckpointStore(this.file);
+		assertCheckpoint(reopened.load(), "mysql-bin.000001", 300, 250, 3);
+		reopened.close();
+	}
+
+	public void testBothSlotsTorn() throws Exception
+	{
+		//
+		final MappedCheckpointStore store = new MappedCheckpointStore(this.file);
+		store.save("mysql-bin.000001", 100, 50, 1);
+		store.flush();
+		store.save("mysql-bin.000001", 200, 150, 2);
+		store.close();
+
+		//
+		final RandomAccessFile raf = new RandomAccessFile(this.file, "rw");
+		try
+		{
+			corrupt(raf, 40); // The binlog file names
+			corrupt(raf, SLOT_SIZE + 40);
+		}
+		finally
+		{
+			raf.close();
+		}
+		final MappedCheckpointStore reopened = new MappedCheckpointStore(this.file);
+		assertNull(reopened.load());
+		reopened.close();
+	}
+
+	/**
+	 * 
+	 */
+	private static void corrupt(RandomAccessFile raf, long offset) throws Exception
+	{
+		raf.seek(offset);
+		final int b = raf.read();
+		raf.seek(offset);
+		raf.write(b ^ 0xFF);
+	}
+
+	private static void assertCheckpoint(Checkpoint checkpoint, String binlogFileName, long binlogPosition,
+	        long restartPosition, long timestamp)
+	{
+		assertNotNull(checkpoint);
+		assertEquals(binlogFileName, checkpoint.getBinlogFileName());
+		assertEquals(binlogPosition, checkpoint.getBinlogPosition());
+		assertEquals(restartPosition, checkpoint.getRestartPosition());
+		assertEquals(timestamp, checkpoint.getTimestamp());
+	}
+}
@@ -0,0 +1,141 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.code.or.common.glossary;
+
+import java.io.ByteArrayInputStream;
+import java.util.Random;
+import java.util.TreeSet;
+
+import junit.framework.TestCase;
+
+import com.google.code.or.io.impl.XInputStreamImpl;
+
+/**
+ * @author Jingqi Xu
+ */
+public class GtidSetTest extends TestCase
+{
+	//
+	private static final String UUID1 = "3e11fa47-71ca-11e1-9e33-c80aa9429562";
+	private static final String UUID2 = "d2d1b1e2-0000-11e1-9e33-c80aa9429562";
+
+	/**
+	 * 
+	 */
+	public void testParseText() throws Exception
+	{
+		//
+		final GtidSet set = GtidSet.valueOf(" " + UUID2 + ":7, " + UUID1.toUpperCase() + ":11-18:1-5");
+		assertEquals(UUID1 + ":1-5:11-18," + UUID2 + ":7", set.toString());
+		assertTrue(set.contains(UUID1, 5));
+		assertFalse(set.contains(UUID1, 6));
+		assertTrue(set.contains(UUID1.toUpperCase(), 18));
+		assertTrue(set.contains(UUID2, 7));
+
+		//
+		assertTrue(GtidSet.valueOf((String) null).isEmpty());
+		assertTrue(GtidSet.valueOf("").isEmpty());
+		assertEquals(set, GtidSet.valueOf(set.toString()));
+		try
+		{
+			GtidSet.valueOf("not-a-uuid:1");
+			fail();
+		}
+		catch (IllegalArgumentException e)
+		{
+			// Expected
+		}
+	}
+
+	public void testAddMergesIntervals() throws Exception
+	{
+		//
+		final GtidSet set = GtidSet.valueOf(UUID1 + ":1-5:11-18");
+		assertTrue(set.add(UUID1, 6)); // Adjacent
+		assertEquals(UUID1 + ":1-6:11-18", set.toString());
+		assertFalse(set.add(UUID1, 3)); // Already in the set
+		assertFalse(set.add(UUID1, 12, 15));
+		assertTrue(set.add(UUID1, 20));
+		assertEquals(UUID1 + ":1-6:11-18:20", set.toString());
+
+		// Bridging several intervals
+		assertTrue(set.add(UUID1, 7, 19));
+		assertEquals(UUID1 + ":1-20", set.toString());
+		assertEquals(1, set.getUuidSet(UUID1).getIntervalCount());
+
+		//
+		try
+		{
+			set.add(UUID1, 0);
+			fail();
+		}
+		catch (IllegalArgumentException e)
+		{
+			// Expected
+		}
+	}
+
+	public void testAddAll() throws Exception
+	{
+		final GtidSet set = GtidSet.valueOf(UUID1 + ":1-5");
+		set.addAll(GtidSet.valueOf(UUID1 + ":4-9:12," + UUID2 + ":1-3"));
+		assertEquals(UUID1 + ":1-9:12," + UUID2 + ":1-3", set.toString());
+		assertEquals(set, new GtidSet(set));
+	}
+
+	public void testMatchesTreeSet() throws Exception
+	{
+		//
+		final Random random = new Random(1);
+		final GtidSet set = new GtidSet();
+		final TreeSet<Long> expected = new TreeSet<Long>();
+		for (int i = 0; i < 2000; i++)
+		{
+			final long start = 1 + random.nextInt(1000);
+			final long end = start + random.nextInt(random.nextBoolean() ? 1 : 10);
+			boolean added = false;
+			for (long gno = start; gno <= end; gno++)
+			{
+				added |= expected.add(gno);
+			}
+			assertEquals(added, set.add(UUID1, start, end));
+		}
+
+		//
+		final GtidSet.UuidSet s = set.getUuidSet(UUID1);
+		for (long gno = 0; gno <= 1020; gno++)
+		{
+			assertEquals(expected.contains(gno), s.contains(gno));
+		}
+		for (int i = 1; i < s.getIntervalCount(); i++)
+		{
+			assertTrue(s.getEnd(i - 1) + 1 < s.getStart(i)); // Disjoint and not adjacent
+		}
+	}
+
+	public void testBinaryFormat() throws Exception
+	{
+		//
+		final GtidSet set = GtidSet.valueOf(UUID1 + ":1-5:11," + UUID2 + ":7");
+		final byte[] data = set.toByteArray();
+		assertEquals(8 + (16 + 8 + 2 * 16) + (16 + 8 + 16), data.length);
+		assertEquals(2, data[0]); // Number of servers
+
+		// The intervals end exclusively
+		assertEquals(1, data[8 + 16 + 8]);
+		assertEquals(6, data[8 + 16 + 8 + 8]);
+		assertEquals(set, GtidSet.valueOf(new XInputStreamImpl(new ByteArrayInputStream(data))));
+	}
+}
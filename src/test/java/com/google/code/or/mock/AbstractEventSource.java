@@ -0,0 +1,104 @@
+package com.google.code.or.mock;
+
+import java.util.zip.CRC32;
+
+import com.google.code.or.common.util.MySQLConstants;
+
+/**
+ * 
+ * @author Jingqi Xu
+ */
+public abstract class AbstractEventSource implements EventSource
+{
+	//
+	protected static final int HEADER_LENGTH = 19;
+	protected static final int LOG_EVENT_ARTIFICIAL_F = 0x20;
+
+	//
+	protected boolean checksum = true;
+
+	/**
+	 * 
+	 */
+	public boolean hasChecksum()
+	{
+		return checksum;
+	}
+
+	public void setChecksum(boolean checksum)
+	{
+		this.checksum = checksum;
+	}
+
+	protected int getChecksumLength()
+	{
+		return this.checksum ? 4 : 0;
+	}
+
+	/**
+	 * Allocates an event with the header, the body is filled by the caller before {@link #finish(byte[])}
+	 */
+	protected byte[] newEvent(int eventType, long timestamp, long nextPosition, int flags, int bodyLength)
+	{
+		final byte[] r = new byte[HEADER_LENGTH + bodyLength + getChecksumLength()];
+		put(r, 0, timestamp, 4);
+		put(r, 4, eventType, 1);
+		put(r, 5, 1, 4); // server id
+		put(r, 9, r.length, 4);
+		put(r, 13, nextPosition, 4);
+		put(r, 17, flags, 2);
+		return r;
+	}
+
+	/**
+	 * Computes the checksum of the event
+	 */
+	protected byte[] finish(byte[] event)
+	{
+		if (this.checksum)
+		{
+			final CRC32 crc = new CRC32();
+			crc.update(event, 0, event.length - 4);
+			put(event, event.length - 4, crc.getValue(), 4);
+		}
+		return event;
+	}
+
+	/**
+	 * Returns a rotate event, an artificial one if the position of the event is 0
+	 */
+	protected byte[] newRotateEvent(String binlogFileName, long binlogPosition, long eventPosition)
+	{
+		final byte[] name = binlogFileName.getBytes();
+		final int length = HEADER_LENGTH + 8 + name.length + getChecksumLength();
+		final byte[] r =
+		        newEvent(MySQLConstants.ROTATE_EVENT, eventPosition == 0 ? 0 : System.currentTimeMillis() / 1000,
+		                eventPosition == 0 ? 0 : eventPosition + length, eventPosition == 0 ? LOG_EVENT_ARTIFICIAL_F
+		                        : 0, 8 + name.length);
+		put(r, HEADER_LENGTH, binlogPosition, 8);
+		System.arraycopy(name, 0, r, HEADER_LENGTH + 8, name.length);
+		return finish(r);
+	}
+
+	/**
+	 * 
+	 */
+	protected static int put(byte[] data, int offset, long value, int length)
+	{
+		for (int i = 0; i < length; i++)
+		{
+			data[offset++] = (byte) (value >>> (i << 3));
+		}
+		return offset;
+	}
+
+	protected static long get(byte[] data, int offset, int length)
+	{
+		long r = 0;
+		for (int i = length - 1; i >= 0; i--)
+		{
+			r = (r << 8) | (data[offset + i] & 0xFF);
+		}
+		return r;
+	}
+}
@@ -0,0 +1,158 @@
+package com.google.code.or.mock;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+
+import com.google.code.or.common.util.MySQLConstants;
+
+/**
+ * Streams the events of recorded binlog files, in the order of the files. The checksum setting must
+ * match the files.
+ * 
+ * @author Jingqi Xu
+ */
+public class BinlogFileEventSource extends AbstractEventSource
+{
+	//
+	protected final List<File> files;
+
+	/**
+	 * 
+	 */
+	public BinlogFileEventSource(File... files)
+	{
+		this.files = Arrays.asList(files);
+	}
+
+	/**
+	 * 
+	 */
+	public Cursor open(String binlogFileName, long binlogPosition) throws IOException
+	{
+		for (int i = 0; i < this.files.size(); i++)
+		{
+			if (binlogFileName == null || binlogFileName.length() == 0
+			        || this.files.get(i).getName().equals(binlogFileName))
+			{
+				return new FileCursor(i, Math.max(binlogPosition, MySQLConstants.BINLOG_MAGIC.length));
+			}
+		}
+		throw new IOException("binlog file not found: " + binlogFileName);
+	}
+
+	/**
+	 * 
+	 */
+	private class FileCursor implements Cursor
+	{
+		//
+		private final byte[] header = new byte[HEADER_LENGTH];
+		private int index;
+		private DataInputStream is;
+		private byte[] rotate;
+		private byte[] formatDescription;
+
+		public FileCursor(int index, long position) throws IOException
+		{
+			open(index, position);
+		}
+
+		public byte[] next() throws IOException
+		{
+			//
+			if (this.rotate != null)
+			{
+				final byte[] r = this.rotate;
+				this.rotate = null;
+				return r;
+			}
+			if (this.formatDescription != null)
+			{
+				final byte[] r = this.formatDescription;
+				this.formatDescription = null;
+				return r;
+			}
+
+			//
+			while (this.is != null)
+			{
+				final byte[] r = readEvent();
+				if (r != null)
+				{
+					return r;
+				}
+				close();
+				if (this.index + 1 < files.size())
+				{
+					open(this.index + 1, MySQLConstants.BINLOG_MAGIC.length);
+					return next();
+				}
+			}
+			return null;
+		}
+
+		public void close()
+		{
+			try
+			{
+				if (this.is != null)
+					this.is.close();
+			}
+			catch (IOException e)
+			{
+				// NOP
+			}
+			this.is = null;
+		}
+
+		/**
+		 * Queues the artificial rotate event and the format description event, an artificial one if
+		 * the position is after it
+		 */
+		private void open(int index, long position) throws IOException
+		{
+			//
+			final File file = files.get(index);
+			this.index = index;
+			this.is = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 256 * 1024));
+			this.is.readFully(new byte[MySQLConstants.BINLOG_MAGIC.length]);
+			this.rotate = newRotateEvent(file.getName(), position, 0);
+			this.formatDescription = readEvent();
+
+			//
+			long skip = position - MySQLConstants.BINLOG_MAGIC.length - this.formatDescription.length;
+			if (skip >= 0)
+			{
+				put(this.formatDescription, 13, 0, 4);
+				finish(this.formatDescription);
+			}
+			for (byte[] event = null; skip > 0; skip -= event.length)
+			{
+				if ((event = readEvent()) == null)
+					throw new IOException("binlog position is beyond the end of " + file + ": " + position);
+			}
+		}
+
+		private byte[] readEvent() throws IOException
+		{
+			try
+			{
+				this.is.readFully(this.header);
+			}
+			catch (EOFException e)
+			{
+				return null;
+			}
+			final byte[] r = new byte[(int) get(this.header, 9, 4)];
+			System.arraycopy(this.header, 0, r, 0, HEADER_LENGTH);
+			this.is.readFully(r, HEADER_LENGTH, r.length - HEADER_LENGTH);
+			return r;
+		}
+	}
+}
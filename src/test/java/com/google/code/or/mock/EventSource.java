@@ -0,0 +1,38 @@
+package com.google.code.or.mock;
+
+import java.io.IOException;
+
+/**
+ * The binlog events streamed by a {@link MockMaster}.
+ * 
+ * @author Jingqi Xu
+ */
+public interface EventSource
+{
+
+	/**
+	 * Returns true if the events end with a crc32 checksum
+	 */
+	boolean hasChecksum();
+
+	/**
+	 * Opens a cursor at the binlog position, an empty file name means the first binlog file. The
+	 * cursor starts with an artificial rotate event and the format description event, as the master's
+	 * binlog dump does.
+	 */
+	Cursor open(String binlogFileName, long binlogPosition) throws IOException;
+
+	/**
+	 * 
+	 */
+	interface Cursor
+	{
+
+		/**
+		 * Returns the next event, or null if there is none
+		 */
+		byte[] next() throws IOException;
+
+		void close();
+	}
+}
@@ -0,0 +1,297 @@
+package com.google.code.or.mock;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.code.or.common.util.MySQLConstants;
+import com.google.code.or.common.util.XThreadFactory;
+import com.google.code.or.net.impl.AbstractServerSession;
+import com.google.code.or.net.impl.packet.command.ComBinlogDumpPacket;
+
+/**
+ * An in-process MySQL master on the loopback interface, for testing replication without a real
+ * MySQL. It accepts any user, answers the binlog checksum queries and streams the events of an
+ * {@link EventSource} for COM_BINLOG_DUMP, at most rate events per second. The time every
+ * sampleInterval-th event is sent is recorded by its next position, see {@link #getSendTime(long)},
+ * so that the end to end latency can be measured.
+ * 
+ * @author Jingqi Xu
+ */
+public class MockMaster
+{
+	//
+	private static final Logger LOGGER = LoggerFactory.getLogger(MockMaster.class);
+
+	//
+	protected final EventSource source;
+	protected int port = 0;
+	protected String serverVersion = "5.7.30-log";
+	protected long rate = 0;
+	protected int sampleInterval = 64;
+
+	//
+	protected final AtomicBoolean running = new AtomicBoolean(false);
+	protected final AtomicLong threadIds = new AtomicLong(0);
+	protected final AtomicLong sentEvents = new AtomicLong(0);
+	protected final ConcurrentHashMap<Long, Long> sendTimes = new ConcurrentHashMap<Long, Long>();
+	protected final List<MockSession> sessions = new CopyOnWriteArrayList<MockSession>();
+	protected final XThreadFactory threadFactory = new XThreadFactory("mock-master", true);
+	protected ServerSocket serverSocket;
+
+	/**
+	 * 
+	 */
+	public MockMaster(EventSource source)
+	{
+		this.source = source;
+	}
+
+	/**
+	 * 
+	 */
+	public void start() throws IOException
+	{
+		//
+		if (!this.running.compareAndSet(false, true))
+		{
+			return;
+		}
+
+		//
+		this.serverSocket = new ServerSocket(this.port, 50, InetAddress.getLoopbackAddress());
+		this.threadFactory.newThread(new Runnable()
+		{
+			public void run()
+			{
+				while (running.get())
+				{
+					try
+					{
+						final Socket socket = serverSocket.accept();
+						final MockSession session = new MockSession(socket, threadIds.incrementAndGet());
+						sessions.add(session);
+						threadFactory.newThread(session).start();
+					}
+					catch (IOException e)
+					{
+						if (running.get())
+							LOGGER.error("failed to accept", e);
+					}
+				}
+			}
+		}).start();
+		LOGGER.info("mock master started, port: {}", getLocalPort());
+	}
+
+	public void stop()
+	{
+		//
+		if (!this.running.compareAndSet(true, false))
+		{
+			return;
+		}
+
+		//
+		try
+		{
+			this.serverSocket.close();
+		}
+		catch (IOException e)
+		{
+			// NOP
+		}
+		for (MockSession session : this.sessions)
+		{
+			session.close();
+		}
+	}
+
+	/**
+	 * 
+	 */
+	public int getPort()
+	{
+		return port;
+	}
+
+	public void setPort(int port)
+	{
+		this.port = port;
+	}
+
+	public int getLocalPort()
+	{
+		return this.serverSocket.getLocalPort();
+	}
+
+	public String getServerVersion()
+	{
+		return serverVersion;
+	}
+
+	public void setServerVersion(String serverVersion)
+	{
+		this.serverVersion = serverVersion;
+	}
+
+	/**
+	 * The maximum number of events sent per second by each session, 0 means unlimited
+	 */
+	public long getRate()
+	{
+		return rate;
+	}
+
+	public void setRate(long rate)
+	{
+		this.rate = rate;
+	}
+
+	public int getSampleInterval()
+	{
+		return sampleInterval;
+	}
+
+	public void setSampleInterval(int sampleInterval)
+	{
+		this.sampleInterval = sampleInterval;
+	}
+
+	public long getSentEvents()
+	{
+		return this.sentEvents.get();
+	}
+
+	/**
+	 * Returns and forgets the System.nanoTime() at which the sampled event of the next position was
+	 * sent, or null if it was not sampled. The positions of different binlog files are not told
+	 * apart, which is fine as long as the replicator does not lag by a whole file.
+	 */
+	public Long getSendTime(long nextPosition)
+	{
+		return this.sendTimes.remove(nextPosition);
+	}
+
+	/**
+	 * 
+	 */
+	private class MockSession extends AbstractServerSession
+	{
+
+		public MockSession(Socket socket, long threadId) throws IOException
+		{
+			super(socket, threadId);
+		}
+
+		@Override
+		protected String getServerVersion()
+		{
+			return serverVersion;
+		}
+
+		@Override
+		protected String getBinlogChecksum()
+		{
+			return source.hasChecksum() ? "CRC32" : "NONE";
+		}
+
+		@Override
+		protected boolean authenticate(String user, byte[] scramble, byte[] token)
+		{
+			return true;
+		}
+
+		@Override
+		protected void onClose()
+		{
+			sessions.remove(this);
+		}
+
+		@Override
+		protected void dump(ComBinlogDumpPacket command) throws Exception
+		{
+			//
+			final boolean nonBlock = (command.getBinlogFlag() & ComBinlogDumpPacket.BINLOG_DUMP_NON_BLOCK) != 0;
+			final EventSource.Cursor cursor =
+			        source.open(command.getBinlogFileName().toString(), command.getBinlogPosition());
+			try
+			{
+				final long start = System.nanoTime();
+				String binlogFileName = command.getBinlogFileName().toString();
+				long binlogPosition = command.getBinlogPosition(), idleSince = 0;
+				for (long sent = 0; isRunning(); sent++)
+				{
+					//
+					final byte[] event = cursor.next();
+					if (event == null)
+					{
+						if (nonBlock)
+						{
+							writeEOF();
+							return;
+						}
+						this.os.flush();
+						final long now = System.nanoTime();
+						if (idleSince == 0)
+						{
+							idleSince = now;
+						}
+						else if (heartbeatPeriod > 0 && now - idleSince >= heartbeatPeriod)
+						{
+							writeHeartbeat(binlogFileName, binlogPosition);
+							idleSince = now;
+						}
+						LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(10));
+						continue;
+					}
+					idleSince = 0;
+
+					//
+					if (rate > 0)
+					{
+						final long delay = start + sent * TimeUnit.SECONDS.toNanos(1) / rate - System.nanoTime();
+						if (delay > 0)
+						{
+							this.os.flush();
+							LockSupport.parkNanos(delay);
+						}
+					}
+					final long nextPosition = AbstractEventSource.get(event, 13, 4);
+					if ((event[4] & 0xFF) == MySQLConstants.ROTATE_EVENT)
+					{
+						final int offset = AbstractEventSource.HEADER_LENGTH + 8;
+						binlogFileName = new String(event, offset, event.length - offset
+						        - (source.hasChecksum() ? 4 : 0), "US-ASCII");
+						binlogPosition = AbstractEventSource.get(event, AbstractEventSource.HEADER_LENGTH, 8);
+					}
+					else if (nextPosition > 0)
+					{
+						binlogPosition = nextPosition;
+					}
+					if (sampleInterval > 0 && sent % sampleInterval == 0 && nextPosition > 0)
+					{
+						sendTimes.put(nextPosition, System.nanoTime());
+					}
+					writeEvent(event);
+					sentEvents.incrementAndGet();
+				}
+			}
+			finally
+			{
+				cursor.close();
+			}
+		}
+	}
+}
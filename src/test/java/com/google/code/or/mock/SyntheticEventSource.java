@@ -0,0 +1,279 @@
+package com.google.code.or.mock;
+
+import java.util.Arrays;
+import java.util.LinkedList;
+
+import com.google.code.or.common.util.MySQLConstants;
+
+/**
+ * Generates row based transactions, i.e. BEGIN, TABLE_MAP, WRITE_ROWS_V2 and XID, into tables of an
+ * INT id and a VARCHAR payload. The binlog is rotated every maxFileSize bytes.
+ * 
+ * @author Jingqi Xu
+ */
+public class SyntheticEventSource extends AbstractEventSource
+{
+	//
+	private static final int MYSQL_TYPE_LONG = 3;
+	private static final int MYSQL_TYPE_VARCHAR = 15;
+	private static final byte[] BEGIN = "BEGIN".getBytes();
+	private static final byte[] SCHEMA = "test".getBytes();
+
+	//
+	protected String binlogBaseName = "mysql-bin";
+	protected long maxFileSize = 1024L * 1024 * 1024;
+	protected long transactions = 0;
+	protected int tables = 10;
+	protected int rowSize = 100;
+	protected int rowsPerEvent = 1;
+
+	/**
+	 * 
+	 */
+	public String getBinlogBaseName()
+	{
+		return binlogBaseName;
+	}
+
+	public void setBinlogBaseName(String binlogBaseName)
+	{
+		this.binlogBaseName = binlogBaseName;
+	}
+
+	public long getMaxFileSize()
+	{
+		return maxFileSize;
+	}
+
+	public void setMaxFileSize(long maxFileSize)
+	{
+		this.maxFileSize = maxFileSize;
+	}
+
+	/**
+	 * The number of transactions of a cursor, 0 means unlimited
+	 */
+	public long getTransactions()
+	{
+		return transactions;
+	}
+
+	public void setTransactions(long transactions)
+	{
+		this.transactions = transactions;
+	}
+
+	public int getTables()
+	{
+		return tables;
+	}
+
+	public void setTables(int tables)
+	{
+		this.tables = tables;
+	}
+
+	public int getRowSize()
+	{
+		return rowSize;
+	}
+
+	public void setRowSize(int rowSize)
+	{
+		this.rowSize = rowSize;
+	}
+
+	public int getRowsPerEvent()
+	{
+		return rowsPerEvent;
+	}
+
+	public void setRowsPerEvent(int rowsPerEvent)
+	{
+		this.rowsPerEvent = rowsPerEvent;
+	}
+
+	/**
+	 * 
+	 */
+	public Cursor open(String binlogFileName, long binlogPosition)
+	{
+		final int index = binlogFileName == null || binlogFileName.length() == 0 ? 1 : Integer.parseInt(binlogFileName
+		        .substring(binlogFileName.lastIndexOf('.') + 1));
+		return new SyntheticCursor(index, Math.max(binlogPosition, MySQLConstants.BINLOG_MAGIC.length));
+	}
+
+	/**
+	 * 
+	 */
+	private class SyntheticCursor implements Cursor
+	{
+		//
+		private final LinkedList<byte[]> pending = new LinkedList<byte[]>();
+		private final byte[] payload;
+		private int fileIndex;
+		private long position;
+		private long transaction;
+
+		public SyntheticCursor(int fileIndex, long position)
+		{
+			this.fileIndex = fileIndex;
+			this.position = position;
+			this.payload = new byte[rowSize];
+			Arrays.fill(this.payload, (byte) 'x');
+			this.pending.add(newRotateEvent(getFileName(), position, 0));
+			this.pending.add(newFormatDescriptionEvent(position > MySQLConstants.BINLOG_MAGIC.length));
+		}
+
+		public byte[] next()
+		{
+			//
+			if (!this.pending.isEmpty())
+			{
+				return this.pending.removeFirst();
+			}
+			if (transactions > 0 && this.transaction >= transactions)
+			{
+				return null;
+			}
+
+			//
+			if (this.position >= maxFileSize)
+			{
+				this.pending.add(newRotateEvent(getFileName(this.fileIndex + 1), MySQLConstants.BINLOG_MAGIC.length,
+				        this.position));
+				this.fileIndex++;
+				this.position = MySQLConstants.BINLOG_MAGIC.length;
+				this.pending.add(newFormatDescriptionEvent(false));
+				return next();
+			}
+
+			//
+			final long timestamp = System.currentTimeMillis() / 1000;
+			final long tableId = 100 + this.transaction % tables;
+			this.pending.add(newQueryEvent(timestamp, BEGIN));
+			this.pending.add(newTableMapEvent(timestamp, tableId));
+			this.pending.add(newWriteRowsEvent(timestamp, tableId, (int) this.transaction));
+			this.pending.add(newXidEvent(timestamp, this.transaction));
+			this.transaction++;
+			return next();
+		}
+
+		public void close()
+		{
+			this.pending.clear();
+		}
+
+		/**
+		 * 
+		 */
+		private String getFileName()
+		{
+			return getFileName(this.fileIndex);
+		}
+
+		private String getFileName(int index)
+		{
+			return binlogBaseName + String.format(".%06d", index);
+		}
+
+		private byte[] allocate(int eventType, long timestamp, int bodyLength)
+		{
+			final int length = HEADER_LENGTH + bodyLength + getChecksumLength();
+			this.position += length;
+			return newEvent(eventType, timestamp, this.position, 0, bodyLength);
+		}
+
+		private byte[] newFormatDescriptionEvent(boolean artificial)
+		{
+			//
+			final int bodyLength = 2 + 50 + 4 + 1 + 38 + 1;
+			final byte[] r;
+			if (artificial)
+				r = newEvent(MySQLConstants.FORMAT_DESCRIPTION_EVENT, 0, 0, 0, bodyLength);
+			else
+				r = allocate(MySQLConstants.FORMAT_DESCRIPTION_EVENT, System.currentTimeMillis() / 1000, bodyLength);
+
+			//
+			int offset = put(r, HEADER_LENGTH, 4, 2); // binlog version
+			final byte[] version = "5.7.30-log".getBytes();
+			System.arraycopy(version, 0, r, offset, version.length);
+			offset += 50 + 4; // and create timestamp
+			offset = put(r, offset, HEADER_LENGTH, 1);
+			offset += 38; // post header lengths
+			put(r, offset, checksum ? 1 : 0, 1); // checksum algorithm
+			return finish(r);
+		}
+
+		private byte[] newQueryEvent(long timestamp, byte[] sql)
+		{
+			final byte[] r = allocate(MySQLConstants.QUERY_EVENT, timestamp, 13 + SCHEMA.length + 1 + sql.length);
+			int offset = put(r, HEADER_LENGTH, 1, 4); // thread id
+			offset = put(r, offset, 0, 4); // execution time
+			offset = put(r, offset, SCHEMA.length, 1);
+			offset = put(r, offset, 0, 2); // error code
+			offset = put(r, offset, 0, 2); // status variables length
+			System.arraycopy(SCHEMA, 0, r, offset, SCHEMA.length);
+			System.arraycopy(sql, 0, r, offset + SCHEMA.length + 1, sql.length);
+			return finish(r);
+		}
+
+		private byte[] newTableMapEvent(long timestamp, long tableId)
+		{
+			final byte[] table = ("t" + tableId).getBytes();
+			final byte[] r =
+			        allocate(MySQLConstants.TABLE_MAP_EVENT, timestamp, 6 + 2 + 1 + SCHEMA.length + 1 + 1
+			                + table.length + 1 + 1 + 2 + 1 + 2 + 1);
+			int offset = put(r, HEADER_LENGTH, tableId, 6);
+			offset = put(r, offset, 0, 2); // flags
+			offset = put(r, offset, SCHEMA.length, 1);
+			System.arraycopy(SCHEMA, 0, r, offset, SCHEMA.length);
+			offset += SCHEMA.length + 1;
+			offset = put(r, offset, table.length, 1);
+			System.arraycopy(table, 0, r, offset, table.length);
+			offset += table.length + 1;
+			offset = put(r, offset, 2, 1); // column count
+			offset = put(r, offset, MYSQL_TYPE_LONG, 1);
+			offset = put(r, offset, MYSQL_TYPE_VARCHAR, 1);
+			offset = put(r, offset, 2, 1); // metadata length
+			offset = put(r, offset, getMaxLength(), 2);
+			put(r, offset, 0, 1); // nullable bits
+			return finish(r);
+		}
+
+		private byte[] newWriteRowsEvent(long timestamp, long tableId, int id)
+		{
+			final int prefix = getMaxLength() < 256 ? 1 : 2;
+			final int rowLength = 1 + 4 + prefix + this.payload.length;
+			final byte[] r =
+			        allocate(MySQLConstants.WRITE_ROWS_EVENT_V2, timestamp, 6 + 2 + 2 + 1 + 1 + rowLength
+			                * rowsPerEvent);
+			int offset = put(r, HEADER_LENGTH, tableId, 6);
+			offset = put(r, offset, 1, 2); // STMT_END_F
+			offset = put(r, offset, 2, 2); // extra data length
+			offset = put(r, offset, 2, 1); // column count
+			offset = put(r, offset, 0x03, 1); // used columns
+			for (int i = 0; i < rowsPerEvent; i++)
+			{
+				offset = put(r, offset, 0, 1); // null bits
+				offset = put(r, offset, id, 4);
+				offset = put(r, offset, this.payload.length, prefix);
+				System.arraycopy(this.payload, 0, r, offset, this.payload.length);
+				offset += this.payload.length;
+			}
+			return finish(r);
+		}
+
+		private byte[] newXidEvent(long timestamp, long xid)
+		{
+			final byte[] r = allocate(MySQLConstants.XID_EVENT, timestamp, 8);
+			put(r, HEADER_LENGTH, xid, 8);
+			return finish(r);
+		}
+
+		private int getMaxLength()
+		{
+			return rowSize < 256 ? 255 : 65535;
+		}
+	}
+}
@@ -0,0 +1,228 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.code.or.relay;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+
+import junit.framework.TestCase;
+
+import com.google.code.or.common.util.MySQLConstants;
+
+/**
+ * @author Jingqi Xu
+ */
+public class RelayLogTest extends TestCase
+{
+	//
+	private static final String BINLOG = "mysql-bin.000001";
+	private static final int CHECKSUM_LENGTH = 4;
+	private static final int XID_LENGTH = RelayLog.HEADER_LENGTH + 8 + CHECKSUM_LENGTH;
+	private static final int SEGMENT_SIZE = 200; // The format description and rotate events, then 3 xid events
+
+	//
+	private File directory;
+
+	/**
+	 * 
+	 */
+	@Override
+	protected void setUp() throws Exception
+	{
+		this.directory = new File(System.getProperty("java.io.tmpdir"), "relay-log-test-" + System.nanoTime());
+	}
+
+	@Override
+	protected void tearDown() throws Exception
+	{
+		final File[] files = this.directory.listFiles();
+		for (int i = 0; files != null && i < files.length; i++)
+		{
+			files[i].delete();
+		}
+		this.directory.delete();
+	}
+
+	/**
+	 * 
+	 */
+	public void testRecoverTruncatesPartialEvent() throws Exception
+	{
+		//
+		RelayLog log = open(0, 0);
+		final long end = appendXids(log, 3);
+		log.close();
+		final File file = RelayLog.getSegmentFile(this.directory, 1);
+		final long length = file.length();
+		append(file, new byte[] { 1, 2, 3, 4, 5 });
+
+		//
+		log = open(0, 0);
+		assertEquals(BINLOG, log.getMasterFileName());
+		assertEquals(end, log.getMasterPosition());
+		assertEquals(length, file.length());
+		log.close();
+	}
+
+	public void testRecoverTruncatesCorruptedEvent() throws Exception
+	{
+		//
+		RelayLog log = open(0, 0);
+		final long end = appendXids(log, 3);
+		log.close();
+		final File file = RelayLog.getSegmentFile(this.directory, 1);
+		final long length = file.length();
+		final RandomAccessFile raf = new RandomAccessFile(file, "rw");
+		try
+		{
+			raf.seek(length - CHECKSUM_LENGTH - 1); // The xid of the last event
+			raf.write(raf.read() ^ 0xFF);
+		}
+		finally
+		{
+			raf.close();
+		}
+
+		//
+		log = open(0, 0);
+		assertEquals(BINLOG, log.getMasterFileName());
+		assertEquals(end - XID_LENGTH, log.getMasterPosition());
+		assertEquals(length - XID_LENGTH, file.length());
+		log.close();
+	}
+
+	public void testRollAndFindSegment() throws Exception
+	{
+		//
+		final RelayLog log = open(0, 0);
+		log.setSegmentSize(SEGMENT_SIZE);
+		appendXids(log, 10);
+
+		//
+		int count = 0;
+		for (Long s = log.getFirstSegment(); s != null; s = log.getNextSegment(s))
+		{
+			count++;
+		}
+		assertEquals(4, count);
+		assertEquals(Long.valueOf(1), log.findSegment(BINLOG, 4));
+		assertEquals(Long.valueOf(1), log.findSegment(BINLOG, 4 + 3 * XID_LENGTH - 1));
+		assertEquals(Long.valueOf(2), log.findSegment(BINLOG, 4 + 3 * XID_LENGTH));
+		assertEquals(Long.valueOf(4), log.findSegment(BINLOG, Long.MAX_VALUE));
+		log.close();
+	}
+
+	public void testPurgeBySize() throws Exception
+	{
+		//
+		final RelayLog log = open(1, 0);
+		log.setSegmentSize(SEGMENT_SIZE);
+		appendXids(log, 10);
+		log.setReadSegment(3);
+
+		//
+		assertEquals(Long.valueOf(3), log.getFirstSegment());
+		assertFalse(RelayLog.getSegmentFile(this.directory, 1).exists());
+		log.close();
+	}
+
+	public void testIdleRelayLogExpiresSegments() throws Exception
+	{
+		//
+		final RelayLog log = open(0, 200);
+		log.setSegmentSize(SEGMENT_SIZE);
+		appendXids(log, 10);
+		final Long first = log.getFirstSegment();
+		long last = first;
+		for (Long s = first; s != null; s = log.getNextSegment(s))
+		{
+			last = s;
+		}
+		log.setReadSegment(last);
+
+		// No more events are appended
+		final long deadline = System.currentTimeMillis() + 10000;
+		while (log.getFirstSegment() != last && System.currentTimeMillis() < deadline)
+		{
+			Thread.sleep(50);
+		}
+		assertEquals(Long.valueOf(last), log.getFirstSegment());
+		log.close();
+	}
+
+	/**
+	 * 
+	 */
+	private RelayLog open(long retentionSize, long retentionMillis) throws Exception
+	{
+		final RelayLog r = new RelayLog(this.directory);
+		r.setChecksumLength(CHECKSUM_LENGTH);
+		r.setRetentionSize(retentionSize);
+		r.setRetentionMillis(retentionMillis);
+		r.open();
+		return r;
+	}
+
+	/**
+	 * Appends a format description event and n xid events from position 4, returns the position after
+	 */
+	private long appendXids(RelayLog log, int n) throws Exception
+	{
+		//
+		if (log.getMasterFileName() == null)
+		{
+			log.setMasterPosition(BINLOG, 4);
+			final byte[] fde = newEvent(MySQLConstants.FORMAT_DESCRIPTION_EVENT, 0, 60);
+			log.append(fde, 0, fde.length);
+		}
+
+		//
+		long position = log.getMasterPosition();
+		for (int i = 0; i < n; i++)
+		{
+			position += XID_LENGTH;
+			final byte[] xid = newEvent(MySQLConstants.XID_EVENT, position, 8);
+			RelayLog.writeLong(xid, RelayLog.HEADER_LENGTH, i, 8);
+			RelayLog.updateChecksum(xid, CHECKSUM_LENGTH);
+			log.append(xid, 0, xid.length);
+		}
+		log.flush();
+		return position;
+	}
+
+	private static byte[] newEvent(int eventType, long nextPosition, int bodyLength)
+	{
+		final byte[] r = new byte[RelayLog.HEADER_LENGTH + bodyLength + CHECKSUM_LENGTH];
+		RelayLog.writeLong(r, 4, eventType, 1);
+		RelayLog.writeLong(r, 9, r.length, 4);
+		RelayLog.writeLong(r, 13, nextPosition, 4);
+		RelayLog.updateChecksum(r, CHECKSUM_LENGTH);
+		return r;
+	}
+
+	private static void append(File file, byte[] data) throws Exception
+	{
+		final RandomAccessFile raf = new RandomAccessFile(file, "rw");
+		try
+		{
+			raf.seek(raf.length());
+			raf.write(data);
+		}
+		finally
+		{
+			raf.close();
+		}
+	}
+}